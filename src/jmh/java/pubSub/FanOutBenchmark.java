@@ -0,0 +1,73 @@
+package pubSub;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures delivering every published record to 1, 10 or 100 subscribers of the topic, in records published per
+ * unit of time: every invocation publishes a batch of {@link FanOutBenchmark#BATCH_SIZE} records, which every
+ * subscriber then polls.
+ * ./gradlew jmh -PjmhArgs="FanOutBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class FanOutBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+    private static final AtomicInteger TOPICS = new AtomicInteger();
+
+    @Param({"1", "10", "100"})
+    public int subscribers;
+
+    private Publisher<String, byte[]> publisher;
+    private List<Record<String, byte[]>> batch;
+    private List<Subscriber<String, byte[]>> subscriberList;
+    private List<Record<String, byte[]>> polled;
+
+    @Setup
+    public void setup() {
+        String topic = "fanOutBenchmark" + TOPICS.incrementAndGet();
+        publisher = new Publisher<>(topic, TopicConfig.builder().retentionMaxRecords(1 << 20).build());
+        batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(new Record<>("key" + i, new byte[64]));
+        }
+        subscriberList = new ArrayList<>(subscribers);
+        for (int i = 0; i < subscribers; i++) {
+            Subscriber<String, byte[]> subscriber = new Subscriber<>(topic);
+            subscriber.register();
+            subscriberList.add(subscriber);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int publishAndFanOut() throws PublisherException, SubscriberException {
+        publisher.publishAll(batch);
+        int delivered = 0;
+        for (int i = 0; i < subscriberList.size(); i++) {
+            delivered += subscriberList.get(i).poll(BATCH_SIZE).size();
+        }
+        return delivered;
+    }
+}
@@ -0,0 +1,53 @@
+package pubSub;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what the metrics cost a publish or a poll, in nanoseconds: recording a latency with the two clock reads
+ * around it, and counting the records and bytes.
+ * ./gradlew jmh -PjmhArgs="MetricsBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    private final TopicMetrics metrics = new TopicMetrics();
+    private final Histogram histogram = new Histogram();
+    private long value;
+
+    @Benchmark
+    public void histogramRecord() {
+        histogram.record(value++ & 0xFFFFF);
+    }
+
+    @Benchmark
+    public void published() {
+        metrics.published(100, 6400, value++ & 0xFFFFF);
+    }
+
+    @Benchmark
+    public long clock() {
+        return System.nanoTime();
+    }
+
+    @Benchmark
+    public void publishedWithClock() {
+        long startNanos = System.nanoTime();
+        metrics.published(100, 6400, System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,100 @@
+package pubSub;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Compares the allocations of a steady-state consume loop polling lists against one polling views or forEach.
+ * Meant to be run with the gc profiler, which reports the bytes allocated per poll (gc.alloc.rate.norm):
+ * ./gradlew jmh -PjmhArgs="PollBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PollBenchmark {
+
+    private static final int PREFILLED_RECORDS = 1 << 16;
+    private static final int POLL_SIZE = 64;
+    private static final AtomicInteger TOPICS = new AtomicInteger();
+
+    private String topic;
+
+    @Setup
+    public void setup() throws PublisherException {
+        topic = "pollBenchmark" + TOPICS.incrementAndGet();
+        Publisher<String, byte[]> publisher = new Publisher<>(topic);
+        Record<String, byte[]> record = new Record<>("key", new byte[64]);
+        List<Record<String, byte[]>> records = new ArrayList<>();
+        for (int i = 0; i < PREFILLED_RECORDS; i++) {
+            records.add(record);
+        }
+        publisher.publishAll(records);
+    }
+
+    /**
+     * A subscriber per thread, which starts over once it read the whole topic.
+     */
+    @State(Scope.Thread)
+    public static class Reader {
+
+        Subscriber<String, byte[]> subscriber;
+        Blackhole blackhole;
+        Consumer<Record<String, byte[]>> action;
+
+        @Setup
+        public void setup(PollBenchmark benchmark, Blackhole blackhole) {
+            this.subscriber = new Subscriber<>(benchmark.topic);
+            this.subscriber.register();
+            this.blackhole = blackhole;
+            this.action = blackhole::consume;
+        }
+
+        void startOverIfDone(int polled) {
+            if (polled == 0) {
+                subscriber.rewind(PREFILLED_RECORDS);
+            }
+        }
+    }
+
+    @Benchmark
+    public void poll(Reader reader) throws SubscriberException {
+        List<Record<String, byte[]>> records = reader.subscriber.poll(POLL_SIZE);
+        for (int i = 0; i < records.size(); i++) {
+            reader.blackhole.consume(records.get(i));
+        }
+        reader.startOverIfDone(records.size());
+    }
+
+    @Benchmark
+    public void pollView(Reader reader) throws SubscriberException {
+        RecordBatchView<String, byte[]> records = reader.subscriber.pollView(POLL_SIZE);
+        for (int i = 0; i < records.size(); i++) {
+            reader.blackhole.consume(records.get(i));
+        }
+        reader.startOverIfDone(records.size());
+    }
+
+    @Benchmark
+    public void forEach(Reader reader) throws SubscriberException {
+        reader.startOverIfDone(reader.subscriber.forEach(POLL_SIZE, reader.action));
+    }
+}
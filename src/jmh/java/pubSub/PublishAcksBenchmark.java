@@ -0,0 +1,65 @@
+package pubSub;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Publisher#publish(Record)} on a topic stored in files, at every {@link Acks} level.
+ * With several threads the {@link Acks#FSYNCED} publishers share their flushes to disk.
+ *
+ * Run once per publisher thread count, e.g.
+ * ./gradlew jmh -PjmhArgs="PublishAcksBenchmark -t 1", then with -t 4.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PublishAcksBenchmark {
+
+    @Param({"NONE", "BUFFERED", "FSYNCED"})
+    public Acks acks;
+
+    private final Record<byte[], byte[]> record = new Record<>("key".getBytes(), new byte[64]);
+
+    private Publisher<byte[], byte[]> publisher;
+
+    @Setup
+    public void setup() throws IOException {
+        Path directory = Files.createTempDirectory("publishAcksBenchmark");
+
+        // Retention keeps the disk usage of the unacknowledged levels bounded.
+        publisher = new Publisher<>("acks-" + acks, TopicConfig.builder()
+                .fileStorage(directory, Serde.byteArray(), Serde.byteArray())
+                .segmentBytes(16 * 1024 * 1024)
+                .retentionMaxBytes(64 * 1024 * 1024)
+                .build(), PublisherConfig.builder().acks(acks).build());
+    }
+
+    @TearDown
+    public void tearDown() {
+        publisher.close();
+    }
+
+    @Benchmark
+    public void publish() throws PublisherException {
+        publisher.publish(record);
+    }
+}
@@ -0,0 +1,130 @@
+package pubSub;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures {@link Publisher} and {@link Subscriber} running concurrently on the same topic, by record size and
+ * batch size: publishers publish batchSize records per call, with publish for a batch of 1 and publishAll above,
+ * and subscribers poll up to batchSize records per call. Every subscriber reads the whole topic on its own.
+ *
+ * The publishPoll group runs one producer and one consumer thread, publishPollConcurrently two of each, so the
+ * baseline covers publishers and subscribers contending with each other. Other thread counts with
+ * -tg producers,consumers, e.g. ./gradlew jmh -PjmhArgs="PublishPollBenchmark -tg 4,4 -prof gc"
+ *
+ * Retention keeps the topic bounded, subscribers falling behind it skip to the end of the topic.
+ */
+@State(Scope.Group)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PublishPollBenchmark {
+
+    private static final AtomicInteger TOPICS = new AtomicInteger();
+
+    @Param({"16", "1024"})
+    public int recordSize;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private String topic;
+
+    @Setup
+    public void setup() {
+        topic = "publishPollBenchmark" + TOPICS.incrementAndGet();
+        new Publisher<String, byte[]>(topic, TopicConfig.builder()
+                .retentionMaxRecords(1 << 20)
+                .offsetResetPolicy(OffsetResetPolicy.LATEST)
+                .build());
+    }
+
+    /**
+     * A publisher per thread, publishing the same records over and over.
+     */
+    @State(Scope.Thread)
+    public static class Producer {
+
+        Publisher<String, byte[]> publisher;
+        Record<String, byte[]> record;
+        List<Record<String, byte[]>> batch;
+
+        @Setup
+        public void setup(PublishPollBenchmark benchmark) {
+            publisher = new Publisher<>(benchmark.topic);
+            record = new Record<>("key", new byte[benchmark.recordSize]);
+            batch = new ArrayList<>(benchmark.batchSize);
+            for (int i = 0; i < benchmark.batchSize; i++) {
+                batch.add(new Record<>("key" + i, new byte[benchmark.recordSize]));
+            }
+        }
+    }
+
+    /**
+     * A subscriber per thread.
+     */
+    @State(Scope.Thread)
+    public static class Consumer {
+
+        Subscriber<String, byte[]> subscriber;
+        int maxRecords;
+
+        @Setup
+        public void setup(PublishPollBenchmark benchmark) {
+            subscriber = new Subscriber<>(benchmark.topic);
+            subscriber.register();
+            maxRecords = benchmark.batchSize;
+        }
+    }
+
+    @Benchmark
+    @Group("publishPoll")
+    @GroupThreads(1)
+    public void publish(Producer producer) throws PublisherException {
+        if (producer.batch.size() == 1) {
+            producer.publisher.publish(producer.record);
+        } else {
+            producer.publisher.publishAll(producer.batch);
+        }
+    }
+
+    @Benchmark
+    @Group("publishPoll")
+    @GroupThreads(1)
+    public int poll(Consumer consumer) throws SubscriberException {
+        return consumer.subscriber.poll(consumer.maxRecords).size();
+    }
+
+    @Benchmark
+    @Group("publishPollConcurrently")
+    @GroupThreads(2)
+    public void publishConcurrently(Producer producer) throws PublisherException {
+        publish(producer);
+    }
+
+    @Benchmark
+    @Group("publishPollConcurrently")
+    @GroupThreads(2)
+    public int pollConcurrently(Consumer consumer) throws SubscriberException {
+        return poll(consumer);
+    }
+}
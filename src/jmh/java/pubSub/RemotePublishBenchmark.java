@@ -0,0 +1,86 @@
+package pubSub;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures publishing to a {@link PubSubServer} over loopback, in records per second, a request per record and a
+ * request per batch of {@link RemotePublishBenchmark#BATCH_SIZE} records. A subscriber on its own connection
+ * drains the topic, so that every published record also travels back over the network.
+ *
+ * ./gradlew jmh -PjmhArgs="RemotePublishBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class RemotePublishBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    private PubSubServer server;
+    private PubSubClient publisherClient;
+    private PubSubClient subscriberClient;
+    private RemotePublisher<byte[], byte[]> publisher;
+    private RemoteSubscriber<byte[], byte[]> subscriber;
+    private final Record<byte[], byte[]> record = new Record<>("key".getBytes(), new byte[64]);
+    private RecordBatch<byte[], byte[]> batch;
+
+    @Setup
+    public void setup() throws IOException, PublisherException, SubscriberException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        server = new PubSubServer(new InetSocketAddress(loopback, 0));
+        publisherClient = new PubSubClient(new InetSocketAddress(loopback, server.getPort()));
+        subscriberClient = new PubSubClient(new InetSocketAddress(loopback, server.getPort()));
+
+        // Retention keeps the heap bounded.
+        new Publisher<>("remotePublishBenchmark", TopicConfig.builder().retentionMaxRecords(1 << 20).build());
+        publisher = new RemotePublisher<>(publisherClient, "remotePublishBenchmark", Serde.byteArray(),
+                Serde.byteArray());
+        subscriber = new RemoteSubscriber<>(subscriberClient, "remotePublishBenchmark", Serde.byteArray(),
+                Serde.byteArray());
+        subscriber.register();
+        batch = new RecordBatch<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(record);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        publisherClient.close();
+        subscriberClient.close();
+        server.close();
+    }
+
+    @Benchmark
+    public void publish() throws PublisherException, SubscriberException {
+        publisher.publish(record);
+        subscriber.poll(BATCH_SIZE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void publishBatch() throws PublisherException, SubscriberException {
+        publisher.publishBatch(batch);
+        subscriber.poll(BATCH_SIZE);
+    }
+}
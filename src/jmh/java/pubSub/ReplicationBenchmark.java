@@ -0,0 +1,94 @@
+package pubSub;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures publishing batches of {@link ReplicationBenchmark#BATCH_SIZE} records into a topic and reading them back
+ * from it, in records per second, on its own and replicated over loopback by a {@link TopicFollower} in the same
+ * JVM. The subscriber of a replicated topic only reads the records the follower has, so the difference between the
+ * two is what replication costs the leader. Publishing runs up to {@link ReplicationBenchmark#MAX_UNREAD} records
+ * ahead of the subscriber, which is what lets the follower fetch large batches.
+ *
+ * ./gradlew jmh -PjmhArgs="ReplicationBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ReplicationBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+    private static final int MAX_UNREAD = 64 * 1024;
+
+    @Param({"false", "true"})
+    public boolean replicated;
+
+    private PubSubServer server;
+    private TopicFollower follower;
+    private Publisher<byte[], byte[]> publisher;
+    private Subscriber<byte[], byte[]> subscriber;
+    private RecordBatch<byte[], byte[]> batch;
+    private long unread;
+
+    @Setup
+    public void setup() throws IOException {
+        String topic = "replicationBenchmark-" + replicated;
+
+        // Retention keeps the heap of the follower bounded, which nobody reads.
+        TopicConfig.Builder topicConfig = TopicConfig.builder().retentionMaxRecords(1 << 21);
+        publisher = new Publisher<>(topic, replicated ? topicConfig.replicated(1).build() : topicConfig.build());
+        if (replicated) {
+            InetAddress loopback = InetAddress.getLoopbackAddress();
+            server = new PubSubServer(new InetSocketAddress(loopback, 0));
+            follower = new TopicFollower(new InetSocketAddress(loopback, server.getPort()), topic, "follower",
+                    topic + "-follower", topicConfig.build());
+        }
+        subscriber = new Subscriber<>(topic);
+        subscriber.register();
+        batch = new RecordBatch<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(new Record<>("key".getBytes(), new byte[64]));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (replicated) {
+            follower.close();
+            server.close();
+        }
+        publisher.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void publishBatch() throws PublisherException, SubscriberException {
+        publisher.publishBatch(batch);
+        unread += BATCH_SIZE;
+        unread -= subscriber.poll(MAX_UNREAD).size();
+        while (unread > MAX_UNREAD) {
+            unread -= subscriber.poll(1, MAX_UNREAD, Duration.ofSeconds(10)).size();
+        }
+    }
+}
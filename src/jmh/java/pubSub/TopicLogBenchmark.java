@@ -0,0 +1,148 @@
+package pubSub;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the chunked {@link TopicLog} against the previous synchronized-list topic queue.
+ *
+ * Run once per producer/consumer thread count, e.g.
+ * ./gradlew jmh -PjmhArgs="TopicLogBenchmark -t 1", then with -t 4 and -t 16.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TopicLogBenchmark {
+
+    private static final int PREFILLED_RECORDS = 1 << 20;
+    private static final int POLL_SIZE = 10;
+    private static final int BATCH_SIZE = 64;
+
+    @Param({"topicLog", "synchronizedList"})
+    public String implementation;
+
+    // Appending stamps a record, so every append gets a record of its own like a real publisher would publish.
+    private final byte[] value = new byte[64];
+
+    private BenchmarkLog log;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        log = "topicLog".equals(implementation) ? new ChunkedLog() : new SynchronizedListLog();
+        for (int i = 0; i < PREFILLED_RECORDS; i++) {
+            log.append(new Record<>("key", value));
+        }
+    }
+
+    @Benchmark
+    public long publish() {
+        return log.append(new Record<>("key", value));
+    }
+
+    // Reported per record, to compare against publish.
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long publishBatch() {
+        List<Record<String, byte[]>> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(new Record<>("key", value));
+        }
+        return log.appendAll(batch);
+    }
+
+    @Benchmark
+    public int poll(Cursor cursor) {
+        List<Record<String, byte[]>> records = log.poll(cursor.offset, POLL_SIZE);
+        cursor.offset = (cursor.offset + records.size()) % (PREFILLED_RECORDS - POLL_SIZE);
+        return records.size();
+    }
+
+    /**
+     * The read position of a single consumer thread.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        long offset;
+    }
+
+    private interface BenchmarkLog {
+
+        long append(Record<String, byte[]> record);
+
+        long appendAll(List<Record<String, byte[]>> records);
+
+        List<Record<String, byte[]>> poll(long offset, int maxRecords);
+    }
+
+    private static final class ChunkedLog implements BenchmarkLog {
+
+        private final TopicLog<String, byte[]> topicLog = new TopicLog<>();
+
+        @Override
+        public long append(Record<String, byte[]> record) {
+            return topicLog.append(record);
+        }
+
+        @Override
+        public long appendAll(List<Record<String, byte[]>> records) {
+            return topicLog.appendAll(records);
+        }
+
+        @Override
+        public List<Record<String, byte[]>> poll(long offset, int maxRecords) {
+            List<Record<String, byte[]>> records = new ArrayList<>();
+            topicLog.read(offset, maxRecords, records);
+            return records;
+        }
+    }
+
+    /**
+     * Mirrors the previous PubSubManager: one monitor for all operations and a synchronized list per topic.
+     */
+    private static final class SynchronizedListLog implements BenchmarkLog {
+
+        private final List<Record<String, byte[]>> queue = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public synchronized long append(Record<String, byte[]> record) {
+            queue.add(record);
+            return queue.size() - 1;
+        }
+
+        @Override
+        public synchronized long appendAll(List<Record<String, byte[]>> records) {
+            queue.addAll(records);
+            return queue.size() - records.size();
+        }
+
+        @Override
+        public synchronized List<Record<String, byte[]>> poll(long offset, int maxRecords) {
+            List<Record<String, byte[]>> records = new ArrayList<>();
+            int endOffset = (int) Math.min(queue.size(), offset + maxRecords);
+            for (int i = (int) offset; i < endOffset; i++) {
+                records.add(queue.get(i));
+            }
+            return records;
+        }
+    }
+}
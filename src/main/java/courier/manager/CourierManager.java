@@ -4,7 +4,9 @@ import callbacks.OrderReceiveCallback;
 import courier.model.CourierOrder;
 import models.Order;
 import subscribers.OrderSubscriber;
+import util.AppProperties;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Timer;
 
@@ -14,12 +16,15 @@ import java.util.Timer;
  */
 public class CourierManager {
 
-    private final OrderSubscriber orderSubscriber;
+    // Members of the "courier" consumer group, the partitions of the orders topic are processed in parallel across them.
+    private final List<OrderSubscriber> orderSubscribers;
     private final Timer orderTimer;
 
     // The list for maintaining orders that have not yet been handled.
     private final List<String> pendingOrders;
 
+    private static final String SUBSCRIBER_GROUP = "courier";
+
     /**
      * Singleton getter/creator.
      * @return The singleton {@link CourierManager} instance.
@@ -40,10 +45,15 @@ public class CourierManager {
     private CourierManager() {
 
         this.orderTimer = new Timer();
-        this.pendingOrders = new ArrayList<>();
-
-        orderSubscriber = new OrderSubscriber("courierSubscriber", new OrderReceiverCallbackImplForCourier(),
-                null, 10);
+        this.pendingOrders = Collections.synchronizedList(new ArrayList<>());
+
+        int numSubscribers = Integer.parseInt(AppProperties.getInstance().getProperty("order.courier.subscriber.threads"));
+        OrderReceiverCallbackImplForCourier orderReceiveCallback = new OrderReceiverCallbackImplForCourier();
+        orderSubscribers = new ArrayList<>();
+        for (int i = 0; i < numSubscribers; i++) {
+            orderSubscribers.add(new OrderSubscriber("courierSubscriber-" + i, SUBSCRIBER_GROUP,
+                    orderReceiveCallback, null, 10));
+        }
 
         initThreads();
     }
@@ -65,10 +75,16 @@ public class CourierManager {
      */
     private void initThreads() {
 
-        Thread thread = new Thread(orderSubscriber, "courierSubscriber");
-        thread.start();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < orderSubscribers.size(); i++) {
+            Thread thread = new Thread(orderSubscribers.get(i), "courierSubscriber-" + i);
+            thread.start();
+            threads.add(thread);
+        }
         try {
-            thread.join();
+            for (Thread thread : threads) {
+                thread.join();
+            }
         } catch (InterruptedException e) {
 
             //  Re-interrupt the current thread: restores the interrupt status of the thread.
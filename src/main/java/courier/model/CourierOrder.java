@@ -2,9 +2,15 @@ package courier.model;
 
 import courier.manager.CourierManager;
 import models.Order;
+import models.Serdes.OrderDeserializer;
+import pubSub.Record;
+import pubSub.Subscriber;
+import pubSub.SubscriberException;
 import shelf.manager.ShelfManager;
 import shelf.model.ShelfSystem;
+import util.AppProperties;
 import util.RandomNumberGen;
+import java.io.IOException;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -19,6 +25,10 @@ public class CourierOrder {
     private final String orderId;
     private final String orderTemperature;
 
+    // Looks the Orders up by their ID in the orders topic, which the dispatcher indexes by key.
+    private static final Subscriber<String, byte[]> ORDERS_LOOKUP =
+            new Subscriber<>(AppProperties.getInstance().getProperty("order.topic"));
+
     /**
      * Constructor
      * @param orderId The ID of the {@link Order} to process (deliver).
@@ -45,7 +55,9 @@ public class CourierOrder {
             if (order == null) {
 
                 // We could not find the order on the shelf, could have been discarded due to overflow.
-                System.out.println("Order not found on shelf : " + orderId);
+                Order dispatchedOrder = lookupDispatchedOrder();
+                System.out.println("Order not found on shelf : "
+                        + ((dispatchedOrder == null) ? orderId : dispatchedOrder.getName()));
                 ShelfManager.getOrCreate().printShelf();
                 return;
             }
@@ -60,4 +72,21 @@ public class CourierOrder {
             CourierManager.getOrCreate().onOrderDelivered(orderId);
         }
     }
+
+    /**
+     * Looks the {@link Order} up in the orders topic, without going through the shelves.
+     * @return The {@link Order} as dispatched, null if it could not be found.
+     */
+    private Order lookupDispatchedOrder() {
+
+        try {
+            Record<String, byte[]> record = ORDERS_LOOKUP.lookupLatest(orderId);
+            return (record == null) ? null : OrderDeserializer.deserialize(record.getValue());
+        } catch (SubscriberException | IOException e) {
+
+            // Log and fall back to the ID.
+            System.out.println("Order lookup failed: " + e.getMessage());
+            return null;
+        }
+    }
 }
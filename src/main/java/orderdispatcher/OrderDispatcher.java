@@ -1,14 +1,21 @@
 package orderdispatcher;
 
+import pubSub.BackpressurePolicy;
 import pubSub.Publisher;
 import pubSub.PublisherException;
 import pubSub.Record;
+import pubSub.RecordBatch;
+import pubSub.TopicConfig;
 import models.Order;
 import models.Serdes.OrderSerializer;
 import util.AppProperties;
 import util.ThreadUtil;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -24,6 +31,12 @@ public class OrderDispatcher {
     // The topic to dispatch Orders into.
     private final String ORDERS_TOPIC;
 
+    // The number of partitions of the topic, Orders are routed to a partition by their ID.
+    private final int ORDERS_TOPIC_PARTITIONS;
+
+    // How many Orders a partition holds that the slowest subscriber has not read yet, the dispatcher blocks beyond.
+    private final long ORDERS_TOPIC_CAPACITY_PER_PARTITION;
+
     // How many Orders to dispatch per invocation of the dispatcher task.
     private final int DISPATCH_RATE_PER_RUN;
     private final int CHECKER_THREAD_SLEEP_IN_MS = 1000;
@@ -33,6 +46,23 @@ public class OrderDispatcher {
 
     private final int ONE_SEC_IN_MS = 1000;
 
+    // The headers of every Order record, its value is the Order serialized to JSON.
+    private static final Map<String, byte[]> ORDER_HEADERS =
+            Collections.singletonMap("content-type", "application/json".getBytes(StandardCharsets.UTF_8));
+
+    // The header holding the temperature of the Order, which subscribers can filter on.
+    public static final String TEMPERATURE_HEADER = "temperature";
+
+    private static Map<String, byte[]> orderHeaders(Order order) {
+
+        if (order.getTemperature() == null) {
+            return ORDER_HEADERS;
+        }
+        Map<String, byte[]> headers = new HashMap<>(ORDER_HEADERS);
+        headers.put(TEMPERATURE_HEADER, order.getTemperature().getBytes(StandardCharsets.UTF_8));
+        return headers;
+    }
+
     public static OrderDispatcher getOrCreate() {
 
         return OrderDispatcherSingleton.instance;
@@ -50,6 +80,8 @@ public class OrderDispatcher {
         DISPATCH_RATE_PER_RUN = Integer.parseInt(properties.getProperty("order.dispatch.rate.per.sec")) * DISPATCHER_PERIODICITY_IN_MS / ONE_SEC_IN_MS;
 
         ORDERS_TOPIC = properties.getProperty("order.topic");
+        ORDERS_TOPIC_PARTITIONS = Integer.parseInt(properties.getProperty("order.topic.partitions"));
+        ORDERS_TOPIC_CAPACITY_PER_PARTITION = Long.parseLong(properties.getProperty("order.topic.capacity.per.partition"));
         readOrdersAndDispatch();
     }
 
@@ -73,7 +105,13 @@ public class OrderDispatcher {
      */
     class Dispatcher extends TimerTask {
 
-        Publisher publisher = new Publisher(ORDERS_TOPIC);
+        // The orders are indexed by their ID, so that the couriers can look an order up.
+        Publisher publisher = new Publisher(ORDERS_TOPIC, TopicConfig.builder()
+                .partitions(ORDERS_TOPIC_PARTITIONS)
+                .keyIndex(Math.max(1, ordersList.size()))
+                .capacityMaxRecords(ORDERS_TOPIC_CAPACITY_PER_PARTITION)
+                .backpressurePolicy(BackpressurePolicy.BLOCK)
+                .build());
 
         @Override
         public void run() {
@@ -85,19 +123,23 @@ public class OrderDispatcher {
             } else {
                 numRecordsToRead = ordersList.size() - currentIndex;
             }
-            for (int i = 0; i < numRecordsToRead; i++) {
-                Order order = ordersList.get(currentIndex++);
-                Record record = new Record(
-                        order.getId(), OrderSerializer.serialize(order));
-
-                try {
-                    publisher.publish(record);
-                } catch (PublisherException pe) {
-                    // Log and continue to dispatch.
-                    System.out.println("Publisher Exception: " + pe.getMessage());
-                }
+            // Publish the Orders of this run as a single batch.
+            RecordBatch batch = new RecordBatch();
+            List<Order> orders = ordersList.subList(currentIndex, currentIndex + numRecordsToRead);
+            for (Order order : orders) {
+                batch.add(new Record(order.getId(), OrderSerializer.serialize(order), orderHeaders(order)));
+            }
+            try {
+                publisher.publishBatch(batch);
+            } catch (PublisherException pe) {
+                // Log and dispatch the same Orders again on the next run, e.g. once the topic is no longer full.
+                System.out.println("Publisher Exception: " + pe.getMessage());
+                return;
+            }
+            for (Order order : orders) {
                 System.out.println("Dispatched order: " + order.getName());
             }
+            currentIndex += numRecordsToRead;
         }
     }
 }
@@ -0,0 +1,17 @@
+package pubSub;
+
+
+/**
+ * What {@link Publisher#publish(Record)} waits for before returning.
+ */
+public enum Acks {
+
+    // Nothing: the record is handed over to the asynchronous publishing of the publisher, failures are only logged.
+    NONE,
+
+    // The record is appended to its partition and visible to the subscribers, it may still be lost on a crash.
+    BUFFERED,
+
+    // The record is appended and flushed to disk, requires a topic stored in files.
+    FSYNCED
+}
@@ -0,0 +1,18 @@
+package pubSub;
+
+
+/**
+ * What a {@link Publisher} does when publishing into a bounded topic would take the records not read yet by its
+ * slowest subscriber past the capacity of the partition, see {@link TopicConfig.Builder#capacityMaxRecords(long)}.
+ */
+public enum BackpressurePolicy {
+
+    // Wait until the subscribers caught up, up to the backpressure timeout of the topic, then fail.
+    BLOCK,
+
+    // Fail the publish with a PublisherException right away.
+    FAIL,
+
+    // Publish, and move the subscribers which are too far behind past the oldest records, which they never read.
+    DROP_OLDEST
+}
@@ -0,0 +1,107 @@
+package pubSub;
+
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the batches of {@link Record}s of a topic stored in files, see
+ * {@link TopicConfig.Builder#compression(CompressionCodec)}. A batch is compressed once when it is appended, and
+ * decompressed once per read of its records.
+ *
+ * Every batch is stored with the id of its codec, and read back with the codec of the topic having that id, or the
+ * built-in one. A codec should not change its id, nor the format of what it compresses, once it was used.
+ */
+public interface CompressionCodec {
+
+    // The id of the batches which are not compressed, and of the built-in codecs.
+    byte NONE_ID = 0;
+    byte DEFLATE_ID = 1;
+
+    /**
+     * @return The id stored with every batch compressed by this codec, between 1 and 127. Ids below 16 are reserved
+     *         for the built-in codecs.
+     */
+    byte id();
+
+    byte[] compress(byte[] data);
+
+    /**
+     * @param data What {@link CompressionCodec#compress(byte[])} returned.
+     * @param uncompressedLength The length of the data which was compressed.
+     * @return The data which was compressed.
+     */
+    byte[] decompress(byte[] data, int uncompressedLength);
+
+    /**
+     * @return A codec compressing with Deflate from java.util.zip, at its default level.
+     */
+    static CompressionCodec deflate() {
+
+        return deflate(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level The Deflate level, from 1 (fastest) to 9 (smallest), or -1 for the default.
+     * @return A codec compressing with Deflate from java.util.zip.
+     */
+    static CompressionCodec deflate(int level) {
+
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("level should be between 1 and 9, or -1");
+        }
+        return new CompressionCodec() {
+
+            @Override
+            public byte id() {
+                return DEFLATE_ID;
+            }
+
+            @Override
+            public byte[] compress(byte[] data) {
+
+                Deflater deflater = new Deflater(level);
+                try {
+                    deflater.setInput(data);
+                    deflater.finish();
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+                    byte[] buffer = new byte[8192];
+                    while (!deflater.finished()) {
+                        out.write(buffer, 0, deflater.deflate(buffer));
+                    }
+                    return out.toByteArray();
+                } finally {
+                    deflater.end();
+                }
+            }
+
+            @Override
+            public byte[] decompress(byte[] data, int uncompressedLength) {
+
+                Inflater inflater = new Inflater();
+                try {
+                    inflater.setInput(data);
+                    byte[] uncompressed = new byte[uncompressedLength];
+                    int length = 0;
+                    while (length < uncompressedLength && !inflater.finished()) {
+                        int inflated = inflater.inflate(uncompressed, length, uncompressedLength - length);
+                        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+                        length += inflated;
+                    }
+                    if (length != uncompressedLength) {
+                        throw new IllegalStateException("Corrupt Deflate batch");
+                    }
+                    return uncompressed;
+                } catch (DataFormatException e) {
+                    throw new IllegalStateException("Corrupt Deflate batch", e);
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,123 @@
+package pubSub;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A group of {@link Subscriber}s sharing the work of reading a topic.
+ *
+ * Every partition of the topic is assigned to exactly one member of the group, and all the members read from and
+ * advance the group's committed offsets. Whenever a member joins or leaves, the partitions are re-assigned as
+ * contiguous ranges across the members in the order they joined, and the new owner of a partition continues from
+ * the group's committed offset.
+ */
+final class ConsumerGroup {
+
+    private static final int[] NO_PARTITIONS = new int[0];
+
+    private final String groupId;
+
+    // The members in the order they joined, guarded by this.
+    private final List<Integer> members = new ArrayList<>();
+
+    // Resolved lazily, the topic might not exist yet when the first member joins.
+    private int numPartitions = -1;
+    private volatile AtomicLongArray committedOffsets;
+
+    // Replaced as a whole on every rebalance, so the members read it without locking.
+    private volatile Map<Integer, int[]> assignment = Collections.emptyMap();
+
+    ConsumerGroup(String groupId) {
+        this.groupId = groupId;
+    }
+
+    String getGroupId() {
+        return groupId;
+    }
+
+    synchronized void join(int subscriberId) {
+
+        if (!members.contains(subscriberId)) {
+            members.add(subscriberId);
+            rebalance();
+        }
+    }
+
+    synchronized void leave(int subscriberId) {
+
+        if (members.remove(Integer.valueOf(subscriberId))) {
+            rebalance();
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    /**
+     * Sizes the committed offsets and assigns the partitions, once the topic exists.
+     */
+    void resolve(Topic<?,?> topic) {
+
+        if (committedOffsets != null) {
+            return;
+        }
+        synchronized (this) {
+            if (committedOffsets == null) {
+                numPartitions = topic.numPartitions();
+                committedOffsets = new AtomicLongArray(numPartitions);
+                rebalance();
+            }
+        }
+    }
+
+    /**
+     * Resumes the group from the given committed offsets, unless the group already has offsets.
+     */
+    synchronized void restoreOffsets(long[] offsets) {
+
+        if (committedOffsets == null) {
+            numPartitions = offsets.length;
+            committedOffsets = new AtomicLongArray(offsets);
+            rebalance();
+        }
+    }
+
+    /**
+     * @return The partitions currently assigned to the member, empty if the group has more members than partitions.
+     */
+    int[] assignment(int subscriberId) {
+        return assignment.getOrDefault(subscriberId, NO_PARTITIONS);
+    }
+
+    AtomicLongArray getCommittedOffsets() {
+        return committedOffsets;
+    }
+
+    /**
+     * Range assignment: the first (numPartitions % numMembers) members get one partition more than the others.
+     */
+    private void rebalance() {
+
+        if (numPartitions < 0) {
+            return;
+        }
+        Map<Integer, int[]> newAssignment = new HashMap<>();
+        int numMembers = members.size();
+        int nextPartition = 0;
+        for (int i = 0; i < numMembers; i++) {
+            int count = numPartitions / numMembers + ((i < numPartitions % numMembers) ? 1 : 0);
+            int[] partitions = new int[count];
+            for (int j = 0; j < count; j++) {
+                partitions[j] = nextPartition++;
+            }
+            newAssignment.put(members.get(i), partitions);
+        }
+        assignment = newAssignment;
+    }
+}
@@ -0,0 +1,77 @@
+package pubSub;
+
+
+/**
+ * Interfaces for push based subscriptions with backpressure, the {@link Flow.Subscriber} only receives as many items
+ * as it requested through its {@link Flow.Subscription}.
+ *
+ * These mirror java.util.concurrent.Flow (Java 9) with the same names and signals, so moving to the JDK interfaces
+ * once the project drops Java 8 is a change of imports.
+ */
+public final class Flow {
+
+    private Flow() {
+
+    }
+
+    /**
+     * A producer of items, which are signalled to a {@link Flow.Subscriber} as per its demand.
+     * @param <T> The item
+     */
+    @FunctionalInterface
+    public interface Publisher<T> {
+
+        /**
+         * Adds the subscriber, which is signalled {@link Flow.Subscriber#onSubscribe} first.
+         * Failures are signalled with {@link Flow.Subscriber#onError}.
+         *
+         * @param subscriber The subscriber
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * A receiver of items. The signals are never invoked concurrently for the same subscription.
+     * @param <T> The item
+     */
+    public interface Subscriber<T> {
+
+        /**
+         * Invoked before any other signal. No item is received until {@link Flow.Subscription#request} is called.
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Invoked with the next item, never more than the outstanding demand.
+         */
+        void onNext(T item);
+
+        /**
+         * Invoked on an unrecoverable error, no other signal follows.
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Invoked once no more items will be signalled, no other signal follows.
+         */
+        void onComplete();
+    }
+
+    /**
+     * Links a {@link Flow.Publisher} and a {@link Flow.Subscriber}.
+     */
+    public interface Subscription {
+
+        /**
+         * Adds n items to the demand of the subscriber. A demand of Long.MAX_VALUE is unbounded.
+         *
+         * @param n The number of items, should be greater than 0.
+         */
+        void request(long n);
+
+        /**
+         * Stops the signals to the subscriber, possibly after some items already in flight.
+         */
+        void cancel();
+    }
+}
@@ -0,0 +1,126 @@
+package pubSub;
+
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Writes the frames of the {@link Protocol} into a buffer which grows as needed, see {@link FrameWriter#buffer()}.
+ * Not thread safe.
+ */
+final class FrameWriter {
+
+    private final boolean direct;
+    private ByteBuffer buffer;
+
+    // Where the length of the frame being written goes.
+    private int frameStart = -1;
+
+    /**
+     * @param capacity The initial capacity of the buffer.
+     * @param direct Whether the buffer is a direct one, which the channels write from without copying it first.
+     */
+    FrameWriter(int capacity, boolean direct) {
+        this.direct = direct;
+        this.buffer = allocate(capacity);
+    }
+
+    /**
+     * @return The buffer, in write mode: the frames written so far are before its position.
+     */
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return Whether nothing is waiting in the buffer.
+     */
+    boolean isEmpty() {
+        return buffer.position() == 0;
+    }
+
+    FrameWriter beginFrame() {
+
+        ensureCapacity(Integer.BYTES);
+        frameStart = buffer.position();
+        buffer.putInt(0);
+        return this;
+    }
+
+    void endFrame() {
+
+        buffer.putInt(frameStart, buffer.position() - frameStart - Integer.BYTES);
+        frameStart = -1;
+    }
+
+    /**
+     * Drops the frame being written, e.g. because writing it failed halfway.
+     */
+    void abortFrame() {
+
+        if (frameStart >= 0) {
+            buffer.position(frameStart);
+            frameStart = -1;
+        }
+    }
+
+    FrameWriter putByte(byte value) {
+
+        ensureCapacity(1);
+        buffer.put(value);
+        return this;
+    }
+
+    FrameWriter putInt(int value) {
+
+        ensureCapacity(Integer.BYTES);
+        buffer.putInt(value);
+        return this;
+    }
+
+    FrameWriter putLong(long value) {
+
+        ensureCapacity(Long.BYTES);
+        buffer.putLong(value);
+        return this;
+    }
+
+    FrameWriter putBytes(byte[] bytes) {
+
+        if (bytes == null) {
+            return putInt(-1);
+        }
+        ensureCapacity(Integer.BYTES + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        return this;
+    }
+
+    FrameWriter putString(String string) {
+        return putBytes(Protocol.toBytes(string));
+    }
+
+    FrameWriter putHeaders(Map<String, byte[]> headers) {
+
+        putInt(headers.size());
+        for (Map.Entry<String, byte[]> header : headers.entrySet()) {
+            putString(header.getKey()).putBytes(header.getValue());
+        }
+        return this;
+    }
+
+    void ensureCapacity(int bytes) {
+
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        ByteBuffer grown = allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
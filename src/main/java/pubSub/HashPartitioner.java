@@ -0,0 +1,27 @@
+package pubSub;
+
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Default {@link Partitioner}: routes by the hash of the {@link Record}'s key, of its content for byte[] keys.
+ * Records without a key are spread across the partitions in a round-robin fashion.
+ *
+ * @param <K> The key
+ */
+public class HashPartitioner<K> implements Partitioner<K> {
+
+    private final AtomicInteger roundRobin = new AtomicInteger();
+
+    @Override
+    public int partition(K key, int numPartitions) {
+
+        if (key == null) {
+            return Math.floorMod(roundRobin.getAndIncrement(), numPartitions);
+        }
+        // Spread the hash so that keys differing only in the high bits do not land on the same partition.
+        int hash = (key instanceof byte[]) ? Arrays.hashCode((byte[]) key) : key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), numPartitions);
+    }
+}
@@ -0,0 +1,189 @@
+package pubSub;
+
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Index of a partition from the keys of its {@link Record}s to the offset of the latest record with the key.
+ * A Bloom filter in front of the map answers most lookups of keys which were never published without touching it.
+ *
+ * The keys should implement equals and hashCode, byte[] keys are compared by content. Records with a null key are
+ * not indexed.
+ *
+ * @param <K> The key for the {@link Record}
+ */
+final class KeyIndex<K> {
+
+    // With 10 bits per expected key and 3 hashes the filter lets about 2% of the absent keys through to the map.
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASHES = 3;
+    private static final int MAX_BITS = 1 << 30;
+
+    private static final int LOAD_BATCH_SIZE = 1024;
+
+    // By the key as returned by indexKey.
+    private final Map<Object, Long> latestOffsets = new ConcurrentHashMap<>();
+
+    // The bits of the Bloom filter, a power of two of them. Bits are only ever set, so the filter keeps answering
+    // "maybe" for keys that retention removed, and lets more absent keys through once more keys than expected
+    // were published. The lookups stay correct either way.
+    private final AtomicLongArray bloomBits;
+    private final int bloomMask;
+
+    // The start offset of the partition that the index was last pruned at, only used by the cleaner thread.
+    private long prunedOffset;
+
+    /**
+     * @param expectedKeys The number of distinct keys the Bloom filter is sized for.
+     */
+    KeyIndex(int expectedKeys) {
+
+        long bits = Math.max(Long.SIZE, (long) expectedKeys * BITS_PER_KEY);
+        int numBits = (int) Math.min(MAX_BITS, Long.highestOneBit(bits - 1) << 1);
+        this.bloomBits = new AtomicLongArray(numBits / Long.SIZE);
+        this.bloomMask = numBits - 1;
+    }
+
+    /**
+     * Records that the key was appended at the offset. Concurrent appends of the same key keep the highest offset.
+     */
+    void add(K key, long offset) {
+
+        if (key == null) {
+            return;
+        }
+
+        // Set the bits first, a key in the map is always in the filter.
+        Object indexKey = indexKey(key);
+        long hash = hash(indexKey);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (hash1 + i * hash2) & bloomMask;
+            int word = bit >>> 6;
+            long mask = 1L << bit;
+            long current;
+            while (((current = bloomBits.get(word)) & mask) == 0
+                    && !bloomBits.compareAndSet(word, current, current | mask)) {
+
+                // Another key set a bit of the same word, retry.
+            }
+        }
+        latestOffsets.merge(indexKey, offset, Math::max);
+    }
+
+    /**
+     * Indexes the records appended as a batch from baseOffset.
+     */
+    void addAll(List<? extends Record<K,?>> records, long baseOffset) {
+
+        for (int i = 0; i < records.size(); i++) {
+            add(records.get(i).getKey(), baseOffset + i);
+        }
+    }
+
+    /**
+     * @return Whether the key may have been published, false means it definitely was not.
+     */
+    boolean mightContain(K key) {
+
+        long hash = hash(indexKey(key));
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (hash1 + i * hash2) & bloomMask;
+            if ((bloomBits.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The offset of the latest record appended with the key, or -1 if there is none. The record might have
+     *         been removed since, by retention or compaction.
+     */
+    long latestOffset(K key) {
+
+        if (!mightContain(key)) {
+            return -1;
+        }
+        Long offset = latestOffsets.get(indexKey(key));
+        return (offset == null) ? -1 : offset;
+    }
+
+    /**
+     * Called by the cleaner thread once retention moved the start offset of the partition.
+     * Drops the keys whose latest record is below the start offset.
+     */
+    void prune(long startOffset) {
+
+        if (startOffset <= prunedOffset) {
+            return;
+        }
+        for (Map.Entry<Object, Long> entry : latestOffsets.entrySet()) {
+            if (entry.getValue() < startOffset) {
+
+                // Only removes the key if it was not appended again meanwhile.
+                latestOffsets.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        prunedOffset = startOffset;
+    }
+
+    /**
+     * Indexes the records already in the log, e.g. of a topic opened from its files.
+     */
+    <V> void load(PartitionLog<K,V> log) {
+
+        List<Record<K,V>> records = new ArrayList<>(LOAD_BATCH_SIZE);
+        long offset = log.startOffset();
+        long tail = log.tail();
+        while (offset < tail) {
+            records.clear();
+            long nextOffset = log.read(offset, LOAD_BATCH_SIZE, records);
+            if (nextOffset - offset == records.size()) {
+                addAll(records, offset);
+            } else {
+
+                // Some records were compacted away, so the offsets of the others are not known: read them one by one.
+                for (long recordOffset = offset; recordOffset < nextOffset; ) {
+                    records.clear();
+                    long next = log.read(recordOffset, 1, records);
+                    if (!records.isEmpty()) {
+                        add(records.get(0).getKey(), next - 1);
+                    }
+                    recordOffset = next;
+                }
+            }
+            offset = nextOffset;
+        }
+    }
+
+    /**
+     * @return The key to look the key up by in a map: byte[] keys, which the topics served by a {@link PubSubServer}
+     *         have, are wrapped so that they compare by content.
+     */
+    static Object indexKey(Object key) {
+        return (key instanceof byte[]) ? ByteBuffer.wrap((byte[]) key) : key;
+    }
+
+    /**
+     * Spreads the hash code of the key over 64 bits, the finalizer of MurmurHash3.
+     */
+    private static long hash(Object key) {
+
+        long hash = key.hashCode();
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,45 @@
+package pubSub;
+
+
+/**
+ * Runs as a background thread and periodically removes the records that fell out of the retention of their topic,
+ * compacts the compacted topics, moves the high-water marks of the replicated topics, looks up the slowest
+ * subscribers of the bounded topics, and checkpoints the consumer group offsets of the topics stored in files.
+ */
+final class LogCleaner implements Runnable {
+
+    private static final int SLEEP_TIME_MS = 500;
+
+    private final PubSubManager<?,?> pubSubManager;
+
+    LogCleaner(PubSubManager<?,?> pubSubManager) {
+
+        this.pubSubManager = pubSubManager;
+    }
+
+    @Override
+    public void run() {
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                pubSubManager.enforceRetention();
+                pubSubManager.compactLogs();
+                pubSubManager.advanceHighWatermarks();
+                pubSubManager.refreshCapacities();
+                pubSubManager.checkpointGroupOffsets();
+            } catch (Exception e) {
+
+                // Log and keep going, the next run will retry.
+                System.out.println("Log cleaning failed with exception " + e.getMessage());
+            }
+            try {
+                Thread.sleep(SLEEP_TIME_MS);
+            } catch (InterruptedException e) {
+
+                //  Re-interrupt the current thread: restores the interrupt status of the thread.
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package pubSub;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events, such as published records, and their rate per second as a one-minute exponentially weighted
+ * moving average, the way a load average is computed.
+ *
+ * Marking only adds to a {@link LongAdder}, which concurrent writers do not contend on. The average is moved by the
+ * readers, at most every 5 seconds: the events since the last move are spread evenly over the time elapsed since,
+ * and weighted by that time. A steady rate reads the same however often it is read.
+ */
+final class Meter {
+
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final double WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final LongAdder count = new LongAdder();
+
+    // Guarded by this, only touched by the readers.
+    private long lastTickNanos = System.nanoTime();
+    private long lastTickCount;
+    private double ratePerSecond;
+    private boolean initialized;
+
+    void mark(long events) {
+        count.add(events);
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return The events per second, averaged over the last minute or so.
+     */
+    synchronized double oneMinuteRate() {
+
+        long nowNanos = System.nanoTime();
+        long elapsedNanos = nowNanos - lastTickNanos;
+        if (elapsedNanos >= TICK_NANOS) {
+            long current = count.sum();
+            double intervalRate = (current - lastTickCount) * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+            if (!initialized) {
+                ratePerSecond = intervalRate;
+                initialized = true;
+            } else {
+
+                // The same as moving the average every tick of the interval with the rate of the interval.
+                ratePerSecond += (1 - Math.exp(-elapsedNanos / WINDOW_NANOS)) * (intervalRate - ratePerSecond);
+            }
+            lastTickCount = current;
+            lastTickNanos = nowNanos;
+        }
+        return ratePerSecond;
+    }
+}
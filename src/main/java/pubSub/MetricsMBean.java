@@ -0,0 +1,152 @@
+package pubSub;
+
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A read-only MBean whose attributes are read from suppliers when JMX asks for them, so that nothing is computed
+ * for metrics which nobody looks at. Registered with the platform MBean server under the pubSub domain.
+ */
+final class MetricsMBean implements DynamicMBean {
+
+    private static final String DOMAIN = "pubSub";
+
+    private final String description;
+    private final Map<String, Supplier<?>> attributes = new LinkedHashMap<>();
+    private final Map<String, MBeanAttributeInfo> attributeInfos = new LinkedHashMap<>();
+
+    private volatile ObjectName objectName;
+
+    MetricsMBean(String description) {
+        this.description = description;
+    }
+
+    MetricsMBean addLong(String name, String attributeDescription, Supplier<Long> value) {
+        return add(name, Long.class, attributeDescription, value);
+    }
+
+    MetricsMBean addDouble(String name, String attributeDescription, Supplier<Double> value) {
+        return add(name, Double.class, attributeDescription, value);
+    }
+
+    MetricsMBean addString(String name, String attributeDescription, Supplier<String> value) {
+        return add(name, String.class, attributeDescription, value);
+    }
+
+    private MetricsMBean add(String name, Class<?> type, String attributeDescription, Supplier<?> value) {
+
+        attributes.put(name, value);
+        attributeInfos.put(name, new MBeanAttributeInfo(name, type.getName(), attributeDescription, true, false,
+                false));
+        return this;
+    }
+
+    /**
+     * @return The attributes by name, in the order they were added.
+     */
+    Map<String, Object> values() {
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Supplier<?>> attribute : attributes.entrySet()) {
+            values.put(attribute.getKey(), attribute.getValue().get());
+        }
+        return values;
+    }
+
+    /**
+     * Registers this MBean as pubSub:type=&lt;type&gt; followed by the given properties, whose values are quoted.
+     * A failure is logged, the metrics are still recorded.
+     *
+     * @param type The type of MBean.
+     * @param properties Alternating names and values of the key properties of the name.
+     */
+    void register(String type, String... properties) {
+
+        StringBuilder name = new StringBuilder(DOMAIN).append(":type=").append(type);
+        for (int i = 0; i + 1 < properties.length; i += 2) {
+            name.append(',').append(properties[i]).append('=').append(ObjectName.quote(properties[i + 1]));
+        }
+        try {
+            ObjectName registered = new ObjectName(name.toString());
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(registered)) {
+                mBeanServer.unregisterMBean(registered);
+            }
+            mBeanServer.registerMBean(this, registered);
+            objectName = registered;
+        } catch (JMException e) {
+            System.out.println("Registering MBean " + name + " failed with exception " + e.getMessage());
+        }
+    }
+
+    void unregister() {
+
+        ObjectName registered = objectName;
+        objectName = null;
+        if (registered == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+        } catch (JMException e) {
+            System.out.println("Unregistering MBean " + registered + " failed with exception " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+
+        Supplier<?> value = attributes.get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value.get();
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+
+        AttributeList list = new AttributeList();
+        for (String name : names) {
+            Supplier<?> value = attributes.get(name);
+            if (value != null) {
+                list.add(new Attribute(name, value.get()));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException("Metrics have no operations");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+
+        return new MBeanInfo(getClass().getName(), description,
+                attributeInfos.values().toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
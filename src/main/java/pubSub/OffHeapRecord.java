@@ -0,0 +1,50 @@
+package pubSub;
+
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * A {@link Record} whose value lives in a {@link PayloadSlabs.Slab} off the heap.
+ * Only the key and the handle of the value are on the heap, the value is deserialized from the slab on every call
+ * to {@link OffHeapRecord#getValue()}.
+ *
+ * @param <K> The key
+ * @param <V> The value
+ */
+final class OffHeapRecord<K,V> extends Record<K,V> {
+
+    private final PayloadSlabs.Slab<V> slab;
+    private final int position;
+    private final int length;
+
+    OffHeapRecord(K key, Map<String, byte[]> headers, PayloadSlabs.Slab<V> slab, int position, int length,
+                  long timestamp) {
+        super(key, null, headers, timestamp);
+        this.slab = slab;
+        this.position = position;
+        this.length = length;
+    }
+
+    @Override
+    public V getValue() {
+        return slab.read(position, length);
+    }
+
+    /**
+     * @return A read-only view of the serialized value in the slab.
+     */
+    ByteBuffer valueBytes() {
+        return slab.view(position, length);
+    }
+
+    @Override
+    boolean hasValue() {
+        return true;
+    }
+
+    @Override
+    int estimatedSize() {
+        return super.estimatedSize() + length;
+    }
+}
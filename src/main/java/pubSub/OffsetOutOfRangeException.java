@@ -0,0 +1,14 @@
+package pubSub;
+
+
+/**
+ * Thrown internally when reading an offset which retention already removed from a {@link PartitionLog}.
+ * The {@link PubSubManager} handles it by applying the topic's {@link OffsetResetPolicy}.
+ */
+final class OffsetOutOfRangeException extends RuntimeException {
+
+    OffsetOutOfRangeException(long offset) {
+
+        super("Offset " + offset + " is no longer retained");
+    }
+}
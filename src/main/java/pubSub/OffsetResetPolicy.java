@@ -0,0 +1,18 @@
+package pubSub;
+
+
+/**
+ * What a {@link Subscriber} does when its offset in a partition points to records that were already removed by the
+ * topic's retention.
+ */
+public enum OffsetResetPolicy {
+
+    // Continue from the oldest record still retained.
+    EARLIEST,
+
+    // Skip to the end of the partition, only records published from now on are read.
+    LATEST,
+
+    // Fail the poll with a SubscriberException.
+    NONE
+}
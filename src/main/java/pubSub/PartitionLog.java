@@ -0,0 +1,125 @@
+package pubSub;
+
+
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Storage of a single partition of a topic: an append-only sequence of {@link Record}s addressed by offset.
+ * Implemented on the heap by {@link TopicLog}, and on memory-mapped files by {@link SegmentLog}.
+ *
+ * Appends may be concurrent, and stamp every record with its append time. Readers never lock and only see the
+ * offsets below {@link PartitionLog#tail()}.
+ * Retention and compaction are only called by the single cleaner thread.
+ *
+ * @param <K> The key for the {@link Record}
+ * @param <V> The value for the {@link Record}
+ */
+interface PartitionLog<K,V> {
+
+    /**
+     * Appends the {@link Record} to the end of the log.
+     *
+     * @return The offset at which the record was stored.
+     */
+    long append(Record<K,V> record);
+
+    /**
+     * Appends the {@link Record}s to the end of the log as a single batch with contiguous offsets, which readers see
+     * either entirely or not at all.
+     *
+     * @param records The records to append, should not be empty.
+     * @return The offset at which the first record was stored.
+     */
+    long appendAll(List<Record<K,V>> records);
+
+    /**
+     * Appends records copied from the log of a leader, as {@link PartitionLog#appendAll} but keeping the timestamps
+     * they have instead of stamping them with their append time.
+     *
+     * @param records The records to append, in the order of the leader, should not be empty.
+     * @return The offset at which the first record was stored.
+     */
+    long appendReplicated(List<Record<K,V>> records);
+
+    /**
+     * Does the part of {@link PartitionLog#appendAll} which only depends on the records, such as serializing them,
+     * without appending anything: an exception the records cause is thrown here. Lets a batch spanning partitions
+     * fail before any of them is appended to.
+     *
+     * @param records The records to append, should not be empty.
+     * @return Appends the records when called, as a single batch, and returns the offset of the first one. Should be
+     *         called once at most.
+     */
+    LongSupplier prepare(List<Record<K,V>> records);
+
+    /**
+     * Copies upto maxRecords {@link Record}s starting at fromOffset into the given list.
+     *
+     * @return The offset following the last record that was read.
+     * @throws OffsetOutOfRangeException If fromOffset was already removed from the log.
+     */
+    long read(long fromOffset, int maxRecords, List<Record<K,V>> out);
+
+    /**
+     * Copies upto maxRecords {@link Record}s matching the filter, between fromOffset and endOffset, into the given
+     * list. Records which do not match are skipped without being copied, and without deserializing their value.
+     * A null filter matches every record.
+     *
+     * @return The offset following the last record that was read or skipped.
+     * @throws OffsetOutOfRangeException If fromOffset was already removed from the log.
+     */
+    long read(long fromOffset, long endOffset, int maxRecords, RecordFilter<K> filter, List<Record<K,V>> out);
+
+    /**
+     * @return The offset that the next published record will be visible at.
+     */
+    long tail();
+
+    /**
+     * @return The first offset still present in the log.
+     */
+    long startOffset();
+
+    /**
+     * @return The size in bytes of the records in the log, possibly excluding the most recently appended ones.
+     */
+    long sizeInBytes();
+
+    /**
+     * @param timestampMs The milliseconds since the epoch.
+     * @return The offset of the first record appended at or after the timestamp, {@link PartitionLog#tail()} if
+     *         there is none.
+     */
+    long offsetForTimestamp(long timestampMs);
+
+    /**
+     * Blocks until the records below endOffset are on disk, if the log is stored on disk.
+     *
+     * @param endOffset The offset following the last record to flush.
+     */
+    void flush(long endOffset);
+
+    /**
+     * Drops the oldest records which are no longer needed, as per {@link TopicLog#enforceRetention}.
+     *
+     * @return The number of dropped records.
+     */
+    long enforceRetention(long maxRecords, long maxBytes, long maxAgeMs, long consumedOffset, long replicatedOffset,
+                          long nowMs);
+
+    /**
+     * Keeps only the newest {@link Record} per key, as per {@link TopicLog#compact}.
+     *
+     * @return The number of removed records.
+     */
+    long compact(long tombstoneRetentionMs, long nowMs);
+
+    /**
+     * Moves a log without records to start at the offset, which the next appended record gets. Lets a follower
+     * start where the leader's retention left off.
+     *
+     * @throws IllegalStateException If the log has records.
+     */
+    void resetTo(long offset);
+}
@@ -0,0 +1,18 @@
+package pubSub;
+
+
+/**
+ * Decides which partition of a topic a {@link Record} is stored into.
+ * Records with equal keys must always be routed to the same partition, that is what keeps them ordered.
+ *
+ * @param <K> The key
+ */
+public interface Partitioner<K> {
+
+    /**
+     * @param key The key of the {@link Record} being published, may be null.
+     * @param numPartitions The number of partitions of the topic.
+     * @return The partition, in the range [0, numPartitions).
+     */
+    int partition(K key, int numPartitions);
+}
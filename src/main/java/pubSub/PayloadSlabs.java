@@ -0,0 +1,128 @@
+package pubSub;
+
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stores the values of the {@link Record}s of a partition off the heap, in large direct {@link ByteBuffer} slabs.
+ *
+ * A value is serialized and copied into the current slab at publish time, and the record kept by the log is an
+ * {@link OffHeapRecord}: the key plus a (slab, position, length) handle. Producers reserve their bytes in a slab
+ * with a single atomic increment, the producer which finds the slab full installs the next one. A value larger
+ * than a slab gets a slab of its own.
+ *
+ * Slabs are never written again once full, nor reused. A slab is released once retention dropped every record
+ * pointing into it and the records handed out to the subscribers are gone: its memory goes back to the system
+ * when the garbage collector reclaims the slab.
+ *
+ * @param <V> The value for the {@link Record}
+ */
+final class PayloadSlabs<V> {
+
+    static final int DEFAULT_SLAB_BYTES = 4 * 1024 * 1024;
+
+    private final Serde<V> valueSerde;
+    private final int slabBytes;
+
+    // The slab new values are copied into.
+    private final AtomicReference<Slab<V>> currentSlab;
+
+    PayloadSlabs(Serde<V> valueSerde, int slabBytes) {
+
+        this.valueSerde = valueSerde;
+        this.slabBytes = slabBytes;
+        this.currentSlab = new AtomicReference<>(new Slab<>(valueSerde, slabBytes));
+    }
+
+    /**
+     * @param timestampMs The append time to stamp the record with.
+     * @return The record to keep in the log: the stamped record if it has no value, an {@link OffHeapRecord} else.
+     */
+    <K> Record<K,V> store(Record<K,V> record, long timestampMs) {
+
+        V value = record.getValue();
+        if (value == null) {
+            return record.stamp(timestampMs);
+        }
+        byte[] bytes = valueSerde.serialize(value);
+        if (bytes.length > slabBytes) {
+            Slab<V> slab = new Slab<>(valueSerde, bytes.length);
+            slab.write(slab.reserve(bytes.length), bytes);
+            return new OffHeapRecord<>(record.getKey(), record.getHeaders(), slab, 0, bytes.length, timestampMs);
+        }
+        while (true) {
+            Slab<V> slab = currentSlab.get();
+            int position = slab.reserve(bytes.length);
+            if (position >= 0) {
+                slab.write(position, bytes);
+                return new OffHeapRecord<>(record.getKey(), record.getHeaders(), slab, position, bytes.length, timestampMs);
+            }
+
+            // Losing the race is fine, the winner's slab is used by everyone.
+            currentSlab.compareAndSet(slab, new Slab<>(valueSerde, slabBytes));
+        }
+    }
+
+    /**
+     * A direct buffer filled from the start, in the order the bytes are reserved.
+     */
+    static final class Slab<V> {
+
+        private final Serde<V> valueSerde;
+        private final ByteBuffer buffer;
+
+        // The first byte not reserved yet.
+        private final AtomicInteger reservedBytes = new AtomicInteger();
+
+        Slab(Serde<V> valueSerde, int capacity) {
+
+            this.valueSerde = valueSerde;
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+        }
+
+        /**
+         * @return The position reserved for the bytes, -1 if they do not fit into the slab anymore.
+         */
+        int reserve(int length) {
+
+            while (true) {
+                int position = reservedBytes.get();
+                if (position + length > buffer.capacity()) {
+                    return -1;
+                }
+                if (reservedBytes.compareAndSet(position, position + length)) {
+                    return position;
+                }
+            }
+        }
+
+        /**
+         * Made visible to the readers by the volatile write publishing the record in the log.
+         */
+        void write(int position, byte[] bytes) {
+
+            ByteBuffer view = buffer.duplicate();
+            view.position(position);
+            view.put(bytes);
+        }
+
+        ByteBuffer view(int position, int length) {
+
+            ByteBuffer view = buffer.asReadOnlyBuffer();
+            view.position(position);
+            view.limit(position + length);
+            return view;
+        }
+
+        V read(int position, int length) {
+
+            byte[] bytes = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(position);
+            view.get(bytes);
+            return valueSerde.deserialize(bytes);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package pubSub;
+
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The binary protocol spoken between the {@link PubSubClient} and the {@link PubSubServer}.
+ *
+ * Every request is a frame [int length][byte apiKey][int correlationId][payload], answered in order by a frame
+ * [int length][int correlationId][byte status][payload], the length not counting itself. An error status carries
+ * the error message as payload. Byte arrays are written as [int length][bytes] with a length of -1 for null,
+ * strings as the byte array of their UTF-8 encoding, and the headers of a record as [int count] count times
+ * [name][value].
+ *
+ * Requests and the payload of their responses:
+ * <ul>
+ *     <li>INIT_TOPIC [topic][int partitions], [int partitions of the topic][byte stored in files]</li>
+ *     <li>METADATA [topic], [int partitions of the topic][byte stored in files]</li>
+ *     <li>PRODUCE [topic][byte acks][int count] count times [int partition][key][value][headers], empty.
+ *         Not answered at all with {@link Acks#NONE}.</li>
+ *     <li>REGISTER [topic][groupId][int count, -1 for all the partitions] count times [int partition],
+ *         [int handle]</li>
+ *     <li>UNREGISTER [int handle], empty</li>
+ *     <li>FETCH [int handle][int minRecords][int maxRecords][long timeoutMs],
+ *         [int count] count times [long timestamp][key][value][headers]</li>
+ *     <li>REWIND [int handle][int partition, -1 for all][int rewindCount], empty</li>
+ *     <li>SEEK [int handle][int partition, -1 for all][byte mode][long offset or timestamp], empty</li>
+ *     <li>REPLICA_FETCH [topic][followerId][int maxRecords per partition][long timeoutMs][int count] count times
+ *         [int partition][long fetchOffset][long known high-water mark],
+ *         [int count] count times [int partition][long high-water mark][long start offset][int records]
+ *         records times [long timestamp][key][value][headers]. Parked until a partition has records past its fetch
+ *         offset or a newer high-water mark, or the timeout expires, and answered right away for a partition fetched
+ *         from below its start offset.</li>
+ * </ul>
+ */
+final class Protocol {
+
+    static final byte INIT_TOPIC = 0;
+    static final byte METADATA = 1;
+    static final byte PRODUCE = 2;
+    static final byte REGISTER = 3;
+    static final byte UNREGISTER = 4;
+    static final byte FETCH = 5;
+    static final byte REWIND = 6;
+    static final byte SEEK = 7;
+    static final byte REPLICA_FETCH = 8;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+
+    static final byte SEEK_OFFSET = 0;
+    static final byte SEEK_TIMESTAMP = 1;
+    static final byte SEEK_BEGINNING = 2;
+    static final byte SEEK_END = 3;
+
+    // Frames larger than this are a protocol error, so that a corrupt length does not allocate gigabytes.
+    static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    private Protocol() {
+
+    }
+
+    static byte[] getBytes(ByteBuffer buffer) {
+
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    static Map<String, byte[]> getHeaders(ByteBuffer buffer) {
+
+        int count = buffer.getInt();
+        if (count == 0) {
+            return Collections.emptyMap();
+        }
+        if (count < 0 || count > buffer.remaining() / (2 * Integer.BYTES)) {
+            throw new BufferUnderflowException();
+        }
+        Map<String, byte[]> headers = new LinkedHashMap<>(2 * count);
+        for (int i = 0; i < count; i++) {
+            String name = getString(buffer);
+            byte[] value = getBytes(buffer);
+            if (name == null || value == null) {
+                throw new IllegalStateException("Null header");
+            }
+            headers.put(name, value);
+        }
+        return Collections.unmodifiableMap(headers);
+    }
+
+    static String getString(ByteBuffer buffer) {
+
+        byte[] bytes = getBytes(buffer);
+        return (bytes == null) ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static byte[] toBytes(String string) {
+        return (string == null) ? null : string.getBytes(StandardCharsets.UTF_8);
+    }
+}
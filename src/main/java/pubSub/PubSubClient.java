@@ -0,0 +1,159 @@
+package pubSub;
+
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import static com.google.inject.internal.util.Preconditions.checkNotNull;
+
+/**
+ * A connection to a {@link PubSubServer}, shared by the {@link RemotePublisher}s and {@link RemoteSubscriber}s
+ * created on it.
+ *
+ * Requests are sent one at a time and block until answered, so a long poll holds the connection for its duration:
+ * subscribers waiting for records and publishers should use connections of their own.
+ */
+public final class PubSubClient implements Closeable {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final SocketChannel channel;
+
+    // Reused for every request and response, guarded by this.
+    private final FrameWriter request = new FrameWriter(BUFFER_BYTES, false);
+    private ByteBuffer response = ByteBuffer.allocate(BUFFER_BYTES);
+    private final ByteBuffer responseLength = ByteBuffer.allocate(Integer.BYTES);
+    private int nextCorrelationId;
+
+    /**
+     * Writes the payload of a request.
+     */
+    interface RequestWriter {
+
+        void write(FrameWriter payload);
+    }
+
+    /**
+     * Reads the payload of a response.
+     */
+    interface ResponseReader<T> {
+
+        T read(ByteBuffer payload);
+    }
+
+    /**
+     * Connects to the {@link PubSubServer} listening on the address.
+     *
+     * @param address The address of the server.
+     * @throws IOException If the server could not be reached.
+     */
+    public PubSubClient(InetSocketAddress address) throws IOException {
+        checkNotNull(address, "address cannot be null");
+
+        this.channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    /**
+     * Closes the connection, the subscribers registered through it are unregistered by the server.
+     */
+    @Override
+    public void close() throws IOException {
+
+        channel.close();
+    }
+
+    /**
+     * Sends the request and blocks until it is answered.
+     *
+     * @param apiKey The request, one of the {@link Protocol} api keys.
+     * @param requestWriter Writes the payload of the request.
+     * @param responseReader Reads the payload of the response, the buffer is only valid during the call.
+     * @return What the responseReader returned.
+     * @throws IOException If the connection failed, or with the error message of the server if the request failed.
+     */
+    synchronized <T> T call(byte apiKey, RequestWriter requestWriter, ResponseReader<T> responseReader)
+            throws IOException {
+
+        int correlationId = write(apiKey, requestWriter);
+        try {
+            responseLength.clear();
+            readFully(responseLength);
+            int length = responseLength.getInt(0);
+            if (length < Integer.BYTES + 1 || length > Protocol.MAX_FRAME_BYTES) {
+                throw new IOException("Invalid response length " + length);
+            }
+            if (response.capacity() < length) {
+                response = ByteBuffer.allocate(Math.max(length, 2 * response.capacity()));
+            }
+            response.clear().limit(length);
+            readFully(response);
+            response.flip();
+            if (response.getInt() != correlationId) {
+                throw new IOException("Response out of order");
+            }
+        } catch (IOException e) {
+
+            // The connection is out of step with the server, nothing can be read from it anymore.
+            channel.close();
+            throw e;
+        }
+        if (response.get() == Protocol.STATUS_ERROR) {
+            throw new IOException(Protocol.getString(response));
+        }
+        return responseReader.read(response);
+    }
+
+    /**
+     * Sends a request which the server does not answer.
+     *
+     * @param apiKey The request, one of the {@link Protocol} api keys.
+     * @param requestWriter Writes the payload of the request.
+     * @throws IOException If the connection failed.
+     */
+    synchronized void send(byte apiKey, RequestWriter requestWriter) throws IOException {
+
+        write(apiKey, requestWriter);
+    }
+
+    private int write(byte apiKey, RequestWriter requestWriter) throws IOException {
+
+        int correlationId = ++nextCorrelationId;
+        request.beginFrame().putByte(apiKey).putInt(correlationId);
+        try {
+            requestWriter.write(request);
+        } catch (RuntimeException e) {
+
+            // E.g. a Serde failed, nothing was sent.
+            request.abortFrame();
+            throw e;
+        }
+        request.endFrame();
+        ByteBuffer buffer = request.buffer();
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        } finally {
+            buffer.clear();
+        }
+        return correlationId;
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Connection closed by the server");
+            }
+        }
+    }
+}
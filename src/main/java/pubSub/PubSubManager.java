@@ -1,11 +1,29 @@
 package pubSub;
 
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
 
 /**
  * Class representing the manager for the PubSub system.
@@ -17,21 +35,36 @@ import java.util.concurrent.ConcurrentHashMap;
 final class PubSubManager<K,V> {
 
     // Some potential enhancements that can be done:
-    // Add an expiry for the queue
-    // The queue can be periodically backed-up to a disk to prevent data loss during a machine failure
-    // The queue can be replicated into more than one machine for higher availability
-
     // We can add auto-handling of serializers and de-serializers using properties
     // This will prevent producers and consumers from having to track the appropriate objects and do the serdes.
 
+    // None of the operations below lock the manager: every partition of a topic is backed by its own PartitionLog,
+    // so publishers and subscribers on different topics or partitions never contend with each other.
+
     // Stores the actual data (value) per topic (key).
-    private final Map<String, List<Record<K,V>>> topicToQueueMap = new ConcurrentHashMap<>();
+    private final Map<String, Topic<K,V>> topicToQueueMap = new ConcurrentHashMap<>();
+
+    // Stores the partitions and offsets of every registered subscriber, by the dense id of the subscriber.
+    // This way we can support multiple subscriber offsets for the same topic.
+    private final SubscriberRegistry subscriberRegistry = new SubscriberRegistry();
+
+    // Stores the consumer groups (value) per topic (key), the groups are keyed by their group ID.
+    private final Map<String, Map<String, ConsumerGroup>> topicToGroupMap = new ConcurrentHashMap<>();
 
-    // Stores the list of subscribers (value) that are registered per topic (key).
-    private final Map<String, List<Integer>> topicToSubscriberMap = new ConcurrentHashMap<>();
+    // The MBeans of the metrics of every topic (key), and of every registered subscriber (key).
+    private final Map<String, MetricsMBean> topicToMBeanMap = new ConcurrentHashMap<>();
+    private final Map<SubscriberState, MetricsMBean> subscriberToMBeanMap = new ConcurrentHashMap<>();
 
-    // Stores the offset (value) per subscriber (key). This way we can support multiple subscriber offsets for the same topic.
-    private final Map<Integer, Integer> subscriberToOffsetMap = new ConcurrentHashMap<>();
+    // The quota shared by the publishers (value) with the same publisher ID (key).
+    private final Map<String, QuotaState> publisherToQuotaMap = new ConcurrentHashMap<>();
+
+    // The group offsets last written to disk (value) per topic stored in files (key).
+    private final Map<String, Properties> topicToCheckpointMap = new ConcurrentHashMap<>();
+
+    // Removes the records that fell out of retention, compacts the compacted topics and checkpoints the group offsets
+    // of the topics stored in files. Started with the first topic that needs it.
+    private final LogCleaner logCleaner = new LogCleaner(this);
+    private final AtomicBoolean logCleanerStarted = new AtomicBoolean();
 
     private final static PubSubManager INSTANCE = new PubSubManager();
 
@@ -50,142 +83,1418 @@ final class PubSubManager<K,V> {
     /**
      * Called by the {@link Publisher}
      * Readies things for accepting {@link Record}s into the system on the topic.
+     * If the topic already exists it is left as is, including its configuration.
+     * A topic stored in files is rebuilt from its files, and its consumer groups resume from their last checkpoint.
      *
      * @param topic
+     * @param topicConfig The configuration to create the topic with.
      */
-    synchronized void initTopic(String topic) {
+    void initTopic(String topic, TopicConfig topicConfig) {
 
-        if (topicToQueueMap.containsKey(topic)) {
+        topicToQueueMap.computeIfAbsent(topic, t -> {
+            Topic<K,V> topicQueue = new Topic<>(t, topicConfig);
+            if (topicConfig.getStorageDirectory() != null) {
+                restoreGroupOffsets(topicQueue);
+            }
+            MetricsMBean mBean = topicQueue.getMetrics().toMBean(topicQueue);
+            mBean.register("Topic", "name", t);
+            topicToMBeanMap.put(t, mBean);
+            return topicQueue;
+        });
+        refreshConsumedOffsets(topicToQueueMap.get(topic));
+        boolean needsCleaner = topicConfig.hasRetention() || topicConfig.isCompacted() || topicConfig.isBounded()
+                || topicConfig.getStorageDirectory() != null || topicConfig.getMinInSyncFollowers() > 0;
+        if (needsCleaner && logCleanerStarted.compareAndSet(false, true)) {
+            Thread logCleanerThread = new Thread(logCleaner, "pubSubLogCleaner");
+            logCleanerThread.setDaemon(true);
+            logCleanerThread.start();
+        }
+    }
 
-            // If this topic has already been registered.
-            return;
+    /**
+     * Called by the {@link Publisher}
+     * The quota of the publishers with the same ID is created by the first of them, with its MBean. A publisher
+     * without ID has a quota of its own.
+     *
+     * @param publisherId The ID of the publisher, null if it has none.
+     * @param quota The quota of the publisher, null if it has none.
+     * @return The quota to publish with, null if the publisher is not limited.
+     */
+    QuotaState publisherQuota(String publisherId, Quota quota) {
+
+        if (publisherId == null) {
+            return (quota != null) ? new QuotaState(quota) : null;
         }
-        topicToQueueMap.put(topic, Collections.synchronizedList(new ArrayList<>()));
+        if (quota == null) {
+            return publisherToQuotaMap.get(publisherId);
+        }
+        return publisherToQuotaMap.computeIfAbsent(publisherId, id -> {
+            QuotaState quotaState = new QuotaState(quota);
+            quotaState.toMBean(id).register("Publisher", "id", id);
+            return quotaState;
+        });
+    }
+
+    /**
+     * @param topic
+     * @return The number of partitions of the topic.
+     * @throws SubscriberException If the topic does not exist.
+     */
+    int numPartitions(String topic) throws SubscriberException {
+
+        return getTopic(topic).numPartitions();
+    }
+
+    /**
+     * @param topic
+     * @return Whether the topic exists and is stored in files.
+     */
+    boolean isStoredInFiles(String topic) {
+
+        Topic<K,V> topicQueue = topicToQueueMap.get(topic);
+        return topicQueue != null && topicQueue.getConfig().getStorageDirectory() != null;
     }
 
     /**
      * Called by the {@link Publisher}
+     * The record is appended to the partition chosen by the topic's {@link Partitioner}.
      *
      * @param topic
      * @param publisherRecord
+     * @param publisherQuota The quota of the publisher, null if it has none.
+     * @return Where the record was stored.
      * @throws PublisherException
      */
-    synchronized void send(String topic, Record<K,V> publisherRecord) throws PublisherException {
+    RecordMetadata send(String topic, Record<K,V> publisherRecord, QuotaState publisherQuota)
+            throws PublisherException {
 
+        long startNanos = System.nanoTime();
+        Topic<K,V> topicQueue = topicToQueueMap.get(topic);
         try {
-            topicToQueueMap.get(topic).add(publisherRecord);
+            checkNotFollowing(topicQueue);
+            int partition = topicQueue.partitionFor(publisherRecord);
+            int bytes = publisherRecord.estimatedSize();
+            startNanos += throttle(topicQueue, publisherQuota, 1, bytes, true);
+            try {
+                reserveCapacity(topicQueue, partition, 1, bytes, true);
+            } catch (PublisherException pe) {
+                releaseQuotas(topicQueue, publisherQuota, 1, bytes);
+                throw pe;
+            }
+            long offset = topicQueue.partition(partition).append(publisherRecord);
+            topicQueue.indexKey(partition, publisherRecord, offset);
+            topicQueue.wakeUpSubscribers();
+            topicQueue.getMetrics().published(1, bytes, System.nanoTime() - startNanos);
+            return new RecordMetadata(topic, partition, offset);
+        } catch (PublisherException pe) {
+            publishFailed(topicQueue);
+            throw pe;
         } catch (Exception e) {
 
             // Log actual cause and throw exception back.
             System.out.println("Publishing failed with exception " + e.getMessage());
+            publishFailed(topicQueue);
             throw new PublisherException("Publishing failed");
         }
     }
 
+    /**
+     * Called by the {@link Publisher}
+     * The records are split by partition, and the records of every partition are appended as a single batch. The
+     * records of every partition are serialized before any partition is appended to, see
+     * {@link PubSubManager#appendPrepared}.
+     *
+     * @param topic
+     * @param publisherRecords
+     * @param publisherQuota The quota of the publisher, null if it has none.
+     * @return Where every record was stored, in the order of the records.
+     * @throws PublisherException
+     */
+    List<RecordMetadata> sendAll(String topic, List<Record<K,V>> publisherRecords, QuotaState publisherQuota)
+            throws PublisherException {
+
+        long startNanos = System.nanoTime();
+        Topic<K,V> topicQueue = topicToQueueMap.get(topic);
+        try {
+            checkNotFollowing(topicQueue);
+            long bytes = estimatedSize(publisherRecords);
+            startNanos += throttle(topicQueue, publisherQuota, publisherRecords.size(), bytes, true);
+            RecordMetadata[] metadata = new RecordMetadata[publisherRecords.size()];
+            if (topicQueue.numPartitions() == 1) {
+                try {
+                    reserveCapacity(topicQueue, 0, publisherRecords);
+                } catch (PublisherException pe) {
+                    releaseQuotas(topicQueue, publisherQuota, publisherRecords.size(), bytes);
+                    throw pe;
+                }
+                long baseOffset = topicQueue.partition(0).appendAll(publisherRecords);
+                topicQueue.indexKeys(0, publisherRecords, baseOffset);
+                for (int i = 0; i < metadata.length; i++) {
+                    metadata[i] = new RecordMetadata(topic, 0, baseOffset + i);
+                }
+            } else {
+                int[] recordPartitions = new int[publisherRecords.size()];
+                List<List<Record<K,V>>> recordsByPartition = new ArrayList<>(topicQueue.numPartitions());
+                for (int i = 0; i < topicQueue.numPartitions(); i++) {
+                    recordsByPartition.add(new ArrayList<>());
+                }
+                for (int i = 0; i < recordPartitions.length; i++) {
+                    recordPartitions[i] = topicQueue.partitionFor(publisherRecords.get(i));
+                    recordsByPartition.get(recordPartitions[i]).add(publisherRecords.get(i));
+                }
+                try {
+                    for (int i = 0; i < topicQueue.numPartitions(); i++) {
+                        if (!recordsByPartition.get(i).isEmpty()) {
+                            reserveCapacity(topicQueue, i, recordsByPartition.get(i));
+                        }
+                    }
+                } catch (PublisherException pe) {
+                    releaseQuotas(topicQueue, publisherQuota, publisherRecords.size(), bytes);
+                    throw pe;
+                }
+
+                // Serialize the records of every partition before appending to any, so that a record which cannot be
+                // serialized or stored fails the whole batch.
+                LongSupplier[] appends = new LongSupplier[topicQueue.numPartitions()];
+                for (int i = 0; i < topicQueue.numPartitions(); i++) {
+                    if (!recordsByPartition.get(i).isEmpty()) {
+                        appends[i] = topicQueue.partition(i).prepare(recordsByPartition.get(i));
+                    }
+                }
+                long[] nextOffsets = appendPrepared(topicQueue, appends, recordsByPartition, startNanos);
+                for (int i = 0; i < metadata.length; i++) {
+                    metadata[i] = new RecordMetadata(topic, recordPartitions[i], nextOffsets[recordPartitions[i]]++);
+                }
+            }
+            topicQueue.wakeUpSubscribers();
+            topicQueue.getMetrics().published(publisherRecords.size(), bytes, System.nanoTime() - startNanos);
+            return Arrays.asList(metadata);
+        } catch (PublisherException pe) {
+            publishFailed(topicQueue);
+            throw pe;
+        } catch (Exception e) {
+
+            // Log actual cause and throw exception back.
+            System.out.println("Publishing failed with exception " + e.getMessage());
+            publishFailed(topicQueue);
+            throw new PublisherException("Publishing failed");
+        }
+    }
+
+    /**
+     * Appends the prepared batches of every partition. If appending to a partition fails, e.g. on an I/O error, the
+     * batches already appended stay: they are published as such, and the failure reports them.
+     *
+     * @param appends The prepared batch per partition, null for the partitions without records.
+     * @return The offset of the first record appended, per partition.
+     * @throws PublisherException If appending to a partition failed.
+     */
+    private long[] appendPrepared(Topic<K,V> topicQueue, LongSupplier[] appends,
+                                  List<List<Record<K,V>>> recordsByPartition, long startNanos)
+            throws PublisherException {
+
+        long[] baseOffsets = new long[appends.length];
+        List<Integer> appended = new ArrayList<>();
+        for (int i = 0; i < appends.length; i++) {
+            if (appends[i] == null) {
+                continue;
+            }
+            try {
+                baseOffsets[i] = appends[i].getAsLong();
+            } catch (RuntimeException e) {
+                if (appended.isEmpty()) {
+                    throw e;
+                }
+                int records = 0;
+                long bytes = 0;
+                for (int partition : appended) {
+                    records += recordsByPartition.get(partition).size();
+                    bytes += estimatedSize(recordsByPartition.get(partition));
+                }
+                topicQueue.wakeUpSubscribers();
+                topicQueue.getMetrics().published(records, bytes, System.nanoTime() - startNanos);
+
+                // Log actual cause and throw exception back.
+                System.out.println("Publishing failed with exception " + e.getMessage());
+                throw new PublisherException("Publishing failed after the records of partitions " + appended
+                        + " were published");
+            }
+            topicQueue.indexKeys(i, recordsByPartition.get(i), baseOffsets[i]);
+            appended.add(i);
+        }
+        return baseOffsets;
+    }
+
+    /**
+     * Called by the {@link PubSubServer}, whose clients route the records to their partition themselves.
+     * The records are appended to the partition as a single batch. Never blocks on a full partition, a
+     * {@link BackpressurePolicy#BLOCK} topic fails the publish instead, and publishes beyond the quota of the topic
+     * are rejected instead of delayed.
+     *
+     * @param topic
+     * @param partition
+     * @param publisherRecords The records to append, should not be empty.
+     * @return Where the last record was stored.
+     * @throws PublisherException
+     */
+    RecordMetadata sendToPartition(String topic, int partition, List<Record<K,V>> publisherRecords)
+            throws PublisherException {
+
+        long startNanos = System.nanoTime();
+        Topic<K,V> topicQueue = topicToQueueMap.get(topic);
+        if (topicQueue == null) {
+            throw new PublisherException("Topic not found");
+        }
+        if (partition < 0 || partition >= topicQueue.numPartitions()) {
+            publishFailed(topicQueue);
+            throw new PublisherException("Partition not found");
+        }
+        try {
+            checkNotFollowing(topicQueue);
+            long bytes = estimatedSize(publisherRecords);
+            throttle(topicQueue, null, publisherRecords.size(), bytes, false);
+            try {
+                reserveCapacity(topicQueue, partition, publisherRecords.size(), bytes, false);
+            } catch (PublisherException pe) {
+                releaseQuotas(topicQueue, null, publisherRecords.size(), bytes);
+                throw pe;
+            }
+            long baseOffset = topicQueue.partition(partition).appendAll(publisherRecords);
+            topicQueue.indexKeys(partition, publisherRecords, baseOffset);
+            topicQueue.wakeUpSubscribers();
+            topicQueue.getMetrics().published(publisherRecords.size(), bytes, System.nanoTime() - startNanos);
+            return new RecordMetadata(topic, partition, baseOffset + publisherRecords.size() - 1);
+        } catch (PublisherException pe) {
+            publishFailed(topicQueue);
+            throw pe;
+        } catch (Exception e) {
+
+            // Log actual cause and throw exception back.
+            System.out.println("Publishing failed with exception " + e.getMessage());
+            publishFailed(topicQueue);
+            throw new PublisherException("Publishing failed");
+        }
+    }
+
+    /**
+     * Takes the records out of the quota of the publisher and of the quota of the topic, and delays the publisher
+     * until both quotas caught up with them.
+     *
+     * @param publisherQuota The quota of the publisher, null if it has none.
+     * @param mayDelay Whether the publisher may be delayed, if not publishes beyond a quota are rejected.
+     * @return How long the publisher was delayed for, in nanoseconds.
+     * @throws PublisherException If a quota rejected the records, or the publisher got interrupted while delayed.
+     */
+    private long throttle(Topic<K,V> topicQueue, QuotaState publisherQuota, int records, long bytes,
+                          boolean mayDelay) throws PublisherException {
+
+        long delayNanos = 0;
+        if (publisherQuota != null) {
+            delayNanos = publisherQuota.acquire(records, bytes, mayDelay);
+        }
+        if (delayNanos >= 0 && topicQueue.getQuota() != null) {
+            long topicDelayNanos = topicQueue.getQuota().acquire(records, bytes, mayDelay);
+            if (topicDelayNanos < 0 && publisherQuota != null) {
+
+                // The records are not published, so they do not count towards the quota of the publisher either.
+                publisherQuota.release(records, bytes);
+            }
+            delayNanos = (topicDelayNanos < 0) ? -1 : Math.max(delayNanos, topicDelayNanos);
+        }
+        if (delayNanos < 0) {
+            topicQueue.getMetrics().quotaRejected();
+            throw new PublisherException("Quota exceeded");
+        }
+        if (delayNanos == 0) {
+            return 0;
+        }
+        topicQueue.getMetrics().throttled(delayNanos);
+        long deadlineNanos = System.nanoTime() + delayNanos;
+        for (long remainingNanos = delayNanos; remainingNanos > 0; remainingNanos = deadlineNanos - System.nanoTime()) {
+            LockSupport.parkNanos(this, remainingNanos);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new PublisherException("Publishing interrupted");
+            }
+        }
+        return delayNanos;
+    }
+
+    /**
+     * Gives back the records taken by {@link PubSubManager#throttle}, for a publish which failed after it.
+     *
+     * @param publisherQuota The quota of the publisher, null if it has none.
+     */
+    private static void releaseQuotas(Topic<?,?> topicQueue, QuotaState publisherQuota, int records, long bytes) {
+
+        if (publisherQuota != null) {
+            publisherQuota.release(records, bytes);
+        }
+        if (topicQueue.getQuota() != null) {
+            topicQueue.getQuota().release(records, bytes);
+        }
+    }
+
+    private static void publishFailed(Topic<?,?> topicQueue) {
+
+        if (topicQueue != null) {
+            topicQueue.getMetrics().publishFailed();
+        }
+    }
+
+    private static long estimatedSize(List<? extends Record<?,?>> records) {
+        return estimatedSize(records, 0);
+    }
+
+    private static long estimatedSize(List<? extends Record<?,?>> records, int fromIndex) {
+
+        long bytes = 0;
+        for (int i = fromIndex; i < records.size(); i++) {
+            bytes += records.get(i).estimatedSize();
+        }
+        return bytes;
+    }
+
+    private void reserveCapacity(Topic<K,V> topicQueue, int partition, List<Record<K,V>> records)
+            throws PublisherException {
+
+        if (topicQueue.getConfig().isBounded()) {
+            long bytes = (topicQueue.getConfig().getCapacityMaxBytes() >= 0) ? estimatedSize(records) : 0;
+            reserveCapacity(topicQueue, partition, records.size(), bytes, true);
+        }
+    }
+
+    /**
+     * Applies the {@link BackpressurePolicy} of a bounded topic before records are appended to the partition:
+     * returns once the partition has room for the records, or made room by dropping the oldest records of the
+     * subscribers too far behind.
+     *
+     * @param block Whether the publisher may block, a {@link BackpressurePolicy#BLOCK} publisher which may not fails.
+     * @throws PublisherException If the partition stays full.
+     */
+    private void reserveCapacity(Topic<K,V> topicQueue, int partition, int records, long bytes, boolean block)
+            throws PublisherException {
+
+        if (!topicQueue.getConfig().isBounded() || hasCapacity(topicQueue, partition, records, bytes, false)) {
+            return;
+        }
+        BackpressurePolicy policy = topicQueue.getConfig().getBackpressurePolicy();
+        if (policy == BackpressurePolicy.DROP_OLDEST) {
+            dropOldest(topicQueue, partition, records, bytes);
+            return;
+        }
+        if (policy == BackpressurePolicy.FAIL || !block) {
+            throw new PublisherException("Topic is full");
+        }
+        long deadlineNanos = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(topicQueue.getConfig().getBackpressureTimeoutMs());
+        while (!hasCapacity(topicQueue, partition, records, bytes, true)) {
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            if (remainingNanos <= 0) {
+                throw new PublisherException("Topic is full");
+            }
+            try {
+                topicQueue.awaitCapacity(() -> hasCapacity(topicQueue, partition, records, bytes, true),
+                        remainingNanos);
+            } catch (InterruptedException e) {
+
+                // Leave the interrupt to the caller.
+                Thread.currentThread().interrupt();
+                throw new PublisherException("Publishing interrupted");
+            }
+        }
+    }
+
+    /**
+     * @param refresh Whether to look up the offset of the slowest subscriber again, otherwise it is only looked up
+     *                if the last one known leaves no room.
+     * @return Whether the records fit into the capacity of the partition: nobody reads the partition, the slowest
+     *         subscriber read everything, or its records left to read and the new ones stay within the capacity.
+     */
+    private boolean hasCapacity(Topic<K,V> topicQueue, int partition, int records, long bytes, boolean refresh) {
+
+        long consumedOffset = refresh ? refreshConsumedOffset(topicQueue, partition)
+                : topicQueue.consumedOffset(partition);
+        if (consumedOffset < 0) {
+            return true;
+        }
+        PartitionLog<K,V> partitionQueue = topicQueue.partition(partition);
+        long unconsumed = partitionQueue.tail() - Math.max(consumedOffset, partitionQueue.startOffset());
+        if (unconsumed <= 0) {
+            return true;
+        }
+        TopicConfig config = topicQueue.getConfig();
+        boolean fits = (config.getCapacityMaxRecords() < 0 || unconsumed + records <= config.getCapacityMaxRecords())
+                && (config.getCapacityMaxBytes() < 0 || unconsumed * topicQueue.getMetrics().averageRecordBytes()
+                        + bytes <= config.getCapacityMaxBytes());
+        return fits || (!refresh && hasCapacity(topicQueue, partition, records, bytes, true));
+    }
+
+    /**
+     * @return The offset of the slowest subscriber of the partition of a bounded topic, -1 if nobody reads it.
+     */
+    private long refreshConsumedOffset(Topic<K,V> topicQueue, int partition) {
+
+        long consumedOffset = slowestOffset(topicQueue.getName(), partition);
+        topicQueue.setConsumedOffset(partition, consumedOffset);
+        return consumedOffset;
+    }
+
+    /**
+     * Looks up the offset of the slowest subscriber of every partition of the bounded topic again, and wakes up the
+     * publishers waiting for room.
+     */
+    private void refreshConsumedOffsets(Topic<K,V> topicQueue) {
+
+        if (topicQueue == null || !topicQueue.getConfig().isBounded()) {
+            return;
+        }
+        for (int partition = 0; partition < topicQueue.numPartitions(); partition++) {
+            refreshConsumedOffset(topicQueue, partition);
+        }
+        topicQueue.wakeUpPublishers();
+    }
+
+    /**
+     * Moves the subscribers and consumer groups of the partition which have too many records left to read past the
+     * oldest of them, so that the new records fit into the capacity.
+     */
+    private void dropOldest(Topic<K,V> topicQueue, int partition, int records, long bytes) {
+
+        TopicConfig config = topicQueue.getConfig();
+        long allowed = Long.MAX_VALUE;
+        if (config.getCapacityMaxRecords() >= 0) {
+            allowed = config.getCapacityMaxRecords() - records;
+        }
+        long averageRecordBytes = topicQueue.getMetrics().averageRecordBytes();
+        if (config.getCapacityMaxBytes() >= 0 && averageRecordBytes > 0) {
+            allowed = Math.min(allowed, (config.getCapacityMaxBytes() - bytes) / averageRecordBytes);
+        }
+        long tail = topicQueue.partition(partition).tail();
+        long dropTo = tail - Math.max(0, Math.min(allowed, tail));
+        long dropped = 0;
+        for (SubscriberState subscriberState : subscriberRegistry.registered()) {
+            if (!subscriberState.getTopic().equals(topicQueue.getName())) {
+                continue;
+            }
+            try {
+
+                // A subscriber which has not polled yet would start from the oldest records.
+                subscriberState.resolve(topicQueue);
+            } catch (SubscriberException e) {
+
+                // Registered on partitions the topic does not have, its polls fail.
+                continue;
+            }
+            if (subscriberState.getGroup() != null) {
+                continue;
+            }
+            for (int subscribedPartition : subscriberState.getPartitions()) {
+                if (subscribedPartition == partition) {
+                    dropped = Math.max(dropped, advanceOffset(subscriberState.getOffsets(), partition, dropTo));
+                }
+            }
+        }
+        for (ConsumerGroup group : topicToGroupMap.getOrDefault(topicQueue.getName(), Collections.emptyMap())
+                .values()) {
+            if (!group.isEmpty() && group.getCommittedOffsets() != null) {
+                dropped = Math.max(dropped, advanceOffset(group.getCommittedOffsets(), partition, dropTo));
+            }
+        }
+        topicQueue.getMetrics().dropped(dropped);
+        refreshConsumedOffset(topicQueue, partition);
+    }
+
+    /**
+     * @return The number of records the offset moved forward by, 0 if it already was at or past the new offset.
+     */
+    private static long advanceOffset(AtomicLongArray offsets, int partition, long newOffset) {
+
+        long currentOffset;
+        do {
+            currentOffset = offsets.get(partition);
+            if (currentOffset >= newOffset) {
+                return 0;
+            }
+        } while (!offsets.compareAndSet(partition, currentOffset, newOffset));
+        return newOffset - currentOffset;
+    }
+
+    /**
+     * Only the leader appends to a follower, see {@link PubSubManager#appendReplicated}.
+     */
+    private static void checkNotFollowing(Topic<?,?> topicQueue) throws PublisherException {
+
+        if (topicQueue != null && topicQueue.isFollowing()) {
+            throw new PublisherException("Topic is following a leader");
+        }
+    }
+
+    /**
+     * Called by the {@link Publisher}
+     * Blocks until the records are on disk. The publishers flushing the same partition at the same time share a
+     * single flush.
+     *
+     * @param topic
+     * @param metadata Where the records were stored.
+     * @throws PublisherException
+     */
+    void flush(String topic, Collection<RecordMetadata> metadata) throws PublisherException {
+
+        try {
+            Topic<K,V> topicQueue = topicToQueueMap.get(topic);
+            long[] endOffsets = new long[topicQueue.numPartitions()];
+            for (RecordMetadata recordMetadata : metadata) {
+                int partition = recordMetadata.getPartition();
+                endOffsets[partition] = Math.max(endOffsets[partition], recordMetadata.getOffset() + 1);
+            }
+            for (int partition = 0; partition < endOffsets.length; partition++) {
+                if (endOffsets[partition] > 0) {
+                    topicQueue.partition(partition).flush(endOffsets[partition]);
+                }
+            }
+        } catch (Exception e) {
+
+            // Log actual cause and throw exception back.
+            System.out.println("Flushing failed with exception " + e.getMessage());
+            throw new PublisherException("Flushing failed");
+        }
+    }
+
     /**
      * Called by the {@link Subscriber}.
+     * Looks the key up in the key index of the partition it is routed to. The Bloom filter of the index answers most
+     * lookups of keys which were never published, otherwise the record at the indexed offset is read and checked
+     * to still be there: retention or compaction might have removed it since.
      *
-     * @param subscriberHash
      * @param topic
+     * @param key
+     * @return The latest record published with the key, null if there is none.
+     * @throws SubscriberException If the topic does not exist.
      */
-    synchronized void registerSubscriber(int subscriberHash, String topic) {
+    Record<K,V> lookupLatest(String topic, K key) throws SubscriberException {
 
-        List<Integer> consumerList;
-        if (topicToSubscriberMap.containsKey(topic)) {
-            consumerList = topicToSubscriberMap.get(topic);
-        } else {
-            consumerList = Collections.synchronizedList(new ArrayList<>());
-            topicToSubscriberMap.put(topic, consumerList);
+        Topic<K,V> topicQueue = getTopic(topic);
+        if (topicQueue.getConfig().getKeyIndexExpectedKeys() == 0) {
+            throw new IllegalArgumentException("Topic has no key index");
+        }
+        int partition = topicQueue.partitionForKey(key);
+        PartitionLog<K,V> partitionQueue = topicQueue.partition(partition);
+        long offset = topicQueue.keyIndex(partition).latestOffset(key);
+        if (offset < 0 || offset < partitionQueue.startOffset() || offset >= topicQueue.visibleEnd(partition)) {
+            return null;
+        }
+        List<Record<K,V>> records = new ArrayList<>(1);
+        try {
+
+            // A record compacted away is skipped by the read, which then ends past the offset.
+            if (partitionQueue.read(offset, 1, records) != offset + 1 || records.isEmpty()) {
+                return null;
+            }
+        } catch (OffsetOutOfRangeException e) {
+
+            // Retention removed the record while we were reading it.
+            return null;
         }
-        consumerList.add(subscriberHash);
-        subscriberToOffsetMap.put(subscriberHash, new Integer(0));
+        Record<K,V> record = records.get(0);
+        return KeyIndex.indexKey(key).equals(KeyIndex.indexKey(record.getKey())) ? record : null;
     }
 
     /**
-     * Sanity checks for the {@link Subscriber}
+     * Called by the {@link PubSubServer} for the fetches of a {@link TopicFollower}.
+     * The offset the follower fetches from acknowledges every record below it, which may move the high-water mark.
+     * The records are read from there up to the tail of the partition: followers are not bound by the high-water mark.
+     * A follower fetching from below the start of the partition gets no records, and starts over from the start
+     * offset if it has none, see {@link PubSubManager#appendReplicated}.
+     *
+     * @param topic
+     * @param followerId The follower, the same one on every fetch.
+     * @param partition
+     * @param fetchOffset The offset to read from, the follower has every record below.
+     * @param maxRecords
+     * @param returnedRecords The list to add the records to.
+     * @return The high-water mark of the partition, once this fetch is accounted for.
+     * @throws SubscriberException If the topic is not replicated, or the offset is not in the partition.
+     */
+    long replicaFetch(String topic, String followerId, int partition, long fetchOffset, int maxRecords,
+                      List<Record<K,V>> returnedRecords) throws SubscriberException {
+
+        Topic<K,V> topicQueue = getTopic(topic);
+        Replication replication = topicQueue.getReplication();
+        if (replication == null || !replication.isLeader()) {
+            throw new SubscriberException("Topic is not replicated");
+        }
+        if (partition < 0 || partition >= topicQueue.numPartitions()) {
+            throw new SubscriberException("Partition not found");
+        }
+        PartitionLog<K,V> partitionQueue = topicQueue.partition(partition);
+        long tail = partitionQueue.tail();
+        if (fetchOffset > tail) {
+
+            // The follower has records the leader does not have.
+            throw new SubscriberException("Offset out of range");
+        }
+        if (fetchOffset < partitionQueue.startOffset()) {
+
+            // Not an acknowledgement: the follower is missing the records below the start.
+            return replication.highWatermark(partition);
+        }
+        if (replication.fetched(followerId, partition, fetchOffset, tail, System.nanoTime())) {
+            topicQueue.wakeUpSubscribers();
+        }
+        try {
+            if (fetchOffset < tail) {
+                partitionQueue.read(fetchOffset, maxRecords, returnedRecords);
+            }
+        } catch (OffsetOutOfRangeException e) {
+
+            // Retention removed the records while we were reading them.
+            throw new SubscriberException("Offset out of range");
+        }
+        return replication.highWatermark(partition);
+    }
+
+    /**
+     * Called by the {@link PubSubServer} for the fetches of a {@link TopicFollower}.
+     *
+     * @param topic
+     * @param partition
+     * @return The first offset still present in the partition.
+     * @throws SubscriberException If the topic does not exist.
+     */
+    long startOffset(String topic, int partition) throws SubscriberException {
+
+        return getTopic(topic).partition(partition).startOffset();
+    }
+
+    /**
+     * Called by the {@link PubSubServer} to park a fetch of a {@link TopicFollower}.
+     * Runs the callback once a partition has records past its fetch offset or a newer high-water mark, or right away
+     * if one already has.
+     *
+     * @param topic
+     * @param partitions The partitions fetched.
+     * @param fetchOffsets The offset fetched from, per partition.
+     * @param highWatermarks The high-water mark the follower knows of, per partition.
+     * @param callback
+     * @throws SubscriberException If the topic does not exist.
+     */
+    void awaitReplicaFetchAsync(String topic, int[] partitions, long[] fetchOffsets, long[] highWatermarks,
+                                Runnable callback) throws SubscriberException {
+
+        Topic<K,V> topicQueue = getTopic(topic);
+        topicQueue.awaitRecordsAsync(() -> {
+            for (int i = 0; i < partitions.length; i++) {
+                if (topicQueue.partition(partitions[i]).tail() > fetchOffsets[i]
+                        || topicQueue.getReplication().highWatermark(partitions[i]) > highWatermarks[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }, callback);
+    }
+
+    /**
+     * Called by the {@link TopicFollower}.
+     * Creates the topic if it does not exist yet and makes it a follower: the publishers cannot publish into it
+     * anymore, and its subscribers only see the records below the high-water mark sent by the leader.
+     *
+     * @param topic
+     * @param topicConfig The configuration to create the topic with.
+     */
+    void followTopic(String topic, TopicConfig topicConfig) {
+
+        initTopic(topic, topicConfig);
+        topicToQueueMap.get(topic).follow();
+    }
+
+    /**
+     * Called by the {@link TopicFollower} with the records fetched from the leader.
+     *
+     * @param topic
+     * @param partition
+     * @param leaderRecords The records fetched, in order, may be empty.
+     * @param leaderStartOffset The first offset still present in the partition on the leader. A partition without
+     *                          records which is behind it starts over from there.
+     * @param highWatermark The high-water mark of the partition on the leader.
+     * @return The offset to fetch from next.
+     * @throws IllegalStateException If the partition has records, and the leader no longer has the ones following
+     *                               them.
+     */
+    long appendReplicated(String topic, int partition, List<Record<K,V>> leaderRecords, long leaderStartOffset,
+                          long highWatermark) {
+
+        Topic<K,V> topicQueue = topicToQueueMap.get(topic);
+        PartitionLog<K,V> partitionQueue = topicQueue.partition(partition);
+        if (leaderRecords.isEmpty() && partitionQueue.tail() < leaderStartOffset) {
+            try {
+                partitionQueue.resetTo(leaderStartOffset);
+            } catch (IllegalStateException e) {
+                throw new IllegalStateException("Partition " + partition + " fell behind the retention of the leader");
+            }
+        }
+        if (!leaderRecords.isEmpty()) {
+            long startNanos = System.nanoTime();
+            long baseOffset = partitionQueue.appendReplicated(leaderRecords);
+            topicQueue.indexKeys(partition, leaderRecords, baseOffset);
+            topicQueue.getMetrics().published(leaderRecords.size(), estimatedSize(leaderRecords),
+                    System.nanoTime() - startNanos);
+        }
+        long tail = partitionQueue.tail();
+        boolean moved = topicQueue.getReplication().moveHighWatermark(partition, Math.min(highWatermark, tail));
+        if (moved || !leaderRecords.isEmpty()) {
+            topicQueue.wakeUpSubscribers();
+        }
+        return tail;
+    }
+
+    /**
+     * Called by the {@link TopicFollower} on failover.
+     * Turns the follower into a leader, which the publishers publish into again.
      *
      * @param topic
-     * @param subscriberHash
-     * @throws SubscriberException
      */
-    private void checkTopicAndSubscriberHash(String topic, int subscriberHash) throws SubscriberException {
+    void promote(String topic) {
 
-        if (!topicToQueueMap.containsKey(topic)) {
+        Topic<K,V> topicQueue = topicToQueueMap.get(topic);
+        if (topicQueue != null && topicQueue.getReplication() != null) {
+            topicQueue.getReplication().promote();
+            topicQueue.wakeUpSubscribers();
+        }
+    }
+
+    /**
+     * Called by the {@link Subscriber}.
+     * A subscriber registering with a group joins it, which re-assigns the topic's partitions across the group.
+     *
+     * @param topic
+     * @param partitions The partitions to read from, null for all the partitions of the topic. Ignored for group members.
+     * @param groupId The consumer group to join, null to read the topic on its own.
+     * @param filter The records the subscriber receives, null for all of them.
+     * @return The handle of the subscriber, to pass to every other call.
+     */
+    SubscriberState registerSubscriber(String topic, int[] partitions, String groupId, RecordFilter<K> filter) {
+
+        ConsumerGroup group = null;
+        if (groupId != null) {
+            group = topicToGroupMap.computeIfAbsent(topic, t -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(groupId, ConsumerGroup::new);
+        }
+        SubscriberState subscriberState = subscriberRegistry.register(topic, partitions, group, filter);
+        if (group != null) {
+            group.join(subscriberState.getId());
+            wakeUpSubscribers(topic);
+        }
+        MetricsMBean mBean = subscriberMBean(subscriberState);
+        mBean.register("Subscriber", "topic", topic, "id", String.valueOf(subscriberState.getId()));
+        subscriberToMBeanMap.put(subscriberState, mBean);
+        refreshConsumedOffsets(topicToQueueMap.get(topic));
+        return subscriberState;
+    }
+
+    /**
+     * Called by the {@link Subscriber}.
+     * A group member leaving hands its partitions over to the remaining members of the group.
+     *
+     * @param subscriberState The handle of the subscriber, ignored if not registered anymore.
+     */
+    void unregisterSubscriber(SubscriberState subscriberState) {
+
+        if (!subscriberRegistry.unregister(subscriberState)) {
+            return;
+        }
+        MetricsMBean mBean = subscriberToMBeanMap.remove(subscriberState);
+        if (mBean != null) {
+            mBean.unregister();
+        }
+        if (subscriberState.getGroup() != null) {
+
+            // The group and its committed offsets are kept even if empty, so that a member joining later resumes.
+            subscriberState.getGroup().leave(subscriberState.getId());
+        }
+
+        // Let a long poll of the subscriber fail right away, and the group members look at their new partitions.
+        wakeUpSubscribers(subscriberState.getTopic());
+        refreshConsumedOffsets(topicToQueueMap.get(subscriberState.getTopic()));
+    }
+
+    private void wakeUpSubscribers(String topic) {
+
+        Topic<K,V> topicQueue = topicToQueueMap.get(topic);
+        if (topicQueue != null) {
+            topicQueue.wakeUpSubscribers();
+        }
+    }
+
+    private Topic<K,V> getTopic(String topic) throws SubscriberException {
+
+        Topic<K,V> topicQueue = topicToQueueMap.get(topic);
+        if (topicQueue == null) {
 
             // This means that there is no Producer producing data on this topic, yet.
             // We want to be strict to allow subscribers to registers only on topics which have
             // data from the Producers.
             throw new SubscriberException("Topic not found");
         }
-        long found = (topicToSubscriberMap.get(topic) != null) ?
-                topicToSubscriberMap.get(topic)
-                        .stream()
-                        .filter(hash -> (hash == subscriberHash))
-                        .count() : 0;
+        return topicQueue;
+    }
+
+    /**
+     * Sanity checks for the {@link Subscriber}, without allocating.
+     *
+     * @param topic
+     * @param subscriberState The handle of the subscriber, null if it never registered.
+     * @return The state of the subscriber, resolved against the topic.
+     * @throws SubscriberException
+     */
+    private SubscriberState checkTopicAndSubscriber(String topic, SubscriberState subscriberState)
+            throws SubscriberException {
 
-        if (found == 0) {
+        Topic<K,V> topicQueue = getTopic(topic);
+        if (subscriberState == null || !subscriberRegistry.isRegistered(subscriberState)
+                || !subscriberState.getTopic().equals(topic)) {
             throw new SubscriberException("Subscriber not registered");
         }
+        subscriberState.resolve(topicQueue);
+        if (subscriberState.getFilter() != null && subscriberState.getFilter().filtersValue()
+                && topicQueue.getConfig().getStorageDirectory() == null && !topicQueue.getConfig().isOffHeapValues()) {
+            throw new SubscriberException("Value filters need a topic stored in files or with off-heap values");
+        }
+        return subscriberState;
     }
 
     /**
      * Called by the {@link Subscriber} to retrieve upto maxRecords number of {@link Record}s.
+     * The subscriber's partitions are read in turn, starting from a different partition on every poll.
+     * For group members the offsets read from and moved are the group's committed offsets.
+     *
+     * If less than minRecords records were read, the subscriber parks until the publishers append more records to
+     * the topic or the timeout expires, and then reads again. A timeout of 0 never parks.
      *
      * @param topic
-     * @param subscriberHash
+     * @param subscriberState The handle of the subscriber.
+     * @param minRecords The number of records to wait for.
      * @param maxRecords
+     * @param timeoutNanos The maximum time to wait for minRecords records.
      * @return The List of records containing upto maxRecord number of entries.
      * @throws SubscriberException
      */
-    synchronized List<Record<K,V>> poll(String topic, int subscriberHash, int maxRecords) throws SubscriberException {
+    List<Record<K,V>> poll(String topic, SubscriberState subscriberState, int minRecords, int maxRecords, long timeoutNanos)
+            throws SubscriberException {
 
-        checkTopicAndSubscriberHash(topic, subscriberHash);
-        Integer subscriberOffset = subscriberToOffsetMap.getOrDefault(subscriberHash, -1);
+        List<Record<K,V>> returnedRecords = new ArrayList<>();
+        poll(topic, subscriberState, minRecords, maxRecords, timeoutNanos, returnedRecords);
+        return returnedRecords.isEmpty() ? Collections.emptyList() : returnedRecords;
+    }
 
-        if (subscriberOffset == -1) {
-            throw new SubscriberException("Subscriber not registered");
-        }
+    /**
+     * Same as {@link PubSubManager#poll(String, SubscriberState, int, int, long)}, adding the records to the given list instead.
+     * Allocates nothing if the list has room for the records and the subscriber does not park.
+     *
+     * @param returnedRecords The list to add the records to, should be empty.
+     */
+    void poll(String topic, SubscriberState subscriber, int minRecords, int maxRecords, long timeoutNanos,
+              List<Record<K,V>> returnedRecords) throws SubscriberException {
+
+        long startNanos = System.nanoTime();
+        while (true) {
+            SubscriberState subscriberState = checkTopicAndSubscriber(topic, subscriber);
+            Topic<K,V> topicQueue = topicToQueueMap.get(topic);
+            long readStartNanos = System.nanoTime();
+            int initialSize = returnedRecords.size();
+            readPartitions(topicQueue, subscriberState, maxRecords, returnedRecords);
+            topicQueue.getMetrics().fetched(returnedRecords.size() - initialSize,
+                    estimatedSize(returnedRecords, initialSize),
+                    System.nanoTime() - readStartNanos);
 
-        if (!topicToQueueMap.containsKey(topic) || (topicToQueueMap.get(topic).size() == subscriberOffset)) {
+            long remainingNanos = timeoutNanos - (System.nanoTime() - startNanos);
+            if (returnedRecords.size() >= minRecords || remainingNanos <= 0) {
+                break;
+            }
+            try {
+                topicQueue.awaitRecords(() -> hasRecords(topicQueue, subscriberState), remainingNanos);
+            } catch (InterruptedException e) {
 
-            // No producer has produced data into this topic OR the consumer is already at the end offset of the topic.
-            return Collections.emptyList();
+                // Hand back what we have, and leave the interrupt to the caller.
+                Thread.currentThread().interrupt();
+                break;
+            }
         }
+    }
 
-        List<Record<K, V>> topicQueue = topicToQueueMap.get(topic);
-        List<Record<K,V>> returnedRecords = new ArrayList<>();
-        int endOffset;
+    /**
+     * Called by the push subscriptions of the {@link Subscriber}.
+     * Runs the callback once the subscriber has records to read, or right away if it already has some.
+     *
+     * @param topic
+     * @param subscriberState The handle of the subscriber.
+     * @param callback
+     * @throws SubscriberException
+     */
+    void awaitRecordsAsync(String topic, SubscriberState subscriberState, Runnable callback)
+            throws SubscriberException {
+
+        checkTopicAndSubscriber(topic, subscriberState);
+        Topic<K,V> topicQueue = topicToQueueMap.get(topic);
+        topicQueue.awaitRecordsAsync(() -> hasRecords(topicQueue, subscriberState), callback);
+    }
+
+    private void readPartitions(Topic<K,V> topicQueue, SubscriberState subscriberState, int maxRecords,
+                                List<Record<K,V>> returnedRecords) throws SubscriberException {
+
+        int[] partitions = subscriberState.getPartitions();
+        int startIndex = subscriberState.nextStartIndex(partitions.length);
+        @SuppressWarnings("unchecked")
+        RecordFilter<K> filter = (RecordFilter<K>) subscriberState.getFilter();
         try {
-            if ((subscriberOffset + maxRecords) <= topicQueue.size()) {
-                // We have enough items in the queue to read as requested
-                endOffset = subscriberOffset + maxRecords;
-            } else {
-                // We don't have as many items as requested - Read and give back what we have
-                endOffset = topicQueue.size();
-            }
-            for (int i = subscriberOffset; i < endOffset; i++) {
-                returnedRecords.add(topicQueue.get(i));
+            for (int i = 0; i < partitions.length && returnedRecords.size() < maxRecords; i++) {
+                int partition = partitions[(startIndex + i) % partitions.length];
+                readPartition(topicQueue, subscriberState.getOffsets(), partition, maxRecords - returnedRecords.size(),
+                        filter, returnedRecords);
             }
-            subscriberToOffsetMap.put(subscriberHash, endOffset);
+        } catch (SubscriberException se) {
+            topicQueue.getMetrics().pollFailed();
+            throw se;
         } catch (Exception e) {
 
             // Log error and throw exception back.
             System.out.println("Subscriber Exception: " + e.getMessage());
+            topicQueue.getMetrics().pollFailed();
             throw new SubscriberException("Polling failed");
         }
-        return returnedRecords;
     }
 
     /**
-     * Rewinds the subscriber's offset by rewindCount
-     * @param subscriberHash The unique ID of the subscriber
+     * @return Whether any partition of the subscriber has records past the subscriber's offset.
+     */
+    private boolean hasRecords(Topic<K,V> topicQueue, SubscriberState subscriberState) {
+
+        if (!subscriberRegistry.isRegistered(subscriberState)) {
+
+            // Unregistered while polling, the next read tells the subscriber.
+            return true;
+        }
+        int[] partitions = subscriberState.getPartitions();
+        AtomicLongArray offsets = subscriberState.getOffsets();
+        for (int partition : partitions) {
+            if (topicQueue.visibleEnd(partition) > offsets.get(partition)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the records of the partition from the offset, up to the end of the records visible to the subscribers.
+     * The records not matching the filter are skipped, the offset moves past them.
+     */
+    private void readPartition(Topic<K,V> topicQueue, AtomicLongArray offsets, int partition, int maxRecords,
+                               RecordFilter<K> filter, List<Record<K,V>> returnedRecords) throws SubscriberException {
+
+        PartitionLog<K,V> partitionQueue = topicQueue.partition(partition);
+        int initialSize = returnedRecords.size();
+        while (true) {
+            long startOffset = offsets.get(partition);
+            long visibleEnd = topicQueue.visibleEnd(partition);
+            if (visibleEnd <= startOffset) {
+
+                // The consumer is already at the end offset of the partition.
+                return;
+            }
+            if (startOffset < partitionQueue.startOffset()) {
+                resetOffset(partitionQueue, topicQueue.getConfig().getOffsetResetPolicy(), offsets, partition,
+                        startOffset, visibleEnd);
+                continue;
+            }
+
+            long endOffset;
+            try {
+                endOffset = partitionQueue.read(startOffset, visibleEnd, maxRecords, filter, returnedRecords);
+            } catch (OffsetOutOfRangeException e) {
+
+                // Retention removed the records while we were reading them, the next round resets the offset.
+                returnedRecords.subList(initialSize, returnedRecords.size()).clear();
+                continue;
+            }
+
+            // Only move the offset if nobody else (e.g. a rewind) moved it while we were reading.
+            if (offsets.compareAndSet(partition, startOffset, endOffset)) {
+                topicQueue.wakeUpPublishers();
+                return;
+            }
+            returnedRecords.subList(initialSize, returnedRecords.size()).clear();
+        }
+    }
+
+    /**
+     * Moves an offset which fell out of the retention of the partition as per the {@link OffsetResetPolicy}.
+     */
+    private void resetOffset(PartitionLog<K,V> partitionQueue, OffsetResetPolicy offsetResetPolicy, AtomicLongArray offsets,
+                             int partition, long currentOffset, long visibleEnd) throws SubscriberException {
+
+        switch (offsetResetPolicy) {
+            case EARLIEST:
+                offsets.compareAndSet(partition, currentOffset, partitionQueue.startOffset());
+                break;
+            case LATEST:
+                offsets.compareAndSet(partition, currentOffset, visibleEnd);
+                break;
+            default:
+                throw new SubscriberException("Offset out of range");
+        }
+    }
+
+    /**
+     * Rewinds the subscriber's offset by rewindCount on the given partitions.
+     * Offsets which are less than rewindCount records into their partition are left as is.
+     * For group members this rewinds the group's committed offsets of the partitions assigned to the member.
+     *
+     * @param subscriberState The handle of the subscriber, null if it never registered.
+     * @param partition The partition to rewind, or -1 to rewind every partition of the subscriber.
      * @param rewindCount
      */
-    synchronized void rewind(int subscriberHash, int rewindCount) {
+    void rewind(SubscriberState subscriberState, int partition, int rewindCount) {
+
+        if (subscriberState == null || !subscriberRegistry.isRegistered(subscriberState)) {
+            return;
+        }
+        AtomicLongArray offsets = subscriberState.getOffsets();
+        if (offsets == null || subscriberState.getPartitions() == null) {
+
+            // Nothing was read yet, hence there is nothing to rewind.
+            return;
+        }
+        checkPartition(subscriberState, partition, offsets.length());
+        if (partition >= 0) {
+            rewindPartition(offsets, partition, rewindCount);
+            return;
+        }
+        for (int subscribedPartition : subscriberState.getPartitions()) {
+            rewindPartition(offsets, subscribedPartition, rewindCount);
+        }
+    }
+
+    /**
+     * Moves the subscriber's offset on the given partitions to the offset computed from each partition log.
+     * For group members this moves the group's committed offsets of the partitions assigned to the member.
+     *
+     * @param topic
+     * @param subscriberState The handle of the subscriber.
+     * @param partition The partition to move, or -1 to move every partition of the subscriber.
+     * @param newOffset Computes the new offset from the log of the partition.
+     * @throws SubscriberException
+     */
+    void seek(String topic, SubscriberState subscriberState, int partition,
+              ToLongFunction<PartitionLog<K,V>> newOffset) throws SubscriberException {
+
+        checkTopicAndSubscriber(topic, subscriberState);
+        Topic<K,V> topicQueue = topicToQueueMap.get(topic);
+        checkPartition(subscriberState, partition, topicQueue.numPartitions());
+        AtomicLongArray offsets = subscriberState.getOffsets();
+        if (partition >= 0) {
+            offsets.set(partition, newOffset.applyAsLong(topicQueue.partition(partition)));
+        } else {
+            for (int subscribedPartition : subscriberState.getPartitions()) {
+                offsets.set(subscribedPartition, newOffset.applyAsLong(topicQueue.partition(subscribedPartition)));
+            }
+        }
+
+        // A push subscription waiting for records might have some to deliver now, and a publisher room.
+        topicQueue.wakeUpSubscribers();
+        topicQueue.wakeUpPublishers();
+    }
+
+    /**
+     * Checks the partition is -1, for every partition of the subscriber, or one of the partitions it reads.
+     */
+    private static void checkPartition(SubscriberState subscriberState, int partition, int numPartitions) {
 
-        int currentOffset = subscriberToOffsetMap.get(subscriberHash);
-        if (currentOffset - rewindCount >= 0) {
-            subscriberToOffsetMap.put(subscriberHash, currentOffset - rewindCount);
+        if (partition < -1 || partition >= numPartitions) {
+            throw new IllegalArgumentException("Partition not found");
+        }
+        if (partition >= 0 && Arrays.stream(subscriberState.getPartitions()).noneMatch(p -> p == partition)) {
+            throw new IllegalArgumentException("Partition not read by the subscriber");
         }
     }
+
+    private void rewindPartition(AtomicLongArray offsets, int partition, int rewindCount) {
+
+        long currentOffset;
+        do {
+            currentOffset = offsets.get(partition);
+            if (currentOffset - rewindCount < 0) {
+                return;
+            }
+        } while (!offsets.compareAndSet(partition, currentOffset, currentOffset - rewindCount));
+    }
+
+    /**
+     * Called by the {@link LogCleaner}.
+     * Drops the chunks of every partition that fell out of the retention configured for its topic, and the keys of
+     * the key indexes whose latest record was dropped. The records the followers in sync have not fetched yet are
+     * kept.
+     */
+    void enforceRetention() {
+
+        long now = System.currentTimeMillis();
+        long nowNanos = System.nanoTime();
+        for (Topic<K,V> topic : topicToQueueMap.values()) {
+            TopicConfig config = topic.getConfig();
+            if (!config.hasRetention()) {
+                continue;
+            }
+            Replication replication = topic.getReplication();
+            for (int partition = 0; partition < topic.numPartitions(); partition++) {
+                long consumedOffset = config.isDeleteConsumed() ? slowestOffset(topic.getName(), partition) : -1;
+                long replicatedOffset = (replication != null && replication.isLeader())
+                        ? replication.replicatedOffset(partition, nowNanos) : Long.MAX_VALUE;
+                topic.partition(partition).enforceRetention(config.getRetentionMaxRecords(),
+                        config.getRetentionMaxBytes(), config.getRetentionMaxAgeMs(), consumedOffset,
+                        replicatedOffset, now);
+                KeyIndex<K> keyIndex = topic.keyIndex(partition);
+                if (keyIndex != null) {
+                    keyIndex.prune(topic.partition(partition).startOffset());
+                }
+            }
+        }
+    }
+
+    /**
+     * Called by the {@link LogCleaner}.
+     * Looks up the slowest subscribers of the bounded topics again, which publishers only do once a partition looks
+     * full, so that rewinds and seeks back count against the capacity.
+     */
+    void refreshCapacities() {
+
+        for (Topic<K,V> topic : topicToQueueMap.values()) {
+            refreshConsumedOffsets(topic);
+        }
+    }
+
+    /**
+     * Called by the {@link LogCleaner}.
+     * Moves the high-water marks of the replicated topics whose slowest followers dropped out of sync.
+     */
+    void advanceHighWatermarks() {
+
+        long nowNanos = System.nanoTime();
+        for (Topic<K,V> topic : topicToQueueMap.values()) {
+            Replication replication = topic.getReplication();
+            if (replication == null || !replication.isLeader()) {
+                continue;
+            }
+            boolean moved = false;
+            for (int partition = 0; partition < topic.numPartitions(); partition++) {
+                moved |= replication.advance(partition, topic.partition(partition).tail(), nowNanos);
+            }
+            if (moved) {
+                topic.wakeUpSubscribers();
+            }
+        }
+    }
+
+    /**
+     * Called by the {@link LogCleaner}.
+     * Removes the records of the compacted topics which are superseded by a newer record with the same key.
+     */
+    void compactLogs() {
+
+        long now = System.currentTimeMillis();
+        for (Topic<K,V> topic : topicToQueueMap.values()) {
+            TopicConfig config = topic.getConfig();
+            if (!config.isCompacted()) {
+                continue;
+            }
+            for (int partition = 0; partition < topic.numPartitions(); partition++) {
+                topic.partition(partition).compact(config.getTombstoneRetentionMs(), now);
+            }
+        }
+    }
+
+    /**
+     * Called by the {@link LogCleaner}.
+     * Writes the committed offsets of the consumer groups of the topics stored in files next to the topic files, so
+     * that the groups resume from there when the topic is opened again. The groups re-read the records they read
+     * after the last checkpoint, delivery across restarts is at least once.
+     */
+    void checkpointGroupOffsets() {
+
+        for (Topic<K,V> topic : topicToQueueMap.values()) {
+            Path directory = topic.getConfig().getStorageDirectory();
+            if (directory == null) {
+                continue;
+            }
+            Properties checkpoint = new Properties();
+            for (ConsumerGroup group : topicToGroupMap.getOrDefault(topic.getName(), Collections.emptyMap()).values()) {
+                AtomicLongArray committedOffsets = group.getCommittedOffsets();
+                if (committedOffsets == null) {
+                    continue;
+                }
+                StringBuilder offsets = new StringBuilder();
+                for (int partition = 0; partition < committedOffsets.length(); partition++) {
+                    offsets.append(partition == 0 ? "" : ",").append(committedOffsets.get(partition));
+                }
+                checkpoint.setProperty(group.getGroupId(), offsets.toString());
+            }
+            if (checkpoint.equals(topicToCheckpointMap.get(topic.getName()))) {
+                continue;
+            }
+            try {
+                Path file = checkpointFile(topic);
+                Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+                try (OutputStream out = Files.newOutputStream(tmpFile)) {
+                    checkpoint.store(out, null);
+                }
+                Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                topicToCheckpointMap.put(topic.getName(), checkpoint);
+            } catch (IOException e) {
+
+                // Log and keep going, the next run will retry.
+                System.out.println("Checkpointing group offsets failed with exception " + e.getMessage());
+            }
+        }
+    }
+
+    private void restoreGroupOffsets(Topic<K,V> topic) {
+
+        Path file = checkpointFile(topic);
+        if (!Files.exists(file)) {
+            return;
+        }
+        Properties checkpoint = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            checkpoint.load(in);
+        } catch (IOException e) {
+            System.out.println("Restoring group offsets failed with exception " + e.getMessage());
+            return;
+        }
+        Map<String, ConsumerGroup> groups =
+                topicToGroupMap.computeIfAbsent(topic.getName(), t -> new ConcurrentHashMap<>());
+        for (String groupId : checkpoint.stringPropertyNames()) {
+            String[] offsets = checkpoint.getProperty(groupId).split(",");
+            if (offsets.length != topic.numPartitions()) {
+
+                // The topic was re-created with another number of partitions, the offsets mean nothing anymore.
+                continue;
+            }
+            long[] committedOffsets = new long[offsets.length];
+            for (int partition = 0; partition < offsets.length; partition++) {
+
+                // Records which were not flushed might be gone, never point past the end of the partition.
+                committedOffsets[partition] = Math.min(Long.parseLong(offsets[partition]),
+                        topic.partition(partition).tail());
+            }
+            groups.computeIfAbsent(groupId, ConsumerGroup::new).restoreOffsets(committedOffsets);
+        }
+        topicToCheckpointMap.put(topic.getName(), checkpoint);
+    }
+
+    private static Path checkpointFile(Topic<?,?> topic) {
+        return topic.getConfig().getStorageDirectory().resolve(topic.getName() + ".groups");
+    }
+
+    /**
+     * @return The smallest offset in the partition among the registered subscribers and the consumer groups having
+     *         members, or -1 if nobody reads the partition.
+     */
+    private long slowestOffset(String topic, int partition) {
+
+        long slowest = Long.MAX_VALUE;
+        for (SubscriberState subscriberState : subscriberRegistry.registered()) {
+            if (!subscriberState.getTopic().equals(topic) || subscriberState.getGroup() != null) {
+                continue;
+            }
+            int[] partitions = subscriberState.getPartitions();
+            if (partitions == null) {
+
+                // Has not polled yet, it will start from the beginning.
+                return 0;
+            }
+            for (int subscribedPartition : partitions) {
+                if (subscribedPartition == partition) {
+                    slowest = Math.min(slowest, subscriberState.getOffsets().get(partition));
+                }
+            }
+        }
+        for (ConsumerGroup group : topicToGroupMap.getOrDefault(topic, Collections.emptyMap()).values()) {
+            if (group.isEmpty()) {
+                continue;
+            }
+            AtomicLongArray committedOffsets = group.getCommittedOffsets();
+            if (committedOffsets == null) {
+                return 0;
+            }
+            slowest = Math.min(slowest, committedOffsets.get(partition));
+        }
+        return (slowest == Long.MAX_VALUE) ? -1 : slowest;
+    }
+
+    /**
+     * @return The MBean of the subscriber: its offset and its lag behind the end of the records visible to it,
+     *         summed over its partitions.
+     */
+    private MetricsMBean subscriberMBean(SubscriberState subscriberState) {
+
+        MetricsMBean mBean = new MetricsMBean("Metrics of subscriber " + subscriberState.getId() + " of the topic "
+                + subscriberState.getTopic());
+        if (subscriberState.getGroup() != null) {
+            mBean.addString("Group", "The consumer group of the subscriber", subscriberState.getGroup()::getGroupId);
+        }
+        return mBean
+                .addLong("Offset", "Offsets summed over the partitions",
+                        () -> subscriberPosition(subscriberState, false))
+                .addLong("Lag", "Records left to read, all partitions",
+                        () -> subscriberPosition(subscriberState, true));
+    }
+
+    /**
+     * @return The offsets of the subscriber, or its lag if lag is true, summed over its partitions.
+     */
+    private long subscriberPosition(SubscriberState subscriberState, boolean lag) {
+
+        Topic<K,V> topicQueue = topicToQueueMap.get(subscriberState.getTopic());
+        int[] partitions = subscriberState.getPartitions();
+        AtomicLongArray offsets = subscriberState.getOffsets();
+        if (topicQueue == null || partitions == null || offsets == null) {
+
+            // Has not polled yet, its partitions are not known.
+            return 0;
+        }
+        long position = 0;
+        for (int partition : partitions) {
+            long offset = offsets.get(partition);
+            position += lag ? Math.max(0, topicQueue.visibleEnd(partition) - offset) : offset;
+        }
+        return position;
+    }
+
+    /**
+     * Called by {@link PubSubMetrics#dump()}.
+     *
+     * @return The metrics of every topic and every registered subscriber, one attribute per line.
+     */
+    String dumpMetrics() {
+
+        StringBuilder dump = new StringBuilder();
+        new TreeMap<>(topicToMBeanMap).forEach((topic, mBean) -> {
+            dump.append("topic ").append(topic).append('\n');
+            appendValues(dump, mBean);
+        });
+        List<SubscriberState> subscribers = new ArrayList<>(subscriberToMBeanMap.keySet());
+        subscribers.sort(Comparator.comparing(SubscriberState::getTopic).thenComparingInt(SubscriberState::getId));
+        for (SubscriberState subscriberState : subscribers) {
+            MetricsMBean mBean = subscriberToMBeanMap.get(subscriberState);
+            if (mBean != null) {
+                dump.append("subscriber ").append(subscriberState.getTopic()).append('/')
+                        .append(subscriberState.getId()).append('\n');
+                appendValues(dump, mBean);
+            }
+        }
+        return dump.toString();
+    }
+
+    private static void appendValues(StringBuilder dump, MetricsMBean mBean) {
+
+        mBean.values().forEach((name, value) -> dump.append("  ").append(name).append(": ")
+                .append((value instanceof Double) ? String.format("%.1f", (Double) value) : value).append('\n'));
+    }
 }
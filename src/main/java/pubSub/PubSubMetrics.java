@@ -0,0 +1,29 @@
+package pubSub;
+
+
+/**
+ * The metrics of the pub-sub system of this JVM.
+ *
+ * Every topic is registered with the platform MBean server as pubSub:type=Topic,name="&lt;topic&gt;", with the records
+ * and bytes published and polled and their rates per second over the last minute, the failed calls, the size of
+ * its log, and the p50, p99 and p999 latencies of publishing and polling in nanoseconds. Every registered
+ * {@link Subscriber} is registered as pubSub:type=Subscriber,topic="&lt;topic&gt;",id="&lt;id&gt;", with its offset and
+ * its lag behind the records it can read, summed over its partitions.
+ *
+ * Recording costs a couple of uncontended atomic increments per publish and poll call, not per record. Rates,
+ * percentiles, sizes and lags are only computed when read.
+ */
+public final class PubSubMetrics {
+
+    private PubSubMetrics() {
+
+    }
+
+    /**
+     * @return The same metrics as the MBeans, as text: every topic and subscriber followed by one attribute per line.
+     */
+    public static String dump() {
+
+        return PubSubManager.getInstance().dumpMetrics();
+    }
+}
@@ -0,0 +1,797 @@
+package pubSub;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import static com.google.inject.internal.util.Preconditions.checkNotNull;
+
+/**
+ * Serves the topics of this JVM over TCP to the {@link RemotePublisher}s and {@link RemoteSubscriber}s of other
+ * processes, see {@link Protocol}.
+ *
+ * A single selector thread reads the requests of all the connections without blocking, and answers the requests of
+ * every connection in order. A fetch waiting for records parks its connection instead of the thread, and is
+ * answered once records are published to the topic or its timeout expires, and so is the fetch of a
+ * {@link TopicFollower} waiting for records or a newer high-water mark. The flushes of {@link Acks#FSYNCED}
+ * produce requests run on a separate thread for the same reason. The subscribers registered through a connection
+ * are unregistered when it closes.
+ *
+ * Remote clients route their records to a partition themselves and exchange keys and values as bytes, so the
+ * records of the topics they publish to and read from have byte[] keys and values.
+ */
+public final class PubSubServer implements Closeable {
+
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+
+    // A connection whose client does not read its responses is not read from while this much is waiting to be sent.
+    private static final int MAX_PENDING_WRITE_BYTES = 4 * 1024 * 1024;
+
+    @SuppressWarnings("unchecked")
+    private final PubSubManager<Object,Object> pubSubManager = PubSubManager.getInstance();
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final int port;
+    private final Thread selectorThread;
+    private volatile boolean closed;
+
+    // Work handed back to the selector thread by the publishing and flushing threads: parked fetches to retry and
+    // flushes to answer.
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+
+    // The connections with a parked fetch, only used by the selector thread.
+    private final Set<Connection> parkedConnections = new HashSet<>();
+
+    // Runs the flushes to disk of the acks=FSYNCED produce requests.
+    private final ExecutorService flushExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "pubSubServerFlush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Starts serving the topics of this JVM on the address.
+     *
+     * @param address The address to listen on, with port 0 for any free port, see {@link PubSubServer#getPort()}.
+     * @throws IOException If the address could not be bound.
+     */
+    public PubSubServer(InetSocketAddress address) throws IOException {
+        checkNotNull(address, "address cannot be null");
+
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.port = serverChannel.socket().getLocalPort();
+
+        this.selectorThread = new Thread(this::run, "pubSubServer");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    /**
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Closes every connection and stops listening. Returns once the selector thread is gone.
+     */
+    @Override
+    public void close() {
+
+        closed = true;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+
+            //  Re-interrupt the current thread: restores the interrupt status of the thread.
+            Thread.currentThread().interrupt();
+        }
+        flushExecutor.shutdown();
+    }
+
+    private void run() {
+
+        try {
+            while (!closed) {
+                selector.select(nextTimeoutMs());
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        connection.read();
+                    } else if (key.isWritable()) {
+                        connection.processRequests();
+                    }
+                }
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+
+                        // Log and keep serving the other connections.
+                        System.out.println("PubSub server task failed with exception " + e.getMessage());
+                    }
+                }
+                expireFetches();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+
+            // Log and stop serving.
+            System.out.println("PubSub server failed with exception " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                System.out.println("Closing the PubSub server failed with exception " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+    }
+
+    /**
+     * @return How long the selector may block until the next parked fetch expires, 0 for no limit.
+     */
+    private long nextTimeoutMs() {
+
+        if (!selectorTasks.isEmpty()) {
+            return 1;
+        }
+        if (parkedConnections.isEmpty()) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long remainingNanos = Long.MAX_VALUE;
+        for (Connection connection : parkedConnections) {
+            remainingNanos = Math.min(remainingNanos, connection.parkedFetch.deadlineNanos - now);
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos) + 1);
+    }
+
+    private void expireFetches() {
+
+        if (parkedConnections.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (Connection connection : new ArrayList<>(parkedConnections)) {
+            if (now - connection.parkedFetch.deadlineNanos >= 0) {
+                connection.continueFetch(connection.parkedFetch, true);
+                connection.processRequests();
+            }
+        }
+    }
+
+    /**
+     * @return The size of the record in a response.
+     */
+    private static long recordBytes(Record<Object,Object> record) {
+
+        byte[] key = toBytes(record.getKey());
+        byte[] value = toBytes(record.getValue());
+        long bytes = Long.BYTES + 3 * Integer.BYTES + ((key == null) ? 0 : key.length)
+                + ((value == null) ? 0 : value.length);
+        for (Map.Entry<String, byte[]> header : record.getHeaders().entrySet()) {
+            bytes += 2 * Integer.BYTES + Protocol.toBytes(header.getKey()).length + header.getValue().length;
+        }
+        return bytes;
+    }
+
+    private static byte[] toBytes(Object keyOrValue) {
+
+        if (keyOrValue == null || keyOrValue instanceof byte[]) {
+            return (byte[]) keyOrValue;
+        }
+        throw new IllegalStateException("Records of the topic are not byte arrays");
+    }
+
+    /**
+     * A fetch which may wait for records.
+     */
+    private abstract static class Fetch {
+
+        final int correlationId;
+        final long deadlineNanos;
+
+        Fetch(int correlationId, long timeoutMs) {
+            this.correlationId = correlationId;
+
+            // Deadlines are compared by their difference, which should not overflow.
+            this.deadlineNanos = System.nanoTime()
+                    + Math.min(TimeUnit.MILLISECONDS.toNanos(timeoutMs), Long.MAX_VALUE / 4);
+        }
+    }
+
+    /**
+     * A fetch of a subscriber. Keeps the records read so far, the offsets were already moved past them.
+     */
+    private static final class SubscriberFetch extends Fetch {
+
+        private final SubscriberState subscriberState;
+        private final int minRecords;
+        private final int maxRecords;
+        private final List<Record<Object,Object>> records = new ArrayList<>();
+
+        private SubscriberFetch(int correlationId, SubscriberState subscriberState, int minRecords, int maxRecords,
+                                long timeoutMs) {
+            super(correlationId, timeoutMs);
+            this.subscriberState = subscriberState;
+            this.minRecords = minRecords;
+            this.maxRecords = maxRecords;
+        }
+    }
+
+    /**
+     * A fetch of a {@link TopicFollower}, which reads again from the same offsets every time it is continued.
+     */
+    private static final class ReplicaFetch extends Fetch {
+
+        private final String topic;
+        private final String followerId;
+        private final int maxRecords;
+        private final int[] partitions;
+        private final long[] fetchOffsets;
+        private final long[] highWatermarks;
+
+        private ReplicaFetch(int correlationId, String topic, String followerId, int maxRecords, int count,
+                             long timeoutMs) {
+            super(correlationId, timeoutMs);
+            this.topic = topic;
+            this.followerId = followerId;
+            this.maxRecords = maxRecords;
+            this.partitions = new int[count];
+            this.fetchOffsets = new long[count];
+            this.highWatermarks = new long[count];
+        }
+    }
+
+    /**
+     * A client connection, only used by the selector thread.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private final SelectionKey key;
+
+        // The bytes read and not processed yet, in write mode.
+        private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_BYTES);
+
+        // The responses not sent yet. Direct, so that writing it to the socket does not copy it first.
+        private final FrameWriter out = new FrameWriter(WRITE_BUFFER_BYTES, true);
+
+        // The subscribers registered through this connection, by handle.
+        private final Map<Integer, SubscriberState> subscribers = new HashMap<>();
+
+        // The fetch waiting for records, null if none.
+        private Fetch parkedFetch;
+
+        // Whether an acks=FSYNCED produce request is being flushed.
+        private boolean flushing;
+
+        private boolean closed;
+
+        private Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        private void read() {
+
+            int read;
+            try {
+                read = channel.read(in);
+            } catch (IOException e) {
+                read = -1;
+            }
+            if (read < 0) {
+                close();
+                return;
+            }
+            processRequests();
+        }
+
+        /**
+         * Answers the complete requests read so far, in order, until one has to wait. Then sends what it can.
+         */
+        private void processRequests() {
+
+            in.flip();
+            try {
+                while (!closed && parkedFetch == null && !flushing && in.remaining() >= Integer.BYTES
+                        && out.buffer().position() < MAX_PENDING_WRITE_BYTES) {
+                    int length = in.getInt(in.position());
+                    if (length < 1 + Integer.BYTES || length > Protocol.MAX_FRAME_BYTES) {
+                        throw new IllegalStateException("Invalid frame length " + length);
+                    }
+                    if (in.remaining() < Integer.BYTES + length) {
+                        break;
+                    }
+                    int limit = in.limit();
+                    int frameEnd = in.position() + Integer.BYTES + length;
+                    in.position(in.position() + Integer.BYTES).limit(frameEnd);
+                    handle(in.get(), in.getInt(), in);
+                    in.limit(limit).position(frameEnd);
+                }
+            } catch (RuntimeException e) {
+
+                // The client does not speak the protocol, drop it.
+                System.out.println("Closing PubSub connection after protocol error " + e.getMessage());
+                close();
+                return;
+            } finally {
+                in.compact();
+            }
+            if (closed) {
+                return;
+            }
+            if (!in.hasRemaining() && in.position() >= Integer.BYTES) {
+                int length = in.getInt(0);
+                if (length > 0 && length <= Protocol.MAX_FRAME_BYTES && in.position() < Integer.BYTES + length) {
+
+                    // A request larger than the buffer, make room for it.
+                    ByteBuffer grown = ByteBuffer.allocate(Integer.BYTES + length);
+                    in.flip();
+                    in = grown.put(in);
+                }
+            }
+            flush();
+        }
+
+        private void handle(byte apiKey, int correlationId, ByteBuffer payload) {
+
+            if (apiKey == Protocol.FETCH) {
+                fetch(correlationId, payload);
+                return;
+            }
+            if (apiKey == Protocol.REPLICA_FETCH) {
+                replicaFetch(correlationId, payload);
+                return;
+            }
+            out.beginFrame().putInt(correlationId).putByte(Protocol.STATUS_OK);
+            try {
+                switch (apiKey) {
+                    case Protocol.INIT_TOPIC:
+                        String topic = Protocol.getString(payload);
+                        pubSubManager.initTopic(topic, TopicConfig.builder().partitions(payload.getInt()).build());
+                        writeMetadata(topic);
+                        break;
+                    case Protocol.METADATA:
+                        writeMetadata(Protocol.getString(payload));
+                        break;
+                    case Protocol.PRODUCE:
+                        if (!produce(correlationId, payload)) {
+
+                            // Answered later, or not at all.
+                            out.abortFrame();
+                            return;
+                        }
+                        break;
+                    case Protocol.REGISTER:
+                        register(payload);
+                        break;
+                    case Protocol.UNREGISTER:
+                        SubscriberState subscriberState = subscribers.remove(payload.getInt());
+                        if (subscriberState != null) {
+                            pubSubManager.unregisterSubscriber(subscriberState);
+                        }
+                        break;
+                    case Protocol.REWIND:
+                        SubscriberState rewound = subscribers.get(payload.getInt());
+                        int partition = payload.getInt();
+                        int rewindCount = payload.getInt();
+                        if (rewindCount <= 0) {
+                            throw new IllegalArgumentException("Illegal rewindCount, should be > 0");
+                        }
+                        pubSubManager.rewind(rewound, partition, rewindCount);
+                        break;
+                    case Protocol.SEEK:
+                        seek(payload);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown request " + apiKey);
+                }
+                out.endFrame();
+            } catch (PublisherException | SubscriberException | IllegalArgumentException e) {
+                out.abortFrame();
+                writeError(correlationId, e.getMessage());
+            }
+        }
+
+        private void writeMetadata(String topic) throws SubscriberException {
+
+            out.putInt(pubSubManager.numPartitions(topic));
+            out.putByte((byte) (pubSubManager.isStoredInFiles(topic) ? 1 : 0));
+        }
+
+        /**
+         * @return Whether the response can be written right away.
+         */
+        private boolean produce(int correlationId, ByteBuffer payload) throws PublisherException {
+
+            String topic = Protocol.getString(payload);
+            Acks acks = Acks.values()[payload.get()];
+            int count = payload.getInt();
+            Map<Integer, List<Record<Object,Object>>> recordsByPartition = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                int partition = payload.getInt();
+                recordsByPartition.computeIfAbsent(partition, p -> new ArrayList<>())
+                        .add(new Record<>(Protocol.getBytes(payload), Protocol.getBytes(payload),
+                                Protocol.getHeaders(payload), 0));
+            }
+            List<RecordMetadata> metadata = new ArrayList<>(recordsByPartition.size());
+            try {
+                for (Map.Entry<Integer, List<Record<Object,Object>>> entry : recordsByPartition.entrySet()) {
+                    metadata.add(pubSubManager.sendToPartition(topic, entry.getKey(), entry.getValue()));
+                }
+            } catch (PublisherException e) {
+                if (acks == Acks.NONE) {
+
+                    // Nobody waits for the answer, log it.
+                    System.out.println("Publishing failed with exception " + e.getMessage());
+                    return false;
+                }
+                throw e;
+            }
+            if (acks == Acks.NONE) {
+                return false;
+            }
+            if (acks == Acks.FSYNCED && !metadata.isEmpty()) {
+
+                // The flush would block every other connection, hold this one's requests until it is done instead.
+                flushing = true;
+                flushExecutor.execute(() -> {
+                    String error = null;
+                    try {
+                        pubSubManager.flush(topic, metadata);
+                    } catch (PublisherException e) {
+                        error = e.getMessage();
+                    }
+                    String flushError = error;
+                    selectorTasks.add(() -> flushed(correlationId, flushError));
+                    selector.wakeup();
+                });
+                return false;
+            }
+            return true;
+        }
+
+        private void flushed(int correlationId, String error) {
+
+            flushing = false;
+            if (closed) {
+                return;
+            }
+            if (error == null) {
+                out.beginFrame().putInt(correlationId).putByte(Protocol.STATUS_OK).endFrame();
+            } else {
+                writeError(correlationId, error);
+            }
+            processRequests();
+        }
+
+        private void register(ByteBuffer payload) {
+
+            String topic = Protocol.getString(payload);
+            String groupId = Protocol.getString(payload);
+            int count = payload.getInt();
+            int[] partitions = null;
+            if (count >= 0) {
+                partitions = new int[count];
+                for (int i = 0; i < count; i++) {
+                    partitions[i] = payload.getInt();
+                }
+            }
+            SubscriberState subscriberState = pubSubManager.registerSubscriber(topic, partitions, groupId, null);
+            subscribers.put(subscriberState.getId(), subscriberState);
+            out.putInt(subscriberState.getId());
+        }
+
+        private void seek(ByteBuffer payload) throws SubscriberException {
+
+            SubscriberState subscriberState = subscriber(payload.getInt());
+            int partition = payload.getInt();
+            byte mode = payload.get();
+            long value = payload.getLong();
+            switch (mode) {
+                case Protocol.SEEK_OFFSET:
+                    pubSubManager.seek(subscriberState.getTopic(), subscriberState, partition,
+                            log -> Math.min(value, log.tail()));
+                    break;
+                case Protocol.SEEK_TIMESTAMP:
+                    pubSubManager.seek(subscriberState.getTopic(), subscriberState, partition,
+                            log -> log.offsetForTimestamp(value));
+                    break;
+                case Protocol.SEEK_BEGINNING:
+                    pubSubManager.seek(subscriberState.getTopic(), subscriberState, partition,
+                            PartitionLog::startOffset);
+                    break;
+                case Protocol.SEEK_END:
+                    pubSubManager.seek(subscriberState.getTopic(), subscriberState, partition, PartitionLog::tail);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown seek mode " + mode);
+            }
+        }
+
+        private SubscriberState subscriber(int handle) throws SubscriberException {
+
+            SubscriberState subscriberState = subscribers.get(handle);
+            if (subscriberState == null) {
+                throw new SubscriberException("Subscriber not registered");
+            }
+            return subscriberState;
+        }
+
+        private void fetch(int correlationId, ByteBuffer payload) {
+
+            int handle = payload.getInt();
+            int minRecords = payload.getInt();
+            int maxRecords = payload.getInt();
+            long timeoutMs = payload.getLong();
+            if (maxRecords <= 0 || minRecords <= 0 || minRecords > maxRecords || timeoutMs < 0) {
+                writeError(correlationId, "Invalid fetch request");
+                return;
+            }
+            SubscriberState subscriberState = subscribers.get(handle);
+            if (subscriberState == null) {
+                writeError(correlationId, "Subscriber not registered");
+                return;
+            }
+            continueFetch(new SubscriberFetch(correlationId, subscriberState, minRecords, maxRecords, timeoutMs),
+                    timeoutMs == 0);
+        }
+
+        private void replicaFetch(int correlationId, ByteBuffer payload) {
+
+            String topic = Protocol.getString(payload);
+            String followerId = Protocol.getString(payload);
+            int maxRecords = payload.getInt();
+            long timeoutMs = payload.getLong();
+            int count = payload.getInt();
+            if (topic == null || followerId == null || maxRecords <= 0 || timeoutMs < 0 || count <= 0
+                    || count > payload.remaining() / (Integer.BYTES + 2 * Long.BYTES)) {
+                writeError(correlationId, "Invalid fetch request");
+                return;
+            }
+            ReplicaFetch fetch = new ReplicaFetch(correlationId, topic, followerId, maxRecords, count, timeoutMs);
+            for (int i = 0; i < count; i++) {
+                fetch.partitions[i] = payload.getInt();
+                fetch.fetchOffsets[i] = payload.getLong();
+                fetch.highWatermarks[i] = payload.getLong();
+            }
+            continueFetch(fetch, timeoutMs == 0);
+        }
+
+        /**
+         * Reads more records for the fetch, and answers it if it has enough of them or it expired. Otherwise parks
+         * the fetch until records get published. The caller processes the requests following the fetch.
+         */
+        private void continueFetch(Fetch fetch, boolean expired) {
+
+            if (fetch instanceof ReplicaFetch) {
+                continueReplicaFetch((ReplicaFetch) fetch, expired);
+            } else {
+                continueSubscriberFetch((SubscriberFetch) fetch, expired);
+            }
+        }
+
+        private void continueSubscriberFetch(SubscriberFetch fetch, boolean expired) {
+
+            String topic = fetch.subscriberState.getTopic();
+            try {
+                pubSubManager.poll(topic, fetch.subscriberState, 1, fetch.maxRecords, 0, fetch.records);
+            } catch (SubscriberException e) {
+                unpark();
+                writeError(fetch.correlationId, e.getMessage());
+                return;
+            }
+            if (fetch.records.size() < fetch.minRecords && !expired) {
+                parkedFetch = fetch;
+                parkedConnections.add(this);
+                try {
+                    pubSubManager.awaitRecordsAsync(topic, fetch.subscriberState, () -> wakeUp(fetch));
+                } catch (SubscriberException e) {
+                    unpark();
+                    writeError(fetch.correlationId, e.getMessage());
+                }
+                return;
+            }
+            unpark();
+            try {
+                out.beginFrame().putInt(fetch.correlationId).putByte(Protocol.STATUS_OK).putInt(fetch.records.size());
+                for (Record<Object,Object> record : fetch.records) {
+                    out.putLong(record.getTimestamp()).putBytes(toBytes(record.getKey()))
+                            .putBytes(toBytes(record.getValue())).putHeaders(record.getHeaders());
+                }
+                out.endFrame();
+            } catch (IllegalStateException e) {
+                out.abortFrame();
+                writeError(fetch.correlationId, e.getMessage());
+            }
+        }
+
+        /**
+         * Reads the partitions of the follower from their fetch offsets, and answers if any has records or a newer
+         * high-water mark, or the fetch expired. Otherwise parks the fetch until either happens. The records of a
+         * response are capped to half the largest frame, the follower fetches the rest next.
+         */
+        private void continueReplicaFetch(ReplicaFetch fetch, boolean expired) {
+
+            List<List<Record<Object,Object>>> recordsByPartition = new ArrayList<>(fetch.partitions.length);
+            long[] highWatermarks = new long[fetch.partitions.length];
+            long[] startOffsets = new long[fetch.partitions.length];
+            boolean updated = false;
+            try {
+                for (int i = 0; i < fetch.partitions.length; i++) {
+                    List<Record<Object,Object>> records = new ArrayList<>();
+                    highWatermarks[i] = pubSubManager.replicaFetch(fetch.topic, fetch.followerId, fetch.partitions[i],
+                            fetch.fetchOffsets[i], fetch.maxRecords, records);
+                    startOffsets[i] = pubSubManager.startOffset(fetch.topic, fetch.partitions[i]);
+                    recordsByPartition.add(records);
+
+                    // A follower behind the start of the partition is answered right away, to start over from there.
+                    updated |= !records.isEmpty() || highWatermarks[i] > fetch.highWatermarks[i]
+                            || fetch.fetchOffsets[i] < startOffsets[i];
+                }
+                if (!updated && !expired) {
+                    parkedFetch = fetch;
+                    parkedConnections.add(this);
+                    pubSubManager.awaitReplicaFetchAsync(fetch.topic, fetch.partitions, fetch.fetchOffsets,
+                            fetch.highWatermarks, () -> wakeUp(fetch));
+                    return;
+                }
+            } catch (SubscriberException e) {
+                unpark();
+                writeError(fetch.correlationId, e.getMessage());
+                return;
+            }
+            unpark();
+            try {
+                long budget = Protocol.MAX_FRAME_BYTES / 2;
+                out.beginFrame().putInt(fetch.correlationId).putByte(Protocol.STATUS_OK).putInt(fetch.partitions.length);
+                for (int i = 0; i < fetch.partitions.length; i++) {
+                    List<Record<Object,Object>> records = recordsByPartition.get(i);
+                    int count = 0;
+                    while (count < records.size() && budget > 0) {
+                        budget -= recordBytes(records.get(count++));
+                    }
+                    out.putInt(fetch.partitions[i]).putLong(highWatermarks[i]).putLong(startOffsets[i]).putInt(count);
+                    for (Record<Object,Object> record : records.subList(0, count)) {
+                        out.putLong(record.getTimestamp()).putBytes(toBytes(record.getKey()))
+                                .putBytes(toBytes(record.getValue())).putHeaders(record.getHeaders());
+                    }
+                }
+                out.endFrame();
+            } catch (IllegalStateException e) {
+                out.abortFrame();
+                writeError(fetch.correlationId, e.getMessage());
+            }
+        }
+
+        /**
+         * Continues the parked fetch on the selector thread.
+         */
+        private void wakeUp(Fetch fetch) {
+
+            selectorTasks.add(() -> {
+
+                // The fetch might have expired or been answered meanwhile.
+                if (parkedFetch == fetch && !closed) {
+                    continueFetch(fetch, false);
+                    processRequests();
+                }
+            });
+            selector.wakeup();
+        }
+
+        private void unpark() {
+
+            parkedFetch = null;
+            parkedConnections.remove(this);
+        }
+
+        private void writeError(int correlationId, String message) {
+
+            out.beginFrame().putInt(correlationId).putByte(Protocol.STATUS_ERROR).putString(message).endFrame();
+        }
+
+        /**
+         * Sends what the socket takes without blocking, and waits for the socket to take the rest if needed.
+         */
+        private void flush() {
+
+            ByteBuffer buffer = out.buffer();
+            if (buffer.position() > 0) {
+                buffer.flip();
+                try {
+                    channel.write(buffer);
+                } catch (IOException e) {
+                    buffer.compact();
+                    close();
+                    return;
+                }
+                buffer.compact();
+            }
+            int interestOps = 0;
+            if (buffer.position() > 0) {
+                interestOps |= SelectionKey.OP_WRITE;
+            }
+            if (in.hasRemaining() && buffer.position() < MAX_PENDING_WRITE_BYTES) {
+                interestOps |= SelectionKey.OP_READ;
+            }
+            key.interestOps(interestOps);
+        }
+
+        private void close() {
+
+            if (closed) {
+                return;
+            }
+            closed = true;
+            unpark();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.out.println("Closing PubSub connection failed with exception " + e.getMessage());
+            }
+            for (SubscriberState subscriberState : subscribers.values()) {
+                pubSubManager.unregisterSubscriber(subscriberState);
+            }
+            subscribers.clear();
+        }
+    }
+}
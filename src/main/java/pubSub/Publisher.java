@@ -1,6 +1,10 @@
 package pubSub;
 
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import static com.google.inject.internal.util.Preconditions.checkNotNull;
 
 /**
@@ -16,6 +20,15 @@ public class Publisher<K,V> {
     // The topic that this Publisher corresponds to
     private final String topic;
 
+    // What publishing waits for.
+    private final Acks acks;
+
+    // The quota of the publisher, null if it has none.
+    private final QuotaState quota;
+
+    // Buffers the records published asynchronously.
+    private final RecordAccumulator<K,V> accumulator;
+
     /**
      * Constructor.
      * The flow for publishing messages into the PubSub system is to instantiate a {@link Publisher} with the
@@ -24,21 +37,153 @@ public class Publisher<K,V> {
      * @param topic The topic for this {@link Publisher}
      */
     public Publisher(String topic) {
+        this(topic, TopicConfig.defaults());
+    }
+
+    /**
+     * Constructor.
+     * Creates the topic with the given {@link TopicConfig} if it does not exist yet. If the topic already exists
+     * its existing configuration is kept.
+     *
+     * @param topic The topic for this {@link Publisher}
+     * @param topicConfig The configuration for creating the topic, e.g. its number of partitions.
+     */
+    public Publisher(String topic, TopicConfig topicConfig) {
+        this(topic, topicConfig, PublisherConfig.defaults());
+    }
+
+    /**
+     * Constructor.
+     * Same as {@link Publisher#Publisher(String, TopicConfig)}, with the given {@link Acks} level, batching
+     * configuration for {@link Publisher#publishAsync(Record)} and {@link Quota}.
+     *
+     * A topic stored in files is opened from its files if they exist, see {@link TopicConfig.Builder#fileStorage}.
+     *
+     * @param topic The topic for this {@link Publisher}
+     * @param topicConfig The configuration for creating the topic, e.g. its number of partitions.
+     * @param publisherConfig The configuration of the publishing, e.g. its acks level.
+     * @throws IllegalArgumentException If {@link Acks#FSYNCED} is requested for a topic which is not stored in files.
+     */
+    public Publisher(String topic, TopicConfig topicConfig, PublisherConfig publisherConfig) {
         checkNotNull(topic, "Publisher cannot be instantiated with a null topic");
+        checkNotNull(topicConfig, "Publisher cannot be instantiated with a null topicConfig");
+        checkNotNull(publisherConfig, "Publisher cannot be instantiated with a null publisherConfig");
 
         this.topic = topic;
-        pubSubManager.initTopic(topic);
+        this.acks = publisherConfig.getAcks();
+        this.quota = pubSubManager.publisherQuota(publisherConfig.getPublisherId(), publisherConfig.getQuota());
+        this.accumulator = new RecordAccumulator<>(topic, publisherConfig, quota, pubSubManager);
+        pubSubManager.initTopic(topic, topicConfig);
+        if (acks == Acks.FSYNCED && !pubSubManager.isStoredInFiles(topic)) {
+            throw new IllegalArgumentException("acks=FSYNCED needs a topic stored in files");
+        }
     }
 
     /**
      * Publishes the {@link Record} into the PubSub system.
+     * The partition is chosen by the topic's {@link Partitioner}, by default from the hash of {@link Record#getKey()},
+     * so records with the same key are read back in the order they were published.
+     *
+     * What this waits for depends on the {@link Acks} level of the publisher: with {@link Acks#NONE} the record is
+     * handed over to the asynchronous publishing and failures are only logged, with {@link Acks#BUFFERED} this
+     * returns once the record is visible to the subscribers, and with {@link Acks#FSYNCED} once it is also on disk.
+     * Beyond the {@link Quota} of the publisher or of the topic, this is delayed until the quota caught up.
      *
      * @param publisherRecord The record to publish
-     * @throws PublisherException If there was an error while publishing the record.
+     * @throws PublisherException If there was an error while publishing the record, or a quota rejected it.
      */
     public void publish(Record<K,V> publisherRecord) throws PublisherException {
         checkNotNull(publisherRecord, "Cannot publish null message");
 
-        pubSubManager.send(topic, publisherRecord);
+        switch (acks) {
+            case NONE:
+                accumulator.append(publisherRecord).whenComplete((metadata, e) -> {
+                    if (e != null) {
+                        System.out.println("Publishing failed with exception " + e.getMessage());
+                    }
+                });
+                break;
+            case FSYNCED:
+                RecordMetadata metadata = pubSubManager.send(topic, publisherRecord, quota);
+                pubSubManager.flush(topic, Collections.singletonList(metadata));
+                break;
+            default:
+                pubSubManager.send(topic, publisherRecord, quota);
+        }
+    }
+
+    /**
+     * Publishes the {@link Record}s into the PubSub system as a single batch,
+     * see {@link Publisher#publishBatch(RecordBatch)}.
+     *
+     * @param publisherRecords The records to publish, in order.
+     * @throws PublisherException If there was an error while publishing the records.
+     */
+    public void publishAll(Collection<Record<K,V>> publisherRecords) throws PublisherException {
+        checkNotNull(publisherRecords, "Cannot publish null messages");
+
+        publishBatch(new RecordBatch<>(publisherRecords));
+    }
+
+    /**
+     * Publishes the {@link RecordBatch} into the PubSub system.
+     * The records are routed to their partition like {@link Publisher#publish(Record)} does. The records landing on
+     * the same partition get contiguous offsets in the batch order, and are appended in a single operation which
+     * subscribers see either entirely or not at all. This is much cheaper than publishing the records one by one.
+     * A record which cannot be serialized or stored fails the batch before any partition is appended to. A batch
+     * spanning partitions which fails later on, e.g. on an I/O error, names the partitions already published in the
+     * message of the {@link PublisherException}.
+     *
+     * The batch is appended before this returns at every {@link Acks} level, with {@link Acks#FSYNCED} this also
+     * waits for the batch to be on disk.
+     *
+     * @param batch The batch to publish
+     * @throws PublisherException If there was an error while publishing the batch.
+     */
+    public void publishBatch(RecordBatch<K,V> batch) throws PublisherException {
+        checkNotNull(batch, "Cannot publish null batch");
+
+        if (!batch.isEmpty()) {
+            List<RecordMetadata> metadata = pubSubManager.sendAll(topic, batch.records(), quota);
+            if (acks == Acks.FSYNCED) {
+                pubSubManager.flush(topic, metadata);
+            }
+        }
+    }
+
+    /**
+     * Publishes the {@link Record} into the PubSub system asynchronously.
+     * The record is buffered and published with the other buffered records as a batch, once
+     * {@link PublisherConfig#getBatchSize()} records are buffered or after {@link PublisherConfig#getLingerMs()}.
+     * This only blocks when the buffer is full, for up to {@link PublisherConfig#getMaxBlockMs()}.
+     * The records published from a thread are stored in the order they were published.
+     *
+     * @param publisherRecord The record to publish
+     * @return A future completed with where the record was stored once it is visible to the subscribers, or failed
+     *         with a {@link PublisherException}. Dependent actions run on the publishing thread of the topic and
+     *         should be quick.
+     */
+    public CompletableFuture<RecordMetadata> publishAsync(Record<K,V> publisherRecord) {
+        checkNotNull(publisherRecord, "Cannot publish null message");
+
+        return accumulator.append(publisherRecord);
+    }
+
+    /**
+     * Publishes the records buffered by {@link Publisher#publishAsync(Record)} right away, and blocks until they are
+     * published.
+     */
+    public void flush() {
+
+        accumulator.flush();
+    }
+
+    /**
+     * Publishes the records buffered by {@link Publisher#publishAsync(Record)} and stops the asynchronous publishing,
+     * records published asynchronously afterwards fail.
+     */
+    public void close() {
+
+        accumulator.close();
     }
 }
@@ -0,0 +1,172 @@
+package pubSub;
+
+
+import static com.google.inject.internal.util.Preconditions.checkArgument;
+import static com.google.inject.internal.util.Preconditions.checkNotNull;
+
+/**
+ * Configuration of a {@link Publisher}: what publishing waits for, the batching of
+ * {@link Publisher#publishAsync(Record)}, and the quota of the publisher.
+ * Instances are immutable, use {@link PublisherConfig#builder()} to create one.
+ */
+public final class PublisherConfig {
+
+    private static final PublisherConfig DEFAULTS = builder().build();
+
+    private final int batchSize;
+    private final long lingerMs;
+    private final long bufferMemoryBytes;
+    private final long maxBlockMs;
+    private final Acks acks;
+    private final String publisherId;
+    private final Quota quota;
+
+    private PublisherConfig(Builder builder) {
+        this.batchSize = builder.batchSize;
+        this.lingerMs = builder.lingerMs;
+        this.bufferMemoryBytes = builder.bufferMemoryBytes;
+        this.maxBlockMs = builder.maxBlockMs;
+        this.acks = builder.acks;
+        this.publisherId = builder.publisherId;
+        this.quota = builder.quota;
+    }
+
+    /**
+     * @return The configuration used by publishers created without an explicit {@link PublisherConfig}.
+     */
+    public static PublisherConfig defaults() {
+        return DEFAULTS;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getLingerMs() {
+        return lingerMs;
+    }
+
+    public long getBufferMemoryBytes() {
+        return bufferMemoryBytes;
+    }
+
+    public long getMaxBlockMs() {
+        return maxBlockMs;
+    }
+
+    public Acks getAcks() {
+        return acks;
+    }
+
+    public String getPublisherId() {
+        return publisherId;
+    }
+
+    public Quota getQuota() {
+        return quota;
+    }
+
+    /**
+     * Builder for the {@link PublisherConfig}.
+     */
+    public static final class Builder {
+
+        private int batchSize = 1000;
+        private long lingerMs = 5;
+        private long bufferMemoryBytes = 32L * 1024 * 1024;
+        private long maxBlockMs = 60_000;
+        private Acks acks = Acks.BUFFERED;
+        private String publisherId;
+        private Quota quota;
+
+        private Builder() {
+
+        }
+
+        /**
+         * @param batchSize The number of buffered records which triggers a flush without waiting for lingerMs,
+         *                  defaults to 1000.
+         */
+        public Builder batchSize(int batchSize) {
+            checkArgument(batchSize > 0, "batchSize should be greater than 0");
+
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param lingerMs How long a record waits in the buffer for more records to batch with, defaults to 5ms.
+         *                 0 flushes as soon as possible, larger values trade latency for throughput.
+         */
+        public Builder lingerMs(long lingerMs) {
+            checkArgument(lingerMs >= 0, "lingerMs should be >= 0");
+
+            this.lingerMs = lingerMs;
+            return this;
+        }
+
+        /**
+         * @param bufferMemoryBytes The estimated size of the records which can wait in the buffer, defaults to 32MB.
+         *                          The size is estimated like for the size based retention of the topics.
+         */
+        public Builder bufferMemoryBytes(long bufferMemoryBytes) {
+            checkArgument(bufferMemoryBytes > 0, "bufferMemoryBytes should be greater than 0");
+
+            this.bufferMemoryBytes = bufferMemoryBytes;
+            return this;
+        }
+
+        /**
+         * @param maxBlockMs How long {@link Publisher#publishAsync(Record)} blocks for buffer memory when the buffer
+         *                   is full before failing the record, defaults to one minute. 0 fails right away.
+         */
+        public Builder maxBlockMs(long maxBlockMs) {
+            checkArgument(maxBlockMs >= 0, "maxBlockMs should be >= 0");
+
+            this.maxBlockMs = maxBlockMs;
+            return this;
+        }
+
+        /**
+         * @param acks What publishing waits for, defaults to {@link Acks#BUFFERED}. With {@link Acks#FSYNCED} the
+         *             futures of {@link Publisher#publishAsync(Record)} also complete once the records are on disk.
+         */
+        public Builder acks(Acks acks) {
+            checkNotNull(acks, "acks cannot be null");
+
+            this.acks = acks;
+            return this;
+        }
+
+        /**
+         * @param publisherId Identifies the publisher, publishers with the same id share their quota whatever their
+         *                    topics. The quota of an id is the one of its first publisher, like the configuration of
+         *                    a topic is the one of its first publisher.
+         */
+        public Builder publisherId(String publisherId) {
+            checkNotNull(publisherId, "publisherId cannot be null");
+
+            this.publisherId = publisherId;
+            return this;
+        }
+
+        /**
+         * @param quota Limits the records and bytes per second of the publisher, or of all the publishers with its
+         *              {@link Builder#publisherId(String)}. Defaults to no limit.
+         */
+        public Builder quota(Quota quota) {
+            checkNotNull(quota, "quota cannot be null");
+
+            this.quota = quota;
+            return this;
+        }
+
+        public PublisherConfig build() {
+            return new PublisherConfig(this);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package pubSub;
+
+
+import static com.google.inject.internal.util.Preconditions.checkArgument;
+
+/**
+ * A throughput quota of publishers, in records and bytes per second: for a topic with
+ * {@link TopicConfig.Builder#quota(Quota)}, and for the publishers sharing a publisher id with
+ * {@link PublisherConfig.Builder#quota(Quota)}.
+ *
+ * Publishing within the quota is not slowed down, and publishers may burst above the rates for burstMs worth of
+ * records. Beyond, publishes are delayed until the quota caught up, or rejected with a {@link PublisherException}
+ * if the quota rejects the excess. Bytes are estimated like for the size based retention of the topics.
+ * Instances are immutable, use {@link Quota#builder()} to create one.
+ */
+public final class Quota {
+
+    private final long recordsPerSecond;
+    private final long bytesPerSecond;
+    private final long burstMs;
+    private final boolean rejectExcess;
+
+    private Quota(Builder builder) {
+        this.recordsPerSecond = builder.recordsPerSecond;
+        this.bytesPerSecond = builder.bytesPerSecond;
+        this.burstMs = builder.burstMs;
+        this.rejectExcess = builder.rejectExcess;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The records per second, -1 if not limited.
+     */
+    public long getRecordsPerSecond() {
+        return recordsPerSecond;
+    }
+
+    /**
+     * @return The bytes per second, -1 if not limited.
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public long getBurstMs() {
+        return burstMs;
+    }
+
+    public boolean isRejectExcess() {
+        return rejectExcess;
+    }
+
+    /**
+     * Builder for the {@link Quota}.
+     */
+    public static final class Builder {
+
+        private long recordsPerSecond = -1;
+        private long bytesPerSecond = -1;
+        private long burstMs = 1000;
+        private boolean rejectExcess;
+
+        private Builder() {
+
+        }
+
+        public Builder recordsPerSecond(long recordsPerSecond) {
+            checkArgument(recordsPerSecond > 0, "recordsPerSecond should be greater than 0");
+
+            this.recordsPerSecond = recordsPerSecond;
+            return this;
+        }
+
+        public Builder bytesPerSecond(long bytesPerSecond) {
+            checkArgument(bytesPerSecond > 0, "bytesPerSecond should be greater than 0");
+
+            this.bytesPerSecond = bytesPerSecond;
+            return this;
+        }
+
+        /**
+         * @param burstMs How much of the rates can be published at once after publishers were idle, defaults to one
+         *                second worth of records and bytes.
+         */
+        public Builder burstMs(long burstMs) {
+            checkArgument(burstMs > 0, "burstMs should be greater than 0");
+
+            this.burstMs = burstMs;
+            return this;
+        }
+
+        /**
+         * @param rejectExcess Whether publishes beyond the quota fail instead of being delayed, defaults to false.
+         *                     Remote publishes are never delayed, the {@link PubSubServer} rejects them.
+         */
+        public Builder rejectExcess(boolean rejectExcess) {
+
+            this.rejectExcess = rejectExcess;
+            return this;
+        }
+
+        public Quota build() {
+            checkArgument(recordsPerSecond > 0 || bytesPerSecond > 0,
+                    "A quota should limit the records or the bytes per second");
+
+            return new Quota(this);
+        }
+    }
+}
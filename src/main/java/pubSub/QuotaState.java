@@ -0,0 +1,91 @@
+package pubSub;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Enforces a {@link Quota}, for a topic or for the publishers sharing a publisher id: a {@link TokenBucket} per
+ * limited rate, and how long the publishes were throttled for and how many were rejected.
+ */
+final class QuotaState {
+
+    private final Quota quota;
+
+    // Null if the quota does not limit the records, respectively the bytes.
+    private final TokenBucket recordBucket;
+    private final TokenBucket byteBucket;
+
+    private final LongAdder throttleNanos = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    QuotaState(Quota quota) {
+        this.quota = quota;
+        this.recordBucket = (quota.getRecordsPerSecond() > 0)
+                ? new TokenBucket(quota.getRecordsPerSecond(), quota.getBurstMs()) : null;
+        this.byteBucket = (quota.getBytesPerSecond() > 0)
+                ? new TokenBucket(quota.getBytesPerSecond(), quota.getBurstMs()) : null;
+    }
+
+    /**
+     * Takes the records out of the quota.
+     *
+     * @param mayDelay Whether the publisher may be delayed, if not the excess is rejected.
+     * @return How long to delay the publish for, 0 if it is within the quota, or -1 if it is rejected.
+     */
+    long acquire(int records, long bytes, boolean mayDelay) {
+
+        boolean reject = quota.isRejectExcess() || !mayDelay;
+        long nowNanos = System.nanoTime();
+        long delayNanos = 0;
+        if (recordBucket != null) {
+            delayNanos = recordBucket.take(records, reject, nowNanos);
+            if (delayNanos < 0) {
+                rejections.increment();
+                return -1;
+            }
+        }
+        if (byteBucket != null) {
+            long byteDelayNanos = byteBucket.take(bytes, reject, nowNanos);
+            if (byteDelayNanos < 0) {
+                if (recordBucket != null) {
+                    recordBucket.giveBack(records);
+                }
+                rejections.increment();
+                return -1;
+            }
+            delayNanos = Math.max(delayNanos, byteDelayNanos);
+        }
+        if (delayNanos > 0) {
+            throttleNanos.add(delayNanos);
+        }
+        return delayNanos;
+    }
+
+    /**
+     * Gives back the records taken by {@link QuotaState#acquire(int, long, boolean)}, for a publish which failed
+     * after all.
+     */
+    void release(int records, long bytes) {
+
+        if (recordBucket != null) {
+            recordBucket.giveBack(records);
+        }
+        if (byteBucket != null) {
+            byteBucket.giveBack(bytes);
+        }
+    }
+
+    /**
+     * @return The MBean of the publisher id, with the time its publishes were delayed for and the rejected ones.
+     */
+    MetricsMBean toMBean(String publisherId) {
+
+        return new MetricsMBean("Quota of the publishers with id " + publisherId)
+                .addLong("RecordsPerSecond", "Records per second, -1 if not limited", quota::getRecordsPerSecond)
+                .addLong("BytesPerSecond", "Bytes per second, -1 if not limited", quota::getBytesPerSecond)
+                .addLong("ThrottleTimeMs", "Time publishes were delayed for by the quota",
+                        () -> TimeUnit.NANOSECONDS.toMillis(throttleNanos.sum()))
+                .addLong("QuotaRejections", "Publishes rejected by the quota", rejections::sum);
+    }
+}
@@ -1,6 +1,11 @@
 package pubSub;
 
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import static com.google.inject.internal.util.Preconditions.checkNotNull;
+
 /**
  * Class representing an entity for storing data in the PubSub system.
  * @param <K> The key
@@ -8,17 +13,62 @@ package pubSub;
  */
 public class Record<K,V> extends Object {
 
+    // Rough per-record overhead on the heap: object headers and references.
+    private static final int RECORD_OVERHEAD_BYTES = 32;
+
     protected K key;
     protected V value;
 
+    // Metadata of the record, e.g. a content type or a trace id, by name. Empty for most records.
+    private final Map<String, byte[]> headers;
+
+    // Set once, when the record is appended to a topic. 0 until then.
+    // Published to the subscribers by the volatile write storing the record in the log.
+    private long timestamp;
+
     /**
      * Constructor for the Record.
      * @param key
      * @param value
      */
     public Record(K key, V value) {
+        this(key, value, Collections.emptyMap(), 0);
+    }
+
+    /**
+     * Constructor for the Record with headers.
+     * @param key
+     * @param value
+     * @param headers The headers of the record, copied. Neither the names nor the values should be null.
+     */
+    public Record(K key, V value, Map<String, byte[]> headers) {
+        this(key, value, copyOf(headers), 0);
+    }
+
+    Record(K key, V value, long timestamp) {
+        this(key, value, Collections.emptyMap(), timestamp);
+    }
+
+    Record(K key, V value, Map<String, byte[]> headers, long timestamp) {
         this.key = key;
         this.value = value;
+        this.headers = headers;
+        this.timestamp = timestamp;
+    }
+
+    private static Map<String, byte[]> copyOf(Map<String, byte[]> headers) {
+        checkNotNull(headers, "headers cannot be null");
+
+        if (headers.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, byte[]> copy = new LinkedHashMap<>(headers.size() * 2);
+        for (Map.Entry<String, byte[]> header : headers.entrySet()) {
+            checkNotNull(header.getKey(), "Header name cannot be null");
+            checkNotNull(header.getValue(), "Header value cannot be null");
+            copy.put(header.getKey(), header.getValue());
+        }
+        return Collections.unmodifiableMap(copy);
     }
 
     /**
@@ -36,4 +86,72 @@ public class Record<K,V> extends Object {
     public V getValue() {
         return value;
     }
+
+    /**
+     * Retrieves the Record's headers, in the order they were given.
+     * @return The headers by name, empty if the record has none.
+     */
+    public Map<String, byte[]> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Retrieves the time the Record was appended to its topic at.
+     * @return The milliseconds since the epoch, 0 if the record was not published yet.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Stamps the record with its append time. A record is stamped only once: publishing it again stores a copy.
+     * The same record published concurrently twice ends up with one of the two timestamps, a few microseconds apart.
+     *
+     * @param timestampMs The append time.
+     * @return This record, or a stamped copy of it if it was already stamped.
+     */
+    Record<K,V> stamp(long timestampMs) {
+
+        if (timestamp == 0) {
+            timestamp = timestampMs;
+            return this;
+        }
+        return new Record<>(getKey(), getValue(), headers, timestampMs);
+    }
+
+    /**
+     * @return Whether the value is not null, without deserializing it for records stored off the heap.
+     */
+    boolean hasValue() {
+        return value != null;
+    }
+
+    /**
+     * Estimates the memory taken by this Record, used by the size-based retention of the topics.
+     * byte arrays and strings are sized by their length, any other key or value is counted as a fixed overhead.
+     *
+     * @return The estimated size in bytes.
+     */
+    int estimatedSize() {
+
+        int size = RECORD_OVERHEAD_BYTES + estimatedSize(key) + estimatedSize(value);
+        for (Map.Entry<String, byte[]> header : headers.entrySet()) {
+            size += RECORD_OVERHEAD_BYTES + estimatedSize(header.getKey()) + header.getValue().length;
+        }
+        return size;
+    }
+
+    private static int estimatedSize(Object object) {
+
+        if (object == null) {
+            return 0;
+        }
+        if (object instanceof byte[]) {
+            return ((byte[]) object).length;
+        }
+        if (object instanceof CharSequence) {
+            return 2 * ((CharSequence) object).length();
+        }
+        return RECORD_OVERHEAD_BYTES;
+    }
 }
@@ -0,0 +1,224 @@
+package pubSub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers the {@link Record}s published asynchronously to a topic and publishes them as batches from a background
+ * thread, once {@link PublisherConfig#getBatchSize()} records are buffered or the oldest record waited for
+ * {@link PublisherConfig#getLingerMs()}. The estimated size of the buffered records is bounded by
+ * {@link PublisherConfig#getBufferMemoryBytes()}, producers block for up to {@link PublisherConfig#getMaxBlockMs()}
+ * when the buffer is full.
+ *
+ * Batches are published in order by a single thread, so the records of a producer thread keep their order. With
+ * {@link Acks#FSYNCED} the futures of a batch complete once the batch is flushed to disk.
+ *
+ * @param <K> The key for the {@link Record}
+ * @param <V> The value for the {@link Record}
+ */
+final class RecordAccumulator<K,V> implements Runnable {
+
+    private final String topic;
+    private final PublisherConfig config;
+    private final PubSubManager<K,V> pubSubManager;
+
+    // The quota of the publisher, null if it has none. A publisher over its quota delays the sender thread, which
+    // fills the buffer and eventually blocks the producers.
+    private final QuotaState quota;
+
+    // Everything below is guarded by this.
+    private List<Record<K,V>> records = new ArrayList<>();
+    private List<CompletableFuture<RecordMetadata>> futures = new ArrayList<>();
+    private long batchStartNanos;
+    private long bufferedBytes;
+    private boolean flushRequested;
+    private boolean closed;
+    private Thread senderThread;
+
+    // The future of the most recently buffered record, complete once everything buffered before is published.
+    private CompletableFuture<RecordMetadata> lastFuture = CompletableFuture.completedFuture(null);
+
+    RecordAccumulator(String topic, PublisherConfig config, QuotaState quota, PubSubManager<K,V> pubSubManager) {
+
+        this.topic = topic;
+        this.config = config;
+        this.quota = quota;
+        this.pubSubManager = pubSubManager;
+    }
+
+    /**
+     * Buffers the record, blocking while the buffer is full.
+     *
+     * @return The future completed once the record is published, failed with a {@link PublisherException} if the
+     *         record could not be buffered or published.
+     */
+    synchronized CompletableFuture<RecordMetadata> append(Record<K,V> record) {
+
+        CompletableFuture<RecordMetadata> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new PublisherException("Publisher is closed"));
+            return future;
+        }
+        try {
+            if (!reserveMemory(record.estimatedSize())) {
+                future.completeExceptionally(new PublisherException("Buffer memory exhausted"));
+                return future;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(new PublisherException("Interrupted while waiting for buffer memory"));
+            return future;
+        }
+        if (senderThread == null) {
+            senderThread = new Thread(this, "pubSubPublisher-" + topic);
+            senderThread.setDaemon(true);
+            senderThread.start();
+        }
+
+        if (records.isEmpty()) {
+            batchStartNanos = System.nanoTime();
+        }
+        records.add(record);
+        futures.add(future);
+        lastFuture = future;
+        if (records.size() == 1 || records.size() >= config.getBatchSize()) {
+
+            // Let the sender start the linger, or flush a full batch.
+            notifyAll();
+        }
+        return future;
+    }
+
+    /**
+     * @return Whether the memory was reserved, false if the buffer stayed full for maxBlockMs.
+     */
+    private boolean reserveMemory(int bytes) throws InterruptedException {
+
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxBlockMs());
+        long deadline = System.nanoTime() + remainingNanos;
+
+        // A record larger than the whole buffer still goes through once the buffer is empty.
+        while (bufferedBytes > 0 && bufferedBytes + bytes > config.getBufferMemoryBytes()) {
+            if (remainingNanos <= 0 || closed) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+            remainingNanos = deadline - System.nanoTime();
+        }
+        bufferedBytes += bytes;
+        return true;
+    }
+
+    /**
+     * Publishes the buffered records without waiting for lingerMs, and blocks until they are published.
+     */
+    void flush() {
+
+        CompletableFuture<RecordMetadata> future;
+        synchronized (this) {
+            future = lastFuture;
+            flushRequested = true;
+            notifyAll();
+        }
+
+        // Batches are published in order, hence once the last record is done every record is.
+        try {
+            future.join();
+        } catch (Exception e) {
+
+            // The failure was reported through the future of the record.
+        }
+    }
+
+    /**
+     * Publishes the buffered records and stops the sender thread. Records published afterwards fail.
+     */
+    void close() {
+
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        flush();
+    }
+
+    @Override
+    public void run() {
+
+        while (true) {
+            List<Record<K,V>> batch;
+            List<CompletableFuture<RecordMetadata>> batchFutures;
+            synchronized (this) {
+                try {
+                    if (!awaitBatch()) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+
+                    //  Re-interrupt the current thread: restores the interrupt status of the thread.
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                batch = records;
+                batchFutures = futures;
+                records = new ArrayList<>();
+                futures = new ArrayList<>();
+                flushRequested = false;
+            }
+            send(batch, batchFutures);
+        }
+    }
+
+    /**
+     * Waits until a batch should be published.
+     *
+     * @return false if the accumulator is closed and empty.
+     */
+    private boolean awaitBatch() throws InterruptedException {
+
+        while (records.isEmpty()) {
+            if (closed) {
+                return false;
+            }
+            flushRequested = false;
+            wait();
+        }
+        long lingerNanos = TimeUnit.MILLISECONDS.toNanos(config.getLingerMs());
+        while (records.size() < config.getBatchSize() && !flushRequested && !closed) {
+            long remainingNanos = batchStartNanos + lingerNanos - System.nanoTime();
+            if (remainingNanos <= 0) {
+                break;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+        }
+        return true;
+    }
+
+    private void send(List<Record<K,V>> batch, List<CompletableFuture<RecordMetadata>> batchFutures) {
+
+        long batchBytes = 0;
+        for (Record<K,V> record : batch) {
+            batchBytes += record.estimatedSize();
+        }
+        try {
+            List<RecordMetadata> metadata = pubSubManager.sendAll(topic, batch, quota);
+            if (config.getAcks() == Acks.FSYNCED) {
+                pubSubManager.flush(topic, metadata);
+            }
+            for (int i = 0; i < batchFutures.size(); i++) {
+                batchFutures.get(i).complete(metadata.get(i));
+            }
+        } catch (PublisherException e) {
+            for (CompletableFuture<RecordMetadata> future : batchFutures) {
+                future.completeExceptionally(e);
+            }
+        } finally {
+            synchronized (this) {
+                bufferedBytes -= batchBytes;
+                notifyAll();
+            }
+        }
+    }
+}
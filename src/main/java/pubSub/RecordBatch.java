@@ -0,0 +1,62 @@
+package pubSub;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import static com.google.inject.internal.util.Preconditions.checkNotNull;
+
+/**
+ * An ordered group of {@link Record}s published together with {@link Publisher#publishBatch(RecordBatch)}.
+ * The records of a batch which land on the same partition are appended in a single operation, and subscribers see
+ * either all of them or none of them.
+ *
+ * @param <K> The key for the {@link Record}
+ * @param <V> The value for the {@link Record}
+ */
+public final class RecordBatch<K,V> {
+
+    private final List<Record<K,V>> records;
+
+    public RecordBatch() {
+
+        this.records = new ArrayList<>();
+    }
+
+    /**
+     * @param records The records to start the batch with, in order.
+     */
+    public RecordBatch(Collection<Record<K,V>> records) {
+        checkNotNull(records, "RecordBatch cannot be instantiated with null records");
+
+        this.records = new ArrayList<>(records.size());
+        for (Record<K,V> record : records) {
+            add(record);
+        }
+    }
+
+    /**
+     * Adds the {@link Record} at the end of the batch.
+     *
+     * @param record The record to add
+     * @return This batch.
+     */
+    public RecordBatch<K,V> add(Record<K,V> record) {
+        checkNotNull(record, "Cannot add null record to a batch");
+
+        records.add(record);
+        return this;
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    public boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    List<Record<K,V>> records() {
+        return Collections.unmodifiableList(records);
+    }
+}
@@ -0,0 +1,69 @@
+package pubSub;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A read-only view of the {@link Record}s returned by {@link Subscriber#pollView(int)}.
+ *
+ * A subscriber keeps a single view and refills it on every poll, so polling through views allocates nothing once
+ * the view has grown to the largest poll. The view is only valid until the next poll of its subscriber: keep the
+ * records themselves, not the view.
+ *
+ * @param <K> The key for the {@link Record}
+ * @param <V> The value for the {@link Record}
+ */
+public final class RecordBatchView<K,V> implements Iterable<Record<K,V>> {
+
+    // Cleared and refilled by every poll, never shrunk.
+    private final List<Record<K,V>> records = new ArrayList<>();
+
+    RecordBatchView() {
+
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    public boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    /**
+     * @param index The index of the record in the view, from 0 to {@link RecordBatchView#size()} excluded.
+     * @return The record.
+     */
+    public Record<K,V> get(int index) {
+        return records.get(index);
+    }
+
+    /**
+     * Runs the action on every record of the view, in order, without allocating.
+     */
+    @Override
+    public void forEach(Consumer<? super Record<K,V>> action) {
+
+        for (int i = 0; i < records.size(); i++) {
+            action.accept(records.get(i));
+        }
+    }
+
+    @Override
+    public Iterator<Record<K,V>> iterator() {
+        return Collections.unmodifiableList(records).iterator();
+    }
+
+    /**
+     * @return The list to refill, after clearing it.
+     */
+    List<Record<K,V>> reset() {
+
+        records.clear();
+        return records;
+    }
+}
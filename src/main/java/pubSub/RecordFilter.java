@@ -0,0 +1,130 @@
+package pubSub;
+
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Predicate;
+import static com.google.inject.internal.util.Preconditions.checkNotNull;
+
+/**
+ * Selects the {@link Record}s a {@link Subscriber} receives, see {@link Subscriber#register(RecordFilter)}.
+ * The filter is applied while the partitions are read: records which do not match are skipped before they are
+ * copied or their value is deserialized, and do not count towards the maxRecords of a poll.
+ *
+ * A filter matches on the key of the records, on a header, or on the serialized bytes of the value, and filters
+ * combine with {@link RecordFilter#and(RecordFilter)}. The predicates run on the polling thread, and should be quick
+ * and free of side effects.
+ * Instances are immutable.
+ *
+ * @param <K> The key
+ */
+public final class RecordFilter<K> {
+
+    // Null for the parts of the records which are not filtered on.
+    private final Predicate<? super K> keyPredicate;
+    private final Predicate<Map<String, byte[]>> headersPredicate;
+    private final Predicate<ByteBuffer> valuePredicate;
+
+    private RecordFilter(Predicate<? super K> keyPredicate, Predicate<Map<String, byte[]>> headersPredicate,
+                         Predicate<ByteBuffer> valuePredicate) {
+        this.keyPredicate = keyPredicate;
+        this.headersPredicate = headersPredicate;
+        this.valuePredicate = valuePredicate;
+    }
+
+    /**
+     * @param predicate Tested on the key of every record, null keys included.
+     * @return The filter matching the records whose key matches.
+     */
+    public static <K> RecordFilter<K> key(Predicate<? super K> predicate) {
+        checkNotNull(predicate, "predicate cannot be null");
+
+        return new RecordFilter<>(predicate, null, null);
+    }
+
+    /**
+     * @param name The name of the header.
+     * @param predicate Tested on the value of the header, for the records which have it.
+     * @return The filter matching the records with the header, whose value matches.
+     */
+    public static <K> RecordFilter<K> header(String name, Predicate<byte[]> predicate) {
+        checkNotNull(name, "name cannot be null");
+        checkNotNull(predicate, "predicate cannot be null");
+
+        return new RecordFilter<>(null, headers -> {
+            byte[] value = headers.get(name);
+            return value != null && predicate.test(value);
+        }, null);
+    }
+
+    /**
+     * @param name The name of the header.
+     * @param value The value of the header.
+     * @return The filter matching the records with the header set to the value.
+     */
+    public static <K> RecordFilter<K> header(String name, byte[] value) {
+        checkNotNull(value, "value cannot be null");
+
+        byte[] expected = value.clone();
+        return header(name, actual -> Arrays.equals(expected, actual));
+    }
+
+    /**
+     * Filters on the value as stored, without deserializing it. Only topics which store their values serialized
+     * support it: topics stored in files, and topics with off-heap values. Polling another topic with such a filter
+     * fails with a {@link SubscriberException}.
+     *
+     * @param predicate Tested on a read-only buffer holding the serialized value, between its position and its
+     *                  limit. The buffer is only valid during the call. Records without a value do not match.
+     * @return The filter matching the records whose serialized value matches.
+     */
+    public static <K> RecordFilter<K> valueBytes(Predicate<ByteBuffer> predicate) {
+        checkNotNull(predicate, "predicate cannot be null");
+
+        return new RecordFilter<>(null, null, predicate);
+    }
+
+    /**
+     * @return The filter matching the records which match both this filter and the other one.
+     */
+    public RecordFilter<K> and(RecordFilter<K> other) {
+        checkNotNull(other, "other cannot be null");
+
+        return new RecordFilter<>(both(keyPredicate, other.keyPredicate),
+                both(headersPredicate, other.headersPredicate), both(valuePredicate, other.valuePredicate));
+    }
+
+    private static <T> Predicate<T> both(Predicate<? super T> first, Predicate<? super T> second) {
+
+        if (first == null || second == null) {
+            @SuppressWarnings("unchecked")
+            Predicate<T> either = (Predicate<T>) ((first == null) ? second : first);
+            return either;
+        }
+        return t -> first.test(t) && second.test(t);
+    }
+
+    boolean filtersKey() {
+        return keyPredicate != null;
+    }
+
+    boolean filtersValue() {
+        return valuePredicate != null;
+    }
+
+    boolean matchesKey(K key) {
+        return keyPredicate == null || keyPredicate.test(key);
+    }
+
+    boolean matchesHeaders(Map<String, byte[]> headers) {
+        return headersPredicate == null || headersPredicate.test(headers);
+    }
+
+    /**
+     * @param value The serialized value, null if the record has none.
+     */
+    boolean matchesValue(ByteBuffer value) {
+        return valuePredicate == null || (value != null && valuePredicate.test(value));
+    }
+}
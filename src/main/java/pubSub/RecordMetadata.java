@@ -0,0 +1,35 @@
+package pubSub;
+
+
+/**
+ * Where a published {@link Record} was stored: its topic, partition and offset within the partition.
+ */
+public final class RecordMetadata {
+
+    private final String topic;
+    private final int partition;
+    private final long offset;
+
+    RecordMetadata(String topic, int partition, long offset) {
+        this.topic = topic;
+        this.partition = partition;
+        this.offset = offset;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public String toString() {
+        return topic + "-" + partition + "@" + offset;
+    }
+}
@@ -0,0 +1,250 @@
+package pubSub;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Flow.Publisher} of the {@link Record}s read by a {@link Subscriber}, see {@link Subscriber#asFlowPublisher}.
+ *
+ * Records are only read from the topic when the {@link Flow.Subscriber} requested them, so nothing is buffered
+ * beyond the demand. Delivery runs as short tasks on an {@link Executor} shared by many subscriptions: a
+ * subscription without records does not hold a thread, it is scheduled again by the next publish to the topic.
+ *
+ * @param <K> The key for the {@link Record}
+ * @param <V> The value for the {@link Record}
+ */
+final class RecordPublisher<K,V> implements Flow.Publisher<Record<K,V>> {
+
+    // The maximum number of records delivered by one task, before giving the executor thread to other subscriptions.
+    private static final int MAX_RECORDS_PER_TASK = 256;
+
+    private final Subscriber<K,V> subscriber;
+    private final Executor executor;
+
+    // A Subscriber has a single set of offsets, hence it can only be subscribed to once.
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    RecordPublisher(Subscriber<K,V> subscriber, Executor executor) {
+
+        this.subscriber = subscriber;
+        this.executor = executor;
+    }
+
+    /**
+     * @return The executor shared by the push subscriptions which are not given one.
+     */
+    static Executor defaultExecutor() {
+
+        return DefaultExecutorHolder.executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Record<K,V>> flowSubscriber) {
+
+        if (!subscribed.compareAndSet(false, true)) {
+            flowSubscriber.onSubscribe(new Flow.Subscription() {
+
+                @Override
+                public void request(long n) {
+
+                }
+
+                @Override
+                public void cancel() {
+
+                }
+            });
+            flowSubscriber.onError(new IllegalStateException("Subscriber already has a flow subscription"));
+            return;
+        }
+        subscriber.register();
+        new RecordSubscription(flowSubscriber).start();
+    }
+
+    private static class DefaultExecutorHolder {
+
+        private static final ExecutorService executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory());
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+
+            Thread thread = new Thread(runnable, "pubSubDelivery-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Delivers the records to one {@link Flow.Subscriber}. At most one delivery task runs at a time: wip counts the
+     * requests to run, and the running task keeps going until it has seen all of them.
+     */
+    private final class RecordSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super Record<K,V>> flowSubscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger(1);
+
+        // Whether a callback waits for the next publish to the topic.
+        private final AtomicBoolean awaitingRecords = new AtomicBoolean();
+
+        private volatile boolean cancelled;
+
+        // Set by an illegal request, signalled to the flow subscriber by the delivery task.
+        private volatile Throwable requestError;
+
+        // Only accessed by the delivery task.
+        private boolean started;
+        private boolean done;
+
+        RecordSubscription(Flow.Subscriber<? super Record<K,V>> flowSubscriber) {
+
+            this.flowSubscriber = flowSubscriber;
+        }
+
+        void start() {
+
+            // wip starts at one, so onSubscribe (and any request made from it) runs before the first delivery.
+            execute();
+        }
+
+        @Override
+        public void request(long n) {
+
+            if (n <= 0) {
+                requestError = new IllegalArgumentException("Requested number of records should be greater than 0");
+                cancelled = true;
+                schedule();
+                return;
+            }
+            long current;
+            do {
+                current = demand.get();
+            } while (!demand.compareAndSet(current, (current + n < 0) ? Long.MAX_VALUE : current + n));
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+
+            if (wip.getAndIncrement() == 0) {
+                execute();
+            }
+        }
+
+        private void execute() {
+
+            try {
+                executor.execute(this);
+            } catch (Exception e) {
+
+                // The executor is shut down or saturated, nothing will deliver anymore.
+                System.out.println("Record delivery could not be scheduled, cause: " + e.getMessage());
+                cancelled = true;
+            }
+        }
+
+        @Override
+        public void run() {
+
+            boolean moreRecords = false;
+            int missed = 1;
+            do {
+                if (!done) {
+                    moreRecords = deliver();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+            if (moreRecords) {
+
+                // Let the other subscriptions of the executor run before delivering the rest.
+                schedule();
+            }
+        }
+
+        /**
+         * @return Whether delivery stopped with demand and records left.
+         */
+        private boolean deliver() {
+
+            try {
+                if (!started) {
+                    started = true;
+                    flowSubscriber.onSubscribe(this);
+                }
+                if (cancelled) {
+                    finish(requestError);
+                    return false;
+                }
+
+                long requested = demand.get();
+                long delivered = 0;
+                while (delivered < requested && delivered < MAX_RECORDS_PER_TASK && !cancelled) {
+                    List<Record<K,V>> records = subscriber.poll(
+                            (int) Math.min(requested - delivered, MAX_RECORDS_PER_TASK - delivered));
+                    if (records.isEmpty()) {
+                        break;
+                    }
+                    for (Record<K,V> record : records) {
+                        flowSubscriber.onNext(record);
+                    }
+                    delivered += records.size();
+                }
+                if (requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-delivered);
+                }
+                if (cancelled) {
+                    finish(requestError);
+                    return false;
+                }
+                if (delivered == MAX_RECORDS_PER_TASK) {
+                    return true;
+                }
+                if (delivered < requested && awaitingRecords.compareAndSet(false, true)) {
+
+                    // Out of records, have the next publish schedule us again.
+                    subscriber.awaitRecordsAsync(() -> {
+                        awaitingRecords.set(false);
+                        schedule();
+                    });
+                }
+                return false;
+            } catch (SubscriberException e) {
+                finish(e);
+                return false;
+            } catch (Exception e) {
+
+                // The flow subscriber failed, which cancels the subscription.
+                System.out.println("Flow subscriber failed with exception " + e.getMessage());
+                finish(null);
+                return false;
+            }
+        }
+
+        private void finish(Throwable error) {
+
+            done = true;
+            subscriber.unregister();
+            if (error != null) {
+                flowSubscriber.onError(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package pubSub;
+
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import static com.google.inject.internal.util.Preconditions.checkNotNull;
+
+/**
+ * Publishes {@link Record}s into the topic of a {@link PubSubServer} running in another process, with the same
+ * methods as the {@link Publisher}.
+ *
+ * The keys and values are converted to bytes with the given {@link Serde}s, and the records are routed to their
+ * partition here, by the {@link Partitioner} of the {@link TopicConfig}. The partitioner is given the serialized
+ * keys, the byte[] keys of the topic on the server: the default {@link HashPartitioner} routes a key to the same
+ * partition as the publishers in the process of the server do.
+ *
+ * @param <K> The key
+ * @param <V> The value
+ */
+public class RemotePublisher<K,V> {
+
+    private final PubSubClient client;
+    private final String topic;
+    private final Serde<K> keySerde;
+    private final Serde<V> valueSerde;
+    private final Partitioner<byte[]> partitioner;
+
+    // What publishing waits for.
+    private final Acks acks;
+
+    // The number of partitions of the topic on the server.
+    private final int numPartitions;
+
+    /**
+     * Constructor.
+     * Same as {@link RemotePublisher#RemotePublisher(PubSubClient, String, Serde, Serde, TopicConfig, PublisherConfig)}
+     * with the default configurations.
+     */
+    public RemotePublisher(PubSubClient client, String topic, Serde<K> keySerde, Serde<V> valueSerde)
+            throws PublisherException {
+        this(client, topic, keySerde, valueSerde, TopicConfig.defaults(), PublisherConfig.defaults());
+    }
+
+    /**
+     * Constructor.
+     * Creates the topic on the server with the number of partitions of the {@link TopicConfig} if it does not exist
+     * yet, any other setting of a topic created this way is the default one. Topics needing other settings should
+     * be created by a {@link Publisher} in the process of the server.
+     * Only the {@link Acks} level of the {@link PublisherConfig} applies, the records are not batched.
+     *
+     * @param client The connection to the server.
+     * @param topic The topic for this {@link RemotePublisher}
+     * @param keySerde Converts the keys of the records to bytes.
+     * @param valueSerde Converts the values of the records to bytes.
+     * @param topicConfig The configuration for creating the topic, and the {@link Partitioner} to route the
+     *                    serialized keys with.
+     * @param publisherConfig The configuration of the publishing, e.g. its acks level.
+     * @throws PublisherException If the topic could not be created.
+     * @throws IllegalArgumentException If {@link Acks#FSYNCED} is requested for a topic which is not stored in files.
+     */
+    @SuppressWarnings("unchecked")
+    public RemotePublisher(PubSubClient client, String topic, Serde<K> keySerde, Serde<V> valueSerde,
+                           TopicConfig topicConfig, PublisherConfig publisherConfig) throws PublisherException {
+        checkNotNull(client, "RemotePublisher cannot be instantiated with a null client");
+        checkNotNull(topic, "RemotePublisher cannot be instantiated with a null topic");
+        checkNotNull(keySerde, "RemotePublisher cannot be instantiated with a null keySerde");
+        checkNotNull(valueSerde, "RemotePublisher cannot be instantiated with a null valueSerde");
+        checkNotNull(topicConfig, "RemotePublisher cannot be instantiated with a null topicConfig");
+        checkNotNull(publisherConfig, "RemotePublisher cannot be instantiated with a null publisherConfig");
+
+        this.client = client;
+        this.topic = topic;
+        this.keySerde = keySerde;
+        this.valueSerde = valueSerde;
+        this.partitioner = (Partitioner<byte[]>) topicConfig.getPartitioner();
+        this.acks = publisherConfig.getAcks();
+        int[] metadata;
+        try {
+
+            // The number of partitions of the topic, and 1 if it is stored in files.
+            metadata = client.call(Protocol.INIT_TOPIC,
+                    request -> request.putString(topic).putInt(topicConfig.getPartitions()),
+                    response -> new int[] {response.getInt(), response.get()});
+        } catch (IOException e) {
+            throw new PublisherException(e.getMessage());
+        }
+        this.numPartitions = metadata[0];
+        if (acks == Acks.FSYNCED && metadata[1] == 0) {
+            throw new IllegalArgumentException("acks=FSYNCED needs a topic stored in files");
+        }
+    }
+
+    /**
+     * Publishes the {@link Record} into the topic, see {@link Publisher#publish(Record)}.
+     * With {@link Acks#NONE} this does not wait for the server at all, and failures are only logged by the server.
+     *
+     * @param publisherRecord The record to publish
+     * @throws PublisherException If there was an error while publishing the record.
+     */
+    public void publish(Record<K,V> publisherRecord) throws PublisherException {
+        checkNotNull(publisherRecord, "Cannot publish null message");
+
+        publishRecords(Collections.singletonList(publisherRecord));
+    }
+
+    /**
+     * Publishes the {@link Record}s into the topic as a single batch, see {@link Publisher#publishAll(Collection)}.
+     *
+     * @param publisherRecords The records to publish, in order.
+     * @throws PublisherException If there was an error while publishing the records.
+     */
+    public void publishAll(Collection<Record<K,V>> publisherRecords) throws PublisherException {
+        checkNotNull(publisherRecords, "Cannot publish null messages");
+
+        publishBatch(new RecordBatch<>(publisherRecords));
+    }
+
+    /**
+     * Publishes the {@link RecordBatch} into the topic in a single request, see {@link Publisher#publishBatch}.
+     *
+     * @param batch The batch to publish
+     * @throws PublisherException If there was an error while publishing the batch.
+     */
+    public void publishBatch(RecordBatch<K,V> batch) throws PublisherException {
+        checkNotNull(batch, "Cannot publish null batch");
+
+        if (!batch.isEmpty()) {
+            publishRecords(batch.records());
+        }
+    }
+
+    private void publishRecords(List<Record<K,V>> records) throws PublisherException {
+
+        PubSubClient.RequestWriter request = payload -> {
+            payload.putString(topic).putByte((byte) acks.ordinal()).putInt(records.size());
+            for (Record<K,V> record : records) {
+                byte[] key = (record.getKey() == null) ? null : keySerde.serialize(record.getKey());
+                V value = record.getValue();
+                payload.putInt(partitioner.partition(key, numPartitions))
+                        .putBytes(key)
+                        .putBytes((value == null) ? null : valueSerde.serialize(value))
+                        .putHeaders(record.getHeaders());
+            }
+        };
+        try {
+            if (acks == Acks.NONE) {
+                client.send(Protocol.PRODUCE, request);
+            } else {
+                client.call(Protocol.PRODUCE, request, response -> null);
+            }
+        } catch (IOException e) {
+
+            // Log actual cause and throw exception back.
+            System.out.println("Publishing failed with exception " + e.getMessage());
+            throw new PublisherException("Publishing failed");
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package pubSub;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import static com.google.inject.internal.util.Preconditions.checkArgument;
+import static com.google.inject.internal.util.Preconditions.checkNotNull;
+
+/**
+ * Reads {@link Record}s from the topic of a {@link PubSubServer} running in another process, with the same methods
+ * as the {@link Subscriber}. The offsets and consumer groups are kept by the server.
+ *
+ * The keys and values are converted back from bytes with the given {@link Serde}s.
+ *
+ * @param <K> The key
+ * @param <V> The value
+ */
+public class RemoteSubscriber<K,V> {
+
+    private final PubSubClient client;
+    private final String topic;
+    private final Serde<K> keySerde;
+    private final Serde<V> valueSerde;
+
+    // The partitions of the topic read by this RemoteSubscriber, null for all of them.
+    private final int[] partitions;
+
+    // The consumer group this RemoteSubscriber is a member of, null if it reads the topic on its own.
+    private final String groupId;
+
+    // The handle returned by the server on registration, -1 while this RemoteSubscriber is not registered.
+    private volatile int handle = -1;
+
+    /**
+     * Instantiates a new {@link RemoteSubscriber} reading every partition of the topic, see
+     * {@link Subscriber#Subscriber(String)}.
+     *
+     * @param client The connection to the server.
+     * @param topic The topic corresponding to this RemoteSubscriber.
+     * @param keySerde Converts the keys of the records back from bytes.
+     * @param valueSerde Converts the values of the records back from bytes.
+     */
+    public RemoteSubscriber(PubSubClient client, String topic, Serde<K> keySerde, Serde<V> valueSerde) {
+        this(client, topic, null, null, keySerde, valueSerde);
+    }
+
+    /**
+     * Instantiates a new {@link RemoteSubscriber} as a member of a consumer group, see
+     * {@link Subscriber#Subscriber(String, String)}. The members of a group may be spread across processes.
+     *
+     * @param client The connection to the server.
+     * @param topic The topic corresponding to this RemoteSubscriber.
+     * @param groupId The consumer group to join on {@link RemoteSubscriber#register()}.
+     * @param keySerde Converts the keys of the records back from bytes.
+     * @param valueSerde Converts the values of the records back from bytes.
+     */
+    public RemoteSubscriber(PubSubClient client, String topic, String groupId, Serde<K> keySerde,
+                            Serde<V> valueSerde) {
+        this(client, topic, null, checkNotNull(groupId, "RemoteSubscriber cannot be instantiated with null groupId"),
+                keySerde, valueSerde);
+    }
+
+    /**
+     * Instantiates a new {@link RemoteSubscriber} reading only the given partitions of the topic, see
+     * {@link Subscriber#Subscriber(String, Collection)}.
+     *
+     * @param client The connection to the server.
+     * @param topic The topic corresponding to this RemoteSubscriber.
+     * @param partitions The partitions of the topic to read from.
+     * @param keySerde Converts the keys of the records back from bytes.
+     * @param valueSerde Converts the values of the records back from bytes.
+     */
+    public RemoteSubscriber(PubSubClient client, String topic, Collection<Integer> partitions, Serde<K> keySerde,
+                            Serde<V> valueSerde) {
+        this(client, topic, toArray(partitions), null, keySerde, valueSerde);
+    }
+
+    private RemoteSubscriber(PubSubClient client, String topic, int[] partitions, String groupId, Serde<K> keySerde,
+                             Serde<V> valueSerde) {
+        checkNotNull(client, "RemoteSubscriber cannot be instantiated with null client");
+        checkNotNull(topic, "RemoteSubscriber cannot be instantiated with null topic");
+        checkNotNull(keySerde, "RemoteSubscriber cannot be instantiated with null keySerde");
+        checkNotNull(valueSerde, "RemoteSubscriber cannot be instantiated with null valueSerde");
+
+        this.client = client;
+        this.topic = topic;
+        this.partitions = partitions;
+        this.groupId = groupId;
+        this.keySerde = keySerde;
+        this.valueSerde = valueSerde;
+    }
+
+    private static int[] toArray(Collection<Integer> partitions) {
+        checkNotNull(partitions, "RemoteSubscriber cannot be instantiated with null partitions");
+        checkArgument(!partitions.isEmpty(), "RemoteSubscriber should read at least one partition");
+
+        return partitions.stream().mapToInt(Integer::intValue).distinct().toArray();
+    }
+
+    /**
+     * Register the subscriber with the server, see {@link Subscriber#register()}.
+     *
+     * @throws SubscriberException If the server could not be reached.
+     */
+    public void register() throws SubscriberException {
+
+        if (handle >= 0) {
+
+            // Registering again starts over, like a new subscriber.
+            unregister();
+        }
+        handle = call(Protocol.REGISTER, request -> {
+            request.putString(topic).putString(groupId).putInt((partitions == null) ? -1 : partitions.length);
+            if (partitions != null) {
+                for (int partition : partitions) {
+                    request.putInt(partition);
+                }
+            }
+        }, ByteBuffer::getInt);
+    }
+
+    /**
+     * Unregister the subscriber from the server, see {@link Subscriber#unregister()}.
+     *
+     * @throws SubscriberException If the server could not be reached.
+     */
+    public void unregister() throws SubscriberException {
+
+        int current = handle;
+        if (current >= 0) {
+            handle = -1;
+            call(Protocol.UNREGISTER, request -> request.putInt(current), response -> null);
+        }
+    }
+
+    /**
+     * @return The number of partitions of the topic.
+     * @throws SubscriberException If the topic does not exist.
+     */
+    public int numPartitions() throws SubscriberException {
+
+        return call(Protocol.METADATA, request -> request.putString(topic), ByteBuffer::getInt);
+    }
+
+    /**
+     * Retrieves {@link Record}s from the server, see {@link Subscriber#poll(int)}.
+     *
+     * @param maxRecords The maximum number of records to return.
+     * @return The List of records.
+     * @throws SubscriberException If there was any error while retrieving the records.
+     */
+    public List<Record<K,V>> poll(int maxRecords) throws SubscriberException {
+        checkArgument(maxRecords > 0, "maxRecords should be greater than 0");
+
+        return fetch(1, maxRecords, 0);
+    }
+
+    /**
+     * Retrieves {@link Record}s from the server, waiting for up to timeout if there are none yet, see
+     * {@link Subscriber#poll(int, Duration)}. The server answers as soon as a record is published to the topic.
+     *
+     * @param maxRecords The maximum number of records to return.
+     * @param timeout The maximum time to wait for a record.
+     * @return The List of records, empty if none got published before the timeout.
+     * @throws SubscriberException If there was any error while retrieving the records.
+     */
+    public List<Record<K,V>> poll(int maxRecords, Duration timeout) throws SubscriberException {
+
+        return poll(1, maxRecords, timeout);
+    }
+
+    /**
+     * Retrieves {@link Record}s from the server, waiting for up to timeout until there are at least minRecords of
+     * them, see {@link Subscriber#poll(int, int, Duration)}.
+     *
+     * @param minRecords The number of records to wait for.
+     * @param maxRecords The maximum number of records to return.
+     * @param timeout The maximum time to wait for minRecords records.
+     * @return The List of records.
+     * @throws SubscriberException If there was any error while retrieving the records.
+     */
+    public List<Record<K,V>> poll(int minRecords, int maxRecords, Duration timeout) throws SubscriberException {
+        checkArgument(maxRecords > 0, "maxRecords should be greater than 0");
+        checkArgument(minRecords > 0 && minRecords <= maxRecords, "minRecords should be between 1 and maxRecords");
+        checkNotNull(timeout, "timeout cannot be null");
+        checkArgument(!timeout.isNegative(), "timeout should be >= 0");
+
+        long timeoutMs;
+        try {
+            timeoutMs = timeout.toMillis();
+        } catch (ArithmeticException e) {
+
+            // Longer than we could ever wait for.
+            timeoutMs = Long.MAX_VALUE;
+        }
+        return fetch(minRecords, maxRecords, timeoutMs);
+    }
+
+    private List<Record<K,V>> fetch(int minRecords, int maxRecords, long timeoutMs) throws SubscriberException {
+
+        int current = handle;
+        return call(Protocol.FETCH, request -> request.putInt(current).putInt(minRecords).putInt(maxRecords)
+                .putLong(timeoutMs), response -> {
+            int count = response.getInt();
+            if (count == 0) {
+                return Collections.emptyList();
+            }
+            List<Record<K,V>> records = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long timestamp = response.getLong();
+                byte[] key = Protocol.getBytes(response);
+                byte[] value = Protocol.getBytes(response);
+                Map<String, byte[]> headers = Protocol.getHeaders(response);
+                records.add(new Record<>((key == null) ? null : keySerde.deserialize(key),
+                        (value == null) ? null : valueSerde.deserialize(value), headers, timestamp));
+            }
+            return records;
+        });
+    }
+
+    /**
+     * Rewinds the subscriber's offset by rewindCount in every partition it reads, see {@link Subscriber#rewind(int)}.
+     *
+     * @param rewindCount The number of {@link Record}s to rewind
+     * @throws SubscriberException If the server could not be reached.
+     */
+    public void rewind(int rewindCount) throws SubscriberException {
+        checkArgument(rewindCount > 0, "Illegal rewindCount, should be > 0");
+
+        rewindPartition(-1, rewindCount);
+    }
+
+    /**
+     * Rewinds the subscriber's offset by rewindCount in a single partition, see {@link Subscriber#rewind(int, int)}.
+     *
+     * @param partition The partition to rewind
+     * @param rewindCount The number of {@link Record}s to rewind
+     * @throws SubscriberException If the server could not be reached.
+     */
+    public void rewind(int partition, int rewindCount) throws SubscriberException {
+        checkArgument(partition >= 0, "Illegal partition, should be >= 0");
+        checkArgument(rewindCount > 0, "Illegal rewindCount, should be > 0");
+
+        rewindPartition(partition, rewindCount);
+    }
+
+    private void rewindPartition(int partition, int rewindCount) throws SubscriberException {
+
+        int current = handle;
+        call(Protocol.REWIND, request -> request.putInt(current).putInt(partition).putInt(rewindCount),
+                response -> null);
+    }
+
+    /**
+     * Moves this subscriber to the first {@link Record} appended at or after the timestamp, see
+     * {@link Subscriber#seekToTimestamp(Instant)}.
+     *
+     * @param timestamp The time to replay the records from.
+     * @throws SubscriberException If the subscriber is not registered.
+     */
+    public void seekToTimestamp(Instant timestamp) throws SubscriberException {
+        checkNotNull(timestamp, "timestamp cannot be null");
+
+        seek(-1, Protocol.SEEK_TIMESTAMP, timestamp.toEpochMilli());
+    }
+
+    /**
+     * Moves this subscriber to the offset in every partition it reads, see {@link Subscriber#seekToOffset(long)}.
+     *
+     * @param offset The offset of the next record to read.
+     * @throws SubscriberException If the subscriber is not registered.
+     */
+    public void seekToOffset(long offset) throws SubscriberException {
+        checkArgument(offset >= 0, "Illegal offset, should be >= 0");
+
+        seek(-1, Protocol.SEEK_OFFSET, offset);
+    }
+
+    /**
+     * Moves this subscriber to the offset in a single partition, see {@link Subscriber#seekToOffset(int, long)}.
+     *
+     * @param partition The partition to move in.
+     * @param offset The offset of the next record to read.
+     * @throws SubscriberException If the subscriber is not registered.
+     */
+    public void seekToOffset(int partition, long offset) throws SubscriberException {
+        checkArgument(partition >= 0, "Illegal partition, should be >= 0");
+        checkArgument(offset >= 0, "Illegal offset, should be >= 0");
+
+        seek(partition, Protocol.SEEK_OFFSET, offset);
+    }
+
+    /**
+     * Moves this subscriber to the oldest retained {@link Record} in every partition it reads.
+     *
+     * @throws SubscriberException If the subscriber is not registered.
+     */
+    public void seekToBeginning() throws SubscriberException {
+
+        seek(-1, Protocol.SEEK_BEGINNING, 0);
+    }
+
+    /**
+     * Moves this subscriber past the last {@link Record} in every partition it reads.
+     *
+     * @throws SubscriberException If the subscriber is not registered.
+     */
+    public void seekToEnd() throws SubscriberException {
+
+        seek(-1, Protocol.SEEK_END, 0);
+    }
+
+    private void seek(int partition, byte mode, long value) throws SubscriberException {
+
+        int current = handle;
+        call(Protocol.SEEK, request -> request.putInt(current).putInt(partition).putByte(mode).putLong(value),
+                response -> null);
+    }
+
+    private <T> T call(byte apiKey, PubSubClient.RequestWriter request, PubSubClient.ResponseReader<T> response)
+            throws SubscriberException {
+
+        try {
+            return client.call(apiKey, request, response);
+        } catch (IOException e) {
+            throw new SubscriberException(e.getMessage());
+        }
+    }
+}
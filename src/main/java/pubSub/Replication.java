@@ -0,0 +1,152 @@
+package pubSub;
+
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The replication state of a topic: its high-water mark per partition, the offset below which records are visible
+ * to the subscribers.
+ *
+ * On the leader, every fetch of a {@link TopicFollower} reports the offset the follower fetches from, which is the
+ * offset the follower has every record below of. Followers which fetched within the lag time are in sync, and as
+ * long as at least minInSyncFollowers of them are, the high-water mark moves to the smallest of their offsets.
+ * On a follower, the high-water mark is the one the leader sent with the last fetch.
+ */
+final class Replication {
+
+    private final int minInSyncFollowers;
+    private final long lagTimeNanos;
+    private final AtomicLongArray highWatermarks;
+
+    // The followers of this leader, by follower id.
+    private final Map<String, FollowerState> followers = new ConcurrentHashMap<>();
+
+    // Whether the topic is a follower, which only the leader appends to.
+    private volatile boolean following;
+
+    /**
+     * The offsets a follower fetches from.
+     */
+    private static final class FollowerState {
+
+        private final AtomicLongArray fetchOffsets;
+        private volatile long lastFetchNanos;
+
+        private FollowerState(int numPartitions) {
+            this.fetchOffsets = new AtomicLongArray(numPartitions);
+        }
+    }
+
+    Replication(int numPartitions, int minInSyncFollowers, long lagTimeMs) {
+        this.minInSyncFollowers = minInSyncFollowers;
+        this.lagTimeNanos = lagTimeMs * 1_000_000;
+        this.highWatermarks = new AtomicLongArray(numPartitions);
+    }
+
+    boolean isFollowing() {
+        return following;
+    }
+
+    /**
+     * @return Whether followers fetch from this topic.
+     */
+    boolean isLeader() {
+        return !following && minInSyncFollowers > 0;
+    }
+
+    /**
+     * @return The offset below which the records of the partition are visible, Long.MAX_VALUE if every record is.
+     */
+    long highWatermark(int partition) {
+
+        if (!following && minInSyncFollowers == 0) {
+            return Long.MAX_VALUE;
+        }
+        return highWatermarks.get(partition);
+    }
+
+    /**
+     * Called on the leader for every partition fetched by a follower.
+     *
+     * @param followerId The follower.
+     * @param partition The partition fetched.
+     * @param fetchOffset The offset the follower fetches from, it has every record below.
+     * @param tail The tail of the partition on the leader.
+     * @param nowNanos The current {@link System#nanoTime()}.
+     * @return Whether the high-water mark moved.
+     */
+    boolean fetched(String followerId, int partition, long fetchOffset, long tail, long nowNanos) {
+
+        FollowerState follower = followers.computeIfAbsent(followerId, f -> new FollowerState(highWatermarks.length()));
+        follower.fetchOffsets.set(partition, fetchOffset);
+        follower.lastFetchNanos = nowNanos;
+        return advance(partition, tail, nowNanos);
+    }
+
+    /**
+     * Moves the high-water mark of the partition on the leader to the smallest offset of the followers in sync, if
+     * enough of them are. Also called periodically, as a follower dropping out of sync may let it move.
+     *
+     * @return Whether the high-water mark moved.
+     */
+    boolean advance(int partition, long tail, long nowNanos) {
+
+        int inSync = 0;
+        long replicated = tail;
+        for (FollowerState follower : followers.values()) {
+            if (nowNanos - follower.lastFetchNanos <= lagTimeNanos) {
+                inSync++;
+                replicated = Math.min(replicated, follower.fetchOffsets.get(partition));
+            }
+        }
+        return inSync >= minInSyncFollowers && moveHighWatermark(partition, replicated);
+    }
+
+    /**
+     * Called on the leader by retention, which keeps the records the followers in sync still have to fetch. Followers
+     * out of sync do not hold the records back, and may find the records they need dropped.
+     *
+     * @return The smallest offset the followers in sync fetch the partition from, Long.MAX_VALUE if none is.
+     */
+    long replicatedOffset(int partition, long nowNanos) {
+
+        long replicated = Long.MAX_VALUE;
+        for (FollowerState follower : followers.values()) {
+            if (nowNanos - follower.lastFetchNanos <= lagTimeNanos) {
+                replicated = Math.min(replicated, follower.fetchOffsets.get(partition));
+            }
+        }
+        return replicated;
+    }
+
+    /**
+     * Called on a follower with the high-water mark sent by the leader.
+     *
+     * @return Whether the high-water mark moved.
+     */
+    boolean moveHighWatermark(int partition, long highWatermark) {
+
+        long current;
+        do {
+            current = highWatermarks.get(partition);
+            if (highWatermark <= current) {
+                return false;
+            }
+        } while (!highWatermarks.compareAndSet(partition, current, highWatermark));
+        return true;
+    }
+
+    void follow() {
+        following = true;
+    }
+
+    /**
+     * Turns the follower into a leader. Its records become visible as per its own minInSyncFollowers: all of them if
+     * it has none, or once its own followers caught up.
+     */
+    void promote() {
+        following = false;
+    }
+}
@@ -0,0 +1,1105 @@
+package pubSub;
+
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * Partition log stored in memory-mapped segment files, so that the records survive a restart and do not take heap.
+ *
+ * A segment is a file named after the offset of its first record, pre-allocated to the segment size and mapped in
+ * full. Records are appended in batches, as frames:
+ *   [int length][long base offset][int crc][long timestamp][int count][byte codec][int records length][records]
+ * where length counts the bytes after the length field, the crc covers the bytes after the crc field, and the count
+ * records of the frame have the offsets from the base offset on and share the timestamp. The records are
+ *   [int key length][key][int value length][value][int header count] header count times [name][value]
+ * with a length of -1 for a null key or value, compressed as a whole by the codec with the id of the frame unless it
+ * is {@link CompressionCodec#NONE_ID}. The records length is their length before compression.
+ *
+ * A batch is cut into frames of up to {@link SegmentLog#MAX_BATCH_BYTES} bytes of records. Once a frame does not fit
+ * into the active segment, the segment is flushed to disk and a new one is created. Every
+ * {@link SegmentLog#INDEX_INTERVAL_BYTES} bytes a segment records the position of a frame in its sparse index,
+ * along with the newest timestamp before that frame. Readers binary search the index by offset or by timestamp
+ * before scanning a few frames forward, and decode (decompress) every frame they read records of once. A segment keeps
+ * the last frame it decompressed, along with where the last read stopped in it: small reads through a compressed
+ * frame, such as the polls of a subscriber, decompress it once, and do not skip the records read before.
+ *
+ * Appends are serialized by a lock and published by moving the tail. Readers never lock and decode the records
+ * straight from the mapped files. On startup the segments are scanned: the first frame which is torn (e.g. its crc
+ * does not match after a crash) ends the log, and anything after it is removed.
+ *
+ * The segments double as the write-ahead log of the partition. Publishers which need their records on disk call
+ * {@link SegmentLog#flush(long)}: one of them forces the mapped files on behalf of all the waiting ones (group
+ * commit), after waiting up to the flush interval for more records unless the flush byte threshold is reached.
+ *
+ * Retention deletes whole segments, the active segment is never deleted. Compaction is not supported.
+ *
+ * @param <K> The key for the {@link Record}
+ * @param <V> The value for the {@link Record}
+ */
+final class SegmentLog<K,V> implements PartitionLog<K,V> {
+
+    static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final int INDEX_INTERVAL_BYTES = 4096;
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final int MAX_BATCH_BYTES = 1024 * 1024;
+
+    // The length field, and the base offset, crc, timestamp, count, codec and records length fields counted by the
+    // length.
+    private static final int LENGTH_BYTES = 4;
+    private static final int FRAME_OVERHEAD = 8 + 4 + 8 + 4 + 1 + 4;
+
+    // The position of the fields in a frame.
+    private static final int TIMESTAMP_POSITION = LENGTH_BYTES + 8 + 4;
+    private static final int COUNT_POSITION = TIMESTAMP_POSITION + 8;
+    private static final int CODEC_POSITION = COUNT_POSITION + 4;
+    private static final int RECORDS_LENGTH_POSITION = CODEC_POSITION + 1;
+    private static final int RECORDS_POSITION = RECORDS_LENGTH_POSITION + 4;
+
+    // Reads the frames compressed by the built-in codec on topics opened with another one.
+    private static final CompressionCodec DEFLATE = CompressionCodec.deflate();
+
+    private final Path directory;
+    private final Serde<K> keySerde;
+    private final Serde<V> valueSerde;
+    private final int segmentBytes;
+    private final long flushIntervalMs;
+    private final long flushBytes;
+
+    // Compresses the frames, null to store them uncompressed.
+    private final CompressionCodec compression;
+
+    // Ordered by base offset, the last one is the active segment. Replaced as a whole, under the lock.
+    private volatile Segment[] segments;
+
+    // All the offsets below the tail are written and visible to the readers.
+    private volatile long tail;
+
+    private volatile long startOffset;
+    private volatile long sizeInBytes;
+
+    // The number of bytes ever appended, never decreased by retention.
+    private volatile long appendedBytes;
+
+    // Group commit state: everything below flushedOffset (flushedBytes) is on disk. Guarded by flushMonitor.
+    private final Object flushMonitor = new Object();
+    private volatile long flushedOffset;
+    private long flushedBytes;
+    private boolean flushing;
+
+    SegmentLog(Path directory, Serde<K> keySerde, Serde<V> valueSerde, int segmentBytes, long flushIntervalMs,
+               long flushBytes, CompressionCodec compression) {
+
+        this.directory = directory;
+        this.keySerde = keySerde;
+        this.valueSerde = valueSerde;
+        this.segmentBytes = segmentBytes;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushBytes = flushBytes;
+        this.compression = compression;
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the segments in " + directory, e);
+        }
+    }
+
+    @Override
+    public long append(Record<K,V> record) {
+
+        return appendAll(Collections.singletonList(record));
+    }
+
+    @Override
+    public long appendAll(List<Record<K,V>> records) {
+
+        // Serialize and compress outside of the lock, and before writing anything.
+        return appendFrames(encode(records, System.currentTimeMillis()));
+    }
+
+    /**
+     * Serializes and compresses the records into their frames.
+     */
+    @Override
+    public LongSupplier prepare(List<Record<K,V>> records) {
+
+        List<byte[]> frames = encode(records, System.currentTimeMillis());
+        return () -> appendFrames(frames);
+    }
+
+    /**
+     * Cuts a new frame wherever the timestamp of the records changes, as the records of a frame share theirs.
+     */
+    @Override
+    public long appendReplicated(List<Record<K,V>> records) {
+
+        return appendFrames(encode(records, -1));
+    }
+
+    private long appendFrames(List<byte[]> frames) {
+
+        long bytes = 0;
+        for (byte[] frame : frames) {
+            bytes += frame.length;
+        }
+        synchronized (this) {
+            long baseOffset = tail;
+            Segment active = segments[segments.length - 1];
+            int activePosition = active.writePosition;
+            long activeNextOffset = active.nextOffset;
+            long activeMaxTimestamp = active.maxTimestamp;
+
+            // Create the segments the batch rolls into before writing anything, then write every frame into its
+            // segment. A failure on the way leaves the log as it was before the batch.
+            List<Segment> rolled = new ArrayList<>();
+            Segment[] targets = null;
+            try {
+                targets = placeFrames(frames, active, baseOffset, rolled);
+                long offset = baseOffset;
+                for (int i = 0; i < frames.size(); i++) {
+                    write(targets[i], frames.get(i), offset);
+                    offset += ByteBuffer.wrap(frames.get(i)).getInt(COUNT_POSITION);
+                }
+                install(rolled);
+                publish(offset, bytes);
+            } catch (RuntimeException | Error e) {
+                active.truncate(activePosition, activeEnd(targets, frames, active, activePosition),
+                        activeNextOffset, activeMaxTimestamp);
+                for (Segment segment : rolled) {
+                    delete(segment);
+                }
+                throw e;
+            }
+            return baseOffset;
+        }
+    }
+
+    @Override
+    public long read(long fromOffset, int maxRecords, List<Record<K,V>> out) {
+
+        return read(fromOffset, Long.MAX_VALUE, maxRecords, null, out);
+    }
+
+    @Override
+    public long read(long fromOffset, long endOffset, int maxRecords, RecordFilter<K> filter,
+                     List<Record<K,V>> out) {
+
+        long currentTail = Math.min(endOffset, tail);
+        Segment[] currentSegments = segments;
+        int segmentIndex = segmentFor(currentSegments, fromOffset);
+        if (segmentIndex < 0 || fromOffset < startOffset) {
+            throw new OffsetOutOfRangeException(fromOffset);
+        }
+
+        long offset = fromOffset;
+        int count = 0;
+        while (offset < currentTail && count < maxRecords) {
+            Segment segment = currentSegments[segmentIndex];
+            long segmentEnd = (segmentIndex + 1 < currentSegments.length)
+                    ? currentSegments[segmentIndex + 1].baseOffset : currentTail;
+            if (offset >= segmentEnd) {
+                segmentIndex++;
+                continue;
+            }
+            ByteBuffer view = segment.buffer.duplicate();
+            int position = segment.positionOf(view, offset);
+            while (offset < segmentEnd && offset < currentTail && count < maxRecords) {
+                int initialSize = out.size();
+                offset += decode(segment, view, position, offset, Math.min(segmentEnd, currentTail) - offset,
+                        maxRecords - count, filter, out);
+                count += out.size() - initialSize;
+                position += LENGTH_BYTES + view.getInt(position);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Binary searches for the first segment holding a record at least as recent as the timestamp, then its index.
+     */
+    @Override
+    public long offsetForTimestamp(long timestampMs) {
+
+        long currentTail = tail;
+        Segment[] currentSegments = segments;
+        int low = 0;
+        int high = currentSegments.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (currentSegments[middle].maxTimestamp >= timestampMs) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        for (int i = low; i < currentSegments.length; i++) {
+            long segmentEnd = (i + 1 < currentSegments.length) ? currentSegments[i + 1].baseOffset : currentTail;
+            long offset = currentSegments[i].offsetForTimestamp(timestampMs, Math.min(segmentEnd, currentTail));
+            if (offset >= 0) {
+                return offset;
+            }
+        }
+        return currentTail;
+    }
+
+    @Override
+    public long tail() {
+        return tail;
+    }
+
+    @Override
+    public long startOffset() {
+        return startOffset;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * Deletes the oldest segments which are no longer needed, with the same rules as {@link TopicLog} applies to its
+     * chunks: a segment is only deleted if the log stays above the size limits without it.
+     */
+    @Override
+    public synchronized long enforceRetention(long maxRecords, long maxBytes, long maxAgeMs, long consumedOffset,
+                                              long replicatedOffset, long nowMs) {
+
+        Segment[] currentSegments = segments;
+        long retainedRecords = tail - startOffset;
+        long retainedBytes = sizeInBytes;
+        int dropped = 0;
+        while (dropped < currentSegments.length - 1 && currentSegments[dropped + 1].baseOffset <= replicatedOffset) {
+            Segment segment = currentSegments[dropped];
+            Segment nextSegment = currentSegments[dropped + 1];
+            long segmentRecords = nextSegment.baseOffset - segment.baseOffset;
+
+            boolean drop = (maxRecords >= 0 && retainedRecords - segmentRecords >= maxRecords)
+                    || (maxBytes >= 0 && retainedBytes - segment.size >= maxBytes)
+                    || (consumedOffset >= 0 && consumedOffset >= nextSegment.baseOffset)
+
+                    // All the records of this segment were appended before the next segment was created.
+                    || (maxAgeMs >= 0 && nowMs - nextSegment.createdTimeMs > maxAgeMs);
+            if (!drop) {
+                break;
+            }
+            retainedRecords -= segmentRecords;
+            retainedBytes -= segment.size;
+            dropped++;
+        }
+        if (dropped == 0) {
+            return 0;
+        }
+
+        // Readers already in the dropped segments keep reading from their mapping, the file is only unlinked.
+        segments = Arrays.copyOfRange(currentSegments, dropped, currentSegments.length);
+        startOffset = segments[0].baseOffset;
+        sizeInBytes = retainedBytes;
+        for (int i = 0; i < dropped; i++) {
+            try {
+                Files.deleteIfExists(currentSegments[i].file);
+            } catch (IOException e) {
+                System.out.println("Could not delete segment " + currentSegments[i].file + ", cause: " + e.getMessage());
+            }
+        }
+        return startOffset - currentSegments[0].baseOffset;
+    }
+
+    /**
+     * Replaces the segments of the log, which hold no record, with a segment starting at the offset.
+     */
+    @Override
+    public synchronized void resetTo(long offset) {
+
+        if (offset == tail) {
+            return;
+        }
+        if (tail != startOffset) {
+            throw new IllegalStateException("Only a log without records can be reset");
+        }
+        Segment[] currentSegments = segments;
+        segments = new Segment[] {createSegment(offset)};
+        startOffset = offset;
+        tail = offset;
+        flushedOffset = offset;
+        for (Segment segment : currentSegments) {
+            delete(segment);
+        }
+    }
+
+    /**
+     * Blocks until the records below endOffset are on disk. Concurrent callers are served by the same flush: the
+     * first one becomes the leader and flushes every record appended so far, the others wait for it.
+     */
+    @Override
+    public void flush(long endOffset) {
+
+        while (flushedOffset < endOffset) {
+            synchronized (flushMonitor) {
+                if (flushedOffset >= endOffset) {
+                    return;
+                }
+                if (flushing) {
+                    if (appendedBytes - flushedBytes >= flushBytes) {
+
+                        // Enough to flush, cut the linger of the leader short.
+                        flushMonitor.notifyAll();
+                    }
+                    waitForFlush(0);
+                    continue;
+                }
+                flushing = true;
+                try {
+                    lingerForMoreRecords();
+                } catch (RuntimeException e) {
+
+                    // Let another waiter lead the flush.
+                    flushing = false;
+                    flushMonitor.notifyAll();
+                    throw e;
+                }
+            }
+
+            // Read the bytes first, the flush covers at least that many.
+            long bytes = appendedBytes;
+            long targetOffset = tail;
+            try {
+                Segment[] currentSegments = segments;
+                for (int i = Math.max(0, segmentFor(currentSegments, flushedOffset)); i < currentSegments.length; i++) {
+                    currentSegments[i].buffer.force();
+                }
+            } finally {
+                synchronized (flushMonitor) {
+                    flushing = false;
+                    flushedOffset = Math.max(flushedOffset, targetOffset);
+                    flushedBytes = Math.max(flushedBytes, bytes);
+                    flushMonitor.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void lingerForMoreRecords() {
+
+        long deadline = System.currentTimeMillis() + flushIntervalMs;
+        while (appendedBytes - flushedBytes < flushBytes) {
+            long remainingMs = deadline - System.currentTimeMillis();
+            if (remainingMs <= 0) {
+                return;
+            }
+            waitForFlush(remainingMs);
+        }
+    }
+
+    private void waitForFlush(long timeoutMs) {
+
+        try {
+            flushMonitor.wait(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the flush to disk");
+        }
+    }
+
+    @Override
+    public long compact(long tombstoneRetentionMs, long nowMs) {
+
+        // Not supported, TopicConfig does not allow compacted topics stored in files.
+        return 0;
+    }
+
+    /**
+     * Finds the segment of every frame: the active segment while the frames fit into it, then new segments, which
+     * are created but not made part of the log yet. Called under the lock.
+     *
+     * @param rolled The list to add the created segments to, so that they can be dropped if the append fails.
+     * @return The segment to write every frame into.
+     */
+    private Segment[] placeFrames(List<byte[]> frames, Segment active, long baseOffset, List<Segment> rolled) {
+
+        Segment[] targets = new Segment[frames.size()];
+        Segment segment = active;
+        long position = active.writePosition;
+        long offset = baseOffset;
+        for (int i = 0; i < targets.length; i++) {
+            byte[] frame = frames.get(i);
+
+            // A frame larger than an empty segment does not fit anywhere, and fails when written.
+            if (position > 0 && position + frame.length > segment.buffer.capacity()) {
+                segment = createSegment(offset);
+                rolled.add(segment);
+                position = 0;
+            }
+            targets[i] = segment;
+            position += frame.length;
+            offset += ByteBuffer.wrap(frame).getInt(COUNT_POSITION);
+        }
+        return targets;
+    }
+
+    /**
+     * @param targets The segment of every frame, null if the frames were not placed.
+     * @return The position the frames placed into the active segment end at, including a partially written one.
+     */
+    private static int activeEnd(Segment[] targets, List<byte[]> frames, Segment active, int activePosition) {
+
+        long end = activePosition;
+        for (int i = 0; targets != null && i < targets.length && targets[i] == active; i++) {
+            end += frames.get(i).length;
+        }
+        return (int) Math.min(end, active.buffer.capacity());
+    }
+
+    /**
+     * Writes the frame at the end of the segment. Called under the lock.
+     *
+     * @param offset The offset of the first record of the frame.
+     */
+    private void write(Segment segment, byte[] frame, long offset) {
+
+        ByteBuffer frameBuffer = ByteBuffer.wrap(frame);
+        frameBuffer.putLong(LENGTH_BYTES, offset);
+        segment.append(frameBuffer);
+    }
+
+    /**
+     * Makes the frames written since the last call visible to the readers. Called under the lock.
+     */
+    private void publish(long newTail, long bytes) {
+
+        sizeInBytes += bytes;
+        appendedBytes += bytes;
+        tail = newTail;
+    }
+
+    /**
+     * Adds the segments a batch rolled into to the log, once the batch is written. Called under the lock.
+     */
+    private void install(List<Segment> rolled) {
+
+        if (rolled.isEmpty()) {
+            return;
+        }
+
+        // The previous segments are complete, make sure they are on disk before moving on.
+        segments[segments.length - 1].buffer.force();
+        for (int i = 0; i < rolled.size() - 1; i++) {
+            rolled.get(i).buffer.force();
+        }
+        Segment[] newSegments = Arrays.copyOf(segments, segments.length + rolled.size());
+        for (int i = 0; i < rolled.size(); i++) {
+            newSegments[segments.length + i] = rolled.get(i);
+        }
+        segments = newSegments;
+    }
+
+    /**
+     * Removes the file of a segment created by a failed append, which never was part of the log.
+     */
+    private static void delete(Segment segment) {
+
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            System.out.println("Could not delete segment " + segment.file + ", cause: " + e.getMessage());
+        }
+    }
+
+    private Segment createSegment(long baseOffset) {
+
+        Path file = directory.resolve(String.format("%020d", baseOffset) + SEGMENT_SUFFIX);
+        try {
+            return new Segment(baseOffset, file, map(file), System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create segment " + file, e);
+        }
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+            if (randomAccessFile.length() < segmentBytes) {
+
+                // The file is sparse, disk space is only used as records are written.
+                randomAccessFile.setLength(segmentBytes);
+            }
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, randomAccessFile.length());
+        }
+    }
+
+    /**
+     * Loads the existing segments, rebuilding their indexes, and truncates the log at the first torn frame.
+     */
+    private void recover() throws IOException {
+
+        List<Long> baseOffsets = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                baseOffsets.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        baseOffsets.sort(null);
+
+        List<Segment> recovered = new ArrayList<>();
+        long nextOffset = baseOffsets.isEmpty() ? 0 : baseOffsets.get(0);
+        long bytes = 0;
+        for (long baseOffset : baseOffsets) {
+            Path file = directory.resolve(String.format("%020d", baseOffset) + SEGMENT_SUFFIX);
+            if (baseOffset != nextOffset) {
+
+                // The previous segment was cut short, the records after the cut are lost.
+                System.out.println("Deleting segment " + file + " following a torn segment");
+                Files.delete(file);
+                continue;
+            }
+            Segment segment = new Segment(baseOffset, file, map(file),
+                    Files.getLastModifiedTime(file).toMillis());
+            nextOffset = segment.recover();
+            bytes += segment.size;
+            recovered.add(segment);
+        }
+        if (recovered.isEmpty()) {
+            recovered.add(createSegment(0));
+        }
+
+        segments = recovered.toArray(new Segment[0]);
+        startOffset = segments[0].baseOffset;
+        sizeInBytes = bytes;
+        tail = nextOffset;
+        flushedOffset = nextOffset;
+    }
+
+    /**
+     * @return The index of the segment holding the offset, -1 if the offset is below the first segment.
+     */
+    private static int segmentFor(Segment[] segments, long offset) {
+
+        int low = 0;
+        int high = segments.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (segments[middle].baseOffset <= offset) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Encodes the records into frames of up to {@link SegmentLog#MAX_BATCH_BYTES} bytes of records each, compressing
+     * every frame unless compression does not make it smaller.
+     *
+     * @param timestampMs The timestamp of every frame, or -1 to keep the timestamps of the records.
+     */
+    private List<byte[]> encode(List<Record<K,V>> records, long timestampMs) {
+
+        List<byte[]> frames = new ArrayList<>(1);
+        int maxRecordBytes = segmentBytes - LENGTH_BYTES - FRAME_OVERHEAD;
+        int maxBatchBytes = Math.min(MAX_BATCH_BYTES, maxRecordBytes);
+        ByteBuffer batch = null;
+        int count = 0;
+        long batchTimestampMs = timestampMs;
+        for (Record<K,V> record : records) {
+            byte[] key = (record.getKey() == null) ? null : keySerde.serialize(record.getKey());
+            byte[] value = (record.getValue() == null) ? null : valueSerde.serialize(record.getValue());
+            Map<String, byte[]> headers = record.getHeaders();
+            int recordBytes = 3 * Integer.BYTES + ((key == null) ? 0 : key.length) + ((value == null) ? 0 : value.length);
+            for (Map.Entry<String, byte[]> header : headers.entrySet()) {
+                recordBytes += 2 * Integer.BYTES + header.getKey().getBytes(StandardCharsets.UTF_8).length
+                        + header.getValue().length;
+            }
+            if (recordBytes > maxRecordBytes) {
+                throw new IllegalArgumentException("Record of " + recordBytes + " bytes does not fit into a segment");
+            }
+            long recordTimestampMs = (timestampMs < 0) ? record.getTimestamp() : timestampMs;
+            if (count > 0
+                    && (batch.position() + recordBytes > maxBatchBytes || recordTimestampMs != batchTimestampMs)) {
+                frames.add(frame(batch, count, batchTimestampMs));
+                count = 0;
+            }
+            batchTimestampMs = recordTimestampMs;
+            if (count == 0 || batch.remaining() < recordBytes) {
+                batch = grow(batch, count, recordBytes);
+            }
+            putBytes(batch, key);
+            putBytes(batch, value);
+            batch.putInt(headers.size());
+            for (Map.Entry<String, byte[]> header : headers.entrySet()) {
+                putBytes(batch, header.getKey().getBytes(StandardCharsets.UTF_8));
+                putBytes(batch, header.getValue());
+            }
+            count++;
+        }
+        if (count > 0) {
+            frames.add(frame(batch, count, batchTimestampMs));
+        }
+        return frames;
+    }
+
+    /**
+     * @return A buffer with room for recordBytes more bytes, holding the records of the batch so far if count > 0.
+     */
+    private static ByteBuffer grow(ByteBuffer batch, int count, int recordBytes) {
+
+        if (count == 0 && batch != null && batch.capacity() >= recordBytes) {
+            batch.clear();
+            return batch;
+        }
+        int used = (count == 0) ? 0 : batch.position();
+        int capacity = Math.max(used + recordBytes, (batch == null) ? 256 : 2 * batch.capacity());
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        if (used > 0) {
+            grown.put(batch.array(), 0, used);
+        }
+        return grown;
+    }
+
+    private byte[] frame(ByteBuffer batch, int count, long timestampMs) {
+
+        int recordsLength = batch.position();
+        byte codec = CompressionCodec.NONE_ID;
+        byte[] records = batch.array();
+        int storedLength = recordsLength;
+        if (compression != null) {
+            byte[] compressed = compression.compress(Arrays.copyOf(records, recordsLength));
+            if (compressed.length < recordsLength) {
+                codec = compression.id();
+                records = compressed;
+                storedLength = compressed.length;
+            }
+        }
+        int length = FRAME_OVERHEAD + storedLength;
+        ByteBuffer frame = ByteBuffer.allocate(LENGTH_BYTES + length);
+        frame.putInt(length);
+
+        // The offset is set once known, under the lock.
+        frame.putLong(0);
+        frame.putInt(0);
+        frame.putLong(timestampMs);
+        frame.putInt(count);
+        frame.put(codec);
+        frame.putInt(recordsLength);
+        frame.put(records, 0, storedLength);
+        frame.putInt(LENGTH_BYTES + 8, crc(frame.array(), TIMESTAMP_POSITION, length - 8 - 4));
+        return frame.array();
+    }
+
+    /**
+     * Decodes the records of the frame from the offset on, decompressing the frame once. With a filter, the records
+     * which do not match are skipped before their value is deserialized.
+     *
+     * @param offset The offset of the first record to decode, in the frame.
+     * @param maxRecords The maximum number of records to go through.
+     * @param maxMatches The maximum number of records to decode.
+     * @param filter The records to decode, null for all of them.
+     * @return The number of records gone through, decoded or skipped.
+     */
+    private int decode(Segment segment, ByteBuffer view, int position, long offset, long maxRecords, int maxMatches,
+                       RecordFilter<K> filter, List<Record<K,V>> out) {
+
+        long baseOffset = view.getLong(position + LENGTH_BYTES);
+        int count = view.getInt(position + COUNT_POSITION);
+        byte codec = view.get(position + CODEC_POSITION);
+        ByteBuffer records;
+        long recordsOffset = baseOffset;
+        InflatedFrame inflated = null;
+        if (codec == CompressionCodec.NONE_ID) {
+            view.position(position + RECORDS_POSITION);
+            records = view;
+        } else {
+            inflated = segment.lastInflated;
+            if (inflated == null || inflated.position != position || inflated.baseOffset != baseOffset) {
+                byte[] compressed = new byte[LENGTH_BYTES + view.getInt(position) - RECORDS_POSITION];
+                view.position(position + RECORDS_POSITION);
+                view.get(compressed);
+                inflated = new InflatedFrame(position, baseOffset, codecFor(codec).decompress(compressed,
+                        view.getInt(position + RECORDS_LENGTH_POSITION)), baseOffset, 0);
+            }
+            records = ByteBuffer.wrap(inflated.records);
+            if (offset >= inflated.cursorOffset) {
+
+                // Go on from where the last read of the frame stopped.
+                records.position(inflated.cursorPosition);
+                recordsOffset = inflated.cursorOffset;
+            }
+        }
+        for (long i = recordsOffset; i < offset; i++) {
+            skipRecord(records);
+        }
+        int available = (int) Math.min(count - (offset - baseOffset), maxRecords);
+        int read = decodeRecords(view.getLong(position + TIMESTAMP_POSITION), records, available, maxMatches, filter,
+                out);
+        if (inflated != null) {
+            segment.lastInflated = new InflatedFrame(position, baseOffset, inflated.records, offset + read,
+                    records.position());
+        }
+        return read;
+    }
+
+    /**
+     * Decodes available records from the position of the buffer on, leaving the buffer after the last one gone
+     * through.
+     *
+     * @return The number of records gone through, decoded or skipped.
+     */
+    private int decodeRecords(long timestamp, ByteBuffer records, int available, int maxMatches,
+                              RecordFilter<K> filter, List<Record<K,V>> out) {
+
+        if (filter == null) {
+            int decoded = Math.min(available, maxMatches);
+            for (int i = 0; i < decoded; i++) {
+                byte[] key = getBytes(records);
+                byte[] value = getBytes(records);
+                Map<String, byte[]> headers = getHeaders(records);
+                out.add(new Record<>((key == null) ? null : keySerde.deserialize(key),
+                        (value == null) ? null : valueSerde.deserialize(value), headers, timestamp));
+            }
+            return decoded;
+        }
+        ByteBuffer valueView = filter.filtersValue() ? records.asReadOnlyBuffer() : null;
+        int matches = 0;
+        int scanned = 0;
+        for (; scanned < available && matches < maxMatches; scanned++) {
+            byte[] keyBytes = getBytes(records);
+            K key = (keyBytes != null && filter.filtersKey()) ? keySerde.deserialize(keyBytes) : null;
+            int valueLength = records.getInt();
+            int valuePosition = records.position();
+            if (valueLength > 0) {
+                records.position(valuePosition + valueLength);
+            }
+            Map<String, byte[]> headers = getHeaders(records);
+            if (!filter.matchesKey(key) || !filter.matchesHeaders(headers)) {
+                continue;
+            }
+            if (valueView != null) {
+                if (valueLength >= 0) {
+                    valueView.limit(valueView.capacity());
+                    valueView.position(valuePosition);
+                    valueView.limit(valuePosition + valueLength);
+                }
+                if (!filter.matchesValue((valueLength < 0) ? null : valueView)) {
+                    continue;
+                }
+            }
+            if (keyBytes != null && !filter.filtersKey()) {
+                key = keySerde.deserialize(keyBytes);
+            }
+            V value = null;
+            if (valueLength >= 0) {
+                byte[] valueBytes = new byte[valueLength];
+                ByteBuffer valueSource = records.duplicate();
+                valueSource.position(valuePosition);
+                valueSource.get(valueBytes);
+                value = valueSerde.deserialize(valueBytes);
+            }
+            out.add(new Record<>(key, value, headers, timestamp));
+            matches++;
+        }
+        return scanned;
+    }
+
+    private CompressionCodec codecFor(byte id) {
+
+        if (compression != null && compression.id() == id) {
+            return compression;
+        }
+        if (id == CompressionCodec.DEFLATE_ID) {
+            return DEFLATE;
+        }
+        throw new IllegalStateException("Unknown compression codec " + id + " in " + directory);
+    }
+
+    private static void putBytes(ByteBuffer frame, byte[] bytes) {
+
+        if (bytes == null) {
+            frame.putInt(-1);
+        } else {
+            frame.putInt(bytes.length);
+            frame.put(bytes);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer view) {
+
+        int length = view.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        view.get(bytes);
+        return bytes;
+    }
+
+    private static Map<String, byte[]> getHeaders(ByteBuffer view) {
+
+        int count = view.getInt();
+        if (count == 0) {
+            return Collections.emptyMap();
+        }
+        Map<String, byte[]> headers = new LinkedHashMap<>(2 * count);
+        for (int i = 0; i < count; i++) {
+            headers.put(new String(getBytes(view), StandardCharsets.UTF_8), getBytes(view));
+        }
+        return Collections.unmodifiableMap(headers);
+    }
+
+    private static void skipRecord(ByteBuffer view) {
+
+        skipBytes(view);
+        skipBytes(view);
+        int headers = view.getInt();
+        for (int i = 0; i < 2 * headers; i++) {
+            skipBytes(view);
+        }
+    }
+
+    private static void skipBytes(ByteBuffer view) {
+
+        int length = view.getInt();
+        if (length > 0) {
+            view.position(view.position() + length);
+        }
+    }
+
+    private static int crc(byte[] bytes, int from, int length) {
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes, from, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * The decompressed records of a frame, and the position in them of the record with the cursor offset, where a
+     * read of the frame stopped. Immutable, shared by the readers of the segment.
+     */
+    private static final class InflatedFrame {
+
+        private final int position;
+        private final long baseOffset;
+        private final byte[] records;
+        private final long cursorOffset;
+        private final int cursorPosition;
+
+        InflatedFrame(int position, long baseOffset, byte[] records, long cursorOffset, int cursorPosition) {
+
+            this.position = position;
+            this.baseOffset = baseOffset;
+            this.records = records;
+            this.cursorOffset = cursorOffset;
+            this.cursorPosition = cursorPosition;
+        }
+    }
+
+    /**
+     * A mapped segment file and its sparse index.
+     */
+    private static final class Segment {
+
+        private final long baseOffset;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private final long createdTimeMs;
+
+        // Only accessed under the lock of the log, the readers only go up to the tail.
+        private int writePosition;
+        private long nextOffset;
+        private int lastIndexedPosition;
+
+        // The number of bytes written into the segment.
+        private volatile long size;
+
+        // The newest timestamp of the records written into the segment.
+        private volatile long maxTimestamp;
+
+        // The compressed frame decoded last by a reader, null if none was.
+        private volatile InflatedFrame lastInflated;
+
+        // Sparse index, two longs per entry: the offset relative to the segment (high 32 bits) and the position of a
+        // frame (low 32 bits), then the newest timestamp of the frames before it. Grown by copying, and the entries
+        // are filled in before indexSize covers them.
+        private volatile long[] index = new long[32];
+        private volatile int indexSize;
+
+        Segment(long baseOffset, Path file, MappedByteBuffer buffer, long createdTimeMs) {
+
+            this.baseOffset = baseOffset;
+            this.file = file;
+            this.buffer = buffer;
+            this.createdTimeMs = createdTimeMs;
+            this.nextOffset = baseOffset;
+        }
+
+        void append(ByteBuffer frame) {
+
+            maybeIndex(writePosition);
+            long timestamp = frame.getLong(TIMESTAMP_POSITION);
+            ByteBuffer writeView = buffer.duplicate();
+            writeView.position(writePosition);
+            writeView.put(frame);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            writePosition += frame.capacity();
+            nextOffset += frame.getInt(COUNT_POSITION);
+            size = writePosition;
+        }
+
+        /**
+         * Removes the frames written from the position on, by an append which failed before they were published:
+         * clears their bytes up to end and their index entries, and restores the state the segment had before them.
+         */
+        void truncate(int position, int end, long nextOffset, long maxTimestamp) {
+
+            for (int i = position; i < Math.max(end, writePosition); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            while (indexSize > 0 && (int) index[2 * (indexSize - 1)] >= position) {
+                indexSize--;
+            }
+            lastIndexedPosition = (indexSize > 0) ? (int) index[2 * (indexSize - 1)] : 0;
+            writePosition = position;
+            size = position;
+            this.nextOffset = nextOffset;
+            this.maxTimestamp = maxTimestamp;
+        }
+
+        private void maybeIndex(int position) {
+
+            if (position - lastIndexedPosition < INDEX_INTERVAL_BYTES) {
+                return;
+            }
+            long[] currentIndex = index;
+            if (2 * indexSize == currentIndex.length) {
+                currentIndex = Arrays.copyOf(currentIndex, currentIndex.length * 2);
+            }
+            currentIndex[2 * indexSize] = ((nextOffset - baseOffset) << 32) | position;
+            currentIndex[2 * indexSize + 1] = maxTimestamp;
+            index = currentIndex;
+            indexSize++;
+            lastIndexedPosition = position;
+        }
+
+        /**
+         * @return The position of the frame holding the offset, which should be in this segment and below the tail.
+         */
+        int positionOf(ByteBuffer view, long offset) {
+
+            // Read the size before the array, every entry below the size is in the array we read.
+            int entries = indexSize;
+            long[] currentIndex = index;
+            long relativeOffset = offset - baseOffset;
+            int low = 0;
+            int high = entries - 1;
+            int position = 0;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (currentIndex[2 * middle] >>> 32 <= relativeOffset) {
+                    position = (int) currentIndex[2 * middle];
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            while (view.getLong(position + LENGTH_BYTES) + view.getInt(position + COUNT_POSITION) <= offset) {
+                position += LENGTH_BYTES + view.getInt(position);
+            }
+            return position;
+        }
+
+        /**
+         * @param endOffset The offset to stop scanning at, at most the tail.
+         * @return The offset of the first record of the segment stamped at or after timestampMs, -1 if none.
+         */
+        long offsetForTimestamp(long timestampMs, long endOffset) {
+
+            // The first entry with a recent enough frame before it, the frame is between the previous entry and it.
+            int entries = indexSize;
+            long[] currentIndex = index;
+            int low = 0;
+            int high = entries;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (currentIndex[2 * middle + 1] >= timestampMs) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            int position = (low == 0) ? 0 : (int) currentIndex[2 * (low - 1)];
+            long offset = baseOffset + ((low == 0) ? 0 : currentIndex[2 * (low - 1)] >>> 32);
+            while (offset < endOffset) {
+                if (buffer.getLong(position + TIMESTAMP_POSITION) >= timestampMs) {
+                    return offset;
+                }
+                offset += buffer.getInt(position + COUNT_POSITION);
+                position += LENGTH_BYTES + buffer.getInt(position);
+            }
+            return -1;
+        }
+
+        /**
+         * Scans the frames of the segment, rebuilding the index, and cuts the segment at the first torn frame.
+         *
+         * @return The offset following the last valid record.
+         */
+        long recover() {
+
+            int position = 0;
+            while (position + LENGTH_BYTES + FRAME_OVERHEAD <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (length < FRAME_OVERHEAD || position + LENGTH_BYTES + length > buffer.capacity()
+                        || buffer.getLong(position + LENGTH_BYTES) != nextOffset
+                        || buffer.getInt(position + COUNT_POSITION) <= 0 || !crcMatches(position, length)) {
+                    break;
+                }
+                maybeIndex(position);
+                maxTimestamp = Math.max(maxTimestamp, buffer.getLong(position + TIMESTAMP_POSITION));
+                nextOffset += buffer.getInt(position + COUNT_POSITION);
+                position += LENGTH_BYTES + length;
+            }
+            if (position + LENGTH_BYTES <= buffer.capacity() && buffer.getInt(position) != 0) {
+
+                // A torn frame, clear it so that it is never mistaken for a record.
+                System.out.println("Truncating torn segment " + file + " at position " + position);
+                for (int i = position; i < buffer.capacity(); i++) {
+                    buffer.put(i, (byte) 0);
+                }
+                buffer.force();
+            }
+            writePosition = position;
+            size = position;
+            return nextOffset;
+        }
+
+        private boolean crcMatches(int position, int length) {
+
+            int payloadStart = position + LENGTH_BYTES + 8 + 4;
+            byte[] payload = new byte[length - 8 - 4];
+            ByteBuffer view = buffer.duplicate();
+            view.position(payloadStart);
+            view.get(payload);
+            return crc(payload, 0, payload.length) == buffer.getInt(position + LENGTH_BYTES + 8);
+        }
+    }
+}
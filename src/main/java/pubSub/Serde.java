@@ -0,0 +1,55 @@
+package pubSub;
+
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts the keys or the values of the {@link Record}s to bytes and back, used by the topics stored in files.
+ * null is never passed to a Serde.
+ *
+ * @param <T> The type of the key or the value
+ */
+public interface Serde<T> {
+
+    byte[] serialize(T data);
+
+    T deserialize(byte[] bytes);
+
+    /**
+     * @return A Serde storing byte arrays as they are.
+     */
+    static Serde<byte[]> byteArray() {
+
+        return new Serde<byte[]>() {
+
+            @Override
+            public byte[] serialize(byte[] data) {
+                return data;
+            }
+
+            @Override
+            public byte[] deserialize(byte[] bytes) {
+                return bytes;
+            }
+        };
+    }
+
+    /**
+     * @return A Serde storing strings in UTF-8.
+     */
+    static Serde<String> string() {
+
+        return new Serde<String>() {
+
+            @Override
+            public byte[] serialize(String data) {
+                return data.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String deserialize(byte[] bytes) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+}
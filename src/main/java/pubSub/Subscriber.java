@@ -1,9 +1,11 @@
 package pubSub;
 
-import org.apache.commons.lang3.RandomStringUtils;
-
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import static com.google.inject.internal.util.Preconditions.checkArgument;
 import static com.google.inject.internal.util.Preconditions.checkNotNull;
 
@@ -14,14 +16,24 @@ import static com.google.inject.internal.util.Preconditions.checkNotNull;
  */
 public class Subscriber<K,V>  {
 
-    // Represents a unique hash for identifying this Subscriber.
-    private final int HASH;
+    // The handle returned by the PubSubManager on registration, null while this Subscriber never registered.
+    private volatile SubscriberState handle;
 
     // The topic corresponding to this Subscriber.
     private final String topic;
 
+    // The partitions of the topic read by this Subscriber, null for all of them.
+    private final int[] partitions;
+
+    // The consumer group this Subscriber is a member of, null if it reads the topic on its own.
+    private final String groupId;
+
     // Reference to the Singleton instance.
-    private final PubSubManager pubSubManager = PubSubManager.getInstance();
+    @SuppressWarnings("unchecked")
+    private final PubSubManager<K,V> pubSubManager = PubSubManager.getInstance();
+
+    // Refilled by every pollView and forEach.
+    private final RecordBatchView<K,V> view = new RecordBatchView<>();
 
     /**
      * Instantiates a new {@link Subscriber}
@@ -35,21 +47,106 @@ public class Subscriber<K,V>  {
     public Subscriber(String topic) {
         checkNotNull(topic, "Subscriber cannot be instantiated with null topic");
 
-        String generatedString = RandomStringUtils.randomAlphanumeric(32);
-        HASH = Objects.hash(generatedString);
         this.topic = topic;
+        this.partitions = null;
+        this.groupId = null;
+    }
+
+    /**
+     * Instantiates a new {@link Subscriber} as a member of a consumer group.
+     * The partitions of the topic are split between the registered members of the group, and all the members
+     * share the group's offsets: every {@link Record} is read by only one member of the group. Adding members to
+     * a group (up to the number of partitions) spreads the topic over more threads.
+     *
+     * @param topic The topic corresponding to this Subscriber.
+     * @param groupId The consumer group to join on {@link Subscriber#register()}.
+     */
+    public Subscriber(String topic, String groupId) {
+        checkNotNull(topic, "Subscriber cannot be instantiated with null topic");
+        checkNotNull(groupId, "Subscriber cannot be instantiated with null groupId");
+
+        this.topic = topic;
+        this.partitions = null;
+        this.groupId = groupId;
+    }
+
+    /**
+     * Instantiates a new {@link Subscriber} reading only the given partitions of the topic.
+     * Records with the same key always land on the same partition, so several subscribers can split the partitions
+     * of a topic between them and still see the records of every key in order.
+     *
+     * @param topic The topic corresponding to this Subscriber.
+     * @param partitions The partitions of the topic to read from.
+     */
+    public Subscriber(String topic, Collection<Integer> partitions) {
+        checkNotNull(topic, "Subscriber cannot be instantiated with null topic");
+        checkNotNull(partitions, "Subscriber cannot be instantiated with null partitions");
+        checkArgument(!partitions.isEmpty(), "Subscriber should read at least one partition");
+
+        this.topic = topic;
+        this.partitions = partitions.stream().mapToInt(Integer::intValue).distinct().toArray();
+        this.groupId = null;
     }
 
     /**
      * Register the subscriber with the PubSub system.
+     * For a group member this triggers a re-assignment of the partitions across the group.
      */
     public void register() {
 
-        pubSubManager.registerSubscriber(HASH, topic);
+        registerWith(null);
     }
 
     /**
-     * Retrieves {@link Record}s from the PubSub system.
+     * Register the subscriber with the PubSub system, receiving only the {@link Record}s matching the filter.
+     * The filter is applied while reading the partitions, so the records which do not match are neither copied nor
+     * deserialized, and the maxRecords of a poll only counts the matching records. The offsets still move past the
+     * records which do not match. For a group member the other members are not filtered, unless they register with
+     * a filter of their own.
+     *
+     * @param filter The records to receive.
+     */
+    public void register(RecordFilter<K> filter) {
+        checkNotNull(filter, "filter cannot be null");
+
+        registerWith(filter);
+    }
+
+    private void registerWith(RecordFilter<K> filter) {
+
+        SubscriberState previous = handle;
+        if (previous != null) {
+
+            // Registering again starts over, like a new subscriber.
+            pubSubManager.unregisterSubscriber(previous);
+        }
+        handle = pubSubManager.registerSubscriber(topic, partitions, groupId, filter);
+    }
+
+    /**
+     * Unregister the subscriber from the PubSub system.
+     * For a group member its partitions are handed over to the remaining members of the group, which continue
+     * from the group's offsets.
+     */
+    public void unregister() {
+
+        SubscriberState current = handle;
+        if (current != null) {
+            pubSubManager.unregisterSubscriber(current);
+        }
+    }
+
+    /**
+     * @return The number of partitions of the topic.
+     * @throws SubscriberException If the topic does not exist.
+     */
+    public int numPartitions() throws SubscriberException {
+
+        return pubSubManager.numPartitions(topic);
+    }
+
+    /**
+     * Retrieves {@link Record}s from the PubSub system, across all the partitions read by this subscriber.
      *
      * @param maxRecords The maximum number of records to return.
      * @return The List of records.
@@ -58,17 +155,223 @@ public class Subscriber<K,V>  {
     public List<Record<K,V>> poll(int maxRecords) throws SubscriberException {
         checkArgument(maxRecords > 0, "maxRecords should be greater than 0");
 
-        return pubSubManager.poll(topic, HASH, maxRecords);
+        return pubSubManager.poll(topic, handle, 1, maxRecords, 0);
+    }
+
+    /**
+     * Retrieves {@link Record}s from the PubSub system, waiting for up to timeout if there are none yet.
+     * The calling thread is parked while waiting and woken up as soon as a record is published to the topic.
+     *
+     * @param maxRecords The maximum number of records to return.
+     * @param timeout The maximum time to wait for a record.
+     * @return The List of records, empty if none got published before the timeout.
+     * @throws SubscriberException If there was any error while retrieving the records.
+     */
+    public List<Record<K,V>> poll(int maxRecords, Duration timeout) throws SubscriberException {
+
+        return poll(1, maxRecords, timeout);
     }
 
     /**
-     * Rewinds the current subscriber's offset count by rewindCount.
+     * Retrieves {@link Record}s from the PubSub system, waiting for up to timeout until there are at least
+     * minRecords of them. Fewer records are returned if the timeout expires or the thread is interrupted first.
+     *
+     * @param minRecords The number of records to wait for.
+     * @param maxRecords The maximum number of records to return.
+     * @param timeout The maximum time to wait for minRecords records.
+     * @return The List of records.
+     * @throws SubscriberException If there was any error while retrieving the records.
+     */
+    public List<Record<K,V>> poll(int minRecords, int maxRecords, Duration timeout) throws SubscriberException {
+        checkArgument(maxRecords > 0, "maxRecords should be greater than 0");
+        checkArgument(minRecords > 0 && minRecords <= maxRecords, "minRecords should be between 1 and maxRecords");
+        checkNotNull(timeout, "timeout cannot be null");
+        checkArgument(!timeout.isNegative(), "timeout should be >= 0");
+
+        return pubSubManager.poll(topic, handle, minRecords, maxRecords, toNanos(timeout));
+    }
+
+    /**
+     * Retrieves {@link Record}s from the PubSub system like {@link Subscriber#poll(int)}, into a view which this
+     * subscriber reuses for every call: a consume loop polling this way allocates nothing per poll.
+     * The view is only valid until the next call to pollView or forEach, which should not be made concurrently.
+     *
+     * @param maxRecords The maximum number of records to return.
+     * @return The view of the records, empty if there are none.
+     * @throws SubscriberException If there was any error while retrieving the records.
+     */
+    public RecordBatchView<K,V> pollView(int maxRecords) throws SubscriberException {
+        checkArgument(maxRecords > 0, "maxRecords should be greater than 0");
+
+        pubSubManager.poll(topic, handle, 1, maxRecords, 0, view.reset());
+        return view;
+    }
+
+    /**
+     * Retrieves up to maxRecords {@link Record}s from the PubSub system and runs the consumer on each of them in
+     * order, see {@link Subscriber#pollView(int)}.
+     *
+     * @param maxRecords The maximum number of records to consume.
+     * @param consumer The action to run on every record.
+     * @return The number of records consumed, 0 if there were none.
+     * @throws SubscriberException If there was any error while retrieving the records.
+     */
+    public int forEach(int maxRecords, Consumer<? super Record<K,V>> consumer) throws SubscriberException {
+        checkNotNull(consumer, "consumer cannot be null");
+
+        RecordBatchView<K,V> records = pollView(maxRecords);
+        records.forEach(consumer);
+        return records.size();
+    }
+
+    /**
+     * Looks up the latest {@link Record} published with the key, on a topic created with a key index, see
+     * {@link TopicConfig.Builder#keyIndex(int)}. Takes constant time, does not need this subscriber to be registered
+     * and does not move its offsets.
+     *
+     * @param key The key to look up.
+     * @return The latest record with the key, null if none was published or it was removed by retention or
+     *         compaction. On a compacted topic a record with a null value means that the key was deleted.
+     * @throws SubscriberException If the topic does not exist.
+     * @throws IllegalArgumentException If the topic has no key index.
+     */
+    public Record<K,V> lookupLatest(K key) throws SubscriberException {
+        checkNotNull(key, "key cannot be null");
+
+        return pubSubManager.lookupLatest(topic, key);
+    }
+
+    private static long toNanos(Duration timeout) {
+
+        try {
+            return timeout.toNanos();
+        } catch (ArithmeticException e) {
+
+            // Longer than we could ever wait for.
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Exposes the {@link Record}s of this subscriber as a {@link Flow.Publisher}, delivered on an executor shared by
+     * all the push subscriptions of the JVM. See {@link Subscriber#asFlowPublisher(Executor)}.
+     *
+     * @return The publisher.
+     */
+    public Flow.Publisher<Record<K,V>> asFlowPublisher() {
+
+        return asFlowPublisher(RecordPublisher.defaultExecutor());
+    }
+
+    /**
+     * Exposes the {@link Record}s of this subscriber as a {@link Flow.Publisher}, as an alternative to polling.
+     * Subscribing registers this subscriber, and records are pushed to the {@link Flow.Subscriber} as it requests
+     * them. Delivery runs on the executor and does not hold a thread while there are no records, so many
+     * subscriptions can share a few threads. Cancelling the subscription unregisters this subscriber.
+     * A subscriber can be subscribed to only once, and should not be polled while subscribed.
+     *
+     * @param executor The executor to deliver the records on.
+     * @return The publisher.
+     */
+    public Flow.Publisher<Record<K,V>> asFlowPublisher(Executor executor) {
+        checkNotNull(executor, "executor cannot be null");
+
+        return new RecordPublisher<>(this, executor);
+    }
+
+    /**
+     * Runs the callback once there are records to poll, used by the push subscriptions.
+     */
+    void awaitRecordsAsync(Runnable callback) throws SubscriberException {
+
+        pubSubManager.awaitRecordsAsync(topic, handle, callback);
+    }
+
+    /**
+     * Rewinds the current subscriber's offset count by rewindCount, in every partition read by this subscriber.
      *
      * @param rewindCount The number of {@link Record}s to rewind
      */
     public void rewind(int rewindCount) {
         checkArgument(rewindCount > 0, "Illegal rewindCount, should be > 0");
 
-        pubSubManager.rewind(HASH, rewindCount);
+        pubSubManager.rewind(handle, -1, rewindCount);
+    }
+
+    /**
+     * Rewinds the current subscriber's offset count by rewindCount in a single partition.
+     *
+     * @param partition The partition to rewind
+     * @param rewindCount The number of {@link Record}s to rewind
+     * @throws IllegalArgumentException If the subscriber does not read the partition.
+     */
+    public void rewind(int partition, int rewindCount) {
+        checkArgument(partition >= 0, "Illegal partition, should be >= 0");
+        checkArgument(rewindCount > 0, "Illegal rewindCount, should be > 0");
+
+        pubSubManager.rewind(handle, partition, rewindCount);
+    }
+
+    /**
+     * Moves this subscriber, in every partition it reads, to the first {@link Record} appended at or after the
+     * timestamp, or to the end of the partition if there is none. Takes a binary search per partition.
+     *
+     * @param timestamp The time to replay the records from.
+     * @throws SubscriberException If the subscriber is not registered.
+     */
+    public void seekToTimestamp(Instant timestamp) throws SubscriberException {
+        checkNotNull(timestamp, "timestamp cannot be null");
+
+        long timestampMs = timestamp.toEpochMilli();
+        pubSubManager.seek(topic, handle, -1, log -> log.offsetForTimestamp(timestampMs));
+    }
+
+    /**
+     * Moves this subscriber to the offset in every partition it reads, see {@link Subscriber#seekToOffset(int, long)}.
+     *
+     * @param offset The offset of the next record to read.
+     * @throws SubscriberException If the subscriber is not registered.
+     */
+    public void seekToOffset(long offset) throws SubscriberException {
+        checkArgument(offset >= 0, "Illegal offset, should be >= 0");
+
+        pubSubManager.seek(topic, handle, -1, log -> Math.min(offset, log.tail()));
+    }
+
+    /**
+     * Moves this subscriber to the offset in a single partition. An offset past the end of the partition moves to
+     * the end, an offset which fell out of retention is reset as per the {@link OffsetResetPolicy} of the topic.
+     *
+     * @param partition The partition to move in.
+     * @param offset The offset of the next record to read.
+     * @throws SubscriberException If the subscriber is not registered.
+     * @throws IllegalArgumentException If the subscriber does not read the partition.
+     */
+    public void seekToOffset(int partition, long offset) throws SubscriberException {
+        checkArgument(partition >= 0, "Illegal partition, should be >= 0");
+        checkArgument(offset >= 0, "Illegal offset, should be >= 0");
+
+        pubSubManager.seek(topic, handle, partition, log -> Math.min(offset, log.tail()));
+    }
+
+    /**
+     * Moves this subscriber to the oldest retained {@link Record} in every partition it reads.
+     *
+     * @throws SubscriberException If the subscriber is not registered.
+     */
+    public void seekToBeginning() throws SubscriberException {
+
+        pubSubManager.seek(topic, handle, -1, PartitionLog::startOffset);
+    }
+
+    /**
+     * Moves this subscriber past the last {@link Record} in every partition it reads, so that it only reads the
+     * records published from now on.
+     *
+     * @throws SubscriberException If the subscriber is not registered.
+     */
+    public void seekToEnd() throws SubscriberException {
+
+        pubSubManager.seek(topic, handle, -1, PartitionLog::tail);
     }
 }
@@ -0,0 +1,87 @@
+package pubSub;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The registered subscribers, by a dense integer id.
+ *
+ * Registration hands out the lowest free id and returns the {@link SubscriberState} of the subscriber, which the
+ * {@link Subscriber} keeps as its handle. Checking a handle is a single array read: the handle is registered as
+ * long as the slot of its id still holds it, so a stale handle never reaches the subscriber which got its id next.
+ * Registering and unregistering lock, looking handles up does not.
+ */
+final class SubscriberRegistry {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Replaced by a larger copy under the lock once full.
+    private volatile AtomicReferenceArray<SubscriberState> slots = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+    // The free ids below highestId, used as a stack. Guarded by this.
+    private int[] freeIds = new int[INITIAL_CAPACITY];
+    private int freeCount;
+    private int highestId;
+
+    /**
+     * @return The handle of the new subscriber.
+     */
+    synchronized SubscriberState register(String topic, int[] partitions, ConsumerGroup group, RecordFilter<?> filter) {
+
+        int id = (freeCount > 0) ? freeIds[--freeCount] : highestId++;
+        AtomicReferenceArray<SubscriberState> currentSlots = slots;
+        if (id == currentSlots.length()) {
+            AtomicReferenceArray<SubscriberState> grown = new AtomicReferenceArray<>(currentSlots.length() * 2);
+            for (int i = 0; i < currentSlots.length(); i++) {
+                grown.set(i, currentSlots.get(i));
+            }
+            slots = grown;
+            currentSlots = grown;
+        }
+        SubscriberState subscriberState = new SubscriberState(id, topic, partitions, group, filter);
+        currentSlots.set(id, subscriberState);
+        return subscriberState;
+    }
+
+    /**
+     * @return Whether the handle was registered.
+     */
+    synchronized boolean unregister(SubscriberState subscriberState) {
+
+        int id = subscriberState.getId();
+        if (!slots.compareAndSet(id, subscriberState, null)) {
+            return false;
+        }
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+        freeIds[freeCount++] = id;
+        return true;
+    }
+
+    boolean isRegistered(SubscriberState subscriberState) {
+
+        AtomicReferenceArray<SubscriberState> currentSlots = slots;
+        int id = subscriberState.getId();
+        return id < currentSlots.length() && currentSlots.get(id) == subscriberState;
+    }
+
+    /**
+     * @return The subscribers registered at the time of the call.
+     */
+    List<SubscriberState> registered() {
+
+        AtomicReferenceArray<SubscriberState> currentSlots = slots;
+        List<SubscriberState> registered = new ArrayList<>();
+        for (int i = 0; i < currentSlots.length(); i++) {
+            SubscriberState subscriberState = currentSlots.get(i);
+            if (subscriberState != null) {
+                registered.add(subscriberState);
+            }
+        }
+        return registered;
+    }
+}
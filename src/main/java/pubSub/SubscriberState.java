@@ -0,0 +1,122 @@
+package pubSub;
+
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-subscriber bookkeeping kept by the {@link PubSubManager}: which partitions of the topic the subscriber reads
+ * and its offset in each of them. Members of a {@link ConsumerGroup} use the partitions assigned by the group and
+ * the group's committed offsets instead of their own.
+ *
+ * Registering a {@link Subscriber} returns its state, which the subscriber passes back as its handle on every
+ * call. See {@link SubscriberRegistry}.
+ */
+final class SubscriberState {
+
+    // Dense, handed out again once the subscriber is unregistered.
+    private final int id;
+    private final String topic;
+
+    // The partitions requested on registration, null meaning all the partitions of the topic.
+    private final int[] requestedPartitions;
+
+    // The group this subscriber is a member of, null if it reads on its own.
+    private final ConsumerGroup group;
+
+    // The records this subscriber receives, null for all of them.
+    private final RecordFilter<?> filter;
+
+    // Resolved lazily, the topic might not exist yet when the subscriber registers.
+    private volatile int[] partitions;
+    private volatile AtomicLongArray offsets;
+
+    // The partition to start the next poll from, so that no partition is starved by a busier one.
+    private int nextPartition;
+
+    SubscriberState(int id, String topic, int[] requestedPartitions, ConsumerGroup group, RecordFilter<?> filter) {
+        this.id = id;
+        this.topic = topic;
+        this.requestedPartitions = requestedPartitions;
+        this.group = group;
+        this.filter = filter;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    String getTopic() {
+        return topic;
+    }
+
+    ConsumerGroup getGroup() {
+        return group;
+    }
+
+    RecordFilter<?> getFilter() {
+        return filter;
+    }
+
+    /**
+     * Resolves the partitions of this subscriber against the topic, once.
+     *
+     * @param topic The topic this subscriber is registered on.
+     * @throws SubscriberException If a requested partition does not exist in the topic.
+     */
+    void resolve(Topic<?,?> topic) throws SubscriberException {
+
+        if (group != null) {
+            group.resolve(topic);
+            return;
+        }
+        if (offsets != null) {
+            return;
+        }
+        synchronized (this) {
+            if (offsets != null) {
+                return;
+            }
+            int[] resolved = requestedPartitions;
+            if (resolved == null) {
+                resolved = new int[topic.numPartitions()];
+                for (int i = 0; i < resolved.length; i++) {
+                    resolved[i] = i;
+                }
+            }
+            for (int partition : resolved) {
+                if (partition < 0 || partition >= topic.numPartitions()) {
+                    throw new SubscriberException("Partition not found");
+                }
+            }
+            partitions = resolved;
+            offsets = new AtomicLongArray(topic.numPartitions());
+        }
+    }
+
+    /**
+     * @return The partitions read by this subscriber, null if not resolved yet.
+     */
+    int[] getPartitions() {
+        return (group != null) ? group.assignment(id) : partitions;
+    }
+
+    /**
+     * @return The offsets indexed by partition, null if not resolved yet.
+     */
+    AtomicLongArray getOffsets() {
+        return (group != null) ? group.getCommittedOffsets() : offsets;
+    }
+
+    /**
+     * @param numPartitions The number of partitions currently read by this subscriber.
+     * @return The index into {@link SubscriberState#getPartitions()} the next poll should start from.
+     */
+    int nextStartIndex(int numPartitions) {
+        if (numPartitions == 0) {
+            return 0;
+        }
+        int start = nextPartition % numPartitions;
+        nextPartition = (start + 1) % numPartitions;
+        return start;
+    }
+}
@@ -0,0 +1,66 @@
+package pubSub;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, as a generic cell rate algorithm: instead of counting tokens, it keeps the time at which
+ * the bucket is full again. Taking units pushes that time by the time the rate needs to produce them, with a single
+ * compare-and-set, and the bucket holds burstNanos worth of units at most.
+ */
+final class TokenBucket {
+
+    private final double nanosPerUnit;
+    private final long burstNanos;
+
+    // The System.nanoTime() at which the bucket is full again, in the past while it is full.
+    private final AtomicLong fullAtNanos;
+
+    TokenBucket(long unitsPerSecond, long burstMs) {
+        this.nanosPerUnit = (double) TimeUnit.SECONDS.toNanos(1) / unitsPerSecond;
+        this.burstNanos = TimeUnit.MILLISECONDS.toNanos(burstMs);
+        this.fullAtNanos = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes the units out of the bucket. If the bucket does not hold enough of them, it goes into debt, which the
+     * caller pays back by waiting before using the units.
+     *
+     * @param units The units to take.
+     * @param reject Whether to take nothing instead of going into debt, unless the bucket is full: a full bucket
+     *               always lets the units through right away, however many, so that they do not starve.
+     * @param nowNanos The current {@link System#nanoTime()}.
+     * @return How long to wait for the units, 0 if they are available right away, or -1 if they were rejected.
+     */
+    long take(long units, boolean reject, long nowNanos) {
+
+        long cost = costOf(units);
+        while (true) {
+            long fullAt = fullAtNanos.get();
+            boolean full = fullAt - nowNanos <= 0;
+            long newFullAt = (full ? nowNanos : fullAt) + cost;
+            long waitNanos = newFullAt - nowNanos - burstNanos;
+            if (waitNanos > 0 && reject && !full) {
+                return -1;
+            }
+            if (fullAtNanos.compareAndSet(fullAt, newFullAt)) {
+                return reject ? 0 : Math.max(0, waitNanos);
+            }
+        }
+    }
+
+    /**
+     * Puts units taken by {@link TokenBucket#take} back, when they ended up not being used.
+     */
+    void giveBack(long units) {
+
+        fullAtNanos.addAndGet(-costOf(units));
+    }
+
+    private long costOf(long units) {
+
+        double cost = units * nanosPerUnit;
+        return (cost >= Long.MAX_VALUE / 4) ? Long.MAX_VALUE / 4 : (long) Math.ceil(cost);
+    }
+}
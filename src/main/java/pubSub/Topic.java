@@ -0,0 +1,307 @@
+package pubSub;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A topic: a fixed set of partitions, each of them backed by its own {@link PartitionLog}, on the heap or in files.
+ *
+ * @param <K> The key for the {@link Record}
+ * @param <V> The value for the {@link Record}
+ */
+final class Topic<K,V> {
+
+    private final String name;
+    private final TopicConfig config;
+    private final Partitioner<K> partitioner;
+    private final PartitionLog<K,V>[] partitions;
+
+    // The key index of every partition, null if the topic has no key index.
+    private final KeyIndex<K>[] keyIndexes;
+
+    private final TopicMetrics metrics = new TopicMetrics();
+
+    // Enforces the quota of the topic, null if it has none.
+    private final QuotaState quota;
+
+    // The offset of the slowest subscriber of every partition of a bounded topic as last computed, -1 if the
+    // partition has none, null if the topic is not bounded. Publishers into a full partition park on the monitor.
+    private final AtomicLongArray consumedOffsets;
+    private final Object capacityMonitor = new Object();
+    private final AtomicInteger waitingPublishers = new AtomicInteger();
+
+    // The high-water marks of a replicated topic or a follower, null if the topic is neither.
+    private volatile Replication replication;
+
+    // Subscribers parked in a long poll wait on this monitor, push subscriptions leave a one-shot callback instead.
+    // Publishers only wake them up when the count of waiting subscribers is not zero, so publishing stays lock free
+    // without long polls and push subscriptions.
+    private final Object waitMonitor = new Object();
+    private final Queue<Runnable> waitCallbacks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger waitingSubscribers = new AtomicInteger();
+
+    @SuppressWarnings("unchecked")
+    Topic(String name, TopicConfig config) {
+        this.name = name;
+        this.config = config;
+        this.partitioner = (Partitioner<K>) config.getPartitioner();
+        this.partitions = (PartitionLog<K,V>[]) new PartitionLog[config.getPartitions()];
+        for (int i = 0; i < partitions.length; i++) {
+            if (config.isOffHeapValues()) {
+                partitions[i] = new TopicLog<>(config.getChunkSize(),
+                        new PayloadSlabs<>((Serde<V>) config.getValueSerde(), config.getSlabBytes()));
+            } else if (config.getStorageDirectory() == null) {
+                partitions[i] = new TopicLog<>(config.getChunkSize());
+            } else {
+                partitions[i] = new SegmentLog<>(config.getStorageDirectory().resolve(name + "-" + i),
+                        (Serde<K>) config.getKeySerde(), (Serde<V>) config.getValueSerde(), config.getSegmentBytes(),
+                        config.getFlushIntervalMs(), config.getFlushBytes(), config.getCompression());
+            }
+        }
+        if (config.getKeyIndexExpectedKeys() > 0) {
+            this.keyIndexes = (KeyIndex<K>[]) new KeyIndex[partitions.length];
+            int expectedKeysPerPartition = (config.getKeyIndexExpectedKeys() + partitions.length - 1) / partitions.length;
+            for (int i = 0; i < partitions.length; i++) {
+                keyIndexes[i] = new KeyIndex<>(expectedKeysPerPartition);
+                keyIndexes[i].load(partitions[i]);
+            }
+        } else {
+            this.keyIndexes = null;
+        }
+        this.quota = (config.getQuota() != null) ? new QuotaState(config.getQuota()) : null;
+        if (config.isBounded()) {
+            this.consumedOffsets = new AtomicLongArray(partitions.length);
+            for (int i = 0; i < partitions.length; i++) {
+                consumedOffsets.set(i, -1);
+            }
+        } else {
+            this.consumedOffsets = null;
+        }
+        if (config.getMinInSyncFollowers() > 0) {
+            this.replication = new Replication(partitions.length, config.getMinInSyncFollowers(),
+                    config.getReplicaLagTimeMs());
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    TopicConfig getConfig() {
+        return config;
+    }
+
+    int numPartitions() {
+        return partitions.length;
+    }
+
+    PartitionLog<K,V> partition(int partition) {
+        return partitions[partition];
+    }
+
+    TopicMetrics getMetrics() {
+        return metrics;
+    }
+
+    QuotaState getQuota() {
+        return quota;
+    }
+
+    /**
+     * @return The offset of the slowest subscriber of the partition of a bounded topic as last set, -1 if the
+     *         partition has none.
+     */
+    long consumedOffset(int partition) {
+        return consumedOffsets.get(partition);
+    }
+
+    void setConsumedOffset(int partition, long offset) {
+        consumedOffsets.set(partition, offset);
+    }
+
+    /**
+     * Parks the calling publisher until {@link Topic#wakeUpPublishers()} is called or the timeout expires, the same
+     * way as {@link Topic#awaitRecords} parks subscribers.
+     *
+     * @param hasCapacity Whether the partition has room for the records, in which case the publisher does not park.
+     * @param timeoutNanos The maximum time to park for.
+     * @throws InterruptedException If the publisher thread got interrupted while parked.
+     */
+    void awaitCapacity(BooleanSupplier hasCapacity, long timeoutNanos) throws InterruptedException {
+
+        waitingPublishers.incrementAndGet();
+        try {
+            synchronized (capacityMonitor) {
+                if (!hasCapacity.getAsBoolean()) {
+                    TimeUnit.NANOSECONDS.timedWait(capacityMonitor, timeoutNanos);
+                }
+            }
+        } finally {
+            waitingPublishers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Wakes up the publishers waiting in {@link Topic#awaitCapacity}, called once subscribers moved their offsets.
+     * Does not lock if no publisher waits.
+     */
+    void wakeUpPublishers() {
+
+        if (waitingPublishers.get() == 0) {
+            return;
+        }
+        synchronized (capacityMonitor) {
+            capacityMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * @return The offset below which the records of the partition are visible to the subscribers: the tail, or the
+     *         high-water mark if lower.
+     */
+    long visibleEnd(int partition) {
+
+        long tail = partitions[partition].tail();
+        Replication current = replication;
+        return (current == null) ? tail : Math.min(tail, current.highWatermark(partition));
+    }
+
+    /**
+     * @return The replication state, null if the topic is neither replicated nor a follower.
+     */
+    Replication getReplication() {
+        return replication;
+    }
+
+    boolean isFollowing() {
+
+        Replication current = replication;
+        return current != null && current.isFollowing();
+    }
+
+    /**
+     * Makes the topic a follower, which only the leader appends to.
+     */
+    synchronized Replication follow() {
+
+        if (replication == null) {
+            replication = new Replication(partitions.length, config.getMinInSyncFollowers(),
+                    config.getReplicaLagTimeMs());
+        }
+        replication.follow();
+        return replication;
+    }
+
+    /**
+     * @return The key index of the partition, null if the topic has no key index.
+     */
+    KeyIndex<K> keyIndex(int partition) {
+        return (keyIndexes == null) ? null : keyIndexes[partition];
+    }
+
+    /**
+     * Records where the record appended to the partition was stored, if the topic has a key index.
+     */
+    void indexKey(int partition, Record<K,V> record, long offset) {
+
+        if (keyIndexes != null) {
+            keyIndexes[partition].add(record.getKey(), offset);
+        }
+    }
+
+    /**
+     * Records where the records appended to the partition were stored, if the topic has a key index.
+     */
+    void indexKeys(int partition, List<Record<K,V>> records, long baseOffset) {
+
+        if (keyIndexes != null) {
+            keyIndexes[partition].addAll(records, baseOffset);
+        }
+    }
+
+    /**
+     * @return The partition that the {@link Record} is routed to by the topic's {@link Partitioner}.
+     */
+    int partitionFor(Record<K,V> record) {
+
+        return partitionForKey(record.getKey());
+    }
+
+    /**
+     * @return The partition that records with the key are routed to by the topic's {@link Partitioner}.
+     */
+    int partitionForKey(K key) {
+
+        int partition = partitioner.partition(key, partitions.length);
+        if (partition < 0 || partition >= partitions.length) {
+            throw new IllegalStateException("Partitioner returned invalid partition " + partition + " for topic " + name);
+        }
+        return partition;
+    }
+
+    /**
+     * Parks the calling subscriber until {@link Topic#wakeUpSubscribers()} is called or the timeout expires.
+     * The condition is checked once the subscriber counts as waiting, so a wake up for a record published
+     * concurrently is never missed: either the condition sees the record, or the publisher sees the waiter.
+     *
+     * @param hasRecords Whether the subscriber has records to read, in which case it does not park.
+     * @param timeoutNanos The maximum time to park for.
+     * @throws InterruptedException If the subscriber thread got interrupted while parked.
+     */
+    void awaitRecords(BooleanSupplier hasRecords, long timeoutNanos) throws InterruptedException {
+
+        waitingSubscribers.incrementAndGet();
+        try {
+            synchronized (waitMonitor) {
+                if (!hasRecords.getAsBoolean()) {
+                    TimeUnit.NANOSECONDS.timedWait(waitMonitor, timeoutNanos);
+                }
+            }
+        } finally {
+            waitingSubscribers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Same as {@link Topic#awaitRecords} without parking: the callback is run once, by the thread waking up the
+     * subscribers or right away if hasRecords is already true. The callback should be quick, e.g. submit a task.
+     *
+     * @param hasRecords Whether the subscriber has records to read, in which case the callback is run right away.
+     * @param callback The callback to run.
+     */
+    void awaitRecordsAsync(BooleanSupplier hasRecords, Runnable callback) {
+
+        waitingSubscribers.incrementAndGet();
+        waitCallbacks.add(callback);
+
+        // Whoever removes the callback from the queue runs it, so it runs only once.
+        if (hasRecords.getAsBoolean() && waitCallbacks.remove(callback)) {
+            waitingSubscribers.decrementAndGet();
+            callback.run();
+        }
+    }
+
+    /**
+     * Wakes up the subscribers waiting in {@link Topic#awaitRecords} and {@link Topic#awaitRecordsAsync}, called
+     * once records became visible or the partitions of the subscribers changed. Does not lock if no subscriber waits.
+     */
+    void wakeUpSubscribers() {
+
+        if (waitingSubscribers.get() == 0) {
+            return;
+        }
+        synchronized (waitMonitor) {
+            waitMonitor.notifyAll();
+        }
+        Runnable callback;
+        while ((callback = waitCallbacks.poll()) != null) {
+            waitingSubscribers.decrementAndGet();
+            callback.run();
+        }
+    }
+}
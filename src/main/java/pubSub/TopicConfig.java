@@ -0,0 +1,580 @@
+package pubSub;
+
+import java.nio.file.Path;
+import static com.google.inject.internal.util.Preconditions.checkArgument;
+import static com.google.inject.internal.util.Preconditions.checkNotNull;
+
+/**
+ * Configuration of a topic, applied when the topic is created.
+ * Instances are immutable, use {@link TopicConfig#builder()} to create one.
+ */
+public final class TopicConfig {
+
+    private static final TopicConfig DEFAULTS = builder().build();
+
+    private final int partitions;
+    private final Partitioner<?> partitioner;
+    private final int chunkSize;
+    private final long retentionMaxRecords;
+    private final long retentionMaxBytes;
+    private final long retentionMaxAgeMs;
+    private final boolean deleteConsumed;
+    private final OffsetResetPolicy offsetResetPolicy;
+    private final long capacityMaxRecords;
+    private final long capacityMaxBytes;
+    private final BackpressurePolicy backpressurePolicy;
+    private final long backpressureTimeoutMs;
+    private final Quota quota;
+    private final boolean compacted;
+    private final long tombstoneRetentionMs;
+    private final Path storageDirectory;
+    private final Serde<?> keySerde;
+    private final Serde<?> valueSerde;
+    private final int segmentBytes;
+    private final long flushIntervalMs;
+    private final long flushBytes;
+    private final CompressionCodec compression;
+    private final boolean offHeapValues;
+    private final int slabBytes;
+    private final int keyIndexExpectedKeys;
+    private final int minInSyncFollowers;
+    private final long replicaLagTimeMs;
+
+    private TopicConfig(Builder builder) {
+        this.partitions = builder.partitions;
+        this.partitioner = builder.partitioner;
+        this.chunkSize = builder.chunkSize;
+        this.retentionMaxRecords = builder.retentionMaxRecords;
+        this.retentionMaxBytes = builder.retentionMaxBytes;
+        this.retentionMaxAgeMs = builder.retentionMaxAgeMs;
+        this.deleteConsumed = builder.deleteConsumed;
+        this.offsetResetPolicy = builder.offsetResetPolicy;
+        this.capacityMaxRecords = builder.capacityMaxRecords;
+        this.capacityMaxBytes = builder.capacityMaxBytes;
+        this.backpressurePolicy = builder.backpressurePolicy;
+        this.backpressureTimeoutMs = builder.backpressureTimeoutMs;
+        this.quota = builder.quota;
+        this.compacted = builder.compacted;
+        this.tombstoneRetentionMs = builder.tombstoneRetentionMs;
+        this.storageDirectory = builder.storageDirectory;
+        this.keySerde = builder.keySerde;
+        this.valueSerde = builder.valueSerde;
+        this.segmentBytes = builder.segmentBytes;
+        this.flushIntervalMs = builder.flushIntervalMs;
+        this.flushBytes = builder.flushBytes;
+        this.compression = builder.compression;
+        this.offHeapValues = builder.offHeapValues;
+        this.slabBytes = builder.slabBytes;
+        this.keyIndexExpectedKeys = builder.keyIndexExpectedKeys;
+        this.minInSyncFollowers = builder.minInSyncFollowers;
+        this.replicaLagTimeMs = builder.replicaLagTimeMs;
+    }
+
+    /**
+     * @return The configuration used for topics created without an explicit {@link TopicConfig}.
+     */
+    public static TopicConfig defaults() {
+        return DEFAULTS;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public Partitioner<?> getPartitioner() {
+        return partitioner;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long getRetentionMaxRecords() {
+        return retentionMaxRecords;
+    }
+
+    public long getRetentionMaxBytes() {
+        return retentionMaxBytes;
+    }
+
+    public long getRetentionMaxAgeMs() {
+        return retentionMaxAgeMs;
+    }
+
+    public boolean isDeleteConsumed() {
+        return deleteConsumed;
+    }
+
+    public OffsetResetPolicy getOffsetResetPolicy() {
+        return offsetResetPolicy;
+    }
+
+    public long getCapacityMaxRecords() {
+        return capacityMaxRecords;
+    }
+
+    public long getCapacityMaxBytes() {
+        return capacityMaxBytes;
+    }
+
+    public BackpressurePolicy getBackpressurePolicy() {
+        return backpressurePolicy;
+    }
+
+    public long getBackpressureTimeoutMs() {
+        return backpressureTimeoutMs;
+    }
+
+    /**
+     * @return The quota of all the publishers of the topic together, null if the topic has none.
+     */
+    public Quota getQuota() {
+        return quota;
+    }
+
+    public boolean isCompacted() {
+        return compacted;
+    }
+
+    public long getTombstoneRetentionMs() {
+        return tombstoneRetentionMs;
+    }
+
+    /**
+     * @return The directory the topic is stored in, null if the topic is kept in memory.
+     */
+    public Path getStorageDirectory() {
+        return storageDirectory;
+    }
+
+    public Serde<?> getKeySerde() {
+        return keySerde;
+    }
+
+    public Serde<?> getValueSerde() {
+        return valueSerde;
+    }
+
+    public int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    public long getFlushBytes() {
+        return flushBytes;
+    }
+
+    /**
+     * @return The codec compressing the batches of a topic stored in files, null if they are not compressed.
+     */
+    public CompressionCodec getCompression() {
+        return compression;
+    }
+
+    /**
+     * @return Whether the values of a topic kept in memory are stored off the heap.
+     */
+    public boolean isOffHeapValues() {
+        return offHeapValues;
+    }
+
+    public int getSlabBytes() {
+        return slabBytes;
+    }
+
+    /**
+     * @return The number of distinct keys the key index of the topic is sized for, 0 if the topic has no key index.
+     */
+    public int getKeyIndexExpectedKeys() {
+        return keyIndexExpectedKeys;
+    }
+
+    /**
+     * @return The number of followers a record should be replicated to before subscribers see it, 0 if the topic
+     *         is not replicated.
+     */
+    public int getMinInSyncFollowers() {
+        return minInSyncFollowers;
+    }
+
+    public long getReplicaLagTimeMs() {
+        return replicaLagTimeMs;
+    }
+
+    /**
+     * @return Whether the records not read yet by the slowest subscriber of a partition are limited.
+     */
+    boolean isBounded() {
+        return capacityMaxRecords >= 0 || capacityMaxBytes >= 0;
+    }
+
+    /**
+     * @return Whether old records of the topic are ever removed because of their age, size or consumption.
+     */
+    boolean hasRetention() {
+        return retentionMaxRecords >= 0 || retentionMaxBytes >= 0 || retentionMaxAgeMs >= 0 || deleteConsumed;
+    }
+
+    /**
+     * Builder for the {@link TopicConfig}.
+     */
+    public static final class Builder {
+
+        private int partitions = 1;
+        private Partitioner<?> partitioner = new HashPartitioner<>();
+        private int chunkSize = TopicLog.DEFAULT_CHUNK_SIZE;
+        private long retentionMaxRecords = -1;
+        private long retentionMaxBytes = -1;
+        private long retentionMaxAgeMs = -1;
+        private boolean deleteConsumed;
+        private OffsetResetPolicy offsetResetPolicy = OffsetResetPolicy.EARLIEST;
+        private long capacityMaxRecords = -1;
+        private long capacityMaxBytes = -1;
+        private BackpressurePolicy backpressurePolicy = BackpressurePolicy.BLOCK;
+        private long backpressureTimeoutMs = 30_000;
+        private Quota quota;
+        private boolean compacted;
+        private long tombstoneRetentionMs = 60_000;
+        private Path storageDirectory;
+        private Serde<?> keySerde;
+        private Serde<?> valueSerde;
+        private int segmentBytes = SegmentLog.DEFAULT_SEGMENT_BYTES;
+        private long flushIntervalMs;
+        private long flushBytes = 1024 * 1024;
+        private CompressionCodec compression;
+        private boolean offHeapValues;
+        private int slabBytes = PayloadSlabs.DEFAULT_SLAB_BYTES;
+        private int keyIndexExpectedKeys;
+        private int minInSyncFollowers;
+        private long replicaLagTimeMs = 10_000;
+
+        private Builder() {
+
+        }
+
+        /**
+         * @param partitions The number of partitions of the topic, defaults to 1.
+         */
+        public Builder partitions(int partitions) {
+            checkArgument(partitions > 0, "partitions should be greater than 0");
+
+            this.partitions = partitions;
+            return this;
+        }
+
+        /**
+         * @param partitioner The {@link Partitioner} routing the published records, defaults to {@link HashPartitioner}.
+         */
+        public Builder partitioner(Partitioner<?> partitioner) {
+            checkNotNull(partitioner, "partitioner cannot be null");
+
+            this.partitioner = partitioner;
+            return this;
+        }
+
+        /**
+         * @param chunkSize The number of records per chunk of the partition logs, a power of two. Retention removes
+         *                  whole chunks, so this is also the granularity at which memory is released.
+         */
+        public Builder chunkSize(int chunkSize) {
+            checkArgument(chunkSize > 0 && Integer.bitCount(chunkSize) == 1, "chunkSize should be a power of two");
+
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * @param maxRecords The number of records to retain per partition, records are kept forever by default.
+         */
+        public Builder retentionMaxRecords(long maxRecords) {
+            checkArgument(maxRecords >= 0, "retentionMaxRecords should be >= 0");
+
+            this.retentionMaxRecords = maxRecords;
+            return this;
+        }
+
+        /**
+         * @param maxBytes The size in bytes to retain per partition. The size is estimated from the length of byte[] and
+         *                 String keys and values, any other key or value counts as a small fixed size.
+         */
+        public Builder retentionMaxBytes(long maxBytes) {
+            checkArgument(maxBytes >= 0, "retentionMaxBytes should be >= 0");
+
+            this.retentionMaxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @param maxAgeMs Records older than this are removed.
+         */
+        public Builder retentionMaxAgeMs(long maxAgeMs) {
+            checkArgument(maxAgeMs >= 0, "retentionMaxAgeMs should be >= 0");
+
+            this.retentionMaxAgeMs = maxAgeMs;
+            return this;
+        }
+
+        /**
+         * @param deleteConsumed Whether records which every registered subscriber and consumer group has already
+         *                       read are removed, defaults to false.
+         */
+        public Builder deleteConsumed(boolean deleteConsumed) {
+
+            this.deleteConsumed = deleteConsumed;
+            return this;
+        }
+
+        /**
+         * @param offsetResetPolicy What subscribers whose offset was removed by retention do, defaults to
+         *                          {@link OffsetResetPolicy#EARLIEST}.
+         */
+        public Builder offsetResetPolicy(OffsetResetPolicy offsetResetPolicy) {
+            checkNotNull(offsetResetPolicy, "offsetResetPolicy cannot be null");
+
+            this.offsetResetPolicy = offsetResetPolicy;
+            return this;
+        }
+
+        /**
+         * Bounds the topic: publishing stops to take the records which the slowest registered subscriber or consumer
+         * group of a partition has not read yet past maxRecords, as per the {@link BackpressurePolicy} of the topic.
+         * A partition nobody reads is not bounded. Combined with a retention such as deleteConsumed for the records
+         * already read, this puts a ceiling on the memory of the topic.
+         *
+         * Concurrent publishers may overshoot the capacity by their batches, and a batch larger than the capacity is
+         * published once the subscribers read everything.
+         *
+         * @param maxRecords The number of records per partition the slowest subscriber may have left to read.
+         */
+        public Builder capacityMaxRecords(long maxRecords) {
+            checkArgument(maxRecords > 0, "capacityMaxRecords should be greater than 0");
+
+            this.capacityMaxRecords = maxRecords;
+            return this;
+        }
+
+        /**
+         * Same as {@link Builder#capacityMaxRecords(long)}, in bytes. The size of the records left to read is
+         * estimated from the average size of the records published into the topic, see
+         * {@link Builder#retentionMaxBytes(long)}.
+         *
+         * @param maxBytes The number of bytes per partition the slowest subscriber may have left to read.
+         */
+        public Builder capacityMaxBytes(long maxBytes) {
+            checkArgument(maxBytes > 0, "capacityMaxBytes should be greater than 0");
+
+            this.capacityMaxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @param backpressurePolicy What publishers into a full partition of a bounded topic do, defaults to
+         *                           {@link BackpressurePolicy#BLOCK}. Remote publishers never block the
+         *                           {@link PubSubServer}, they fail instead.
+         */
+        public Builder backpressurePolicy(BackpressurePolicy backpressurePolicy) {
+            checkNotNull(backpressurePolicy, "backpressurePolicy cannot be null");
+
+            this.backpressurePolicy = backpressurePolicy;
+            return this;
+        }
+
+        /**
+         * @param backpressureTimeoutMs How long a publisher blocks on a full partition before it fails, defaults to
+         *                              30 seconds.
+         */
+        public Builder backpressureTimeoutMs(long backpressureTimeoutMs) {
+            checkArgument(backpressureTimeoutMs >= 0, "backpressureTimeoutMs should be >= 0");
+
+            this.backpressureTimeoutMs = backpressureTimeoutMs;
+            return this;
+        }
+
+        /**
+         * @param quota Limits the records and bytes per second published into the topic, by all its publishers
+         *              together including the remote ones. Defaults to no limit. Publishers are also limited on
+         *              their own with {@link PublisherConfig.Builder#quota(Quota)}.
+         */
+        public Builder quota(Quota quota) {
+            checkNotNull(quota, "quota cannot be null");
+
+            this.quota = quota;
+            return this;
+        }
+
+        /**
+         * @param compacted Whether the topic only keeps the latest {@link Record} per key, defaults to false.
+         *                  A background compactor removes the older records of a key once the chunk holding them is
+         *                  completely written, and a record with a null value (a tombstone) removes the key.
+         */
+        public Builder compacted(boolean compacted) {
+
+            this.compacted = compacted;
+            return this;
+        }
+
+        /**
+         * @param tombstoneRetentionMs How long the tombstones of a compacted topic are kept after they removed their
+         *                             key, so that subscribers get to see the removal. Defaults to one minute.
+         */
+        public Builder tombstoneRetentionMs(long tombstoneRetentionMs) {
+            checkArgument(tombstoneRetentionMs >= 0, "tombstoneRetentionMs should be >= 0");
+
+            this.tombstoneRetentionMs = tombstoneRetentionMs;
+            return this;
+        }
+
+        /**
+         * Stores the topic in memory-mapped segment files instead of on the heap, so that its records survive a
+         * restart and the heap does not grow with the retained records. Every partition gets a sub-directory, and
+         * a topic created again on the same directory continues from the records found there.
+         *
+         * @param directory The directory to store the topic in.
+         * @param keySerde Converts the keys of the records to bytes and back.
+         * @param valueSerde Converts the values of the records to bytes and back.
+         */
+        public Builder fileStorage(Path directory, Serde<?> keySerde, Serde<?> valueSerde) {
+            checkNotNull(directory, "directory cannot be null");
+            checkNotNull(keySerde, "keySerde cannot be null");
+            checkNotNull(valueSerde, "valueSerde cannot be null");
+
+            this.storageDirectory = directory;
+            this.keySerde = keySerde;
+            this.valueSerde = valueSerde;
+            return this;
+        }
+
+        /**
+         * @param segmentBytes The size of the segment files of a topic stored in files, defaults to 64MB. Retention
+         *                     deletes whole segments, and a record should fit into a segment.
+         */
+        public Builder segmentBytes(int segmentBytes) {
+            checkArgument(segmentBytes >= 1024, "segmentBytes should be >= 1024");
+
+            this.segmentBytes = segmentBytes;
+            return this;
+        }
+
+        /**
+         * @param flushIntervalMs How long a flush to disk for {@link Acks#FSYNCED} publishers waits for more records
+         *                        to flush together, defaults to 0: concurrent publishers still share the flushes.
+         */
+        public Builder flushIntervalMs(long flushIntervalMs) {
+            checkArgument(flushIntervalMs >= 0, "flushIntervalMs should be >= 0");
+
+            this.flushIntervalMs = flushIntervalMs;
+            return this;
+        }
+
+        /**
+         * @param flushBytes The number of bytes waiting to be flushed which starts the flush without waiting for
+         *                   flushIntervalMs, defaults to 1MB.
+         */
+        public Builder flushBytes(long flushBytes) {
+            checkArgument(flushBytes > 0, "flushBytes should be greater than 0");
+
+            this.flushBytes = flushBytes;
+            return this;
+        }
+
+        /**
+         * Compresses the records of a topic stored in files, a batch at a time: the records of a published batch
+         * which land on the same partition are compressed together once, and decompressed together when read.
+         * Records published one at a time are compressed on their own, which gains little.
+         * A topic can be opened again with another codec, the batches already stored keep theirs.
+         *
+         * @param compression The codec, e.g. {@link CompressionCodec#deflate()}.
+         */
+        public Builder compression(CompressionCodec compression) {
+            checkNotNull(compression, "compression cannot be null");
+            checkArgument(compression.id() > 0, "The id of the codec should be between 1 and 127");
+
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * Keeps the values of a topic kept in memory off the heap: they are serialized into large direct buffers
+         * when published, so that the heap and the garbage collection do not grow with the retained records.
+         * The values are deserialized again on every {@link Record#getValue()} of the records read.
+         *
+         * @param valueSerde Converts the values of the records to bytes and back.
+         */
+        public Builder offHeapValues(Serde<?> valueSerde) {
+            checkNotNull(valueSerde, "valueSerde cannot be null");
+
+            this.offHeapValues = true;
+            this.valueSerde = valueSerde;
+            return this;
+        }
+
+        /**
+         * @param slabBytes The size of the direct buffers holding the values of a topic with off-heap values,
+         *                  defaults to 4MB. Larger values get a buffer of their own.
+         */
+        public Builder slabBytes(int slabBytes) {
+            checkArgument(slabBytes >= 1024, "slabBytes should be >= 1024");
+
+            this.slabBytes = slabBytes;
+            return this;
+        }
+
+        /**
+         * Indexes every partition from the keys of its records to the latest record with the key, for
+         * {@link Subscriber#lookupLatest(Object)}. The index costs a map entry per distinct key retained, and a
+         * Bloom filter answers most lookups of keys which were never published without touching the map.
+         *
+         * @param expectedKeys The number of distinct keys the Bloom filter is sized for. More keys still work, with
+         *                     more lookups of absent keys going to the map.
+         */
+        public Builder keyIndex(int expectedKeys) {
+            checkArgument(expectedKeys > 0, "expectedKeys should be greater than 0");
+
+            this.keyIndexExpectedKeys = expectedKeys;
+            return this;
+        }
+
+        /**
+         * Replicates the topic to {@link TopicFollower}s fetching it through a {@link PubSubServer}. Subscribers of
+         * the topic only see the records below the high-water mark: the records which every follower in sync has.
+         * The high-water mark only moves while at least minInSyncFollowers followers are in sync.
+         *
+         * @param minInSyncFollowers The number of followers in sync needed for the records to become visible.
+         */
+        public Builder replicated(int minInSyncFollowers) {
+            checkArgument(minInSyncFollowers > 0, "minInSyncFollowers should be greater than 0");
+
+            this.minInSyncFollowers = minInSyncFollowers;
+            return this;
+        }
+
+        /**
+         * @param replicaLagTimeMs How long a follower of a replicated topic stays in sync without fetching, defaults
+         *                         to 10 seconds. A follower which is not in sync does not hold the high-water mark back.
+         */
+        public Builder replicaLagTimeMs(long replicaLagTimeMs) {
+            checkArgument(replicaLagTimeMs > 0, "replicaLagTimeMs should be greater than 0");
+
+            this.replicaLagTimeMs = replicaLagTimeMs;
+            return this;
+        }
+
+        public TopicConfig build() {
+            checkArgument(!compacted || storageDirectory == null, "Compacted topics cannot be stored in files");
+            checkArgument(!compacted || minInSyncFollowers == 0, "Replicated topics cannot be compacted");
+            checkArgument(!offHeapValues || storageDirectory == null,
+                    "Topics stored in files already keep their values off the heap");
+            checkArgument(compression == null || storageDirectory != null,
+                    "Only topics stored in files can be compressed");
+
+            return new TopicConfig(this);
+        }
+    }
+}
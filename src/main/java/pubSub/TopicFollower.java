@@ -0,0 +1,220 @@
+package pubSub;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import static com.google.inject.internal.util.Preconditions.checkArgument;
+import static com.google.inject.internal.util.Preconditions.checkNotNull;
+
+/**
+ * Replicates a topic of a {@link PubSubServer}, the leader, into a topic of this JVM, the follower.
+ *
+ * A fetcher thread fetches the records of every partition past the ones the follower has, in batches, and appends
+ * them to the follower. Every fetch tells the leader up to where the follower has the records, so acknowledging a
+ * batch costs nothing more than fetching the next one. A fetch waits on the leader until there are records to
+ * replicate, and the leader answers with its high-water mark: subscribers of the leader topic, if it is
+ * {@link TopicConfig.Builder#replicated(int)}, and of the follower topic only see the records below it.
+ * The leader's retention keeps the records its followers in sync have not fetched yet. A new follower starts at the
+ * first record the leader still has, while a follower which fell out of sync for long enough to miss records keeps
+ * failing to fetch and should be re-created on a new topic.
+ *
+ * The follower topic cannot be published into until it is promoted, on failover. Like every topic served by a
+ * {@link PubSubServer}, the leader topic has byte[] keys and values, and so does the follower topic. Its records keep
+ * the timestamps of the leader, so that seeking by timestamp replays the same records after failover.
+ */
+public final class TopicFollower implements Closeable {
+
+    private static final int MAX_RECORDS_PER_PARTITION = 4096;
+
+    // How long a fetch waits on the leader for records, well below the replicaLagTimeMs of the leader topic.
+    private static final long FETCH_TIMEOUT_MS = 500;
+    private static final long MAX_BACKOFF_MS = 5000;
+
+    @SuppressWarnings("unchecked")
+    private final PubSubManager<Object,Object> pubSubManager = PubSubManager.getInstance();
+
+    private final InetSocketAddress leader;
+    private final String leaderTopic;
+    private final String followerId;
+    private final String topic;
+    private final int numPartitions;
+
+    // The offset to fetch from and the high-water mark, per partition, only used by the fetcher thread.
+    private final long[] fetchOffsets;
+    private final long[] highWatermarks;
+
+    private final Thread fetcherThread;
+    private volatile PubSubClient client;
+    private volatile boolean stopped;
+
+    /**
+     * Starts replicating the leader topic into the follower topic, creating the follower topic if it does not
+     * exist yet. A follower topic which already has records resumes after them.
+     *
+     * @param leader The address of the {@link PubSubServer} serving the leader topic.
+     * @param leaderTopic The topic to replicate.
+     * @param followerId Identifies this follower to the leader, should be unique among the followers of the topic.
+     * @param topic The follower topic in this JVM.
+     * @param topicConfig The configuration to create the follower topic with, with as many partitions as the leader
+     *                    topic. It should be {@link TopicConfig.Builder#replicated(int)} for the follower to have
+     *                    followers of its own once promoted.
+     * @throws IOException If the leader could not be reached, or does not have the topic.
+     * @throws IllegalArgumentException If the topics do not have the same number of partitions.
+     */
+    public TopicFollower(InetSocketAddress leader, String leaderTopic, String followerId, String topic,
+                         TopicConfig topicConfig) throws IOException {
+        checkNotNull(leader, "TopicFollower cannot be instantiated with a null leader");
+        checkNotNull(leaderTopic, "TopicFollower cannot be instantiated with a null leaderTopic");
+        checkNotNull(followerId, "TopicFollower cannot be instantiated with a null followerId");
+        checkNotNull(topic, "TopicFollower cannot be instantiated with a null topic");
+        checkNotNull(topicConfig, "TopicFollower cannot be instantiated with a null topicConfig");
+        checkArgument(!topicConfig.isCompacted(), "Compacted topics cannot be replicated");
+
+        this.leader = leader;
+        this.leaderTopic = leaderTopic;
+        this.followerId = followerId;
+        this.topic = topic;
+        this.client = new PubSubClient(leader);
+        try {
+            this.numPartitions = client.call(Protocol.METADATA, request -> request.putString(leaderTopic),
+                    ByteBuffer::getInt);
+            checkArgument(topicConfig.getPartitions() == numPartitions,
+                    "The follower topic should have as many partitions as the leader topic");
+        } catch (IOException | RuntimeException e) {
+            client.close();
+            throw e;
+        }
+        pubSubManager.followTopic(topic, topicConfig);
+        this.fetchOffsets = new long[numPartitions];
+        this.highWatermarks = new long[numPartitions];
+        for (int partition = 0; partition < numPartitions; partition++) {
+
+            // Resume after the records the follower already has.
+            fetchOffsets[partition] = pubSubManager.appendReplicated(topic, partition, Collections.emptyList(), 0, 0);
+        }
+
+        this.fetcherThread = new Thread(this::run, "pubSubFollower-" + topic);
+        fetcherThread.setDaemon(true);
+        fetcherThread.start();
+    }
+
+    /**
+     * Stops replicating and turns the follower topic into a leader, which publishers can publish into again.
+     * Returns once the last fetch is appended.
+     */
+    public void promote() {
+
+        close();
+        pubSubManager.promote(topic);
+    }
+
+    /**
+     * Stops replicating, the follower topic stays a follower. Returns once the last fetch is appended.
+     */
+    @Override
+    public void close() {
+
+        stopped = true;
+        closeClient();
+
+        // Not interrupting the fetcher thread, which would close the files of a follower topic stored in files.
+        synchronized (this) {
+            notifyAll();
+        }
+        try {
+            fetcherThread.join();
+        } catch (InterruptedException e) {
+
+            //  Re-interrupt the current thread: restores the interrupt status of the thread.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+
+        long backoffMs = 0;
+        while (!stopped) {
+            try {
+                PubSubClient current = client;
+                if (current == null) {
+                    current = new PubSubClient(leader);
+                    client = current;
+                }
+                current.call(Protocol.REPLICA_FETCH, this::writeFetch, this::append);
+                backoffMs = 0;
+            } catch (IOException | RuntimeException e) {
+                if (stopped) {
+                    break;
+                }
+
+                // Log, and fetch again on a new connection after a while.
+                System.out.println("Replicating " + leaderTopic + " failed with exception " + e.getMessage());
+                closeClient();
+                backoffMs = Math.min(Math.max(2 * backoffMs, 100), MAX_BACKOFF_MS);
+                try {
+                    synchronized (this) {
+                        if (!stopped) {
+                            wait(backoffMs);
+                        }
+                    }
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+        }
+
+        // A connection opened while closing.
+        closeClient();
+    }
+
+    private void writeFetch(FrameWriter request) {
+
+        request.putString(leaderTopic).putString(followerId).putInt(MAX_RECORDS_PER_PARTITION)
+                .putLong(FETCH_TIMEOUT_MS).putInt(numPartitions);
+        for (int partition = 0; partition < numPartitions; partition++) {
+            request.putInt(partition).putLong(fetchOffsets[partition]).putLong(highWatermarks[partition]);
+        }
+    }
+
+    private Void append(ByteBuffer response) {
+
+        int count = response.getInt();
+        for (int i = 0; i < count; i++) {
+            int partition = response.getInt();
+            if (partition < 0 || partition >= numPartitions) {
+                throw new IllegalStateException("Partition not found");
+            }
+            long highWatermark = response.getLong();
+            long startOffset = response.getLong();
+            int recordCount = response.getInt();
+            List<Record<Object,Object>> records = new ArrayList<>(recordCount);
+            for (int r = 0; r < recordCount; r++) {
+                long timestamp = response.getLong();
+                records.add(new Record<>(Protocol.getBytes(response), Protocol.getBytes(response),
+                        Protocol.getHeaders(response), timestamp));
+            }
+            fetchOffsets[partition] = pubSubManager.appendReplicated(topic, partition, records, startOffset,
+                    highWatermark);
+            highWatermarks[partition] = highWatermark;
+        }
+        return null;
+    }
+
+    private void closeClient() {
+
+        PubSubClient current = client;
+        client = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                System.out.println("Closing the connection to the leader failed with exception " + e.getMessage());
+            }
+        }
+    }
+}
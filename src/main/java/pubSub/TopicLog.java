@@ -0,0 +1,697 @@
+package pubSub;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Append-only log backing a single topic.
+ *
+ * The log is made of fixed-size chunks which are never resized or copied once created. Producers reserve an
+ * offset with a single atomic increment, write their {@link Record} into the chunk slot for that offset and then
+ * help advancing the tail over every contiguous written slot, so a producer never waits for another producer.
+ * A batch reserves a contiguous range of offsets and becomes visible at once: the tail jumps over the whole batch.
+ * Readers never lock: every offset between {@link TopicLog#startOffset()} and {@link TopicLog#tail()} is
+ * guaranteed to be fully written.
+ *
+ * Old chunks are dropped as a whole by {@link TopicLog#enforceRetention}. Offsets are absolute and never reused, the
+ * chunk directory is a ring so the log can grow forever as long as the retained part fits into the directory.
+ * Compaction ({@link TopicLog#compact}) empties the slots of superseded records in place, readers skip empty slots.
+ *
+ * Records are stamped with their append time before their offset is reserved, so the records of a chunk are never
+ * stamped after the next chunk got created (replicated records keep the earlier time of the leader):
+ * {@link TopicLog#offsetForTimestamp} binary searches the chunks by their creation time, and scans a single chunk or
+ * so.
+ *
+ * With {@link PayloadSlabs} the values are copied off the heap on append, and the log keeps {@link OffHeapRecord}
+ * handles only. The slabs go away with the chunks pointing into them.
+ *
+ * @param <K> The key for the {@link Record}
+ * @param <V> The value for the {@link Record}
+ */
+final class TopicLog<K,V> implements PartitionLog<K,V> {
+
+    // Number of records per chunk (must be a power of two) and number of chunks per directory page.
+    static final int DEFAULT_CHUNK_SIZE = 1024;
+    private static final int PAGE_SIZE = 4096;
+    private static final int MAX_PAGES = 4096;
+
+    private final int chunkShift;
+    private final int chunkMask;
+
+    // Two level directory of chunks (page -> chunk), every slot is installed with a CAS.
+    private final AtomicReferenceArray<AtomicReferenceArray<Chunk<K,V>>> directory =
+            new AtomicReferenceArray<>(MAX_PAGES);
+
+    // The next offset to hand out to a producer.
+    private final AtomicLong nextOffset = new AtomicLong();
+
+    // All the offsets below the tail are written and visible to the readers.
+    private final AtomicLong tail = new AtomicLong();
+
+    // The first offset still present in the log, always at a chunk boundary. Only moved by enforceRetention.
+    private volatile long startOffset;
+
+    // The estimated size of the sealed (i.e. completely written) chunks which are still in the log.
+    private volatile long sealedBytes;
+
+    // The first offset of the oldest chunk whose size is not part of sealedBytes yet.
+    private long sizedUpToOffset;
+
+    // The most recently created chunk, lets producers and readers near the tail skip the directory lookup.
+    private volatile Chunk<K,V> lastChunk = new Chunk<>(-1, 0);
+
+    // Stores the values off the heap, null to keep the records as they are published.
+    private final PayloadSlabs<V> payloadSlabs;
+
+    // Compaction state, only accessed by the cleaner thread: the end of the chunks compacted so far, and whether
+    // tombstones were kept by the last compaction and might expire in a later one.
+    private long compactedUpToOffset;
+    private boolean pendingTombstones;
+
+    TopicLog() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    TopicLog(int chunkSize) {
+        this(chunkSize, null);
+    }
+
+    TopicLog(int chunkSize, PayloadSlabs<V> payloadSlabs) {
+        if (chunkSize <= 0 || Integer.bitCount(chunkSize) != 1) {
+            throw new IllegalArgumentException("chunkSize should be a power of two");
+        }
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        this.chunkMask = chunkSize - 1;
+        this.payloadSlabs = payloadSlabs;
+    }
+
+    /**
+     * Appends the {@link Record} to the end of the log.
+     *
+     * @param record The record to append
+     * @return The offset at which the record was stored.
+     */
+    @Override
+    public long append(Record<K,V> record) {
+
+        return appendStored(store(record, System.currentTimeMillis()));
+    }
+
+    private long appendStored(Record<K,V> stored) {
+
+        long offset = nextOffset.getAndIncrement();
+        chunkFor(offset, true).records.set((int) (offset & chunkMask), stored);
+        advanceTail();
+        return offset;
+    }
+
+    /**
+     * Appends the {@link Record}s to the end of the log as a single batch, which readers see either entirely or not
+     * at all. The offsets are reserved with a single atomic increment and the slots are written without a memory
+     * barrier each: the first record is written last, and publishes the whole batch.
+     *
+     * @param records The records to append, should not be empty.
+     * @return The offset at which the first record was stored.
+     */
+    @Override
+    public long appendAll(List<Record<K,V>> records) {
+
+        return prepare(records, false).getAsLong();
+    }
+
+    @Override
+    public long appendReplicated(List<Record<K,V>> records) {
+
+        return prepare(records, true).getAsLong();
+    }
+
+    /**
+     * Stamps the records, and copies their values off the heap.
+     */
+    @Override
+    public LongSupplier prepare(List<Record<K,V>> records) {
+
+        return prepare(records, false);
+    }
+
+    private LongSupplier prepare(List<Record<K,V>> records, boolean keepTimestamps) {
+
+        // Stamp (and copy the values off the heap) before reserving the offsets, a failing serializer leaves the log
+        // as is. The list is only copied if a record had to be copied.
+        int count = records.size();
+        long now = System.currentTimeMillis();
+        List<Record<K,V>> stored = records;
+        for (int i = 0; i < count; i++) {
+            Record<K,V> record = store(records.get(i), keepTimestamps ? records.get(i).getTimestamp() : now);
+            if (record != records.get(i) && stored == records) {
+                stored = new ArrayList<>(records);
+            }
+            if (stored != records) {
+                stored.set(i, record);
+            }
+        }
+        List<Record<K,V>> prepared = stored;
+        return (count == 1) ? () -> appendStored(prepared.get(0)) : () -> appendStored(prepared);
+    }
+
+    private long appendStored(List<Record<K,V>> records) {
+
+        int count = records.size();
+        long baseOffset = nextOffset.getAndAdd(count);
+
+        // Every record but the first, chunk by chunk. Nobody reads these slots before the first one is written.
+        long offset = baseOffset + 1;
+        int written = 1;
+        while (written < count) {
+            Chunk<K,V> chunk = chunkFor(offset, true);
+            int index = (int) (offset & chunkMask);
+            int length = Math.min(count - written, chunk.size - index);
+            AtomicReferenceArray<Record<K,V>> slots = chunk.records;
+            for (int i = 0; i < length; i++) {
+                slots.lazySet(index + i, records.get(written + i));
+            }
+            written += length;
+            offset += length;
+        }
+
+        Chunk<K,V> head = chunkFor(baseOffset, true);
+        int headIndex = (int) (baseOffset & chunkMask);
+        head.setBatchLength(headIndex, count);
+        head.records.set(headIndex, records.get(0));
+        advanceTail();
+        return baseOffset;
+    }
+
+    /**
+     * Retrieves the {@link Record} stored at the offset.
+     *
+     * @param offset The offset, should be below {@link TopicLog#tail()}
+     * @return The record, null if it was removed by compaction.
+     * @throws OffsetOutOfRangeException If the offset was already removed from the log.
+     */
+    Record<K,V> get(long offset) {
+
+        Chunk<K,V> chunk = chunkFor(offset, false);
+        if (chunk == null) {
+            throw new OffsetOutOfRangeException(offset);
+        }
+        AtomicReferenceArray<Record<K,V>> records = chunk.records;
+        return (records == null) ? null : records.get((int) (offset & chunkMask));
+    }
+
+    /**
+     * Copies upto maxRecords {@link Record}s starting at fromOffset into the given list.
+     * Slots emptied by compaction are skipped and do not count towards maxRecords.
+     *
+     * @param fromOffset The first offset to read
+     * @param maxRecords The maximum number of records to read
+     * @param out The list to add the records to
+     * @return The offset following the last record that was read.
+     * @throws OffsetOutOfRangeException If fromOffset was already removed from the log.
+     */
+    @Override
+    public long read(long fromOffset, int maxRecords, List<Record<K,V>> out) {
+        return read(fromOffset, Long.MAX_VALUE, maxRecords, null, out);
+    }
+
+    /**
+     * Same as {@link TopicLog#read(long, int, List)} for the records matching the filter, up to endOffset.
+     * Only the matching records count towards maxRecords. The values of {@link OffHeapRecord}s are matched in their
+     * slab.
+     */
+    @Override
+    public long read(long fromOffset, long endOffset, int maxRecords, RecordFilter<K> filter,
+                     List<Record<K,V>> out) {
+
+        long currentEnd = Math.min(endOffset, tail.get());
+        long offset = fromOffset;
+        int count = 0;
+        while (offset < currentEnd && count < maxRecords) {
+
+            // Copy chunk by chunk so that we resolve the chunk only once per chunk.
+            Chunk<K,V> chunk = chunkFor(offset, false);
+            if (chunk == null) {
+                throw new OffsetOutOfRangeException(offset);
+            }
+            int end = (int) Math.min(chunk.size, currentEnd - chunk.baseOffset);
+            AtomicReferenceArray<Record<K,V>> records = chunk.records;
+            if (records == null) {
+
+                // Every record of the chunk was compacted away.
+                offset = chunk.baseOffset + end;
+                continue;
+            }
+            int index = (int) (offset & chunkMask);
+            for (; index < end && count < maxRecords; index++) {
+
+                // Slots emptied by compaction are null.
+                Record<K,V> record = records.get(index);
+                if (record != null && (filter == null || matches(filter, record))) {
+                    out.add(record);
+                    count++;
+                }
+            }
+            offset = chunk.baseOffset + index;
+        }
+        return offset;
+    }
+
+    private static <K> boolean matches(RecordFilter<K> filter, Record<K,?> record) {
+
+        if (!filter.matchesKey(record.getKey()) || !filter.matchesHeaders(record.getHeaders())) {
+            return false;
+        }
+        if (!filter.filtersValue()) {
+            return true;
+        }
+        return filter.matchesValue((record instanceof OffHeapRecord)
+                ? ((OffHeapRecord<K,?>) record).valueBytes() : null);
+    }
+
+    /**
+     * Finds the first record appended at or after the timestamp: binary searches for the first chunk whose next
+     * chunk was created at or after the timestamp, as no record of an earlier chunk can be that recent, and scans
+     * forward from there.
+     *
+     * @param timestampMs The milliseconds since the epoch.
+     * @return The offset of the first record stamped at or after timestampMs, the tail if there is none.
+     */
+    @Override
+    public long offsetForTimestamp(long timestampMs) {
+
+        long currentTail = tail.get();
+        long currentStart = startOffset;
+        if (currentStart >= currentTail) {
+            return currentTail;
+        }
+        long low = currentStart >>> chunkShift;
+        long high = (currentTail - 1) >>> chunkShift;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            Chunk<K,V> nextChunk = chunkFor((middle + 1) << chunkShift, false);
+            if (nextChunk != null && nextChunk.createdTimeMs >= timestampMs) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        long offset = Math.max(low << chunkShift, currentStart);
+        while (offset < currentTail) {
+            Chunk<K,V> chunk = chunkFor(offset, false);
+            if (chunk == null) {
+
+                // Dropped by retention meanwhile, continue from what is left.
+                offset = Math.max(offset + 1, startOffset);
+                continue;
+            }
+            int end = (int) Math.min(chunk.size, currentTail - chunk.baseOffset);
+            AtomicReferenceArray<Record<K,V>> records = chunk.records;
+            for (int index = (int) (offset & chunkMask); records != null && index < end; index++) {
+                Record<K,V> record = records.get(index);
+                if (record != null && record.getTimestamp() >= timestampMs) {
+                    return chunk.baseOffset + index;
+                }
+            }
+            offset = chunk.baseOffset + end;
+        }
+        return currentTail;
+    }
+
+    /**
+     * @return The offset that the next published record will be visible at.
+     */
+    @Override
+    public long tail() {
+        return tail.get();
+    }
+
+    /**
+     * @return The first offset still present in the log.
+     */
+    @Override
+    public long startOffset() {
+        return startOffset;
+    }
+
+    /**
+     * @return The estimated size in bytes of the records in the log, excluding the chunk currently written to.
+     */
+    @Override
+    public long sizeInBytes() {
+        return sealedBytes;
+    }
+
+    /**
+     * Records on the heap are never written to disk, nothing to wait for.
+     */
+    @Override
+    public void flush(long endOffset) {
+
+    }
+
+    /**
+     * Drops the oldest chunks which are no longer needed. Only whole chunks which have been completely written are
+     * dropped, and the size limits are always kept: e.g. the log is trimmed to between maxRecords and maxRecords
+     * plus one chunk worth of records. Not thread safe, expected to be called by a single cleaner thread.
+     *
+     * @param maxRecords The number of records to retain, or -1 for no limit.
+     * @param maxBytes The estimated number of bytes to retain, or -1 for no limit.
+     * @param maxAgeMs Chunks whose newest record is older than this are dropped, or -1 for no limit.
+     * @param consumedOffset Chunks entirely below this offset are dropped, or -1 to ignore the consumers.
+     * @param replicatedOffset Chunks not entirely below this offset are kept whatever the limits, as followers still
+     *                         have to fetch them, or Long.MAX_VALUE if no follower does.
+     * @param nowMs The current time.
+     * @return The number of dropped records.
+     */
+    @Override
+    public synchronized long enforceRetention(long maxRecords, long maxBytes, long maxAgeMs, long consumedOffset,
+                                              long replicatedOffset, long nowMs) {
+
+        updateSealedBytes();
+
+        int chunkRecords = chunkMask + 1;
+        long currentStart = startOffset;
+        long retainedRecords = tail.get() - currentStart;
+        long retainedBytes = sealedBytes;
+        long newStart = currentStart;
+        while (newStart + chunkRecords <= sizedUpToOffset && newStart + chunkRecords <= replicatedOffset) {
+            Chunk<K,V> chunk = chunkFor(newStart, false);
+            Chunk<K,V> nextChunk = chunkFor(newStart + chunkRecords, false);
+
+            boolean drop = (maxRecords >= 0 && retainedRecords - chunkRecords >= maxRecords)
+                    || (maxBytes >= 0 && retainedBytes - chunk.sizeInBytes >= maxBytes)
+                    || (consumedOffset >= 0 && consumedOffset >= newStart + chunkRecords)
+
+                    // All the records of this chunk were appended before the next chunk was created.
+                    || (maxAgeMs >= 0 && nextChunk != null && nowMs - nextChunk.createdTimeMs > maxAgeMs);
+            if (!drop) {
+                break;
+            }
+            retainedRecords -= chunkRecords;
+            retainedBytes -= chunk.sizeInBytes;
+            newStart += chunkRecords;
+        }
+        if (newStart == currentStart) {
+            return 0;
+        }
+
+        // Move the start first so that new readers do not go into the chunks being dropped. Readers already in
+        // those chunks hold their own reference to the chunk and finish reading it.
+        startOffset = newStart;
+        sealedBytes = retainedBytes;
+        for (long offset = currentStart; offset < newStart; offset += chunkRecords) {
+            dropChunk(offset);
+        }
+        return newStart - currentStart;
+    }
+
+    /**
+     * Drops the chunks of the log, which hold no record, and creates the one holding the offset: the log starts at
+     * the boundary of that chunk, and its slots below the offset stay empty. Only called before anything is appended
+     * to the log, and synchronized with the cleaner thread.
+     */
+    @Override
+    public synchronized void resetTo(long offset) {
+
+        long currentTail = tail.get();
+        if (offset == currentTail) {
+            return;
+        }
+        List<Record<K,V>> records = new ArrayList<>(1);
+        if (nextOffset.get() != currentTail || read(startOffset, 1, records) != currentTail || !records.isEmpty()) {
+            throw new IllegalStateException("Only a log without records can be reset");
+        }
+        for (long chunkOffset = startOffset; chunkOffset < currentTail; chunkOffset += chunkMask + 1) {
+            if (chunkFor(chunkOffset, false) != null) {
+                dropChunk(chunkOffset);
+            }
+        }
+        long chunkStart = offset & ~((long) chunkMask);
+        lastChunk = new Chunk<>(-1, 0);
+        chunkFor(offset, true);
+        sizedUpToOffset = chunkStart;
+        compactedUpToOffset = chunkStart;
+        sealedBytes = 0;
+        startOffset = chunkStart;
+        nextOffset.set(offset);
+        tail.set(offset);
+    }
+
+    /**
+     * Adds the size of every chunk which got completely written since the last call to sealedBytes.
+     */
+    private void updateSealedBytes() {
+
+        long currentTail = tail.get();
+        long bytes = sealedBytes;
+        while (sizedUpToOffset + chunkMask + 1 <= currentTail) {
+            Chunk<K,V> chunk = chunkFor(sizedUpToOffset, false);
+            chunk.sizeInBytes = sizeOf(chunk);
+            bytes += chunk.sizeInBytes;
+            sizedUpToOffset += chunkMask + 1;
+        }
+        sealedBytes = bytes;
+    }
+
+    /**
+     * Keeps only the newest {@link Record} per key in the completely written chunks, by emptying the slots of the
+     * older records in place. A record with a null value (a tombstone) removes the older records of its key, and is
+     * itself removed once it is older than tombstoneRetentionMs. Records without a key are always kept.
+     * Chunks left without any record release their slots entirely. Not thread safe, expected to be called by a
+     * single cleaner thread.
+     *
+     * @param tombstoneRetentionMs How long to keep the tombstones.
+     * @param nowMs The current time.
+     * @return The number of removed records.
+     */
+    @Override
+    public synchronized long compact(long tombstoneRetentionMs, long nowMs) {
+
+        int chunkRecords = chunkMask + 1;
+        long currentStart = startOffset;
+        long sealedEnd = tail.get() & ~((long) chunkMask);
+        if (sealedEnd <= compactedUpToOffset && !pendingTombstones) {
+
+            // Nothing got written or can expire since the last compaction.
+            return 0;
+        }
+
+        // The newest offset of every key, see KeyIndex#indexKey.
+        Map<Object, Long> latestOffsets = new HashMap<>();
+        for (long base = currentStart; base < sealedEnd; base += chunkRecords) {
+            AtomicReferenceArray<Record<K,V>> records = chunkFor(base, false).records;
+            for (int i = 0; records != null && i < chunkRecords; i++) {
+                Record<K,V> record = records.get(i);
+                if (record != null && record.getKey() != null) {
+                    latestOffsets.put(KeyIndex.indexKey(record.getKey()), base + i);
+                }
+            }
+        }
+
+        long removed = 0;
+        pendingTombstones = false;
+        for (long base = currentStart; base < sealedEnd; base += chunkRecords) {
+            Chunk<K,V> chunk = chunkFor(base, false);
+            AtomicReferenceArray<Record<K,V>> records = chunk.records;
+            if (records == null) {
+                continue;
+            }
+
+            // All the records of this chunk were appended before the next chunk was created.
+            Chunk<K,V> nextChunk = chunkFor(base + chunkRecords, false);
+            boolean tombstonesExpired = nextChunk != null && nowMs - nextChunk.createdTimeMs > tombstoneRetentionMs;
+
+            int remaining = 0;
+            long removedBytes = 0;
+            for (int i = 0; i < chunkRecords; i++) {
+                Record<K,V> record = records.get(i);
+                if (record == null) {
+                    continue;
+                }
+                boolean superseded = record.getKey() != null
+                        && latestOffsets.get(KeyIndex.indexKey(record.getKey())) != base + i;
+                boolean tombstone = record.getKey() != null && !record.hasValue();
+                if (superseded || (tombstone && tombstonesExpired)) {
+                    records.set(i, null);
+                    removedBytes += record.estimatedSize();
+                    removed++;
+                } else {
+                    remaining++;
+                    pendingTombstones |= tombstone;
+                }
+            }
+            if (remaining == 0) {
+                chunk.records = null;
+            }
+            if (base < sizedUpToOffset) {
+
+                // Keep the size based retention accurate.
+                chunk.sizeInBytes -= removedBytes;
+                sealedBytes -= removedBytes;
+            }
+        }
+        compactedUpToOffset = sealedEnd;
+        return removed;
+    }
+
+    /**
+     * Moves the tail over every contiguous slot that has been written, and over a whole batch at once.
+     * A producer which finds the slot at the tail still empty leaves, the producer owning that slot will move the
+     * tail over our slot once it is done. Both the slot writes and the tail reads are volatile, so at least one of
+     * the two producers always sees the other one's write.
+     */
+    private void advanceTail() {
+
+        while (true) {
+            long currentTail = tail.get();
+            if (currentTail == nextOffset.get()) {
+                return;
+            }
+            // Chunks at the tail are never compacted, their slots are always there.
+            Chunk<K,V> chunk = chunkFor(currentTail, true);
+            int index = (int) (currentTail & chunkMask);
+            if (chunk.records.get(index) == null) {
+                return;
+            }
+            tail.compareAndSet(currentTail, currentTail + chunk.batchLength(index));
+        }
+    }
+
+    private Record<K,V> store(Record<K,V> record, long timestampMs) {
+        return (payloadSlabs == null) ? record.stamp(timestampMs) : payloadSlabs.store(record, timestampMs);
+    }
+
+    private long sizeOf(Chunk<K,V> chunk) {
+
+        AtomicReferenceArray<Record<K,V>> records = chunk.records;
+        long bytes = 0;
+        for (int i = 0; records != null && i < chunk.size; i++) {
+            Record<K,V> record = records.get(i);
+            if (record != null) {
+                bytes += record.estimatedSize();
+            }
+        }
+        return bytes;
+    }
+
+    private void dropChunk(long baseOffset) {
+
+        long chunkNumber = baseOffset >>> chunkShift;
+        int pageIndex = (int) ((chunkNumber / PAGE_SIZE) % MAX_PAGES);
+        int chunkIndex = (int) (chunkNumber % PAGE_SIZE);
+        AtomicReferenceArray<Chunk<K,V>> page = directory.get(pageIndex);
+        page.set(chunkIndex, null);
+        if (chunkIndex == PAGE_SIZE - 1) {
+
+            // That was the last chunk of the page, release the page as well.
+            directory.compareAndSet(pageIndex, page, null);
+        }
+    }
+
+    /**
+     * @return The chunk holding the offset, null if the chunk does not exist and create is false.
+     */
+    private Chunk<K,V> chunkFor(long offset, boolean create) {
+
+        Chunk<K,V> chunk = lastChunk;
+        if (offset >= chunk.baseOffset && offset - chunk.baseOffset < chunk.size) {
+            return chunk;
+        }
+
+        long chunkNumber = offset >>> chunkShift;
+        long baseOffset = chunkNumber << chunkShift;
+        int pageIndex = (int) ((chunkNumber / PAGE_SIZE) % MAX_PAGES);
+        int chunkIndex = (int) (chunkNumber % PAGE_SIZE);
+
+        AtomicReferenceArray<Chunk<K,V>> page = directory.get(pageIndex);
+        if (page == null) {
+            if (!create) {
+                return null;
+            }
+            directory.compareAndSet(pageIndex, null, new AtomicReferenceArray<>(PAGE_SIZE));
+            page = directory.get(pageIndex);
+        }
+
+        chunk = page.get(chunkIndex);
+        if (chunk == null) {
+            if (!create) {
+                return null;
+            }
+            // Losing the race is fine, the winner's chunk is used by everyone.
+            if (page.compareAndSet(chunkIndex, null, new Chunk<>(baseOffset, chunkMask + 1))) {
+                chunk = page.get(chunkIndex);
+                lastChunk = chunk;
+            } else {
+                chunk = page.get(chunkIndex);
+            }
+        }
+        if (chunk.baseOffset != baseOffset) {
+
+            // The ring wrapped around onto a chunk which is still retained.
+            if (create) {
+                throw new IllegalStateException("Topic log is full");
+            }
+            return null;
+        }
+        return chunk;
+    }
+
+    /**
+     * A fixed-size block of consecutive offsets.
+     */
+    private static final class Chunk<K,V> {
+
+        private final long baseOffset;
+        private final long createdTimeMs;
+        private final int size;
+
+        // Set to null by compaction once none of the records of the chunk is left.
+        private volatile AtomicReferenceArray<Record<K,V>> records;
+
+        // Computed once the chunk is completely written, only accessed by the cleaner thread.
+        private long sizeInBytes;
+
+        // The length of the batches starting in this chunk by slot, only allocated once a batch is appended to it.
+        private volatile int[] batchLengths;
+
+        Chunk(long baseOffset, int size) {
+            this.baseOffset = baseOffset;
+            this.createdTimeMs = System.currentTimeMillis();
+            this.size = size;
+            this.records = new AtomicReferenceArray<>(size);
+        }
+
+        /**
+         * Should be called before the first record of the batch is written, which makes the length visible.
+         */
+        void setBatchLength(int index, int length) {
+
+            int[] lengths = batchLengths;
+            if (lengths == null) {
+                synchronized (this) {
+                    if (batchLengths == null) {
+                        batchLengths = new int[size];
+                    }
+                    lengths = batchLengths;
+                }
+            }
+            lengths[index] = length;
+        }
+
+        /**
+         * @return The number of records published together with the record at the index.
+         */
+        int batchLength(int index) {
+
+            int[] lengths = batchLengths;
+            return (lengths == null || lengths[index] == 0) ? 1 : lengths[index];
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package pubSub;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of a topic, recorded by the {@link PubSubManager} on every publish and poll: the records and bytes
+ * published and fetched with their rates, the failed calls, the throttling by quotas, and the latency of publishing
+ * and polling.
+ *
+ * Bytes are the estimated size of the records, see {@link Record#estimatedSize()}. The size of the log is read from
+ * the partitions when asked for, not recorded.
+ */
+final class TopicMetrics {
+
+    private final Meter publishedRecords = new Meter();
+    private final Meter publishedBytes = new Meter();
+    private final Meter fetchedRecords = new Meter();
+    private final Meter fetchedBytes = new Meter();
+    private final Meter droppedRecords = new Meter();
+    private final LongAdder publishFailures = new LongAdder();
+    private final LongAdder pollFailures = new LongAdder();
+    private final LongAdder throttleNanos = new LongAdder();
+    private final LongAdder quotaRejections = new LongAdder();
+
+    // In nanoseconds. Polls only count the time spent reading, not parked in a long poll.
+    private final Histogram publishLatency = new Histogram();
+    private final Histogram pollLatency = new Histogram();
+
+    void published(int records, long bytes, long latencyNanos) {
+
+        publishedRecords.mark(records);
+        publishedBytes.mark(bytes);
+        publishLatency.record(latencyNanos);
+    }
+
+    void publishFailed() {
+        publishFailures.increment();
+    }
+
+    void throttled(long delayNanos) {
+        throttleNanos.add(delayNanos);
+    }
+
+    void quotaRejected() {
+        quotaRejections.increment();
+    }
+
+    void dropped(long records) {
+        droppedRecords.mark(records);
+    }
+
+    /**
+     * @return The average estimated size of the records published into the topic, 0 if none was.
+     */
+    long averageRecordBytes() {
+
+        long records = publishedRecords.count();
+        return (records == 0) ? 0 : publishedBytes.count() / records;
+    }
+
+    void fetched(int records, long bytes, long latencyNanos) {
+
+        fetchedRecords.mark(records);
+        fetchedBytes.mark(bytes);
+        pollLatency.record(latencyNanos);
+    }
+
+    void pollFailed() {
+        pollFailures.increment();
+    }
+
+    /**
+     * @return The MBean of the topic, its log size read from the partitions of the topic.
+     */
+    MetricsMBean toMBean(Topic<?,?> topic) {
+
+        return new MetricsMBean("Metrics of the topic " + topic.getName())
+                .addLong("Partitions", "Number of partitions", () -> (long) topic.numPartitions())
+                .addLong("LogRecords", "Records in the log, all partitions", () -> logRecords(topic))
+                .addLong("LogBytes", "Estimated bytes in the log, all partitions", () -> logBytes(topic))
+                .addLong("PublishedRecords", "Records published", publishedRecords::count)
+                .addDouble("PublishRate", "Records published per second, last minute",
+                        publishedRecords::oneMinuteRate)
+                .addLong("PublishedBytes", "Estimated bytes published", publishedBytes::count)
+                .addDouble("PublishedBytesRate", "Bytes published per second, last minute",
+                        publishedBytes::oneMinuteRate)
+                .addLong("FetchedRecords", "Records polled by subscribers", fetchedRecords::count)
+                .addDouble("FetchRate", "Records polled per second, last minute", fetchedRecords::oneMinuteRate)
+                .addLong("FetchedBytes", "Estimated bytes polled by subscribers", fetchedBytes::count)
+                .addDouble("FetchedBytesRate", "Bytes polled per second, last minute", fetchedBytes::oneMinuteRate)
+                .addLong("DroppedRecords", "Records bounded partitions skipped for slow subscribers",
+                        droppedRecords::count)
+                .addLong("PublishFailures", "Publish calls which failed", publishFailures::sum)
+                .addLong("PollFailures", "Poll calls which failed", pollFailures::sum)
+                .addLong("ThrottleTimeMs", "Time publishes were delayed for by quotas",
+                        () -> TimeUnit.NANOSECONDS.toMillis(throttleNanos.sum()))
+                .addLong("QuotaRejections", "Publish calls rejected by quotas", quotaRejections::sum)
+                .addLong("PublishCount", "Publish calls", publishLatency::count)
+                .addLong("PublishLatencyP50Nanos", "Median publish latency", () -> publishLatency.percentile(50))
+                .addLong("PublishLatencyP99Nanos", "99th percentile publish latency",
+                        () -> publishLatency.percentile(99))
+                .addLong("PublishLatencyP999Nanos", "99.9th percentile publish latency",
+                        () -> publishLatency.percentile(99.9))
+                .addLong("PollCount", "Reads of polling subscribers", pollLatency::count)
+                .addLong("PollLatencyP50Nanos", "Median poll latency, excluding parking",
+                        () -> pollLatency.percentile(50))
+                .addLong("PollLatencyP99Nanos", "99th percentile poll latency, excluding parking",
+                        () -> pollLatency.percentile(99))
+                .addLong("PollLatencyP999Nanos", "99.9th percentile poll latency, excluding parking",
+                        () -> pollLatency.percentile(99.9));
+    }
+
+    private static long logRecords(Topic<?,?> topic) {
+
+        long records = 0;
+        for (int partition = 0; partition < topic.numPartitions(); partition++) {
+            records += topic.partition(partition).tail() - topic.partition(partition).startOffset();
+        }
+        return records;
+    }
+
+    private static long logBytes(Topic<?,?> topic) {
+
+        long bytes = 0;
+        for (int partition = 0; partition < topic.numPartitions(); partition++) {
+            bytes += topic.partition(partition).sizeInBytes();
+        }
+        return bytes;
+    }
+}
@@ -7,9 +7,12 @@ import shelf.model.ShelfSystem;
 import shelf.model.ShelfType;
 import shelf.ordercleaner.ExpiredOrderCleaner;
 import subscribers.OrderSubscriber;
+import util.AppProperties;
 import util.RandomNumberGen;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Manager for the {@link ShelfSystem}.
@@ -17,11 +20,15 @@ import java.util.List;
 public class ShelfManager {
 
     private final ExpiredOrderCleaner expiredOrderCleaner;
-    private final OrderSubscriber orderSubscriber;
     private final ShelfSystem shelfSystem;
 
+    // Members of the "shelf" consumer group, the partitions of the orders topic are processed in parallel across them.
+    private final List<OrderSubscriber> orderSubscribers;
+
     private final List<String> currentOrderIds;
 
+    private static final String SUBSCRIBER_GROUP = "shelf";
+
     /**
      * Singleton getter.
      * @return
@@ -33,14 +40,19 @@ public class ShelfManager {
 
     private ShelfManager() {
 
-        currentOrderIds = new ArrayList<>();
+        currentOrderIds = Collections.synchronizedList(new ArrayList<>());
 
         shelfSystem = new ShelfSystem(this);
         shelfSystem.init();
 
+        int numSubscribers = Integer.parseInt(AppProperties.getInstance().getProperty("order.shelf.subscriber.threads"));
         OrderReceiverCallbackImplForShelf ordersReceivedCallback = new OrderReceiverCallbackImplForShelf();
-        OrdersExhaustedCallback ordersExhaustedCallback = new OrdersExhaustedCallbackImplForShelf();
-        orderSubscriber = new OrderSubscriber("shelfSubscriber", ordersReceivedCallback, ordersExhaustedCallback, 10);
+        OrdersExhaustedCallback ordersExhaustedCallback = new OrdersExhaustedCallbackImplForShelf(numSubscribers);
+        orderSubscribers = new ArrayList<>();
+        for (int i = 0; i < numSubscribers; i++) {
+            orderSubscribers.add(new OrderSubscriber("shelfSubscriber-" + i, SUBSCRIBER_GROUP,
+                    ordersReceivedCallback, ordersExhaustedCallback, 10));
+        }
 
         expiredOrderCleaner = new ExpiredOrderCleaner(this);
 
@@ -55,13 +67,19 @@ public class ShelfManager {
 
     private void initThreads() {
 
-        Thread subscriberThread = new Thread(orderSubscriber, "shelfSubscriber");
-        subscriberThread.start();
+        List<Thread> subscriberThreads = new ArrayList<>();
+        for (int i = 0; i < orderSubscribers.size(); i++) {
+            Thread subscriberThread = new Thread(orderSubscribers.get(i), "shelfSubscriber-" + i);
+            subscriberThread.start();
+            subscriberThreads.add(subscriberThread);
+        }
 
         Thread expiredOrderCleanerThread = new Thread(expiredOrderCleaner, "shelfExpiredOrderCleaner");
         expiredOrderCleanerThread.start();
         try {
-            subscriberThread.join();
+            for (Thread subscriberThread : subscriberThreads) {
+                subscriberThread.join();
+            }
             expiredOrderCleanerThread.join();
         } catch (InterruptedException e) {
 
@@ -112,9 +130,14 @@ public class ShelfManager {
 
     /**
      * Implements the handling of receiving {@link Order}s into the {@link ShelfSystem}.
+     * Invoked concurrently by all the subscribers of the group. An order which fits its own shelf only holds the
+     * monitor of that shelf, making space on the overflow shelf is serialized.
      */
     private class OrderReceiverCallbackImplForShelf implements OrderReceiveCallback {
 
+        // Held while making space on the overflow shelf, which moves orders to the other shelfs.
+        private final Object overflowMonitor = new Object();
+
         @Override
         public void onCall(Order order) {
 
@@ -132,11 +155,8 @@ public class ShelfManager {
             currentOrderIds.add(order.getId());
             ShelfType shelfType = ShelfType.valueOf(order.getTemperature().toUpperCase());
 
-            if (!shelfSystem.isFull(shelfType)) {
-
-                // If we have space on the ShelfType for this Order, store it there.
-                shelfSystem.storeOrder(shelfType, order);
-            } else {
+            // If we have space on the ShelfType for this Order, store it there.
+            if (!shelfSystem.storeOrderIfNotFull(shelfType, order)) {
 
                 handleOrderSpecificShelfIsFull(order);
             }
@@ -144,25 +164,31 @@ public class ShelfManager {
 
         private void handleOrderSpecificShelfIsFull(Order order) {
 
-            if (shelfSystem.isFull(ShelfType.OVERFLOW)) {
+            synchronized (overflowMonitor) {
+                if (shelfSystem.isFull(ShelfType.OVERFLOW)) {
 
-                // Overflow shelf is full, try to move something from overflow shelf into its own designated shelf.
-                if (!shelfSystem.checkAndMoveFromOverflowShelf()) {
+                    // Overflow shelf is full, try to move something from overflow shelf into its own designated shelf.
+                    if (!shelfSystem.checkAndMoveFromOverflowShelf()) {
 
-                    // We could not move an item from overflow shelf.
-                    // Discard (sigh) a random item from the overflow shelf to make space for the new order.
-                    discardRandomOrder();
+                        // We could not move an item from overflow shelf.
+                        // Discard (sigh) a random item from the overflow shelf to make space for the new order.
+                        discardRandomOrder();
+                    }
                 }
+                // Overflow shelf has space now, place order there.
+                shelfSystem.storeOrder(ShelfType.OVERFLOW, order);
             }
-            // Overflow shelf has space now, place order there.
-            shelfSystem.storeOrder(ShelfType.OVERFLOW, order);
         }
 
 
         private void discardRandomOrder() {
-            String randomOrderId = currentOrderIds.get(RandomNumberGen.getRandomNumber(
-                    0, currentOrderIds.size()
-            ));
+            String randomOrderId;
+            // Other subscribers and the cleaner add and remove ids meanwhile, pick one under the lock of the list.
+            synchronized (currentOrderIds) {
+                randomOrderId = currentOrderIds.get(RandomNumberGen.getRandomNumber(
+                        0, currentOrderIds.size()
+                ));
+            }
             shelfSystem.discardOrderFromOverflowShelf(randomOrderId);
 
             // Record that we discarded this order
@@ -170,11 +196,22 @@ public class ShelfManager {
         }
     }
 
+    /**
+     * Shuts the shelf down once all the subscribers of the group ran out of {@link Order}s.
+     */
     private class OrdersExhaustedCallbackImplForShelf implements OrdersExhaustedCallback {
 
+        private final AtomicInteger activeSubscribers;
+
+        OrdersExhaustedCallbackImplForShelf(int numSubscribers) {
+            this.activeSubscribers = new AtomicInteger(numSubscribers);
+        }
+
         @Override
         public void onCall() {
-            shutdown();
+            if (activeSubscribers.decrementAndGet() == 0) {
+                shutdown();
+            }
         }
     }
 }
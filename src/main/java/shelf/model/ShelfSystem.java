@@ -2,12 +2,14 @@ package shelf.model;
 
 import models.Order;
 import shelf.manager.ShelfManager;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 /**
- * Shelf for storing {@link Order}s
+ * Shelf for storing {@link Order}s. Each shelf type has its own monitor, so orders for different shelfs are stored
+ * concurrently.
  */
 public final class ShelfSystem {
 
@@ -20,11 +22,15 @@ public final class ShelfSystem {
     // Has the count of number of free slots (value) on a given shelfType (key).
     private Map<String, Integer> currentFreeSlotsOnShelf = new ConcurrentHashMap<>();
 
+    // Monitor of each shelfType, checking for a free slot and taking it happen together under it.
+    private final Map<ShelfType, Object> shelfMonitors = new EnumMap<>(ShelfType.class);
+
     private final ShelfManager manager;
 
     public ShelfSystem(ShelfManager manager) {
 
         this.manager = manager;
+        Stream.of(ShelfType.values()).forEach(value -> shelfMonitors.put(value, new Object()));
     }
 
     /**
@@ -60,8 +66,7 @@ public final class ShelfSystem {
 
             Order order = entry.getValue();
             ShelfType orderShelfType = ShelfType.valueOf(order.getTemperature().toUpperCase());
-            if (!isFull(orderShelfType)) {
-                storeOrder(orderShelfType, order);
+            if (storeOrderIfNotFull(orderShelfType, order)) {
                 moved = true;
              }
         }
@@ -89,6 +94,24 @@ public final class ShelfSystem {
         return order;
     }
 
+    /**
+     * Places/stores the Order into the Shelf, if it has a free slot.
+     *
+     * @param shelfType The shelf type to store the Order into
+     * @param order The Order to store
+     * @return false if the shelf is full, and the Order was not stored
+     */
+    public boolean storeOrderIfNotFull(ShelfType shelfType, Order order) {
+
+        synchronized (shelfMonitors.get(shelfType)) {
+            if (isFull(shelfType)) {
+                return false;
+            }
+            storeOrder(shelfType, order);
+            return true;
+        }
+    }
+
     /**
      * Places/stores the Order into the Shelf.
      *
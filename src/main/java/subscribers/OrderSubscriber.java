@@ -3,18 +3,31 @@ package subscribers;
 import callbacks.OrdersExhaustedCallback;
 import models.Order;
 import models.Serdes.OrderDeserializer;
+import orderdispatcher.OrderDispatcher;
+import pubSub.Publisher;
+import pubSub.PublisherException;
 import pubSub.Record;
+import pubSub.RecordFilter;
 import pubSub.Subscriber;
 import pubSub.SubscriberException;
 import callbacks.OrderReceiveCallback;
 import util.AppProperties;
-import util.ThreadUtil;
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * {@link Subscriber} for {@link Order}s.
  * Runs as a thread, de-queues {@link Order} from the PubSub system and invokes the {@link OrderReceiveCallback}.
+ *
+ * A record which fails (it does not de-serialize, or the callback throws) is retried on its own with exponential
+ * backoff, while the subscriber goes on with the next records. After order.retry.max.attempts attempts the record is
+ * published to the dead-letter topic order.dead.letter.topic, with headers telling why it failed.
  */
 public class OrderSubscriber implements Runnable {
 
@@ -22,9 +35,37 @@ public class OrderSubscriber implements Runnable {
     private final OrdersExhaustedCallback ordersExhaustedCallback;
     private final String subscriberName;
 
+    // The consumer group to read the orders topic in, null to read all of it.
+    private final String groupId;
+
+    // The orders to receive, null for all of them.
+    private final RecordFilter<String> filter;
+
     private static final String ORDERS_TOPIC = AppProperties.getInstance().getProperty("order.topic");
     private static final int NUM_RECORDS_TO_READ = 10; // How many records to read in an invocation of the Subscriber thread.
-    private static final int SLEEP_TIME_MS = 1000;
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(1000); // How long to wait for an order to arrive.
+
+    // Retrying the failed records, and where they end up once out of attempts.
+    private static final String DEAD_LETTER_TOPIC = AppProperties.getInstance().getProperty("order.dead.letter.topic");
+    private static final int RETRY_MAX_ATTEMPTS =
+            Integer.parseInt(AppProperties.getInstance().getProperty("order.retry.max.attempts"));
+    private static final long RETRY_BACKOFF_INITIAL_MS =
+            Long.parseLong(AppProperties.getInstance().getProperty("order.retry.backoff.initial.ms"));
+    private static final long RETRY_BACKOFF_MAX_MS =
+            Long.parseLong(AppProperties.getInstance().getProperty("order.retry.backoff.max.ms"));
+
+    // The headers added to the records published to the dead-letter topic, next to their own headers.
+    public static final String ERROR_CLASS_HEADER = "error.class";
+    public static final String ERROR_MESSAGE_HEADER = "error.message";
+    public static final String ERROR_ATTEMPTS_HEADER = "error.attempts";
+    public static final String ERROR_TOPIC_HEADER = "error.topic";
+
+    // The failed records waiting for their next attempt, the most due first. Only used by the subscriber thread.
+    private final PriorityQueue<FailedRecord> retryQueue =
+            new PriorityQueue<>(Comparator.comparingLong(failedRecord -> failedRecord.nextAttemptNanos));
+
+    // Created on the first dead letter.
+    private Publisher<String, byte[]> deadLetterPublisher;
 
     private volatile int noOrderCount;
     private final int noOrderCountLimit;
@@ -39,37 +80,90 @@ public class OrderSubscriber implements Runnable {
     public OrderSubscriber(String name, OrderReceiveCallback orderReceiveCallback, OrdersExhaustedCallback ordersExhaustedCallback,
                            int noOrderCountLimit) {
 
+        this(name, null, orderReceiveCallback, ordersExhaustedCallback, noOrderCountLimit);
+    }
+
+    /**
+     * Constructor for a subscriber that is a member of a consumer group.
+     * The partitions of the orders topic are split between the members of the group. All the {@link Order}s with the
+     * same ID are on the same partition, hence they are received in order.
+     *
+     * @param name The name of the {@link Subscriber}
+     * @param groupId The consumer group to join, null to read all the partitions.
+     * @param orderReceiveCallback The {@link OrderReceiveCallback} to invoke when an {@link Order} is received.
+     * @param ordersExhaustedCallback The {@link OrdersExhaustedCallback} to invoke when there are no more {@link Order}s
+     * @param noOrderCountLimit The retry count for invoking the {@link OrdersExhaustedCallback} to invoke when there are no more {@link Order}s.
+     */
+    public OrderSubscriber(String name, String groupId, OrderReceiveCallback orderReceiveCallback,
+                           OrdersExhaustedCallback ordersExhaustedCallback, int noOrderCountLimit) {
+
+        this(name, groupId, null, orderReceiveCallback, ordersExhaustedCallback, noOrderCountLimit);
+    }
+
+    /**
+     * Constructor for a subscriber receiving only some of the {@link Order}s, e.g. the frozen ones with
+     * {@link OrderSubscriber#temperatureFilter(String)}. The other orders are skipped by the PubSub system before
+     * they are de-serialized.
+     *
+     * @param name The name of the {@link Subscriber}
+     * @param groupId The consumer group to join, null to read all the partitions.
+     * @param filter The {@link Order}s to receive, null for all of them.
+     * @param orderReceiveCallback The {@link OrderReceiveCallback} to invoke when an {@link Order} is received.
+     * @param ordersExhaustedCallback The {@link OrdersExhaustedCallback} to invoke when there are no more {@link Order}s
+     * @param noOrderCountLimit The retry count for invoking the {@link OrdersExhaustedCallback} to invoke when there are no more {@link Order}s.
+     */
+    public OrderSubscriber(String name, String groupId, RecordFilter<String> filter,
+                           OrderReceiveCallback orderReceiveCallback, OrdersExhaustedCallback ordersExhaustedCallback,
+                           int noOrderCountLimit) {
+
         this.subscriberName = name;
+        this.groupId = groupId;
+        this.filter = filter;
         this.orderReceiveCallback = orderReceiveCallback;
         this.ordersExhaustedCallback = ordersExhaustedCallback;
         this.noOrderCountLimit =  noOrderCountLimit;
     }
 
+    /**
+     * @param temperature The temperature of the {@link Order}s to receive, e.g. "frozen".
+     * @return The filter matching the {@link Order}s with the temperature.
+     */
+    public static RecordFilter<String> temperatureFilter(String temperature) {
+
+        return RecordFilter.header(OrderDispatcher.TEMPERATURE_HEADER, temperature.getBytes(StandardCharsets.UTF_8));
+    }
+
     @Override
     public void run() {
-        Subscriber subscriber = new Subscriber(ORDERS_TOPIC);
-        subscriber.register();
+        Subscriber subscriber = (groupId == null) ? new Subscriber(ORDERS_TOPIC) : new Subscriber(ORDERS_TOPIC, groupId);
+        if (filter == null) {
+            subscriber.register();
+        } else {
+            subscriber.register(filter);
+        }
 
-        // While we have not exhausted the retry count for reading orders.
+        // While we have not exhausted the retry count for reading orders, or have failed records left to retry.
         int maxRetries = 5;
         int retryCount = 0;
-        List<Record> records = null;
-        while (noOrderCount < noOrderCountLimit) {
+        while (noOrderCount < noOrderCountLimit || !retryQueue.isEmpty()) {
             try {
 
-                records = subscriber.poll(NUM_RECORDS_TO_READ);
-                if (records.size() == 0) {
+                // Wake up in time for the next retry.
+                Duration timeout = POLL_TIMEOUT;
+                if (!retryQueue.isEmpty()) {
+                    long untilRetryNanos = Math.max(0, retryQueue.peek().nextAttemptNanos - System.nanoTime());
+                    timeout = (untilRetryNanos < POLL_TIMEOUT.toNanos())
+                            ? Duration.ofNanos(untilRetryNanos) : POLL_TIMEOUT;
+                }
+                List<Record> records = subscriber.poll(NUM_RECORDS_TO_READ, timeout);
+                if (records.size() == 0 && retryQueue.isEmpty()) {
                     noOrderCount++;
-                    ThreadUtil.sleep(SLEEP_TIME_MS);
                 }
                 for (Record record : records) {
-
-                    Order order = OrderDeserializer.deserialize((byte[]) record.getValue());
-                    System.out.println(subscriberName + " Received order: " + order.getName()
-                            + " Value: " + order.printOrderValue());
-                    orderReceiveCallback.onCall(order);
+                    process(record, 1);
                 }
-            } catch (SubscriberException | IOException se) {
+                retryDueRecords();
+            } catch (SubscriberException se) {
 
                 if (++retryCount > maxRetries) {
                     break;
@@ -77,14 +171,20 @@ public class OrderSubscriber implements Runnable {
 
                     // Log and retry.
                     System.out.println("Subscriber Exception: " + se.getMessage());
-                    if (records != null && records.size() > 0) {
-
-                        // Rewind if we could successfully read from the PubSub but failed while de-serializing
-                        subscriber.rewind(records.size());
-                    }
                 }
             }
         }
+        // Failed records still waiting when the subscriber gives up are not lost.
+        while (!retryQueue.isEmpty()) {
+            FailedRecord failedRecord = retryQueue.poll();
+            deadLetter(failedRecord.record, failedRecord.error, failedRecord.attempts);
+        }
+        if (deadLetterPublisher != null) {
+            deadLetterPublisher.close();
+        }
+        // Hand our partitions over to the rest of the group.
+        subscriber.unregister();
+
         if (ordersExhaustedCallback != null) {
 
             // We conclude that there are no more Orders to process.
@@ -92,4 +192,83 @@ public class OrderSubscriber implements Runnable {
         }
         System.out.println(subscriberName + " Exiting");
     }
+
+    /**
+     * De-serializes the record and invokes the {@link OrderReceiveCallback}. If that fails, the record is scheduled
+     * for another attempt, or published to the dead-letter topic if it is out of attempts.
+     *
+     * @param attempt The number of this attempt, from 1 on.
+     */
+    private void process(Record record, int attempt) {
+
+        try {
+            Order order = OrderDeserializer.deserialize((byte[]) record.getValue());
+            System.out.println(subscriberName + " Received order: " + order.getName()
+                    + " Value: " + order.printOrderValue());
+            orderReceiveCallback.onCall(order);
+        } catch (Exception e) {
+
+            // Log, and leave the record for later so that the next records are not held up.
+            System.out.println(subscriberName + " Failed order " + record.getKey() + " attempt " + attempt + ": "
+                    + e.getMessage());
+            if (attempt >= RETRY_MAX_ATTEMPTS) {
+                deadLetter(record, e, attempt);
+            } else {
+                long backoffMs = Math.min(RETRY_BACKOFF_MAX_MS, RETRY_BACKOFF_INITIAL_MS << Math.min(attempt - 1, 30));
+                retryQueue.add(new FailedRecord(record, e, attempt,
+                        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs)));
+            }
+        }
+    }
+
+    private void retryDueRecords() {
+
+        long nowNanos = System.nanoTime();
+        while (!retryQueue.isEmpty() && retryQueue.peek().nextAttemptNanos - nowNanos <= 0) {
+            FailedRecord failedRecord = retryQueue.poll();
+            process(failedRecord.record, failedRecord.attempts + 1);
+        }
+    }
+
+    /**
+     * Publishes the record to the dead-letter topic, with its own headers and the reason it failed.
+     */
+    @SuppressWarnings("unchecked")
+    private void deadLetter(Record record, Exception e, int attempts) {
+
+        Map<String, byte[]> headers = new LinkedHashMap<>(record.getHeaders());
+        headers.put(ERROR_CLASS_HEADER, e.getClass().getName().getBytes(StandardCharsets.UTF_8));
+        headers.put(ERROR_MESSAGE_HEADER, String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+        headers.put(ERROR_ATTEMPTS_HEADER, String.valueOf(attempts).getBytes(StandardCharsets.UTF_8));
+        headers.put(ERROR_TOPIC_HEADER, ORDERS_TOPIC.getBytes(StandardCharsets.UTF_8));
+        try {
+            if (deadLetterPublisher == null) {
+                deadLetterPublisher = new Publisher<>(DEAD_LETTER_TOPIC);
+            }
+            deadLetterPublisher.publish(new Record<>((String) record.getKey(), (byte[]) record.getValue(), headers));
+            System.out.println(subscriberName + " Dead-lettered order " + record.getKey());
+        } catch (PublisherException pe) {
+
+            // Nothing left to do with the record but log it.
+            System.out.println("Publisher Exception: " + pe.getMessage());
+        }
+    }
+
+    /**
+     * A record waiting for its next attempt.
+     */
+    private static final class FailedRecord {
+
+        private final Record record;
+        private final Exception error;
+        private final int attempts;
+        private final long nextAttemptNanos;
+
+        FailedRecord(Record record, Exception error, int attempts, long nextAttemptNanos) {
+            this.record = record;
+            this.error = error;
+            this.attempts = attempts;
+            this.nextAttemptNanos = nextAttemptNanos;
+        }
+    }
 }
@@ -0,0 +1,135 @@
+import pubSub.BackpressurePolicy
+import pubSub.Publisher
+import pubSub.PublisherException
+import pubSub.Record
+import pubSub.Subscriber
+import pubSub.TopicConfig
+import spock.lang.Specification
+
+import java.time.Duration
+
+
+class BackpressureSpec extends Specification {
+
+    private static TopicConfig bounded(long maxRecords, BackpressurePolicy policy) {
+        return TopicConfig.builder()
+                .capacityMaxRecords(maxRecords)
+                .backpressurePolicy(policy)
+                .backpressureTimeoutMs(5000)
+                .build()
+    }
+
+    private static List<Record<String, String>> records(IntRange range) {
+        return range.collect { new Record<>("key" + it, "value" + it) }
+    }
+
+    // Positive testcase
+    def "Test publishing into a full topic fails, and succeeds again once the subscriber caught up"() {
+
+        setup:
+            Publisher<String, String> publisher = new Publisher<>("boundedTopic1", bounded(10, BackpressurePolicy.FAIL))
+            Subscriber<String, String> subscriber = new Subscriber<>("boundedTopic1")
+            subscriber.register()
+            publisher.publishAll(records(0..<10))
+
+        when:
+            publisher.publish(new Record<>("key", "overflow"))
+
+        then:
+            PublisherException publisherException = thrown()
+            publisherException.getMessage().equals("Topic is full")
+
+        when:
+            subscriber.poll(5)
+            publisher.publishAll(records(10..<15))
+
+        then:
+            subscriber.poll(100)*.getValue() == (5..<15).collect { "value" + it }
+    }
+
+    // Positive testcase
+    def "Test a publisher blocked on a full topic resumes once the subscriber polls"() {
+
+        setup:
+            Publisher<String, String> publisher = new Publisher<>("boundedTopic2", bounded(10, BackpressurePolicy.BLOCK))
+            Subscriber<String, String> subscriber = new Subscriber<>("boundedTopic2")
+            subscriber.register()
+            publisher.publishAll(records(0..<10))
+
+        when:
+            Thread poller = Thread.start {
+                Thread.sleep(300)
+                subscriber.poll(10)
+            }
+            long startNanos = System.nanoTime()
+            publisher.publish(new Record<>("key", "blocked"))
+            long blockedMs = (System.nanoTime() - startNanos).intdiv(1_000_000)
+            poller.join()
+
+        then:
+            blockedMs >= 200
+            subscriber.poll(10, Duration.ofSeconds(5))*.getValue() == ["blocked"]
+    }
+
+    // Positive testcase
+    def "Test publishing into a full topic drops the oldest records of the slow subscriber"() {
+
+        setup:
+            Publisher<String, String> publisher = new Publisher<>("boundedTopic3",
+                    bounded(10, BackpressurePolicy.DROP_OLDEST))
+            Subscriber<String, String> slowSubscriber = new Subscriber<>("boundedTopic3")
+            slowSubscriber.register()
+
+        when:
+            for (int i = 0; i < 25; i++) {
+                publisher.publish(new Record<>("key" + i, "value" + i))
+            }
+
+        then:
+            slowSubscriber.poll(100)*.getValue() == (15..<25).collect { "value" + it }
+    }
+
+    // Positive testcase
+    def "Test a bounded topic nobody subscribes to is not limited"() {
+
+        setup:
+            Publisher<String, String> publisher = new Publisher<>("boundedTopic4", bounded(10, BackpressurePolicy.FAIL))
+
+        when:
+            publisher.publishAll(records(0..<100))
+
+        then:
+            noExceptionThrown()
+    }
+
+    // Negative testcase
+    def "Test a publisher blocked on a full topic times out - exception is thrown"() {
+
+        setup:
+            Publisher<String, String> publisher = new Publisher<>("boundedTopic5", TopicConfig.builder()
+                    .capacityMaxRecords(10)
+                    .backpressureTimeoutMs(100)
+                    .build())
+            Subscriber<String, String> subscriber = new Subscriber<>("boundedTopic5")
+            subscriber.register()
+            publisher.publishAll(records(0..<10))
+
+        when:
+            publisher.publish(new Record<>("key", "overflow"))
+
+        then:
+            PublisherException publisherException = thrown()
+            publisherException.getMessage().equals("Topic is full")
+    }
+
+    // Negative testcase
+    def "Test a capacity of 0 - exception is thrown"() {
+
+        when:
+            TopicConfig.builder().capacityMaxRecords(0)
+
+        then:
+            IllegalArgumentException illegalArgumentException = thrown()
+            illegalArgumentException.getMessage().equals("capacityMaxRecords should be greater than 0")
+    }
+}
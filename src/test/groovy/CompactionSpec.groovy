@@ -0,0 +1,78 @@
+import pubSub.Publisher
+import pubSub.Record
+import pubSub.Subscriber
+import pubSub.TopicConfig
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+
+class CompactionSpec extends Specification {
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+
+    // Publishes 96 records over 5 keys, a tombstone for key0 and enough records with unique keys to seal the chunks.
+    private static void publish(Publisher publisher) {
+        for (int i = 0; i < 96; i++) {
+            publisher.publish(new Record<>("key" + (i % 5), i))
+        }
+        publisher.publish(new Record<>("key0", null))
+        for (int i = 0; i < 31; i++) {
+            publisher.publish(new Record<>("filler" + i, i))
+        }
+    }
+
+    // Reads every record of the topic with a new subscriber.
+    private static List<Record> pollAll(String topic) {
+        Subscriber subscriber = new Subscriber(topic)
+        subscriber.register()
+        try {
+            return subscriber.poll(1000)
+        } finally {
+            subscriber.unregister()
+        }
+    }
+
+    // Positive testcase
+    def "Test compaction keeps only the latest record per key and removes expired tombstones"() {
+
+        setup:
+            String topic = "compactionTopic1"
+            Publisher publisher = new Publisher(topic, TopicConfig.builder()
+                    .chunkSize(16)
+                    .compacted(true)
+                    .tombstoneRetentionMs(0)
+                    .build())
+
+        when:
+            publish(publisher)
+
+        then:
+            conditions.eventually {
+                List<Record> records = pollAll(topic)
+                assert records.findAll { !it.getKey().startsWith("filler") }
+                        .collect { [it.getKey(), it.getValue()] } == [["key1", 91], ["key2", 92], ["key3", 93], ["key4", 94]]
+                assert records.count { it.getKey().startsWith("filler") } == 31
+            }
+    }
+
+    // Positive testcase
+    def "Test compaction keeps the tombstones within their retention"() {
+
+        setup:
+            String topic = "compactionTopic2"
+            Publisher publisher = new Publisher(topic, TopicConfig.builder()
+                    .chunkSize(16)
+                    .compacted(true)
+                    .build())
+
+        when:
+            publish(publisher)
+
+        then:
+            conditions.eventually {
+                List<Record> records = pollAll(topic)
+                assert records.findAll { !it.getKey().startsWith("filler") }
+                        .collect { [it.getKey(), it.getValue()] } == [["key1", 91], ["key2", 92], ["key3", 93], ["key4", 94], ["key0", null]]
+            }
+    }
+}
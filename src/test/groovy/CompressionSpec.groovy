@@ -0,0 +1,161 @@
+import pubSub.CompressionCodec
+import pubSub.PubSubClient
+import pubSub.PubSubServer
+import pubSub.Publisher
+import pubSub.Record
+import pubSub.RemotePublisher
+import pubSub.RemoteSubscriber
+import pubSub.Serde
+import pubSub.Subscriber
+import pubSub.TopicConfig
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+
+class CompressionSpec extends Specification {
+
+    Path directory = Files.createTempDirectory("compressionSpec")
+
+    private static final Map<String, byte[]> HEADERS = ["content-type": "application/json".bytes, "trace-id": "42".bytes]
+
+    private static String order(int i) {
+        return '{"id":' + i + ',"name":"order' + i + '","items":[{"sku":"sku' + (i % 10) + '","quantity":1}]}'
+    }
+
+    private static List<Record<String, String>> readAll(Subscriber<String, String> subscriber) {
+        List<Record<String, String>> allRecords = []
+        List<Record<String, String>> records
+        while (!(records = subscriber.poll(64)).isEmpty()) {
+            allRecords.addAll(records)
+        }
+        return allRecords
+    }
+
+    // Segment files are allocated at their full size, so the footprint of a partition shows in its segment count.
+    private static long segmentCount(Path directory, String topic) {
+        return Files.list(directory.resolve(topic + "-0")).findAll { it.toString().endsWith(".log") }.size()
+    }
+
+    private static Publisher<String, String> filePublisher(String topic, Path directory, CompressionCodec codec) {
+        TopicConfig.Builder topicConfig = TopicConfig.builder()
+                .fileStorage(directory, Serde.string(), Serde.string())
+                .segmentBytes(16 * 1024)
+        return new Publisher<>(topic, ((codec == null) ? topicConfig : topicConfig.compression(codec)).build())
+    }
+
+    // Positive testcase
+    def "Test headers are read back from a topic on the heap"() {
+
+        setup:
+            Publisher<String, String> publisher = new Publisher<>("headersTopic1")
+            Subscriber<String, String> subscriber = new Subscriber<>("headersTopic1")
+            subscriber.register()
+
+        when:
+            publisher.publish(new Record<>("key", "value", HEADERS))
+            publisher.publish(new Record<>("key", "noHeaders"))
+            List<Record<String, String>> records = subscriber.poll(10)
+
+        then:
+            records[0].getHeaders().keySet() as List == ["content-type", "trace-id"]
+            new String(records[0].getHeaders()["trace-id"]) == "42"
+            records[1].getHeaders().isEmpty()
+    }
+
+    // Positive testcase
+    def "Test a compressed topic is smaller in files, and reads back with its headers from any offset"() {
+
+        setup:
+            Publisher<String, String> plainPublisher = filePublisher("compressedTopic1Plain", directory, null)
+            Publisher<String, String> publisher = filePublisher("compressedTopic1", directory,
+                    CompressionCodec.deflate())
+            Subscriber<String, String> subscriber = new Subscriber<>("compressedTopic1")
+            subscriber.register()
+
+        when:
+            [plainPublisher, publisher].each { p ->
+                (0..<10).each { batch ->
+                    p.publishAll((100 * batch..<100 * (batch + 1)).collect {
+                        new Record<>("key" + it, order(it), HEADERS)
+                    })
+                }
+            }
+            subscriber.seekToOffset(0, 150)
+            List<Record<String, String>> records = readAll(subscriber)
+
+        then:
+            segmentCount(directory, "compressedTopic1") * 3 < segmentCount(directory, "compressedTopic1Plain")
+            records*.getValue() == (150..<1000).collect { order(it) }
+            records.every { new String(it.getHeaders()["content-type"]) == "application/json" }
+    }
+
+    // Positive testcase
+    def "Test small polls of two subscribers step through one compressed batch in turn"() {
+
+        setup:
+            Publisher<String, String> publisher = filePublisher("compressedTopic2", directory,
+                    CompressionCodec.deflate())
+            Subscriber<String, String> first = new Subscriber<>("compressedTopic2")
+            Subscriber<String, String> second = new Subscriber<>("compressedTopic2")
+            first.register()
+            second.register()
+
+        when:
+            publisher.publishAll((0..<100).collect { new Record<>("key" + it, order(it)) })
+            List<Record<String, String>> firstRecords = []
+            List<Record<String, String>> secondRecords = []
+            secondRecords.addAll(second.poll(7))
+            (0..<20).each {
+                firstRecords.addAll(first.poll(3))
+                secondRecords.addAll(second.poll(5))
+            }
+            firstRecords.addAll(readAll(first))
+            secondRecords.addAll(readAll(second))
+
+        then:
+            firstRecords*.getValue() == (0..<100).collect { order(it) }
+            secondRecords*.getValue() == (0..<100).collect { order(it) }
+    }
+
+    // Positive testcase
+    def "Test headers are published and read remotely"() {
+
+        setup:
+            PubSubServer server = new PubSubServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort())
+            PubSubClient publisherClient = new PubSubClient(address)
+            PubSubClient subscriberClient = new PubSubClient(address)
+            RemotePublisher<String, String> publisher = new RemotePublisher<>(publisherClient, "headersTopic2",
+                    Serde.string(), Serde.string())
+            RemoteSubscriber<String, String> subscriber = new RemoteSubscriber<>(subscriberClient, "headersTopic2",
+                    Serde.string(), Serde.string())
+            subscriber.register()
+
+        when:
+            publisher.publishAll([new Record<>("key", "value", HEADERS), new Record<>("key", "noHeaders")])
+            List<Record<String, String>> records = subscriber.poll(10)
+
+        then:
+            records*.getValue() == ["value", "noHeaders"]
+            new String(records[0].getHeaders()["content-type"]) == "application/json"
+            records[1].getHeaders().isEmpty()
+
+        cleanup:
+            publisherClient.close()
+            subscriberClient.close()
+            server.close()
+    }
+
+    // Negative testcase
+    def "Test compressing a topic on the heap - exception is thrown"() {
+
+        when:
+            TopicConfig.builder().compression(CompressionCodec.deflate()).build()
+
+        then:
+            IllegalArgumentException illegalArgumentException = thrown()
+            illegalArgumentException.getMessage().equals("Only topics stored in files can be compressed")
+    }
+}
@@ -0,0 +1,111 @@
+import pubSub.Publisher
+import pubSub.Record
+import pubSub.Subscriber
+import pubSub.TopicConfig
+import spock.lang.Specification
+
+
+class ConsumerGroupSpec extends Specification {
+
+    private static Publisher publish(String topic, int numPartitions, int numRecords) {
+        Publisher publisher = new Publisher(topic, TopicConfig.builder().partitions(numPartitions).build())
+        for (int i = 0; i < numRecords; i++) {
+            publisher.publish(new Record<>("key" + i, i))
+        }
+        return publisher
+    }
+
+    private static List<Record> drain(Subscriber subscriber) {
+        List<Record> allRecords = []
+        List<Record> records
+        while (!(records = subscriber.poll(100)).isEmpty()) {
+            allRecords.addAll(records)
+        }
+        return allRecords
+    }
+
+    // Positive testcase
+    def "Test members of a group split the records of the topic"() {
+
+        setup:
+            String topic = "groupTopic1"
+            publish(topic, 4, 200)
+
+        when:
+            Subscriber first = new Subscriber(topic, "group")
+            first.register()
+            Subscriber second = new Subscriber(topic, "group")
+            second.register()
+            List<Record> firstRecords = drain(first)
+            List<Record> secondRecords = drain(second)
+
+        then:
+            noExceptionThrown()
+            !firstRecords.isEmpty()
+            !secondRecords.isEmpty()
+            (firstRecords + secondRecords)*.getValue().sort() == (0..<200).toList()
+
+        when:
+            // A subscriber outside of the group still reads everything.
+            Subscriber other = new Subscriber(topic, "otherGroup")
+            other.register()
+
+        then:
+            drain(other).size() == 200
+    }
+
+    // Positive testcase
+    def "Test partitions are re-assigned when a member leaves"() {
+
+        setup:
+            String topic = "groupTopic2"
+            Publisher publisher = publish(topic, 4, 100)
+
+        when:
+            Subscriber first = new Subscriber(topic, "group")
+            first.register()
+            Subscriber second = new Subscriber(topic, "group")
+            second.register()
+            List<Record> readRecords = drain(first)
+
+            // The second member leaves without reading, the first one takes over its partitions.
+            second.unregister()
+            readRecords.addAll(drain(first))
+
+        then:
+            readRecords*.getValue().sort() == (0..<100).toList()
+
+        when:
+            // A member joining later continues from the group's committed offsets.
+            first.unregister()
+            for (int i = 100; i < 150; i++) {
+                publisher.publish(new Record<>("key" + i, i))
+            }
+            Subscriber late = new Subscriber(topic, "group")
+            late.register()
+
+        then:
+            drain(late)*.getValue().sort() == (100..<150).toList()
+    }
+
+    // Positive testcase
+    def "Test a group with more members than partitions"() {
+
+        setup:
+            String topic = "groupTopic3"
+            publish(topic, 2, 50)
+
+        when:
+            List<Subscriber> members = (0..<3).collect {
+                Subscriber subscriber = new Subscriber(topic, "group")
+                subscriber.register()
+                subscriber
+            }
+            List<List<Record>> recordsPerMember = members.collect { drain(it) }
+
+        then:
+            noExceptionThrown()
+            recordsPerMember.count { it.isEmpty() } == 1
+            recordsPerMember.flatten()*.getValue().sort() == (0..<50).toList()
+    }
+}
@@ -0,0 +1,58 @@
+import callbacks.OrderReceiveCallback
+import callbacks.OrdersExhaustedCallback
+import models.Order
+import models.Serdes.OrderSerializer
+import pubSub.Publisher
+import pubSub.Record
+import pubSub.Subscriber
+import spock.lang.Specification
+import subscribers.OrderSubscriber
+import util.AppProperties
+
+
+class DeadLetterSpec extends Specification {
+
+    // Positive testcase
+    def "Test a poison record is dead-lettered after its retries while the other orders go through"() {
+
+        setup:
+            String ordersTopic = AppProperties.getInstance().getProperty("order.topic")
+            String deadLetterTopic = AppProperties.getInstance().getProperty("order.dead.letter.topic")
+            Publisher<String, byte[]> publisher = new Publisher<>(ordersTopic)
+            Subscriber<String, byte[]> deadLetterSubscriber = new Subscriber<>(deadLetterTopic)
+            deadLetterSubscriber.register()
+            List<String> receivedOrders = Collections.synchronizedList([])
+            boolean flakyFailed = false
+            OrderReceiveCallback callback = { Order order ->
+                if (order.getName() == "flakyOrder" && !flakyFailed) {
+                    flakyFailed = true
+                    throw new IllegalStateException("Shelf busy")
+                }
+                receivedOrders.add(order.getName())
+            } as OrderReceiveCallback
+            boolean exhausted = false
+            OrderSubscriber orderSubscriber = new OrderSubscriber("deadLetterSubscriber", callback,
+                    { exhausted = true } as OrdersExhaustedCallback, 1)
+
+        when:
+            publisher.publishAll([
+                    new Record<>("id1", OrderSerializer.serialize(new Order("id1", "firstOrder", "hot", 100, 0.25))),
+                    new Record<>("poison", "not an order".bytes, ["content-type": "application/json".bytes]),
+                    new Record<>("id2", OrderSerializer.serialize(new Order("id2", "flakyOrder", "cold", 100, 0.25))),
+                    new Record<>("id3", OrderSerializer.serialize(new Order("id3", "lastOrder", "frozen", 100, 0.25)))])
+            Thread subscriberThread = Thread.start { orderSubscriber.run() }
+            subscriberThread.join(10_000)
+            List<Record<String, byte[]>> deadLetters = deadLetterSubscriber.poll(10)
+
+        then:
+            exhausted
+            receivedOrders == ["firstOrder", "lastOrder", "flakyOrder"]
+            deadLetters.size() == 1
+            deadLetters[0].getKey() == "poison"
+            deadLetters[0].getValue() == "not an order".bytes
+            deadLetters[0].getHeaders()["content-type"] == "application/json".bytes
+            new String(deadLetters[0].getHeaders()[OrderSubscriber.ERROR_ATTEMPTS_HEADER]) == "3"
+            new String(deadLetters[0].getHeaders()[OrderSubscriber.ERROR_TOPIC_HEADER]) == ordersTopic
+            new String(deadLetters[0].getHeaders()[OrderSubscriber.ERROR_CLASS_HEADER]).contains("Exception")
+    }
+}
@@ -0,0 +1,114 @@
+import pubSub.CompressionCodec
+import pubSub.Publisher
+import pubSub.Record
+import pubSub.RecordFilter
+import pubSub.Serde
+import pubSub.Subscriber
+import pubSub.SubscriberException
+import pubSub.TopicConfig
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+
+
+class FilterSpec extends Specification {
+
+    @Shared
+    Path directory = Files.createTempDirectory("filterSpec")
+
+    // Every third record is frozen, the others are hot.
+    private static List<Record<String, String>> records(IntRange range) {
+        return range.collect {
+            String temperature = (it % 3 == 0) ? "frozen" : "hot"
+            new Record<>(temperature + it, temperature + "Order" + it, ["temperature": temperature.bytes])
+        }
+    }
+
+    private static boolean startsWithFrozen(ByteBuffer value) {
+        return StandardCharsets.UTF_8.decode(value).toString().startsWith("frozen")
+    }
+
+    // Positive testcase
+    def "Test a key filter only returns the matching records, and maxRecords only counts them"() {
+
+        setup:
+            Publisher<String, String> publisher = new Publisher<>("filterTopic1")
+            Subscriber<String, String> subscriber = new Subscriber<>("filterTopic1")
+            subscriber.register(RecordFilter.key { String key -> key.startsWith("frozen") })
+            publisher.publishAll(records(0..<90))
+
+        when:
+            List<Record<String, String>> firstRecords = subscriber.poll(10)
+            List<Record<String, String>> otherRecords = subscriber.poll(100)
+
+        then:
+            firstRecords*.getKey() == (0..<30).step(3).collect { "frozen" + it }
+            otherRecords*.getKey() == (30..<90).step(3).collect { "frozen" + it }
+            subscriber.poll(100).isEmpty()
+    }
+
+    // Positive testcase
+    def "Test header and key filters combine, across partitions"() {
+
+        setup:
+            Publisher<String, String> publisher = new Publisher<>("filterTopic2",
+                    TopicConfig.builder().partitions(3).build())
+            Subscriber<String, String> subscriber = new Subscriber<>("filterTopic2")
+            subscriber.register(RecordFilter.<String> header("temperature", "frozen".bytes)
+                    .and(RecordFilter.key { String key -> key.endsWith("0") }))
+            publisher.publishAll(records(0..<90))
+
+        when:
+            List<Record<String, String>> filteredRecords = subscriber.poll(100)
+
+        then:
+            filteredRecords*.getKey().toSet() == ["frozen0", "frozen30", "frozen60"].toSet()
+    }
+
+    // Positive testcase
+    def "Test a value filter matches the serialized values of topics which store them"() {
+
+        setup:
+            Publisher<String, String> publisher = new Publisher<>(topic, topicConfig.build())
+            Subscriber<String, String> subscriber = new Subscriber<>(topic)
+            subscriber.register(RecordFilter.valueBytes { ByteBuffer value -> startsWithFrozen(value) })
+            publisher.publishAll(records(0..<90))
+            publisher.publish(new Record<>("tombstone", null))
+
+        when:
+            List<Record<String, String>> firstRecords = subscriber.poll(10)
+            List<Record<String, String>> otherRecords = subscriber.poll(100)
+
+        then:
+            firstRecords*.getValue() == (0..<30).step(3).collect { "frozenOrder" + it }
+            otherRecords*.getValue() == (30..<90).step(3).collect { "frozenOrder" + it }
+            otherRecords.every { it.getHeaders()["temperature"] == "frozen".bytes }
+
+        where:
+            topic          | topicConfig
+            "filterTopic3" | TopicConfig.builder().fileStorage(directory, Serde.string(), Serde.string())
+            "filterTopic4" | TopicConfig.builder().fileStorage(directory, Serde.string(), Serde.string())
+                    .compression(CompressionCodec.deflate())
+            "filterTopic5" | TopicConfig.builder().offHeapValues(Serde.string())
+    }
+
+    // Negative testcase
+    def "Test a value filter on a topic which keeps its values on the heap - exception is thrown"() {
+
+        setup:
+            new Publisher<>("filterTopic6")
+            Subscriber<String, String> subscriber = new Subscriber<>("filterTopic6")
+            subscriber.register(RecordFilter.valueBytes { ByteBuffer value -> startsWithFrozen(value) })
+
+        when:
+            subscriber.poll(10)
+
+        then:
+            SubscriberException subscriberException = thrown()
+            subscriberException.getMessage().equals("Value filters need a topic stored in files or with off-heap values")
+    }
+}
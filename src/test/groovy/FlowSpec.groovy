@@ -0,0 +1,149 @@
+import pubSub.Flow
+import pubSub.Publisher
+import pubSub.Record
+import pubSub.Subscriber
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+
+class FlowSpec extends Specification {
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+
+    // Collects the signals of a push subscription.
+    static class CollectingSubscriber implements Flow.Subscriber<Record> {
+
+        final List<Object> values = new CopyOnWriteArrayList<>()
+        volatile Flow.Subscription subscription
+        volatile Throwable error
+
+        @Override
+        void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription
+        }
+
+        @Override
+        void onNext(Record item) {
+            values.add(item.getValue())
+        }
+
+        @Override
+        void onError(Throwable throwable) {
+            error = throwable
+        }
+
+        @Override
+        void onComplete() {
+        }
+    }
+
+    private static void publish(Publisher publisher, int from, int to) {
+        for (int i = from; i < to; i++) {
+            publisher.publish(new Record<>("key" + i, i))
+        }
+    }
+
+    // Positive testcase
+    def "Test push subscription only delivers the requested records"() {
+
+        setup:
+            String topic = "flowTopic1"
+            Publisher publisher = new Publisher(topic)
+            CollectingSubscriber flowSubscriber = new CollectingSubscriber()
+            new Subscriber(topic).asFlowPublisher().subscribe(flowSubscriber)
+
+        when:
+            publish(publisher, 0, 5)
+            conditions.eventually {
+                assert flowSubscriber.subscription != null
+            }
+            flowSubscriber.subscription.request(2)
+
+        then:
+            conditions.eventually {
+                assert flowSubscriber.values == [0, 1]
+            }
+
+        when:
+            flowSubscriber.subscription.request(10)
+
+        then:
+            conditions.eventually {
+                assert flowSubscriber.values == [0, 1, 2, 3, 4]
+            }
+
+        when: "Records published after the backlog are pushed as they arrive"
+            publish(publisher, 5, 8)
+
+        then:
+            conditions.eventually {
+                assert flowSubscriber.values == [0, 1, 2, 3, 4, 5, 6, 7]
+            }
+    }
+
+    // Positive testcase
+    def "Test cancelled push subscription stops delivering"() {
+
+        setup:
+            String topic = "flowTopic2"
+            Publisher publisher = new Publisher(topic)
+            CollectingSubscriber flowSubscriber = new CollectingSubscriber()
+            new Subscriber(topic).asFlowPublisher().subscribe(flowSubscriber)
+            conditions.eventually {
+                assert flowSubscriber.subscription != null
+            }
+
+        when:
+            flowSubscriber.subscription.request(Long.MAX_VALUE)
+            publish(publisher, 0, 3)
+            conditions.eventually {
+                assert flowSubscriber.values == [0, 1, 2]
+            }
+            flowSubscriber.subscription.cancel()
+            publish(publisher, 3, 6)
+            Thread.sleep(200)
+
+        then:
+            flowSubscriber.values == [0, 1, 2]
+    }
+
+    // Negative testcase
+    def "Test subscribing twice to the same subscriber - error is signalled"() {
+
+        setup:
+            String topic = "flowTopic3"
+            Publisher publisher = new Publisher(topic)
+            Flow.Publisher<Record> flowPublisher = new Subscriber(topic).asFlowPublisher()
+            CollectingSubscriber second = new CollectingSubscriber()
+
+        when:
+            flowPublisher.subscribe(new CollectingSubscriber())
+            flowPublisher.subscribe(second)
+
+        then:
+            second.error instanceof IllegalStateException
+    }
+
+    // Negative testcase
+    def "Test requesting a non positive number of records - error is signalled"() {
+
+        setup:
+            String topic = "flowTopic4"
+            Publisher publisher = new Publisher(topic)
+            CollectingSubscriber flowSubscriber = new CollectingSubscriber()
+            new Subscriber(topic).asFlowPublisher().subscribe(flowSubscriber)
+            conditions.eventually {
+                assert flowSubscriber.subscription != null
+            }
+
+        when:
+            flowSubscriber.subscription.request(0)
+
+        then:
+            conditions.eventually {
+                assert flowSubscriber.error instanceof IllegalArgumentException
+            }
+    }
+}
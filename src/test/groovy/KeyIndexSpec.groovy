@@ -0,0 +1,126 @@
+import pubSub.Publisher
+import pubSub.Record
+import pubSub.Serde
+import pubSub.Subscriber
+import pubSub.TopicConfig
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+
+class KeyIndexSpec extends Specification {
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+
+    // Positive testcase
+    def "Test the latest record of a key is looked up across partitions"() {
+
+        setup:
+            String topic = "keyIndexTopic1"
+            Publisher<String, String> publisher = new Publisher<>(topic, TopicConfig.builder()
+                    .partitions(4)
+                    .keyIndex(100)
+                    .build())
+            Subscriber<String, String> subscriber = new Subscriber<>(topic)
+
+        when:
+            for (int i = 0; i < 300; i++) {
+                publisher.publish(new Record<>("key" + (i % 100), "value" + i))
+            }
+            publisher.publishAll((0..<10).collect { new Record<>("key" + it, "batchValue" + it) })
+
+        then:
+            (0..<10).every { subscriber.lookupLatest("key" + it).getValue() == "batchValue" + it }
+            (10..<100).every { subscriber.lookupLatest("key" + it).getValue() == "value" + (200 + it) }
+            subscriber.lookupLatest("absentKey") == null
+    }
+
+    // Positive testcase
+    def "Test keys whose latest record fell out of retention are not found"() {
+
+        setup:
+            String topic = "keyIndexTopic2"
+            Publisher<String, String> publisher = new Publisher<>(topic, TopicConfig.builder()
+                    .chunkSize(16)
+                    .retentionMaxRecords(32)
+                    .keyIndex(100)
+                    .build())
+            Subscriber<String, String> subscriber = new Subscriber<>(topic)
+
+        when:
+            for (int i = 0; i < 100; i++) {
+                publisher.publish(new Record<>("key" + i, "value" + i))
+            }
+            publisher.publish(new Record<>("key0", "latest"))
+
+        then:
+            conditions.eventually {
+                assert subscriber.lookupLatest("key1") == null
+            }
+            subscriber.lookupLatest("key99").getValue() == "value99"
+            subscriber.lookupLatest("key0").getValue() == "latest"
+    }
+
+    // Positive testcase
+    def "Test the key index of a topic stored in files is rebuilt when the topic is opened again"() {
+
+        setup:
+            Path directory = Files.createTempDirectory("keyIndexSpec")
+            Publisher<String, String> publisher = new Publisher<>("keyIndexTopic3", TopicConfig.builder()
+                    .fileStorage(directory, Serde.string(), Serde.string())
+                    .build())
+            for (int i = 0; i < 2000; i++) {
+                publisher.publish(new Record<>("key" + (i % 500), "value" + i))
+            }
+
+        when: "The files are opened under a new topic"
+            Path restartDirectory = Files.createTempDirectory("keyIndexSpecRestart")
+            Path partition = Files.createDirectories(restartDirectory.resolve("keyIndexTopic3Restarted-0"))
+            Files.list(directory.resolve("keyIndexTopic3-0")).each { Files.copy(it, partition.resolve(it.getFileName())) }
+            new Publisher<>("keyIndexTopic3Restarted", TopicConfig.builder()
+                    .fileStorage(restartDirectory, Serde.string(), Serde.string())
+                    .keyIndex(500)
+                    .build())
+            Subscriber<String, String> subscriber = new Subscriber<>("keyIndexTopic3Restarted")
+
+        then:
+            (0..<500).every { subscriber.lookupLatest("key" + it).getValue() == "value" + (1500 + it) }
+    }
+
+    // Positive testcase
+    def "Test byte[] keys are routed and looked up by their content"() {
+
+        setup:
+            String topic = "keyIndexTopic5"
+            Publisher<byte[], String> publisher = new Publisher<>(topic, TopicConfig.builder()
+                    .partitions(4)
+                    .keyIndex(100)
+                    .build())
+            Subscriber<byte[], String> subscriber = new Subscriber<>(topic)
+
+        when:
+            for (int i = 0; i < 30; i++) {
+                publisher.publish(new Record<>(("key" + (i % 10)).bytes, "value" + i))
+            }
+
+        then:
+            (0..<10).every { subscriber.lookupLatest(("key" + it).bytes).getValue() == "value" + (20 + it) }
+            subscriber.lookupLatest("absentKey".bytes) == null
+    }
+
+    // Negative testcase
+    def "Test looking up a key on a topic without a key index - exception is thrown"() {
+
+        setup:
+            new Publisher<>("keyIndexTopic4")
+
+        when:
+            new Subscriber<>("keyIndexTopic4").lookupLatest("key")
+
+        then:
+            IllegalArgumentException illegalArgumentException = thrown()
+            illegalArgumentException.getMessage().equals("Topic has no key index")
+    }
+}
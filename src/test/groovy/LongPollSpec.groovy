@@ -0,0 +1,88 @@
+import pubSub.Publisher
+import pubSub.Record
+import pubSub.Subscriber
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+
+class LongPollSpec extends Specification {
+
+    // Positive testcase
+    def "Test long poll is woken up by a publish"() {
+
+        setup:
+            String topic = "longPollTopic1"
+            Publisher publisher = new Publisher(topic)
+            Subscriber subscriber = new Subscriber(topic)
+            subscriber.register()
+
+        when:
+            long start = System.nanoTime()
+            CompletableFuture<List<Record>> polled = CompletableFuture.supplyAsync({
+                subscriber.poll(10, Duration.ofSeconds(30))
+            })
+            Thread.sleep(200)
+            publisher.publish(new Record<>("key", "value"))
+            List<Record> records = polled.get(10, TimeUnit.SECONDS)
+
+        then:
+            records.size() == 1
+            records.get(0).getValue() == "value"
+            System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10)
+    }
+
+    // Positive testcase
+    def "Test long poll returns an empty list once the timeout expires"() {
+
+        setup:
+            String topic = "longPollTopic2"
+            Publisher publisher = new Publisher(topic)
+            Subscriber subscriber = new Subscriber(topic)
+            subscriber.register()
+
+        when:
+            long start = System.nanoTime()
+            List<Record> records = subscriber.poll(10, Duration.ofMillis(200))
+
+        then:
+            records.isEmpty()
+            System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200)
+    }
+
+    // Positive testcase
+    def "Test long poll waits for minRecords"() {
+
+        setup:
+            String topic = "longPollTopic3"
+            Publisher publisher = new Publisher(topic)
+            Subscriber subscriber = new Subscriber(topic)
+            subscriber.register()
+
+        when:
+            CompletableFuture<List<Record>> polled = CompletableFuture.supplyAsync({
+                subscriber.poll(3, 10, Duration.ofSeconds(30))
+            })
+            for (int i = 0; i < 3; i++) {
+                Thread.sleep(50)
+                publisher.publish(new Record<>("key" + i, i))
+            }
+            List<Record> records = polled.get(10, TimeUnit.SECONDS)
+
+        then:
+            records.collect { it.getValue() } == [0, 1, 2]
+    }
+
+    // Negative testcase
+    def "Test long poll with minRecords above maxRecords - exception is thrown"() {
+
+        when:
+            new Subscriber("longPollTopic4").poll(5, 1, Duration.ofSeconds(1))
+
+        then:
+            IllegalArgumentException illegalArgumentException = thrown()
+            illegalArgumentException.getMessage().equals("minRecords should be between 1 and maxRecords")
+    }
+}
@@ -0,0 +1,108 @@
+import pubSub.PubSubMetrics
+import pubSub.Publisher
+import pubSub.Record
+import pubSub.Subscriber
+import spock.lang.Specification
+
+import javax.management.AttributeNotFoundException
+import javax.management.MBeanServer
+import javax.management.ObjectName
+import java.lang.management.ManagementFactory
+
+
+class MetricsSpec extends Specification {
+
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer()
+
+    private static ObjectName topicName(String topic) {
+        return new ObjectName("pubSub:type=Topic,name=" + ObjectName.quote(topic))
+    }
+
+    private static ObjectName subscriberName(String topic) {
+        return new ObjectName("pubSub:type=Subscriber,topic=" + ObjectName.quote(topic) + ",id=*")
+    }
+
+    // Positive testcase
+    def "Test publishing and polling are counted on the topic MBean, and the lag on the subscriber MBean"() {
+
+        setup:
+            Publisher<String, String> publisher = new Publisher<>("metricsTopic1")
+            Subscriber<String, String> subscriber = new Subscriber<>("metricsTopic1")
+            subscriber.register()
+
+        when:
+            publisher.publishAll((0..<100).collect { new Record<>("key" + it, "value" + it) })
+            publisher.publish(new Record<>("key", "value"))
+            subscriber.poll(40)
+            ObjectName subscriberMBean = mBeanServer.queryNames(subscriberName("metricsTopic1"), null).first()
+
+        then:
+            mBeanServer.getAttribute(topicName("metricsTopic1"), "PublishedRecords") == 101
+            mBeanServer.getAttribute(topicName("metricsTopic1"), "PublishCount") == 2
+            mBeanServer.getAttribute(topicName("metricsTopic1"), "PublishedBytes") > 0
+            mBeanServer.getAttribute(topicName("metricsTopic1"), "FetchedRecords") == 40
+            mBeanServer.getAttribute(topicName("metricsTopic1"), "LogRecords") == 101
+            mBeanServer.getAttribute(topicName("metricsTopic1"), "PublishLatencyP999Nanos") >=
+                    mBeanServer.getAttribute(topicName("metricsTopic1"), "PublishLatencyP50Nanos")
+            mBeanServer.getAttribute(subscriberMBean, "Offset") == 40
+            mBeanServer.getAttribute(subscriberMBean, "Lag") == 61
+            PubSubMetrics.dump().contains("topic metricsTopic1\n")
+            PubSubMetrics.dump().contains("  FetchedRecords: 40\n")
+    }
+
+    // Positive testcase
+    def "Test the subscriber MBean is removed once the subscriber unregisters"() {
+
+        setup:
+            new Publisher<>("metricsTopic2")
+            Subscriber<String, String> subscriber = new Subscriber<>("metricsTopic2")
+
+        when:
+            subscriber.register()
+
+        then:
+            mBeanServer.queryNames(subscriberName("metricsTopic2"), null).size() == 1
+
+        when:
+            subscriber.unregister()
+
+        then:
+            mBeanServer.queryNames(subscriberName("metricsTopic2"), null).isEmpty()
+    }
+
+    // Positive testcase
+    def "Test the publish rate of a steady publisher is reported as is, however rarely it is read"() {
+
+        setup:
+            Publisher<String, String> publisher = new Publisher<>("metricsTopic4")
+            List<Record<String, String>> records = (0..<20).collect { new Record<>("key" + it, "value" + it) }
+
+        when: "400 records per second for 11 seconds, with the rate read only once at the end"
+            long startNanos = System.nanoTime()
+            for (int i = 1; i <= 220; i++) {
+                publisher.publishAll(records)
+                long sleepNanos = startNanos + i * 50_000_000L - System.nanoTime()
+                if (sleepNanos > 0) {
+                    Thread.sleep(sleepNanos.intdiv(1_000_000) as long)
+                }
+            }
+            double rate = mBeanServer.getAttribute(topicName("metricsTopic4"), "PublishRate")
+
+        then:
+            rate >= 400 * 0.85
+            rate <= 400 * 1.15
+    }
+
+    // Negative testcase
+    def "Test reading a metric which does not exist - exception is thrown"() {
+
+        setup:
+            new Publisher<>("metricsTopic3")
+
+        when:
+            mBeanServer.getAttribute(topicName("metricsTopic3"), "NoSuchMetric")
+
+        then:
+            thrown(AttributeNotFoundException)
+    }
+}
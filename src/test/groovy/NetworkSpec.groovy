@@ -0,0 +1,193 @@
+import pubSub.PubSubClient
+import pubSub.PubSubServer
+import pubSub.Publisher
+import pubSub.PublisherConfig
+import pubSub.Record
+import pubSub.RemotePublisher
+import pubSub.RemoteSubscriber
+import pubSub.Serde
+import pubSub.Subscriber
+import pubSub.SubscriberException
+import pubSub.TopicConfig
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.time.Duration
+
+
+class NetworkSpec extends Specification {
+
+    @Shared
+    PubSubServer server = new PubSubServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+
+    List<PubSubClient> clients = []
+
+    private PubSubClient connect() {
+        PubSubClient client = new PubSubClient(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))
+        clients.add(client)
+        return client
+    }
+
+    def cleanup() {
+        clients*.close()
+    }
+
+    def cleanupSpec() {
+        server.close()
+    }
+
+    // Positive testcase
+    def "Test records published remotely are read remotely by a consumer group, in order per key"() {
+
+        setup:
+            String topic = "networkTopic1"
+            RemotePublisher<String, String> publisher = new RemotePublisher<>(connect(), topic,
+                    Serde.string(), Serde.string(), TopicConfig.builder().partitions(3).build(),
+                    PublisherConfig.defaults())
+            List<RemoteSubscriber<String, String>> members = (0..<2).collect {
+                new RemoteSubscriber<>(connect(), topic, "group", Serde.string(), Serde.string())
+            }
+            members*.register()
+
+        when:
+            for (int i = 0; i < 100; i++) {
+                publisher.publish(new Record<>("key" + (i % 7), "value" + i))
+            }
+            publisher.publishAll((100..<1000).collect { new Record<>("key" + (it % 7), "value" + it) })
+            List<Record<String, String>> records = []
+            members.each { member ->
+                List<Record<String, String>> polled
+                while (!(polled = member.poll(64)).isEmpty()) {
+                    records.addAll(polled)
+                }
+            }
+
+        then:
+            members[0].numPartitions() == 3
+            records.size() == 1000
+            records.every { it.getTimestamp() > 0 }
+            records.groupBy { it.getKey() }.every { key, perKey ->
+                perKey*.getValue() == (0..<1000).findAll { "key" + (it % 7) == key }.collect { "value" + it }
+            }
+    }
+
+    // Positive testcase
+    def "Test a remote long poll returns as soon as a record is published"() {
+
+        setup:
+            String topic = "networkTopic2"
+            RemotePublisher<String, String> publisher = new RemotePublisher<>(connect(), topic, Serde.string(),
+                    Serde.string())
+            RemoteSubscriber<String, String> subscriber = new RemoteSubscriber<>(connect(), topic, Serde.string(),
+                    Serde.string())
+            subscriber.register()
+
+        when:
+            Thread.start {
+                Thread.sleep(200)
+                publisher.publish(new Record<>("key", "value"))
+            }
+            long start = System.nanoTime()
+            List<Record<String, String>> records = subscriber.poll(10, Duration.ofSeconds(10))
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000
+
+        then:
+            records*.getValue() == ["value"]
+            elapsedMs < 5000
+
+        when: "Nothing gets published"
+            records = subscriber.poll(10, Duration.ofMillis(100))
+
+        then:
+            records.isEmpty()
+    }
+
+    // Positive testcase
+    def "Test seeking and rewinding a remote subscriber"() {
+
+        setup:
+            String topic = "networkTopic3"
+            RemotePublisher<String, String> publisher = new RemotePublisher<>(connect(), topic, Serde.string(),
+                    Serde.string())
+            RemoteSubscriber<String, String> subscriber = new RemoteSubscriber<>(connect(), topic, Serde.string(),
+                    Serde.string())
+            subscriber.register()
+            publisher.publishAll((0..<10).collect { new Record<>("key", "value" + it) })
+
+        expect:
+            subscriber.poll(4)*.getValue() == (0..<4).collect { "value" + it }
+
+        when:
+            subscriber.rewind(2)
+
+        then:
+            subscriber.poll(2)*.getValue() == ["value2", "value3"]
+
+        when:
+            subscriber.seekToOffset(7)
+
+        then:
+            subscriber.poll(10)*.getValue() == ["value7", "value8", "value9"]
+
+        when:
+            subscriber.seekToBeginning()
+
+        then:
+            subscriber.poll(1)*.getValue() == ["value0"]
+    }
+
+    // Positive testcase
+    def "Test remote and local publishers route a key to the same partition"() {
+
+        setup:
+            String topic = "networkTopic6"
+            RemotePublisher<String, String> remotePublisher = new RemotePublisher<>(connect(), topic,
+                    Serde.string(), Serde.string(), TopicConfig.builder().partitions(4).build(),
+                    PublisherConfig.defaults())
+            Publisher<byte[], byte[]> localPublisher = new Publisher<>(topic)
+
+        when:
+            (0..<20).each { remotePublisher.publish(new Record<>("key" + it, "remote")) }
+            (0..<20).each { localPublisher.publish(new Record<>(("key" + it).bytes, "local".bytes)) }
+            Map<String, Set<Integer>> partitionsByKey = [:].withDefault { [] as Set }
+            (0..<4).each { partition ->
+                Subscriber<byte[], byte[]> subscriber = new Subscriber<>(topic, [partition])
+                subscriber.register()
+                subscriber.poll(100).each { partitionsByKey[new String(it.getKey())] << partition }
+            }
+
+        then:
+            partitionsByKey.size() == 20
+            partitionsByKey.values().every { it.size() == 1 }
+    }
+
+    // Negative testcase
+    def "Test polling a topic which does not exist on the server - exception is thrown"() {
+
+        setup:
+            RemoteSubscriber<String, String> subscriber = new RemoteSubscriber<>(connect(), "networkTopic4",
+                    Serde.string(), Serde.string())
+            subscriber.register()
+
+        when:
+            subscriber.poll(1)
+
+        then:
+            SubscriberException subscriberException = thrown()
+            subscriberException.getMessage().equals("Topic not found")
+    }
+
+    // Negative testcase
+    def "Test polling with a remote subscriber which is not registered - exception is thrown"() {
+
+        setup:
+            new RemotePublisher<>(connect(), "networkTopic5", Serde.string(), Serde.string())
+
+        when:
+            new RemoteSubscriber<>(connect(), "networkTopic5", Serde.string(), Serde.string()).poll(1)
+
+        then:
+            SubscriberException subscriberException = thrown()
+            subscriberException.getMessage().equals("Subscriber not registered")
+    }
+}
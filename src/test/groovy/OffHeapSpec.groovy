@@ -0,0 +1,85 @@
+import pubSub.Publisher
+import pubSub.Record
+import pubSub.Serde
+import pubSub.Subscriber
+import pubSub.TopicConfig
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.nio.file.Files
+
+
+class OffHeapSpec extends Specification {
+
+    private static List<Record<String, String>> readAll(String topic) {
+        Subscriber<String, String> subscriber = new Subscriber<>(topic)
+        subscriber.register()
+        List<Record<String, String>> allRecords = []
+        List<Record<String, String>> records
+        while (!(records = subscriber.poll(100)).isEmpty()) {
+            allRecords.addAll(records)
+        }
+        subscriber.unregister()
+        return allRecords
+    }
+
+    // Positive testcase
+    def "Test values stored off the heap are read back, across slabs"() {
+
+        setup:
+            String topic = "offHeapTopic1"
+            Publisher<String, String> publisher = new Publisher<>(topic, TopicConfig.builder()
+                    .offHeapValues(Serde.string())
+                    .slabBytes(1024)
+                    .build())
+            String largeValue = "x" * 5000
+
+        when:
+            (0..<100).each { publisher.publish(new Record<>("key" + it, "value" + it)) }
+            publisher.publishAll([new Record<>("large", largeValue), new Record<>("tombstone", null)])
+            List<Record<String, String>> records = readAll(topic)
+
+        then:
+            records.size() == 102
+            records.take(100)*.getValue() == (0..<100).collect { "value" + it }
+            records.take(100)*.getKey() == (0..<100).collect { "key" + it }
+            records[100].getValue() == largeValue
+            records[101].getValue() == null
+    }
+
+    // Positive testcase
+    def "Test retention drops records whose values are stored off the heap"() {
+
+        setup:
+            String topic = "offHeapTopic2"
+            Publisher<String, byte[]> publisher = new Publisher<>(topic, TopicConfig.builder()
+                    .offHeapValues(Serde.byteArray())
+                    .chunkSize(16)
+                    .retentionMaxRecords(32)
+                    .build())
+
+        when:
+            (0..<100).each { publisher.publish(new Record<>("key" + it, [it] as byte[])) }
+
+        then:
+            new PollingConditions(timeout: 5).eventually {
+                List<Record<String, byte[]>> records = readAll(topic)
+                assert records.size() <= 48
+                assert records*.getValue().collect { it[0] } == ((100 - records.size())..<100).toList()
+            }
+    }
+
+    // Negative testcase
+    def "Test off-heap values for a topic stored in files - exception is thrown"() {
+
+        when:
+            TopicConfig.builder()
+                    .fileStorage(Files.createTempDirectory("offHeapSpec"), Serde.string(), Serde.string())
+                    .offHeapValues(Serde.string())
+                    .build()
+
+        then:
+            IllegalArgumentException illegalArgumentException = thrown()
+            illegalArgumentException.getMessage().equals("Topics stored in files already keep their values off the heap")
+    }
+}
@@ -1,7 +1,10 @@
+import pubSub.Partitioner
 import pubSub.Publisher
 import pubSub.Record
+import pubSub.RecordBatch
 import pubSub.Subscriber
 import pubSub.SubscriberException
+import pubSub.TopicConfig
 import spock.lang.Specification
 
 
@@ -150,6 +153,176 @@ class PubSubSpec extends Specification {
             records.get(records.size() - 1).getValue().equals("value9")
     }
 
+    // Positive testcase
+    def "Test concurrent publishers - every record is read once and in per-publisher order"() {
+
+        setup:
+            String topic = "testTopicConcurrent"
+            int numPublishers = 4
+            int recordsPerPublisher = 5000
+            Publisher publisher = new Publisher(topic)
+
+        when:
+            List<Thread> threads = (0..<numPublishers).collect { int p ->
+                Thread.start {
+                    for (int i = 0; i < recordsPerPublisher; i++) {
+                        publisher.publish(new Record<>("publisher" + p, i))
+                    }
+                }
+            }
+            threads*.join()
+
+            Subscriber subscriber = new Subscriber(topic)
+            subscriber.register()
+            List<Record<String, Integer>> allRecords = []
+            List<Record<String, Integer>> records
+            while (!(records = subscriber.poll(1000)).isEmpty()) {
+                allRecords.addAll(records)
+            }
+
+        then:
+            noExceptionThrown()
+            allRecords.size() == numPublishers * recordsPerPublisher
+            allRecords.groupBy { it.getKey() }.values().every { perPublisher ->
+                perPublisher*.getValue() == (0..<recordsPerPublisher).toList()
+            }
+    }
+
+    // Positive testcase
+    def "Test batch publish - subscribers see a batch entirely or not at all"() {
+
+        setup:
+            String topic = "testTopicBatch"
+            int numBatches = 200
+            int batchSize = 100
+            Publisher publisher = new Publisher(topic)
+            Subscriber subscriber = new Subscriber(topic)
+            subscriber.register()
+
+        when:
+            Thread publisherThread = Thread.start {
+                for (int b = 0; b < numBatches; b++) {
+                    RecordBatch batch = new RecordBatch()
+                    for (int i = 0; i < batchSize; i++) {
+                        batch.add(new Record<>("key", b * batchSize + i))
+                    }
+                    publisher.publishBatch(batch)
+                }
+            }
+            List<Integer> values = []
+            boolean partialBatchSeen = false
+            while (values.size() < numBatches * batchSize) {
+                List<Record<String, Integer>> records = subscriber.poll(Integer.MAX_VALUE)
+                values.addAll(records*.getValue())
+                partialBatchSeen |= (values.size() % batchSize != 0)
+            }
+            publisherThread.join()
+
+        then:
+            !partialBatchSeen
+            values == (0..<numBatches * batchSize).toList()
+    }
+
+    // Positive testcase
+    def "Test publishAll on a partitioned topic - records with the same key stay in order"() {
+
+        setup:
+            String topic = "testTopicBatchPartitioned"
+            Publisher publisher = new Publisher(topic, TopicConfig.builder().partitions(4).build())
+
+        when:
+            publisher.publishAll((0..<1000).collect { new Record<>("key" + (it % 10), it) })
+            Subscriber subscriber = new Subscriber(topic)
+            subscriber.register()
+            List<Record<String, Integer>> records = subscriber.poll(2000)
+
+        then:
+            records.size() == 1000
+            records.groupBy { it.getKey() }.every { key, perKey ->
+                perKey*.getValue() == (0..<1000).findAll { "key" + (it % 10) == key }
+            }
+    }
+
+    // Positive testcase
+    def "Test partitioned topic - records with the same key stay in order on one partition"() {
+
+        setup:
+            String topic = "testTopicPartitioned"
+            int numPartitions = 4
+
+        when:
+            Publisher publisher = new Publisher(topic, TopicConfig.builder().partitions(numPartitions).build())
+            for (int i = 0; i < 400; i++) {
+                publisher.publish(new Record<>("order" + (i % 20), i))
+            }
+
+            List<List<Record<String, Integer>>> recordsPerPartition = (0..<numPartitions).collect { int partition ->
+                Subscriber subscriber = new Subscriber(topic, [partition])
+                subscriber.register()
+                subscriber.poll(1000)
+            }
+
+        then:
+            noExceptionThrown()
+            recordsPerPartition*.size().sum() == 400
+            recordsPerPartition.count { !it.isEmpty() } > 1
+
+            // Every key is on exactly one partition, in publish order.
+            recordsPerPartition.collectMany { it*.getKey().unique() }.size() == 20
+            recordsPerPartition.every { partitionRecords ->
+                partitionRecords.groupBy { it.getKey() }.values().every { perKey ->
+                    perKey*.getValue() == perKey*.getValue().sort(false)
+                }
+            }
+
+        when:
+            // A subscriber on all the partitions sees every record.
+            Subscriber allPartitions = new Subscriber(topic)
+            allPartitions.register()
+
+        then:
+            allPartitions.numPartitions() == numPartitions
+            allPartitions.poll(1000).size() == 400
+    }
+
+    // Positive testcase
+    def "Test partitioned topic with a custom partitioner"() {
+
+        setup:
+            String topic = "testTopicCustomPartitioner"
+            Partitioner<String> lastPartition = { String key, int numPartitions -> numPartitions - 1 } as Partitioner<String>
+
+        when:
+            Publisher publisher = new Publisher(topic, TopicConfig.builder().partitions(3).partitioner(lastPartition).build())
+            publisher.publish(new Record<>("key", "value"))
+
+            Subscriber first = new Subscriber(topic, [0])
+            first.register()
+            Subscriber last = new Subscriber(topic, [2])
+            last.register()
+
+        then:
+            first.poll(10).isEmpty()
+            last.poll(10).get(0).getValue() == "value"
+    }
+
+    // Negative testcase
+    def "Test Subscriber on a partition that does not exist - exception is thrown"() {
+
+        setup:
+            String topic = "testTopicMissingPartition"
+
+        when:
+            Publisher publisher = new Publisher(topic, TopicConfig.builder().partitions(2).build())
+            Subscriber subscriber = new Subscriber(topic, [5])
+            subscriber.register()
+            subscriber.poll(10)
+
+        then:
+            SubscriberException subscriberException = thrown()
+            subscriberException.getMessage().equals("Partition not found")
+    }
+
     // Negative testcase
     def "Test Subscriber subscribes from topic which does not have a produced - exception is thrown"() {
 
@@ -1,7 +1,16 @@
 import pubSub.Publisher
+import pubSub.PublisherConfig
+import pubSub.PublisherException
 import pubSub.Record
+import pubSub.RecordMetadata
+import pubSub.Subscriber
+import pubSub.TopicConfig
 import spock.lang.Specification
 
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+
 
 class PublisherSpec extends Specification {
 
@@ -43,4 +52,69 @@ class PublisherSpec extends Specification {
         then:
             noExceptionThrown()
     }
+
+    def "Test publisher publish async"() {
+
+        setup:
+            String topic = "asyncTopic1"
+            Publisher<String, Integer> publisher = new Publisher<>(topic, TopicConfig.defaults(),
+                    PublisherConfig.builder().lingerMs(50).build())
+
+        when:
+            List<CompletableFuture<RecordMetadata>> futures = (0..<100).collect {
+                publisher.publishAsync(new Record<>("key", it))
+            }
+            publisher.flush()
+            Subscriber<String, Integer> subscriber = new Subscriber<>(topic)
+            subscriber.register()
+
+        then:
+            futures.every { it.isDone() }
+            futures.collect { it.get().getOffset() } == (0L..<100L).toList()
+            subscriber.poll(200)*.getValue() == (0..<100).toList()
+
+        cleanup:
+            publisher.close()
+    }
+
+    def "Test publisher publish async flushes a full batch without waiting for the linger"() {
+
+        setup:
+            Publisher<String, Integer> publisher = new Publisher<>("asyncTopic2", TopicConfig.defaults(),
+                    PublisherConfig.builder().batchSize(10).lingerMs(60_000).build())
+
+        when:
+            List<CompletableFuture<RecordMetadata>> futures = (0..<10).collect {
+                publisher.publishAsync(new Record<>("key", it))
+            }
+            futures.last().get(10, TimeUnit.SECONDS)
+
+        then:
+            noExceptionThrown()
+
+        cleanup:
+            publisher.close()
+    }
+
+    def "Test publisher publish async fails fast when the buffer is full"() {
+
+        setup:
+            Publisher<String, String> publisher = new Publisher<>("asyncTopic3", TopicConfig.defaults(),
+                    PublisherConfig.builder().lingerMs(60_000).bufferMemoryBytes(100).maxBlockMs(0).build())
+
+        when:
+            CompletableFuture<RecordMetadata> first = publisher.publishAsync(new Record<>("key", "x" * 20))
+            publisher.publishAsync(new Record<>("key", "x" * 20)).get()
+
+        then:
+            ExecutionException executionException = thrown()
+            executionException.getCause() instanceof PublisherException
+            executionException.getCause().getMessage() == "Buffer memory exhausted"
+
+        when:
+            publisher.close()
+
+        then:
+            first.isDone() && !first.isCompletedExceptionally()
+    }
 }
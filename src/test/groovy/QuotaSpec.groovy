@@ -0,0 +1,152 @@
+import pubSub.Publisher
+import pubSub.PublisherConfig
+import pubSub.PublisherException
+import pubSub.Quota
+import pubSub.Record
+import pubSub.TopicConfig
+import spock.lang.Specification
+
+import javax.management.MBeanServer
+import javax.management.ObjectName
+import java.lang.management.ManagementFactory
+
+
+class QuotaSpec extends Specification {
+
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer()
+
+    private static ObjectName topicName(String topic) {
+        return new ObjectName("pubSub:type=Topic,name=" + ObjectName.quote(topic))
+    }
+
+    private static ObjectName publisherName(String publisherId) {
+        return new ObjectName("pubSub:type=Publisher,id=" + ObjectName.quote(publisherId))
+    }
+
+    // Positive testcase
+    def "Test a publisher over its quota is delayed, and the throttle time is reported"() {
+
+        setup:
+            PublisherConfig publisherConfig = PublisherConfig.builder()
+                    .quota(Quota.builder().recordsPerSecond(100).burstMs(100).build())
+                    .build()
+            Publisher<String, String> publisher = new Publisher<>("quotaTopic1", TopicConfig.defaults(),
+                    publisherConfig)
+
+        when:
+            long startNanos = System.nanoTime()
+            for (int i = 0; i < 30; i++) {
+                publisher.publish(new Record<>("key" + i, "value" + i))
+            }
+            long elapsedMs = (System.nanoTime() - startNanos).intdiv(1_000_000)
+
+        then:
+            elapsedMs >= 150
+            mBeanServer.getAttribute(topicName("quotaTopic1"), "ThrottleTimeMs") >= 150
+            mBeanServer.getAttribute(topicName("quotaTopic1"), "PublishedRecords") == 30
+    }
+
+    // Positive testcase
+    def "Test the quota of a topic rejects the excess, and lets publishes through again once it caught up"() {
+
+        setup:
+            Publisher<String, String> publisher = new Publisher<>("quotaTopic2", TopicConfig.builder()
+                    .quota(Quota.builder().recordsPerSecond(10).burstMs(100).rejectExcess(true).build())
+                    .build())
+            publisher.publishAll((0..<5).collect { new Record<>("key" + it, "value" + it) })
+
+        when:
+            publisher.publish(new Record<>("key", "excess"))
+
+        then:
+            PublisherException publisherException = thrown()
+            publisherException.getMessage().equals("Quota exceeded")
+            mBeanServer.getAttribute(topicName("quotaTopic2"), "QuotaRejections") == 1
+
+        when:
+            Thread.sleep(600)
+            publisher.publish(new Record<>("key", "value"))
+
+        then:
+            noExceptionThrown()
+    }
+
+    // Positive testcase
+    def "Test publishers with the same id share their quota across topics"() {
+
+        setup:
+            PublisherConfig publisherConfig = PublisherConfig.builder()
+                    .publisherId("quotaPublisher3")
+                    .quota(Quota.builder().recordsPerSecond(10).burstMs(100).rejectExcess(true).build())
+                    .build()
+            Publisher<String, String> publisher = new Publisher<>("quotaTopic3a", TopicConfig.defaults(),
+                    publisherConfig)
+            Publisher<String, String> otherPublisher = new Publisher<>("quotaTopic3b", TopicConfig.defaults(),
+                    publisherConfig)
+            publisher.publish(new Record<>("key", "value"))
+
+        when:
+            otherPublisher.publish(new Record<>("key", "value"))
+
+        then:
+            PublisherException publisherException = thrown()
+            publisherException.getMessage().equals("Quota exceeded")
+            mBeanServer.getAttribute(publisherName("quotaPublisher3"), "QuotaRejections") == 1
+            mBeanServer.getAttribute(publisherName("quotaPublisher3"), "RecordsPerSecond") == 10
+    }
+
+    // Positive testcase
+    def "Test publishes rejected by the quota of the topic do not count towards the quota of the publisher"() {
+
+        setup:
+            PublisherConfig publisherConfig = PublisherConfig.builder()
+                    .publisherId("quotaPublisher4")
+                    .quota(Quota.builder().recordsPerSecond(1).burstMs(5000).rejectExcess(true).build())
+                    .build()
+            Publisher<String, String> publisher = new Publisher<>("quotaTopic4a", TopicConfig.builder()
+                    .quota(Quota.builder().recordsPerSecond(1).burstMs(1000).rejectExcess(true).build())
+                    .build(), publisherConfig)
+            Publisher<String, String> otherPublisher = new Publisher<>("quotaTopic4b", TopicConfig.defaults(),
+                    publisherConfig)
+            publisher.publish(new Record<>("key", "value"))
+
+        when:
+            int rejected = 0
+            for (int i = 0; i < 5; i++) {
+                try {
+                    publisher.publish(new Record<>("key" + i, "value" + i))
+                } catch (PublisherException ignored) {
+                    rejected++
+                }
+            }
+            (0..<3).each { otherPublisher.publish(new Record<>("key" + it, "value" + it)) }
+
+        then:
+            rejected == 5
+            mBeanServer.getAttribute(topicName("quotaTopic4a"), "QuotaRejections") == 5
+            mBeanServer.getAttribute(publisherName("quotaPublisher4"), "QuotaRejections") == 0
+            mBeanServer.getAttribute(topicName("quotaTopic4b"), "PublishedRecords") == 3
+    }
+
+    // Negative testcase
+    def "Test a quota which limits nothing - exception is thrown"() {
+
+        when:
+            Quota.builder().burstMs(100).build()
+
+        then:
+            IllegalArgumentException illegalArgumentException = thrown()
+            illegalArgumentException.getMessage().equals("A quota should limit the records or the bytes per second")
+    }
+
+    // Negative testcase
+    def "Test a quota of 0 bytes per second - exception is thrown"() {
+
+        when:
+            Quota.builder().bytesPerSecond(0)
+
+        then:
+            IllegalArgumentException illegalArgumentException = thrown()
+            illegalArgumentException.getMessage().equals("bytesPerSecond should be greater than 0")
+    }
+}
@@ -0,0 +1,166 @@
+import pubSub.PubSubServer
+import pubSub.Publisher
+import pubSub.PublisherException
+import pubSub.Record
+import pubSub.Subscriber
+import pubSub.TopicConfig
+import pubSub.TopicFollower
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.time.Duration
+
+
+class ReplicationSpec extends Specification {
+
+    @Shared
+    PubSubServer server = new PubSubServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+
+    List<TopicFollower> followers = []
+
+    private TopicFollower follow(String leaderTopic, String followerId, String topic, TopicConfig topicConfig) {
+        TopicFollower follower = new TopicFollower(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                server.getPort()), leaderTopic, followerId, topic, topicConfig)
+        followers.add(follower)
+        return follower
+    }
+
+    private static List<String> values(List<Record<byte[], byte[]>> records) {
+        return records.collect { new String(it.getValue()) }
+    }
+
+    def cleanup() {
+        followers*.close()
+    }
+
+    def cleanupSpec() {
+        server.close()
+    }
+
+    // Positive testcase
+    def "Test records become visible on the leader only once replicated, and are read on the follower"() {
+
+        setup:
+            String topic = "replicationTopic1"
+            TopicConfig topicConfig = TopicConfig.builder().partitions(2).replicated(1).build()
+            Publisher<byte[], byte[]> publisher = new Publisher<>(topic, topicConfig)
+            Subscriber<byte[], byte[]> leaderSubscriber = new Subscriber<>(topic)
+            leaderSubscriber.register()
+
+        when:
+            publisher.publishAll((0..<100).collect { new Record<>(("key" + it).bytes, ("value" + it).bytes) })
+
+        then: "No follower has them yet"
+            leaderSubscriber.poll(100, Duration.ofMillis(200)).isEmpty()
+
+        when:
+            follow(topic, "follower1", "replicationTopic1Follower", topicConfig)
+            Subscriber<byte[], byte[]> followerSubscriber = new Subscriber<>("replicationTopic1Follower")
+            followerSubscriber.register()
+            List<Record<byte[], byte[]>> leaderRecords = leaderSubscriber.poll(100, 100, Duration.ofSeconds(5))
+            List<Record<byte[], byte[]>> followerRecords = followerSubscriber.poll(100, 100, Duration.ofSeconds(5))
+
+        then:
+            values(leaderRecords) as Set == (0..<100).collect { "value" + it } as Set
+            values(followerRecords) as Set == values(leaderRecords) as Set
+
+        and: "The follower keeps the timestamps of the leader"
+            followerRecords.collect { [new String(it.getValue()), it.getTimestamp()] } as Set ==
+                    leaderRecords.collect { [new String(it.getValue()), it.getTimestamp()] } as Set
+    }
+
+    // Positive testcase
+    def "Test a promoted follower is published into, and a follower before that is not"() {
+
+        setup:
+            String topic = "replicationTopic2"
+            Publisher<byte[], byte[]> publisher = new Publisher<>(topic, TopicConfig.builder().replicated(1).build())
+            TopicFollower follower = follow(topic, "follower1", "replicationTopic2Follower", TopicConfig.defaults())
+            Publisher<byte[], byte[]> followerPublisher = new Publisher<>("replicationTopic2Follower")
+            Subscriber<byte[], byte[]> followerSubscriber = new Subscriber<>("replicationTopic2Follower")
+            followerSubscriber.register()
+            publisher.publish(new Record<>("key".bytes, "replicated".bytes))
+
+        expect:
+            values(followerSubscriber.poll(10, Duration.ofSeconds(5))) == ["replicated"]
+
+        when:
+            followerPublisher.publish(new Record<>("key".bytes, "rejected".bytes))
+
+        then:
+            PublisherException publisherException = thrown()
+            publisherException.getMessage().equals("Topic is following a leader")
+
+        when: "The leader fails over to the follower"
+            follower.promote()
+            followerPublisher.publish(new Record<>("key".bytes, "published".bytes))
+
+        then:
+            values(followerSubscriber.poll(10, Duration.ofSeconds(5))) == ["published"]
+    }
+
+    // Positive testcase
+    def "Test the high-water mark stops once the follower dropped out of sync"() {
+
+        setup:
+            String topic = "replicationTopic3"
+            Publisher<byte[], byte[]> publisher = new Publisher<>(topic, TopicConfig.builder()
+                    .replicated(1)
+                    .replicaLagTimeMs(1000)
+                    .build())
+            Subscriber<byte[], byte[]> subscriber = new Subscriber<>(topic)
+            subscriber.register()
+            TopicFollower follower = follow(topic, "follower1", "replicationTopic3Follower", TopicConfig.defaults())
+            publisher.publish(new Record<>("key".bytes, "replicated".bytes))
+
+        expect:
+            values(subscriber.poll(10, Duration.ofSeconds(5))) == ["replicated"]
+
+        when:
+            follower.close()
+            Thread.sleep(1500)
+            publisher.publish(new Record<>("key".bytes, "unreplicated".bytes))
+
+        then:
+            subscriber.poll(10, Duration.ofMillis(500)).isEmpty()
+    }
+
+    // Positive testcase
+    def "Test a new follower starts at the first record the retention of the leader kept"() {
+
+        setup:
+            String topic = "replicationTopic5"
+            TopicConfig topicConfig = TopicConfig.builder().chunkSize(16).retentionMaxRecords(32).replicated(1).build()
+            Publisher<byte[], byte[]> publisher = new Publisher<>(topic, topicConfig)
+            publisher.publishAll((0..<100).collect { new Record<>(("key" + it).bytes, ("value" + it).bytes) })
+
+            // Lets the cleaner drop the oldest chunks, no follower holds them back yet.
+            Thread.sleep(1500)
+
+        when:
+            follow(topic, "follower1", "replicationTopic5Follower", topicConfig)
+            Subscriber<byte[], byte[]> followerSubscriber = new Subscriber<>("replicationTopic5Follower")
+            followerSubscriber.register()
+            List<String> followerValues = values(followerSubscriber.poll(32, 100, Duration.ofSeconds(5)))
+
+        then:
+            followerValues.size() >= 32
+            followerValues.size() <= 32 + 16
+            followerValues == (100 - followerValues.size()..<100).collect { "value" + it }
+    }
+
+    // Negative testcase
+    def "Test following a topic with another number of partitions - exception is thrown"() {
+
+        setup:
+            new Publisher<>("replicationTopic4", TopicConfig.builder().partitions(3).replicated(1).build())
+
+        when:
+            follow("replicationTopic4", "follower1", "replicationTopic4Follower", TopicConfig.defaults())
+
+        then:
+            IllegalArgumentException illegalArgumentException = thrown()
+            illegalArgumentException.getMessage().equals(
+                    "The follower topic should have as many partitions as the leader topic")
+    }
+}
@@ -0,0 +1,171 @@
+import pubSub.OffsetResetPolicy
+import pubSub.Publisher
+import pubSub.Record
+import pubSub.Subscriber
+import pubSub.SubscriberException
+import pubSub.TopicConfig
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+
+class RetentionSpec extends Specification {
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+
+    private static void publish(Publisher publisher, int from, int to) {
+        for (int i = from; i < to; i++) {
+            publisher.publish(new Record<>("key" + i, i))
+        }
+    }
+
+    // Reads the first record of the topic with a new subscriber.
+    private static List<Record> pollFromStart(String topic) {
+        Subscriber subscriber = new Subscriber(topic)
+        subscriber.register()
+        try {
+            return subscriber.poll(1)
+        } finally {
+            subscriber.unregister()
+        }
+    }
+
+    private static boolean isOutOfRange(String topic) {
+        try {
+            pollFromStart(topic)
+            return false
+        } catch (SubscriberException ignored) {
+            return true
+        }
+    }
+
+    private static Integer firstRetainedValue(String topic) {
+        List<Record> records = pollFromStart(topic)
+        return records.isEmpty() ? null : records.get(0).getValue()
+    }
+
+    // Positive testcase
+    def "Test size based retention keeps between maxRecords and maxRecords plus a chunk"() {
+
+        setup:
+            String topic = "retentionTopic1"
+            Publisher publisher = new Publisher(topic, TopicConfig.builder()
+                    .chunkSize(16)
+                    .retentionMaxRecords(32)
+                    .build())
+
+        when:
+            publish(publisher, 0, 100)
+
+        then:
+            conditions.eventually {
+                int first = firstRetainedValue(topic)
+                assert first >= 100 - 32 - 16
+                assert first <= 100 - 32
+            }
+    }
+
+    // Positive testcase
+    def "Test time based retention"() {
+
+        setup:
+            String topic = "retentionTopic2"
+            Publisher publisher = new Publisher(topic, TopicConfig.builder()
+                    .chunkSize(16)
+                    .retentionMaxAgeMs(100)
+                    .build())
+
+        when:
+            publish(publisher, 0, 40)
+
+        then:
+            // The first two chunks are old, the last one is still being written to.
+            conditions.eventually {
+                assert firstRetainedValue(topic) == 32
+            }
+    }
+
+    // Positive testcase
+    def "Test consumed chunks are dropped and the subscriber continues at the same offsets"() {
+
+        setup:
+            String topic = "retentionTopic3"
+            Publisher publisher = new Publisher(topic, TopicConfig.builder()
+                    .chunkSize(16)
+                    .deleteConsumed(true)
+                    .build())
+            Subscriber subscriber = new Subscriber(topic)
+            subscriber.register()
+
+        when:
+            publish(publisher, 0, 64)
+            List<Record> records = subscriber.poll(40)
+
+        then:
+            records*.getValue() == (0..<40).toList()
+            conditions.eventually {
+                assert firstRetainedValue(topic) == 32
+            }
+
+        when:
+            publish(publisher, 64, 80)
+            records = subscriber.poll(100)
+
+        then:
+            records*.getValue() == (40..<80).toList()
+    }
+
+    // Positive testcase
+    def "Test subscriber out of retention resets to the latest offset"() {
+
+        setup:
+            String topic = "retentionTopic4"
+            Publisher publisher = new Publisher(topic, TopicConfig.builder()
+                    .chunkSize(16)
+                    .retentionMaxRecords(0)
+                    .offsetResetPolicy(OffsetResetPolicy.LATEST)
+                    .build())
+            Subscriber subscriber = new Subscriber(topic)
+            subscriber.register()
+
+        when:
+            publish(publisher, 0, 40)
+
+        then:
+            // A new subscriber starting from offset 0 is reset to the end as well.
+            conditions.eventually {
+                assert pollFromStart(topic).isEmpty()
+            }
+            subscriber.poll(100).isEmpty()
+
+        when:
+            publish(publisher, 40, 41)
+
+        then:
+            subscriber.poll(100)*.getValue() == [40]
+    }
+
+    // Negative testcase
+    def "Test subscriber out of retention with no reset policy - exception is thrown"() {
+
+        setup:
+            String topic = "retentionTopic5"
+            Publisher publisher = new Publisher(topic, TopicConfig.builder()
+                    .chunkSize(16)
+                    .retentionMaxRecords(0)
+                    .offsetResetPolicy(OffsetResetPolicy.NONE)
+                    .build())
+            Subscriber subscriber = new Subscriber(topic)
+            subscriber.register()
+
+        when:
+            publish(publisher, 0, 40)
+            conditions.eventually {
+                assert isOutOfRange(topic)
+            }
+            subscriber.poll(100)
+
+        then:
+            SubscriberException subscriberException = thrown()
+            subscriberException.getMessage().equals("Offset out of range")
+    }
+}
@@ -0,0 +1,168 @@
+import pubSub.Publisher
+import pubSub.Record
+import pubSub.Serde
+import pubSub.Subscriber
+import pubSub.SubscriberException
+import pubSub.TopicConfig
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.time.Instant
+
+
+class SeekSpec extends Specification {
+
+    // Publishes the values, then waits so that the next records get a later timestamp.
+    private static Instant publishAndTick(Publisher<String, Integer> publisher, IntRange values) {
+        values.each { publisher.publish(new Record<>("key" + it, it)) }
+        Thread.sleep(20)
+        Instant next = Instant.now()
+        Thread.sleep(20)
+        return next
+    }
+
+    // Positive testcase
+    def "Test seeking to the beginning, the end and an offset"() {
+
+        setup:
+            String topic = "seekTopic1"
+            Publisher<String, Integer> publisher = new Publisher<>(topic)
+            Subscriber<String, Integer> subscriber = new Subscriber<>(topic)
+            subscriber.register()
+            (0..<10).each { publisher.publish(new Record<>("key" + it, it)) }
+
+        when:
+            subscriber.seekToOffset(7)
+
+        then:
+            subscriber.poll(100)*.getValue() == [7, 8, 9]
+
+        when:
+            subscriber.seekToBeginning()
+
+        then:
+            subscriber.poll(3)*.getValue() == [0, 1, 2]
+
+        when:
+            subscriber.seekToEnd()
+            publisher.publish(new Record<>("key", 10))
+
+        then:
+            subscriber.poll(100)*.getValue() == [10]
+
+        when: "An offset past the end moves to the end"
+            subscriber.seekToOffset(0, 1000)
+            publisher.publish(new Record<>("key", 11))
+
+        then:
+            subscriber.poll(100)*.getValue() == [11]
+    }
+
+    // Positive testcase
+    def "Test seeking to a timestamp on a partitioned topic"() {
+
+        setup:
+            String topic = "seekTopic2"
+            Publisher<String, Integer> publisher = new Publisher<>(topic, TopicConfig.builder()
+                    .partitions(2)
+                    .chunkSize(16)
+                    .build())
+            Subscriber<String, Integer> subscriber = new Subscriber<>(topic)
+            subscriber.register()
+            Instant start = Instant.now()
+            Instant middle = publishAndTick(publisher, 0..<100)
+            Instant end = publishAndTick(publisher, 100..<200)
+
+        when:
+            subscriber.seekToTimestamp(middle)
+            List<Record<String, Integer>> records = subscriber.poll(1000)
+
+        then:
+            records*.getValue().sort() == (100..<200).toList()
+            records.every { it.getTimestamp() >= middle.toEpochMilli() }
+
+        when:
+            subscriber.seekToTimestamp(start)
+
+        then:
+            subscriber.poll(1000).size() == 200
+
+        when:
+            subscriber.seekToTimestamp(end)
+
+        then:
+            subscriber.poll(1000).isEmpty()
+    }
+
+    // Positive testcase
+    def "Test seeking to a timestamp on a topic stored in files"() {
+
+        setup:
+            String topic = "seekTopic3"
+            Publisher<String, Integer> publisher = new Publisher<>(topic, TopicConfig.builder()
+                    .fileStorage(Files.createTempDirectory("seekSpec"), Serde.string(), new IntegerSerde())
+                    .segmentBytes(4096)
+                    .build())
+            Subscriber<String, Integer> subscriber = new Subscriber<>(topic)
+            subscriber.register()
+            Instant middle = publishAndTick(publisher, 0..<1000)
+            publishAndTick(publisher, 1000..<2000)
+
+        when:
+            subscriber.seekToTimestamp(middle)
+            List<Record<String, Integer>> records = []
+            List<Record<String, Integer>> polled
+            while (!(polled = subscriber.poll(100)).isEmpty()) {
+                records.addAll(polled)
+            }
+
+        then:
+            records*.getValue() == (1000..<2000).toList()
+            records.every { it.getTimestamp() >= middle.toEpochMilli() }
+    }
+
+    // Negative testcase
+    def "Test seeking an unregistered subscriber - exception is thrown"() {
+
+        setup:
+            String topic = "seekTopic4"
+            new Publisher<String, Integer>(topic)
+
+        when:
+            new Subscriber<String, Integer>(topic).seekToBeginning()
+
+        then:
+            SubscriberException subscriberException = thrown()
+            subscriberException.getMessage().equals("Subscriber not registered")
+    }
+
+    // Negative testcase
+    def "Test seeking a partition the subscriber does not read - exception is thrown"() {
+
+        setup:
+            String topic = "seekTopic5"
+            new Publisher<String, Integer>(topic, TopicConfig.builder().partitions(2).build())
+            Subscriber<String, Integer> subscriber = new Subscriber<>(topic, [0])
+            subscriber.register()
+
+        when:
+            subscriber.seekToOffset(1, 0)
+
+        then:
+            IllegalArgumentException illegalArgumentException = thrown()
+            illegalArgumentException.getMessage().equals("Partition not read by the subscriber")
+    }
+
+    static class IntegerSerde implements Serde<Integer> {
+
+        @Override
+        byte[] serialize(Integer data) {
+            return data.toString().getBytes()
+        }
+
+        @Override
+        Integer deserialize(byte[] bytes) {
+            return Integer.valueOf(new String(bytes))
+        }
+    }
+}
@@ -0,0 +1,279 @@
+import pubSub.Acks
+import pubSub.HashPartitioner
+import pubSub.Publisher
+import pubSub.PublisherConfig
+import pubSub.PublisherException
+import pubSub.Record
+import pubSub.Serde
+import pubSub.Subscriber
+import pubSub.TopicConfig
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+
+
+class SegmentLogSpec extends Specification {
+
+    Path directory = Files.createTempDirectory("segmentLogSpec")
+
+    private static Publisher<String, String> filePublisher(String topic, Path directory, int segmentBytes) {
+        return new Publisher<>(topic, TopicConfig.builder()
+                .fileStorage(directory, Serde.string(), Serde.string())
+                .segmentBytes(segmentBytes)
+                .build())
+    }
+
+    private static List<Record<String, String>> readAll(String topic, int pollSize) {
+        Subscriber<String, String> subscriber = new Subscriber<>(topic)
+        subscriber.register()
+        List<Record<String, String>> allRecords = []
+        List<Record<String, String>> records
+        while (!(records = subscriber.poll(pollSize)).isEmpty()) {
+            allRecords.addAll(records)
+        }
+        subscriber.unregister()
+        return allRecords
+    }
+
+    // Topics live as long as the JVM, so a restart is simulated by opening a copy of the files under a new topic.
+    private static void copyPartition(Path fromDirectory, String fromTopic, Path toDirectory, String toTopic) {
+        Path from = fromDirectory.resolve(fromTopic + "-0")
+        Path to = Files.createDirectories(toDirectory.resolve(toTopic + "-0"))
+        Files.list(from).each { Files.copy(it, to.resolve(it.getFileName())) }
+    }
+
+    // Positive testcase
+    def "Test records survive reopening the topic files, across segments"() {
+
+        setup:
+            Publisher<String, String> publisher = filePublisher("fileTopic1", directory, 4096)
+            Path restartDirectory = Files.createTempDirectory("segmentLogSpecRestart")
+
+        when:
+            for (int i = 0; i < 1000; i++) {
+                publisher.publish(new Record<>("key" + i, "value" + i))
+            }
+            publisher.publish(new Record<>(null, null))
+            copyPartition(directory, "fileTopic1", restartDirectory, "fileTopic1Restarted")
+            filePublisher("fileTopic1Restarted", restartDirectory, 4096)
+            List<Record<String, String>> records = readAll("fileTopic1Restarted", 7)
+
+        then:
+            Files.list(directory.resolve("fileTopic1-0")).count() > 1
+            records.size() == 1001
+            records.take(1000).collect { it.getValue() } == (0..<1000).collect { "value" + it }
+            records.last().getKey() == null && records.last().getValue() == null
+    }
+
+    // Positive testcase
+    def "Test a torn record at the tail is truncated on recovery"() {
+
+        setup:
+            Publisher<String, String> publisher = filePublisher("fileTopic2", directory, 1024 * 1024)
+            Path restartDirectory = Files.createTempDirectory("segmentLogSpecRestart")
+            for (int i = 0; i < 10; i++) {
+                publisher.publish(new Record<>("key" + i, "value" + i))
+            }
+
+        when: "The last byte of the last record is lost"
+            copyPartition(directory, "fileTopic2", restartDirectory, "fileTopic2Restarted")
+
+            // Every record published on its own is a frame taking 4 + 29 bytes of header, plus 4 + 4 bytes for the
+            // key, 4 + 6 bytes for the value and 4 bytes for the header count, which ends with a 0 byte.
+            int frameBytes = 4 + 29 + 4 + 4 + 4 + 6 + 4
+            Path segment = Files.list(restartDirectory.resolve("fileTopic2Restarted-0")).findFirst().get()
+            FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)
+            channel.write(ByteBuffer.wrap([-1] as byte[]), 10 * frameBytes - 1)
+            channel.close()
+            Publisher<String, String> restarted = filePublisher("fileTopic2Restarted", restartDirectory, 1024 * 1024)
+
+        then:
+            readAll("fileTopic2Restarted", 100)*.getValue() == (0..<9).collect { "value" + it }
+
+        when:
+            restarted.publish(new Record<>("key", "replacement"))
+
+        then:
+            readAll("fileTopic2Restarted", 100)*.getValue() == (0..<9).collect { "value" + it } + ["replacement"]
+    }
+
+    // Positive testcase
+    def "Test polling in small steps through a segment seeks with the sparse index"() {
+
+        setup:
+            Publisher<String, String> publisher = filePublisher("fileTopic4", directory, 1024 * 1024)
+
+        when:
+            publisher.publishAll((0..<5000).collect { new Record<>("key" + it, "value" + it) })
+            List<Record<String, String>> records = readAll("fileTopic4", 7)
+
+        then:
+            records*.getValue() == (0..<5000).collect { "value" + it }
+    }
+
+    // Positive testcase
+    def "Test publish and subscribe on a partitioned topic stored in files"() {
+
+        setup:
+            String topic = "fileTopic3"
+            Publisher<String, String> publisher = new Publisher<>(topic, TopicConfig.builder()
+                    .partitions(2)
+                    .fileStorage(directory, Serde.string(), Serde.string())
+                    .segmentBytes(4096)
+                    .build())
+
+        when:
+            publisher.publishAll((0..<500).collect { new Record<>("key" + (it % 7), "value" + it) })
+            List<Record<String, String>> records = readAll(topic, 1000)
+
+        then:
+            records.size() == 500
+            records.groupBy { it.getKey() }.every { key, perKey ->
+                perKey*.getValue() == (0..<500).findAll { "key" + (it % 7) == key }.collect { "value" + it }
+            }
+    }
+
+    // Positive testcase
+    def "Test publishing with acks=FSYNCED from concurrent publishers"() {
+
+        setup:
+            Publisher<String, String> publisher = new Publisher<>("fileTopic5", TopicConfig.builder()
+                    .fileStorage(directory, Serde.string(), Serde.string())
+                    .flushIntervalMs(1)
+                    .build(), PublisherConfig.builder().acks(Acks.FSYNCED).build())
+
+        when:
+            (0..<4).collect { thread ->
+                Thread.start {
+                    for (int i = 0; i < 50; i++) {
+                        publisher.publish(new Record<>("key" + thread, "value" + thread + "-" + i))
+                    }
+                }
+            }*.join()
+            publisher.publishAll((0..<10).collect { new Record<>("batchKey", "batchValue" + it) })
+            List<Record<String, String>> records = readAll("fileTopic5", 1000)
+
+        then:
+            records.size() == 210
+            (0..<4).every { thread ->
+                records.findAll { it.getKey() == "key" + thread }*.getValue() == (0..<50).collect { "value" + thread + "-" + it }
+            }
+    }
+
+    // Positive testcase
+    def "Test consumer group offsets survive reopening the topic files"() {
+
+        setup:
+            Publisher<String, String> publisher = filePublisher("fileTopic6", directory, 1024 * 1024)
+            Path restartDirectory = Files.createTempDirectory("segmentLogSpecRestart")
+            Subscriber<String, String> subscriber = new Subscriber<>("fileTopic6", "group")
+            subscriber.register()
+
+        when:
+            (0..<10).each { publisher.publish(new Record<>("key" + it, "value" + it)) }
+            List<Record<String, String>> beforeRestart = subscriber.poll(6)
+            new PollingConditions(timeout: 5).eventually {
+                assert Files.readAllLines(directory.resolve("fileTopic6.groups")).contains("group=6")
+            }
+            copyPartition(directory, "fileTopic6", restartDirectory, "fileTopic6Restarted")
+            Files.copy(directory.resolve("fileTopic6.groups"), restartDirectory.resolve("fileTopic6Restarted.groups"),
+                    StandardCopyOption.REPLACE_EXISTING)
+            filePublisher("fileTopic6Restarted", restartDirectory, 1024 * 1024)
+            Subscriber<String, String> restarted = new Subscriber<>("fileTopic6Restarted", "group")
+            restarted.register()
+
+        then:
+            beforeRestart*.getValue() == (0..<6).collect { "value" + it }
+            restarted.poll(100)*.getValue() == (6..<10).collect { "value" + it }
+    }
+
+    // Positive testcase
+    def "Test a batch failing to roll to a new segment leaves no records behind"() {
+
+        setup:
+            // Batches are cut into frames of up to 1MB: the first two frames of the batch go into the active segment,
+            // which leaves room for more records, and the third one rolls.
+            int segmentBytes = 2560 * 1024
+            Publisher<String, String> publisher = filePublisher("fileTopic8", directory, segmentBytes)
+            Path restartDirectory = Files.createTempDirectory("segmentLogSpecRestart")
+            Path partitionDirectory = directory.resolve("fileTopic8-0")
+
+            // Directories in the way of the segment the batch rolls into, so that creating it fails.
+            List<Path> blockers = (1..<3000).collect {
+                Files.createDirectory(partitionDirectory.resolve(String.format("%020d", it) + ".log"))
+            }
+
+        when:
+            publisher.publishAll((0..<3000).collect { new Record<>(String.format("key%05d", it), "x" * 1000) })
+
+        then:
+            thrown(PublisherException)
+
+        when:
+            blockers.each { Files.delete(it) }
+            (0..<3).each { publisher.publish(new Record<>("key" + it, "value" + it)) }
+            copyPartition(directory, "fileTopic8", restartDirectory, "fileTopic8Restarted")
+            filePublisher("fileTopic8Restarted", restartDirectory, segmentBytes)
+
+        then:
+            readAll("fileTopic8", 10)*.getValue() == (0..<3).collect { "value" + it }
+            readAll("fileTopic8Restarted", 10)*.getValue() == (0..<3).collect { "value" + it }
+    }
+
+    // Positive testcase
+    def "Test a batch across partitions with a record too large for a segment publishes none of them"() {
+
+        setup:
+            Publisher<String, String> publisher = new Publisher<>("fileTopic9", TopicConfig.builder()
+                    .partitions(4)
+                    .fileStorage(directory, Serde.string(), Serde.string())
+                    .segmentBytes(4096)
+                    .build())
+
+            // Routed to the last partition, after the other ones are appended to.
+            String largeKey = (0..<100).collect { "largeKey" + it }.find { new HashPartitioner().partition(it, 4) == 3 }
+
+        when:
+            List<Record<String, String>> records = (0..<40).collect { new Record<>("key" + it, "value" + it) }
+            records.add(new Record<>(largeKey, "x" * 5000))
+            publisher.publishAll(records)
+
+        then:
+            thrown(PublisherException)
+            readAll("fileTopic9", 100).isEmpty()
+
+        when:
+            publisher.publishAll(records.take(40))
+
+        then:
+            readAll("fileTopic9", 100).size() == 40
+    }
+
+    // Negative testcase
+    def "Test acks=FSYNCED on a topic kept in memory - exception is thrown"() {
+
+        when:
+            new Publisher<>("fileTopic7", TopicConfig.defaults(), PublisherConfig.builder().acks(Acks.FSYNCED).build())
+
+        then:
+            IllegalArgumentException illegalArgumentException = thrown()
+            illegalArgumentException.getMessage().equals("acks=FSYNCED needs a topic stored in files")
+    }
+
+    // Negative testcase
+    def "Test compacted topic stored in files - exception is thrown"() {
+
+        when:
+            TopicConfig.builder().compacted(true).fileStorage(directory, Serde.string(), Serde.string()).build()
+
+        then:
+            IllegalArgumentException illegalArgumentException = thrown()
+            illegalArgumentException.getMessage().equals("Compacted topics cannot be stored in files")
+    }
+}
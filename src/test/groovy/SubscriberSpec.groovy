@@ -1,4 +1,8 @@
+import pubSub.Publisher
+import pubSub.Record
+import pubSub.RecordBatchView
 import pubSub.Subscriber
+import pubSub.SubscriberException
 import spock.lang.Specification
 
 
@@ -41,4 +45,64 @@ class SubscriberSpec extends Specification {
             IllegalArgumentException illegalArgumentException = thrown()
             illegalArgumentException.getMessage().equals("maxRecords should be greater than 0")
     }
+
+    // Positive testcase
+    def "Test polling views and forEach reuse the view of the subscriber"() {
+
+        setup:
+            String topic = "viewTopic1"
+            Publisher<String, Integer> publisher = new Publisher<>(topic)
+            Subscriber<String, Integer> subscriber = new Subscriber<>(topic)
+            subscriber.register()
+            publisher.publishAll((0..<10).collect { new Record<>("key" + it, it) })
+            List<Integer> consumed = []
+
+        when:
+            RecordBatchView<String, Integer> first = subscriber.pollView(4)
+            List<Integer> firstValues = first*.getValue()
+            RecordBatchView<String, Integer> second = subscriber.pollView(4)
+            List<Integer> secondValues = (0..<second.size()).collect { second.get(it).getValue() }
+            int count = subscriber.forEach(4, { consumed.add(it.getValue()) })
+
+        then:
+            firstValues == [0, 1, 2, 3]
+            second.is(first)
+            secondValues == [4, 5, 6, 7]
+            count == 2
+            consumed == [8, 9]
+            subscriber.forEach(4, { consumed.add(it.getValue()) }) == 0
+            subscriber.pollView(4).isEmpty()
+    }
+
+    // Negative testcase
+    def "Test unregistered subscriber whose id was handed out again - exception is thrown"() {
+
+        setup:
+            String topic = "handleTopic1"
+            Publisher<String, Integer> publisher = new Publisher<>(topic)
+            publisher.publish(new Record<>("key", 1))
+            List<Subscriber<String, Integer>> subscribers = (0..<1000).collect { new Subscriber<String, Integer>(topic) }
+            subscribers.each { it.register() }
+            Subscriber<String, Integer> unregistered = subscribers[500]
+
+        when:
+            unregistered.unregister()
+            Subscriber<String, Integer> next = new Subscriber<>(topic)
+            next.register()
+
+        then:
+            next.poll(10)*.getValue() == [1]
+            subscribers[501].poll(10)*.getValue() == [1]
+
+        when:
+            unregistered.poll(10)
+
+        then:
+            SubscriberException subscriberException = thrown()
+            subscriberException.getMessage().equals("Subscriber not registered")
+
+        cleanup:
+            subscribers.each { it.unregister() }
+            next.unregister()
+    }
 }